@@ -0,0 +1,131 @@
+package org.hucompute.textimager.uima.agreement.benchmark;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
+import org.hucompute.textimager.uima.agreement.engine.SyntheticCorpusGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base of the benchmarks of {@link AbstractIAAEngine#process process()} and
+ * {@link AbstractIAAEngine#collectionProcessComplete collectionProcessComplete()} of an engine over a generated corpus.
+ * <p/>
+ * JMH can only inject concrete states, so each subclass binds the {@link EngineState engine states} to itself and
+ * declares the benchmark methods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public abstract class AbstractEngineBenchmark {
+	@Param({"1000", "10000"})
+	public int tokens;
+
+	@Param({"2", "6"})
+	public int annotators;
+
+	@Param({"0.05", "0.25"})
+	public double density;
+
+	/**
+	 * The number of documents fed into the engine before {@code collectionProcessComplete} is measured.
+	 */
+	@Param({"10"})
+	public int documents;
+
+	private JCas[] corpus;
+	private int nextDocument = 0;
+	private String targetLocation;
+
+	@Setup(Level.Trial)
+	public void createCorpus() throws UIMAException, IOException {
+		SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator()
+				.withTokenCount(tokens)
+				.withAnnotatorCount(annotators)
+				.withEntityDensity(density);
+		corpus = new JCas[documents];
+		for (int i = 0; i < documents; i++) {
+			corpus[i] = generator.generate(i);
+		}
+		targetLocation = Files.createTempDirectory(getEngineClass().getSimpleName()).toString();
+	}
+
+	/**
+	 * @return The benchmarked engine class.
+	 */
+	protected abstract Class<? extends AbstractIAAEngine> getEngineClass();
+
+	/**
+	 * @return The parameters of the engine class, in addition to those of all benchmarks.
+	 */
+	protected Object[] getEngineParameters() {
+		return new Object[0];
+	}
+
+	AnalysisEngine createEngine(String multiCasHandling) throws ResourceInitializationException {
+		ArrayList<Object> parameters = new ArrayList<>(Arrays.asList(
+				AbstractIAAEngine.PARAM_ANNOTATION_CLASSES, SyntheticCorpusGenerator.ANNOTATION_CLASSES,
+				AbstractIAAEngine.PARAM_MIN_VIEWS, 2,
+				AbstractIAAEngine.PARAM_MIN_ANNOTATIONS, 0,
+				AbstractIAAEngine.PARAM_ANNOTATOR_RELATION, AbstractIAAEngine.BLACKLIST,
+				AbstractIAAEngine.PARAM_MULTI_CAS_HANDLING, multiCasHandling,
+				AbstractIAAEngine.PARAM_TARGET_LOCATION, targetLocation,
+				// Printing the statistics of every document would dominate process()
+				AbstractIAAEngine.PARAM_PRINT_STATS, !AbstractIAAEngine.SEPARATE.equals(multiCasHandling)
+		));
+		parameters.addAll(Arrays.asList(getEngineParameters()));
+		return AnalysisEngineFactory.createEngine(getEngineClass(), parameters.toArray());
+	}
+
+	/**
+	 * @return The next document of the corpus, cycling through all of them.
+	 */
+	JCas nextDocument() {
+		JCas jCas = corpus[nextDocument];
+		nextDocument = (nextDocument + 1) % corpus.length;
+		return jCas;
+	}
+
+	/**
+	 * Holds an engine of a benchmark. Subclasses are bound to a concrete benchmark, which creates the engine in their
+	 * setup, as follows:
+	 * <ul>
+	 * <li>in SEPARATE mode, which keeps no state between documents, once per trial,</li>
+	 * <li>in COMBINED mode, which accumulates all processed documents, once per iteration,</li>
+	 * <li>in COMBINED mode, after processing the whole corpus, once per invocation.</li>
+	 * </ul>
+	 */
+	public abstract static class EngineState {
+		AnalysisEngine engine;
+
+		void createSeparate(AbstractEngineBenchmark benchmark) throws ResourceInitializationException {
+			engine = benchmark.createEngine(AbstractIAAEngine.SEPARATE);
+		}
+
+		void createCombined(AbstractEngineBenchmark benchmark) throws ResourceInitializationException {
+			engine = benchmark.createEngine(AbstractIAAEngine.COMBINED);
+		}
+
+		void createFilled(AbstractEngineBenchmark benchmark) throws UIMAException {
+			engine = benchmark.createEngine(AbstractIAAEngine.COMBINED);
+			for (JCas jCas : benchmark.corpus) {
+				engine.process(jCas);
+			}
+		}
+
+		void destroy() {
+			engine.destroy();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package org.hucompute.textimager.uima.agreement.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar.
+ * <p/>
+ * Accepts the regular JMH command line options, but always attaches the {@link GCProfiler} so that allocation rates
+ * are recorded next to the throughput. Results are written to {@code jmh-result.json} unless {@code -rff} is given.
+ */
+public class AgreementBenchmarks {
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		Options options = new OptionsBuilder()
+				.parent(commandLineOptions)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(commandLineOptions.getResult().orElse("jmh-result.json"))
+				.build();
+		new Runner(options).run();
+	}
+}
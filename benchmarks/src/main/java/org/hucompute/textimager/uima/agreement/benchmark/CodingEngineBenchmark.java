@@ -0,0 +1,80 @@
+package org.hucompute.textimager.uima.agreement.benchmark;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks {@link CodingIAACollectionProcessingEngine#process process()} and
+ * {@link CodingIAACollectionProcessingEngine#collectionProcessComplete collectionProcessComplete()} separately.
+ */
+public class CodingEngineBenchmark extends AbstractEngineBenchmark {
+	@Param({"MAX", "ALL", "MATCH"})
+	public String setSelectionStrategy;
+
+	@Override
+	protected Class<? extends AbstractIAAEngine> getEngineClass() {
+		return CodingIAACollectionProcessingEngine.class;
+	}
+
+	@Override
+	protected Object[] getEngineParameters() {
+		return new Object[]{CodingIAACollectionProcessingEngine.PARAM_SET_SELECTION_STRATEGY, setSelectionStrategy};
+	}
+
+	@State(Scope.Thread)
+	public static class SeparateEngine extends EngineState {
+		@Setup(Level.Trial)
+		public void setUp(CodingEngineBenchmark benchmark) throws ResourceInitializationException {
+			createSeparate(benchmark);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			destroy();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class CombinedEngine extends EngineState {
+		@Setup(Level.Iteration)
+		public void setUp(CodingEngineBenchmark benchmark) throws ResourceInitializationException {
+			createCombined(benchmark);
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() {
+			destroy();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class FilledEngine extends EngineState {
+		@Setup(Level.Invocation)
+		public void setUp(CodingEngineBenchmark benchmark) throws UIMAException {
+			createFilled(benchmark);
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() {
+			destroy();
+		}
+	}
+
+	@Benchmark
+	public void processSeparate(SeparateEngine state) throws UIMAException {
+		state.engine.process(nextDocument());
+	}
+
+	@Benchmark
+	public void processCombined(CombinedEngine state) throws UIMAException {
+		state.engine.process(nextDocument());
+	}
+
+	@Benchmark
+	public void collectionProcessComplete(FilledEngine state) throws UIMAException {
+		state.engine.collectionProcessComplete();
+	}
+}
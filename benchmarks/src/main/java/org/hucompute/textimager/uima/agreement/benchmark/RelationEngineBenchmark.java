@@ -0,0 +1,61 @@
+package org.hucompute.textimager.uima.agreement.benchmark;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.jcas.JCas;
+import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
+import org.hucompute.textimager.uima.agreement.engine.SyntheticCorpusGenerator;
+import org.hucompute.textimager.uima.agreement.engine.relational.RelationAnnotationAgreement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link RelationAnnotationAgreement#process process()}, which computes all relational agreements per CAS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RelationEngineBenchmark {
+	@Param({"1000", "10000"})
+	public int tokens;
+
+	@Param({"2", "6"})
+	public int annotators;
+
+	@Param({"0.05", "0.25"})
+	public double density;
+
+	private JCas jCas;
+	private AnalysisEngine engine;
+
+	@Setup(Level.Trial)
+	public void setUp() throws UIMAException {
+		jCas = new SyntheticCorpusGenerator()
+				.withTokenCount(tokens)
+				.withAnnotatorCount(annotators)
+				.withEntityDensity(0.0)
+				.withRelationDensity(density)
+				.generate(0);
+		engine = AnalysisEngineFactory.createEngine(
+				RelationAnnotationAgreement.class,
+				RelationAnnotationAgreement.PARAM_MIN_VIEWS, 2,
+				RelationAnnotationAgreement.PARAM_ANNOTATOR_RELATION, AbstractIAAEngine.BLACKLIST,
+				RelationAnnotationAgreement.PARAM_PRINT_STATS, false
+		);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		engine.destroy();
+	}
+
+	@Benchmark
+	public void process() throws UIMAException {
+		engine.process(jCas);
+	}
+}
@@ -0,0 +1,72 @@
+package org.hucompute.textimager.uima.agreement.benchmark;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
+import org.hucompute.textimager.uima.agreement.engine.unitizing.UnitizingIAACollectionProcessingEngine;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks {@link UnitizingIAACollectionProcessingEngine#process process()} and
+ * {@link UnitizingIAACollectionProcessingEngine#collectionProcessComplete collectionProcessComplete()} separately.
+ */
+public class UnitizingEngineBenchmark extends AbstractEngineBenchmark {
+	@Override
+	protected Class<? extends AbstractIAAEngine> getEngineClass() {
+		return UnitizingIAACollectionProcessingEngine.class;
+	}
+
+	@State(Scope.Thread)
+	public static class SeparateEngine extends EngineState {
+		@Setup(Level.Trial)
+		public void setUp(UnitizingEngineBenchmark benchmark) throws ResourceInitializationException {
+			createSeparate(benchmark);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			destroy();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class CombinedEngine extends EngineState {
+		@Setup(Level.Iteration)
+		public void setUp(UnitizingEngineBenchmark benchmark) throws ResourceInitializationException {
+			createCombined(benchmark);
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() {
+			destroy();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class FilledEngine extends EngineState {
+		@Setup(Level.Invocation)
+		public void setUp(UnitizingEngineBenchmark benchmark) throws UIMAException {
+			createFilled(benchmark);
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() {
+			destroy();
+		}
+	}
+
+	@Benchmark
+	public void processSeparate(SeparateEngine state) throws UIMAException {
+		state.engine.process(nextDocument());
+	}
+
+	@Benchmark
+	public void processCombined(CombinedEngine state) throws UIMAException {
+		state.engine.process(nextDocument());
+	}
+
+	@Benchmark
+	public void collectionProcessComplete(FilledEngine state) throws UIMAException {
+		state.engine.collectionProcessComplete();
+	}
+}
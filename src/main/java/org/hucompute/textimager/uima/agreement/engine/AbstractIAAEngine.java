@@ -1,44 +1,66 @@
 package org.hucompute.textimager.uima.agreement.engine;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Streams;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.fit.component.JCasConsumer_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.descriptor.ExternalResource;
 import org.apache.uima.fit.internal.ExtendedLogger;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.DoubleArray;
 import org.apache.uima.jcas.cas.LongArray;
 import org.apache.uima.jcas.cas.StringArray;
-import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.dkpro.core.api.parameter.ComponentParameters;
 import org.dkpro.statistics.agreement.IAgreementMeasure;
 import org.dkpro.statistics.agreement.ICategorySpecificAgreement;
+import org.hucompute.textimager.uima.agreement.engine.sink.AgreementResult;
+import org.hucompute.textimager.uima.agreement.engine.sink.BinaryResultReader;
+import org.hucompute.textimager.uima.agreement.engine.sink.BinaryResultSink;
+import org.hucompute.textimager.uima.agreement.engine.sink.CsvResultSink;
+import org.hucompute.textimager.uima.agreement.engine.sink.JsonLinesResultSink;
+import org.hucompute.textimager.uima.agreement.engine.sink.PartitionedResultSink;
+import org.hucompute.textimager.uima.agreement.engine.sink.ResultSink;
+import org.hucompute.textimager.uima.agreement.engine.sink.ResultTarget;
 import org.texttechnologylab.annotation.type.Fingerprint;
 import org.texttechnologylab.iaa.Agreement;
 import org.texttechnologylab.iaa.AgreementContainer;
-import org.texttechnologylab.utilities.collections.CountMap;
+import org.texttechnologylab.utilities.collections.IndexingMap;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Abstract base class for all inter-annotator agreement engines.
@@ -167,7 +189,7 @@ public abstract class AbstractIAAEngine extends JCasConsumer_ImplBase {
 	 * This can also be set to {@link System#out} or {@link System#err}, in which case no files will be created but the
 	 * output will be printed in the corresponding output stream.
 	 * <p/>
-	 * If the given path is an existing *.csv file, all statistics will then be appended to that file.
+	 * If the given path is an existing *.csv or *.jsonl file, all statistics will then be appended to that file.
 	 * If {@link AbstractIAAEngine#PARAM_OVERWRITE_EXISTING} is set 'true', the file will be truncated to zero length
 	 * during the call of {@link AbstractIAAEngine#initialize}. If it does not exist, it will be created.
 	 * <p/>
@@ -200,16 +222,266 @@ public abstract class AbstractIAAEngine extends JCasConsumer_ImplBase {
 	)
 	protected Boolean pAnnotateDocument;
 
+	/**
+	 * The heap budget in megabytes for per-CAS data, which is retained until {@link #collectionProcessComplete()}.
+	 * Data exceeding the budget is spilled to a temporary file. Set to -1 to keep all data on the heap.
+	 * Replicas sharing a {@link #RES_SHARED_STATE} share the budget, which is split across its stripes.
+	 * <p/>
+	 * Default: -1.
+	 */
+	public static final String PARAM_HEAP_BUDGET = "pHeapBudget";
+	@ConfigurationParameter(
+			name = PARAM_HEAP_BUDGET,
+			mandatory = false,
+			defaultValue = "-1"
+	)
+	protected Integer pHeapBudget;
+
+	/**
+	 * The number of views, which are extracted concurrently for each CAS. The views are only read during the extraction,
+	 * the results are merged in the order of the views. Set to 1 to extract all views in the calling thread.
+	 * <p/>
+	 * Default: 1.
+	 */
+	public static final String PARAM_VIEW_PARALLELISM = "pViewParallelism";
+	@ConfigurationParameter(
+			name = PARAM_VIEW_PARALLELISM,
+			mandatory = false,
+			defaultValue = "1"
+	)
+	protected Integer pViewParallelism;
+
+	/**
+	 * The maximal number of statistics records, which are queued for the background writer. Printing blocks while the
+	 * queue is full. Set to 0 to write the statistics in the calling thread.
+	 * <p/>
+	 * Default: 64.
+	 */
+	public static final String PARAM_WRITER_QUEUE_SIZE = "pWriterQueueSize";
+	@ConfigurationParameter(
+			name = PARAM_WRITER_QUEUE_SIZE,
+			mandatory = false,
+			defaultValue = "64"
+	)
+	protected Integer pWriterQueueSize;
+
+	/**
+	 * The {@link ResultSink}, which receives the agreement results:
+	 * <ul>
+	 * <li>{@link AbstractIAAEngine#CSV}: one CSV file per document and one per measure for combined studies.</li>
+	 * <li>{@link AbstractIAAEngine#JSONL}: a single JSON Lines file per measure, to which all results are appended.</li>
+	 * <li>{@link AbstractIAAEngine#PARTITIONED}: the CSV files of the documents in {@link #PARAM_RESULT_PARTITIONS}
+	 * sub-directories, chosen by the hash of the file name.</li>
+	 * <li>{@link AbstractIAAEngine#BINARY}: a compact binary file per measure, which is read by the
+	 * {@link BinaryResultReader}. Requires a target directory.</li>
+	 * </ul>
+	 * Any other value is the fully qualified name of a {@link ResultSink} with a public {@link ResultTarget} constructor.
+	 * <p/>
+	 * Default: {@link AbstractIAAEngine#CSV}.
+	 */
+	public static final String PARAM_RESULT_SINK = "pResultSink";
+	@ConfigurationParameter(
+			name = PARAM_RESULT_SINK,
+			mandatory = false,
+			defaultValue = CSV
+	)
+	protected String pResultSink;
+
+	/**
+	 * {@link AbstractIAAEngine#PARAM_RESULT_SINK} choice. The {@link CsvResultSink}.
+	 */
+	public static final String CSV = "CSV";
+
+	/**
+	 * {@link AbstractIAAEngine#PARAM_RESULT_SINK} choice. The {@link JsonLinesResultSink}.
+	 */
+	public static final String JSONL = "JSONL";
+
+	/**
+	 * {@link AbstractIAAEngine#PARAM_RESULT_SINK} choice. The {@link PartitionedResultSink}.
+	 */
+	public static final String PARTITIONED = "PARTITIONED";
+
+	/**
+	 * {@link AbstractIAAEngine#PARAM_RESULT_SINK} choice. The {@link BinaryResultSink}.
+	 */
+	public static final String BINARY = "BINARY";
+
+	/**
+	 * The number of sub-directories of the {@link AbstractIAAEngine#PARTITIONED} result sink.
+	 * <p/>
+	 * Default: 256.
+	 */
+	public static final String PARAM_RESULT_PARTITIONS = "pResultPartitions";
+	@ConfigurationParameter(
+			name = PARAM_RESULT_PARTITIONS,
+			mandatory = false,
+			defaultValue = "256"
+	)
+	protected Integer pResultPartitions;
+
+	/**
+	 * The number of bootstrap replicates, from which percentile confidence intervals of the agreement values are
+	 * estimated. Coding studies of single documents resample the items of each token, combined studies resample whole
+	 * documents.
+	 * The bounds are printed next to the agreement values and added to the IAA view as two additional
+	 * {@link AgreementContainer AgreementContainers}, whose measure names end with {@link #LOWER_BOUND_SUFFIX} and
+	 * {@link #UPPER_BOUND_SUFFIX}. Set to 0 to disable the bootstrap.
+	 * <p/>
+	 * Default: 0.
+	 */
+	public static final String PARAM_BOOTSTRAP_SAMPLES = "pBootstrapSamples";
+	@ConfigurationParameter(
+			name = PARAM_BOOTSTRAP_SAMPLES,
+			mandatory = false,
+			defaultValue = "0"
+	)
+	protected Integer pBootstrapSamples;
+
+	/**
+	 * The confidence level of the bootstrap intervals, see {@link #PARAM_BOOTSTRAP_SAMPLES}.
+	 * <p/>
+	 * Default: 0.95.
+	 */
+	public static final String PARAM_BOOTSTRAP_CONFIDENCE = "pBootstrapConfidence";
+	@ConfigurationParameter(
+			name = PARAM_BOOTSTRAP_CONFIDENCE,
+			mandatory = false,
+			defaultValue = "0.95"
+	)
+	protected Float pBootstrapConfidence;
+
+	/**
+	 * The seed of the bootstrap replicates, see {@link #PARAM_BOOTSTRAP_SAMPLES}. Equal seeds give equal intervals.
+	 * <p/>
+	 * Default: 0.
+	 */
+	public static final String PARAM_BOOTSTRAP_SEED = "pBootstrapSeed";
+	@ConfigurationParameter(
+			name = PARAM_BOOTSTRAP_SEED,
+			mandatory = false,
+			defaultValue = "0"
+	)
+	protected Integer pBootstrapSeed;
+
+	/**
+	 * Suffix of the measure name of the {@link AgreementContainer} with the lower bootstrap bounds.
+	 */
+	public static final String LOWER_BOUND_SUFFIX = ":lower";
+
+	/**
+	 * Suffix of the measure name of the {@link AgreementContainer} with the upper bootstrap bounds.
+	 */
+	public static final String UPPER_BOUND_SUFFIX = ":upper";
+
+	/**
+	 * Path of an {@link AgreementStateFile}, to which the accumulated state of the combined study is written in
+	 * {@link #collectionProcessComplete()}. The state of several shards of a collection can be merged with
+	 * {@link #PARAM_STATE_SOURCES} or {@link org.hucompute.textimager.uima.agreement.engine.serialization.MergeAgreementStates}.
+	 * Only supported by {@link AgreementStateFile.Stateful} engines. Has no effect when {@link #PARAM_MULTI_CAS_HANDLING}
+	 * is set to {@link #SEPARATE}.
+	 * <p/>
+	 * Default: none.
+	 */
+	public static final String PARAM_STATE_TARGET = "pStateTarget";
+	@ConfigurationParameter(name = PARAM_STATE_TARGET, mandatory = false)
+	protected String pStateTarget;
+
+	/**
+	 * Paths of {@link AgreementStateFile state files}, which are merged into the combined study in
+	 * {@link #collectionProcessComplete()}, before it is written to {@link #PARAM_STATE_TARGET} and computed.
+	 * All files must have been written by the same engine class with the same parameters. Only supported by
+	 * {@link AgreementStateFile.Stateful} engines.
+	 * <p/>
+	 * Default: none.
+	 */
+	public static final String PARAM_STATE_SOURCES = "pStateSources";
+	@ConfigurationParameter(name = PARAM_STATE_SOURCES, mandatory = false)
+	protected String[] pStateSources;
+
+	/**
+	 * Directory of an {@link ExtractionCache} of the annotations extracted from each CAS. Entries are keyed by a hash of
+	 * the engine class and its {@link #getExtractionParameters() extraction parameters}, the document text and the names, texts and tokens of the default view and all
+	 * listed views, along with the types, spans, category flags and fingerprints of their annotations. Unchanged
+	 * documents of later runs are read from the cache instead of extracting their views, the agreement values do not
+	 * change. The cache should be cleared after updating the engines.
+	 * <p/>
+	 * Default: none.
+	 */
+	public static final String PARAM_EXTRACTION_CACHE = "pExtractionCache";
+	@ConfigurationParameter(name = PARAM_EXTRACTION_CACHE, mandatory = false)
+	protected String pExtractionCache;
+
+	/**
+	 * The maximal size of the {@link #PARAM_EXTRACTION_CACHE} in megabytes. Beyond it, the least recently used entries
+	 * are deleted.
+	 * <p/>
+	 * Default: 1024.
+	 */
+	public static final String PARAM_EXTRACTION_CACHE_SIZE = "pExtractionCacheSize";
+	@ConfigurationParameter(
+			name = PARAM_EXTRACTION_CACHE_SIZE,
+			mandatory = false,
+			defaultValue = "1024"
+	)
+	protected Integer pExtractionCacheSize;
+
+	/**
+	 * Configuration parameters, which change the extracted annotations and are thus part of the keys of the
+	 * {@link #PARAM_EXTRACTION_CACHE}.
+	 */
+	private static final ImmutableSet<String> EXTRACTION_PARAMETERS = ImmutableSet.of(
+			PARAM_ANNOTATION_CLASSES, PARAM_FILTER_FINGERPRINTED, PARAM_ANNOTATOR_LIST, PARAM_ANNOTATOR_RELATION,
+			PARAM_MIN_ANNOTATIONS, PARAM_MIN_VIEWS
+	);
+
+	/**
+	 * Version of the extracted annotations, which is part of the keys of the {@link #PARAM_EXTRACTION_CACHE}.
+	 */
+	private static final int EXTRACTION_VERSION = 1;
+
+	/**
+	 * Optional {@link SharedAgreementResource}, which combines the studies of all replicas of this engine.
+	 */
+	public static final String RES_SHARED_STATE = "sharedState";
+	@ExternalResource(key = RES_SHARED_STATE, mandatory = false)
+	protected SharedAgreementResource sharedState;
+
+	/**
+	 * Optional {@link SharedViewIndexResource}, which shares the view indexes of each document with all other engines
+	 * of an aggregate.
+	 */
+	public static final String RES_VIEW_INDEX = "viewIndex";
+	@ExternalResource(key = RES_VIEW_INDEX, mandatory = false)
+	protected SharedViewIndexResource viewIndex;
+
 	protected ExtendedLogger logger;
 	protected long viewCount;
 	protected LinkedHashSet<String> validViewNames;
-	protected CSVFormat csvFormat = CSVFormat.DEFAULT.withCommentMarker('#').withDelimiter(';');
-	private CSVPrinter globalCsvPrinter;
+	protected CategoryDictionary categoryDictionary;
+	private StatisticsWriter statisticsWriter;
+	private ResultSink resultSink;
+	private ForkJoinPool viewPool;
+	private ExtractionCache extractionCache;
+	/**
+	 * Hash of the configuration, with which each key of the {@link #extractionCache} starts.
+	 */
+	private byte[] configurationHash;
+	/**
+	 * The extraction context of each view of the current CAS by its full name.
+	 */
+	private final ConcurrentHashMap<String, ViewExtractionContext> viewContexts = new ConcurrentHashMap<>();
 
 	@Override
 	public void initialize(UimaContext context) throws ResourceInitializationException {
 		super.initialize(context);
 		logger = getLogger();
+		if (sharedState != null) {
+			sharedState.register();
+			categoryDictionary = sharedState.getCategoryDictionary(() -> new CategoryDictionary(this::getCatgoryName, this::getCategoryFlags));
+		} else {
+			categoryDictionary = new CategoryDictionary(this::getCatgoryName, this::getCategoryFlags);
+		}
 
 		// Set the list of annotators
 		if (pAnnotatorList != null && pAnnotatorList.length > 0) {
@@ -239,22 +511,54 @@ public abstract class AbstractIAAEngine extends JCasConsumer_ImplBase {
 		}
 		logger.info("Computing inter-annotator agreement for subclasses of " + annotationClasses.toString());
 
+		if (pViewParallelism > 1)
+			viewPool = new ForkJoinPool(pViewParallelism);
+
+		if (pExtractionCache != null) {
+			try {
+				extractionCache = sharedState != null
+						? sharedState.getExtractionCache(this::createExtractionCache)
+						: createExtractionCache();
+				configurationHash = hashConfiguration(context);
+			} catch (IOException | UncheckedIOException e) {
+				throw new ResourceInitializationException(e);
+			}
+			logger.info(String.format("Using the extraction cache %s with %d entries", pExtractionCache, extractionCache.size()));
+		}
+
+		if ((pStateTarget != null || pStateSources != null) && !(this instanceof AgreementStateFile.Stateful))
+			throw new ResourceInitializationException(new UnsupportedOperationException(String.format(
+					"%s does not support agreement state files, unset %s and %s!", getClass().getSimpleName(), PARAM_STATE_TARGET, PARAM_STATE_SOURCES)));
+		if (pMultiCasHandling.equals(SEPARATE) && (pStateTarget != null || pStateSources != null))
+			logger.warn("Agreement state files are ignored, as there is no combined study with " + PARAM_MULTI_CAS_HANDLING + "=" + SEPARATE);
 
+		// Replicas share the writer and the sink, so that the target files are opened only once
+		if (sharedState != null) {
+			statisticsWriter = sharedState.getStatisticsWriter(this::createStatisticsWriter);
+			resultSink = sharedState.getResultSink(() -> createResultSink(new ResultTarget(targetLocation, pOverwriteExisting, statisticsWriter)));
+		} else {
+			statisticsWriter = createStatisticsWriter();
+			resultSink = createResultSink(new ResultTarget(targetLocation, pOverwriteExisting, statisticsWriter));
+		}
+	}
+
+	/**
+	 * Create the {@link StatisticsWriter} of the {@link #targetLocation}, opening it if it denotes a single file.
+	 */
+	private StatisticsWriter createStatisticsWriter() throws ResourceInitializationException {
+		BufferedWriter globalWriter = null;
 		if (!Arrays.asList("System.out", "System.err").contains(targetLocation)) {
 			try {
 				Path targetPath = Paths.get(targetLocation);
 				if (targetPath.toFile().exists() && targetPath.toFile().isFile()) { // Check if the target path is an existing file and if it is, whether it should be overwritten.
 					if (pOverwriteExisting) {
-						BufferedWriter bufferedWriter = Files.newBufferedWriter(targetPath, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
-						globalCsvPrinter = new CSVPrinter(bufferedWriter, csvFormat);
+						globalWriter = Files.newBufferedWriter(targetPath, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
 					} else {
-						BufferedWriter bufferedWriter = Files.newBufferedWriter(targetPath, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
-						globalCsvPrinter = new CSVPrinter(bufferedWriter, csvFormat);
+						globalWriter = Files.newBufferedWriter(targetPath, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
 					}
-				} else if (!targetPath.toFile().exists() && targetPath.toString().endsWith(".csv")) { // Check if the target path denotes a file
+				} else if (!targetPath.toFile().exists() && (targetPath.toString().endsWith(".csv") || targetPath.toString().endsWith(".jsonl"))) { // Check if the target path denotes a file
 					Files.createDirectories(targetPath.getParent());
-					BufferedWriter bufferedWriter = Files.newBufferedWriter(targetPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
-					globalCsvPrinter = new CSVPrinter(bufferedWriter, csvFormat);
+					globalWriter = Files.newBufferedWriter(targetPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
 				} else if (!targetPath.toFile().exists()) { // If it does denote a directory, create it if it does not exist
 					Files.createDirectories(targetPath);
 				}
@@ -262,30 +566,409 @@ public abstract class AbstractIAAEngine extends JCasConsumer_ImplBase {
 				throw new ResourceInitializationException(e);
 			}
 		}
+		return new StatisticsWriter(pWriterQueueSize, globalWriter);
+	}
+
+	/**
+	 * Create the {@link ResultSink} selected by {@link #PARAM_RESULT_SINK}.
+	 */
+	protected ResultSink createResultSink(ResultTarget target) throws ResourceInitializationException {
+		try {
+			switch (pResultSink) {
+				case CSV:
+					return new CsvResultSink(target);
+				case JSONL:
+					return new JsonLinesResultSink(target);
+				case PARTITIONED:
+					return new PartitionedResultSink(target, pResultPartitions);
+				case BINARY:
+					return new BinaryResultSink(target);
+				default:
+					return Class.forName(pResultSink)
+							.asSubclass(ResultSink.class)
+							.getConstructor(ResultTarget.class)
+							.newInstance(target);
+			}
+		} catch (ReflectiveOperationException | ClassCastException | IllegalArgumentException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	/**
+	 * Hand a result to the {@link ResultSink}.
+	 */
+	protected void writeResult(AgreementResult result) throws IOException {
+		resultSink.write(result);
+	}
+
+	/**
+	 * Extracts data from a single annotator view. Must not modify the view or any state of the engine.
+	 *
+	 * @param <T> The type of the extracted data.
+	 */
+	@FunctionalInterface
+	protected interface ViewExtractor<T> {
+		/**
+		 * @param viewCas  The view.
+		 * @param viewName The user id of the view, without its prefix.
+		 * @return The extracted data.
+		 */
+		T extract(JCas viewCas, String viewName);
 	}
 
-	protected CSVPrinter getCsvPrinter(@Nonnull String suffix) throws IOException {
-		Appendable targetAppendable;
-		switch (targetLocation) {
-			case "System.out":
-				targetAppendable = System.out;
-				break;
-			case "System.err":
-				targetAppendable = System.err;
-				break;
-			default:
-				// If initialize created global printer, return it
-				if (globalCsvPrinter != null) return globalCsvPrinter;
-
-				Path path = Paths.get(targetLocation);
-				Path appendablePath = Paths.get(path.toString(), suffix);
-				if (!appendablePath.toFile().exists() || pOverwriteExisting) { // File does not exist or pOverwriteExisting is true.
-					targetAppendable = Files.newBufferedWriter(appendablePath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
-				} else { // File does exist and pOverwriteExisting is false.
-					targetAppendable = Files.newBufferedWriter(appendablePath, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	/**
+	 * Apply the given extractor to all {@link #validViewNames valid views} of the CAS, concurrently if
+	 * {@link #PARAM_VIEW_PARALLELISM} is greater than 1.
+	 *
+	 * @param jCas      The CAS.
+	 * @param extractor The extractor.
+	 * @return The extracted data in the order of {@link #validViewNames}.
+	 */
+	protected <T> List<T> extractViews(JCas jCas, ViewExtractor<T> extractor) throws CASException, AnalysisEngineProcessException {
+		// Views are looked up in the calling thread, as this may modify the CAS
+		ArrayList<JCas> viewCases = new ArrayList<>();
+		ArrayList<String> viewNames = new ArrayList<>();
+		for (String fullViewName : validViewNames) {
+			viewCases.add(jCas.getView(fullViewName));
+			// Split user id from view name. Discards "_InitialView"
+			viewNames.add(StringUtils.substringAfterLast(fullViewName.trim(), "/"));
+		}
+
+		if (viewPool == null || viewCases.size() < 2) {
+			ArrayList<T> results = new ArrayList<>();
+			for (int i = 0; i < viewCases.size(); i++) {
+				results.add(extractor.extract(viewCases.get(i), viewNames.get(i)));
+			}
+			return results;
+		}
+
+		try {
+			return viewPool.submit(() -> IntStream.range(0, viewCases.size())
+					.parallel()
+					.mapToObj(i -> extractor.extract(viewCases.get(i), viewNames.get(i)))
+					.collect(Collectors.toList())
+			).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnalysisEngineProcessException(e);
+		} catch (ExecutionException e) {
+			throw new AnalysisEngineProcessException(e.getCause());
+		}
+	}
+
+	/**
+	 * Extracts the annotations of a whole CAS, which only depend on the CAS and the configuration of the engine.
+	 *
+	 * @param <T> The type of the extracted data.
+	 */
+	@FunctionalInterface
+	protected interface CasExtractor<T> {
+		/**
+		 * @param jCas The CAS.
+		 * @return The extracted data, or null if the CAS is not {@link AbstractIAAEngine#isCasValid(JCas) valid}.
+		 */
+		@Nullable
+		T extract(JCas jCas) throws CASException, AnalysisEngineProcessException;
+	}
+
+	/**
+	 * Apply the given extractor to the CAS, unless its data is found in the {@link #PARAM_EXTRACTION_CACHE}. Then neither
+	 * {@link #isCasValid(JCas)} nor the extractor are called. Newly extracted data is added to the cache.
+	 *
+	 * @param jCas      The CAS.
+	 * @param codec     The codec of the extracted data.
+	 * @param extractor The extractor.
+	 * @return The extracted data, or null if the CAS is not valid.
+	 */
+	@Nullable
+	protected <T> T extractCas(JCas jCas, SpillStore.Codec<T> codec, CasExtractor<T> extractor) throws CASException, AnalysisEngineProcessException {
+		if (extractionCache == null)
+			return extractor.extract(jCas);
+
+		String key;
+		try {
+			key = getCacheKey(jCas);
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+		byte[] cached = extractionCache.get(key);
+		if (cached != null) {
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(cached);
+				return buffer.get() == 0 ? null : codec.read(buffer);
+			} catch (RuntimeException e) {
+				logger.warn(String.format("Removing the unreadable extraction cache entry %s: %s", key, e));
+				extractionCache.remove(key);
+			}
+		}
+
+		// Invalid CASes are cached as a single zero byte
+		T extracted = extractor.extract(jCas);
+		ByteBuffer buffer = ByteBuffer.allocate(1 + (extracted != null ? codec.getEncodedSize(extracted) : 0));
+		buffer.put((byte) (extracted != null ? 1 : 0));
+		if (extracted != null)
+			codec.write(extracted, buffer);
+		try {
+			extractionCache.put(key, buffer.array());
+		} catch (IOException e) {
+			logger.warn(String.format("Could not write the extraction cache entry %s: %s", key, e));
+		}
+		return extracted;
+	}
+
+	private ExtractionCache createExtractionCache() {
+		try {
+			return new ExtractionCache(Paths.get(pExtractionCache), pExtractionCacheSize * 1024L * 1024L);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return The configuration parameters, which change the extracted annotations, e.g. those of the category names.
+	 * Only these are part of the keys of the {@link #PARAM_EXTRACTION_CACHE}.
+	 */
+	protected Set<String> getExtractionParameters() {
+		return EXTRACTION_PARAMETERS;
+	}
+
+	/**
+	 * Hash the engine class and the {@link #getExtractionParameters() extraction parameters}.
+	 */
+	private byte[] hashConfiguration(UimaContext context) throws IOException {
+		String[] parameterNames = getExtractionParameters().toArray(new String[0]);
+		Arrays.sort(parameterNames);
+
+		MessageDigest digest = createDigest();
+		try (DataOutputStream out = createDigestStream(digest)) {
+			out.writeInt(EXTRACTION_VERSION);
+			out.writeUTF(getClass().getName());
+			for (String parameterName : parameterNames) {
+				Object value = context.getConfigParameterValue(parameterName);
+				out.writeUTF(parameterName);
+				writeText(out, value instanceof Object[] ? Arrays.toString((Object[]) value) : String.valueOf(value));
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * @return The key of the CAS in the {@link #PARAM_EXTRACTION_CACHE}, see there.
+	 */
+	private String getCacheKey(JCas jCas) throws CASException, IOException {
+		MessageDigest digest = createDigest();
+		try (DataOutputStream out = createDigestStream(digest)) {
+			out.write(configurationHash);
+			String documentText = jCas.getDocumentText();
+			writeText(out, documentText);
+			hashTokens(out, jCas);
+
+			Iterator<JCas> viewIterator = jCas.getViewIterator();
+			while (viewIterator.hasNext()) {
+				JCas viewCas = viewIterator.next();
+				if (!isListedView(viewCas.getViewName()))
+					continue;
+				out.writeUTF(viewCas.getViewName());
+
+				// Most views share the document text
+				boolean sharedText = Objects.equals(viewCas.getDocumentText(), documentText);
+				out.writeBoolean(sharedText);
+				if (!sharedText)
+					writeText(out, viewCas.getDocumentText());
+				hashTokens(out, viewCas);
+				hashAnnotations(out, viewCas);
+			}
+		}
+		return ExtractionCache.toKey(digest.digest());
+	}
+
+	private static void hashTokens(DataOutputStream out, JCas viewCas) throws IOException {
+		for (Token token : JCasUtil.select(viewCas, Token.class)) {
+			out.writeInt(token.getBegin());
+			out.writeInt(token.getEnd());
+		}
+		out.writeInt(-1);
+	}
+
+	private void hashAnnotations(DataOutputStream out, JCas viewCas) throws IOException {
+		FingerprintFilter fingerprinted = pFilterFingerprinted ? getViewContext(viewCas).getFingerprinted() : null;
+		for (Class<? extends Annotation> annotationClass : annotationClasses) {
+			for (Annotation annotation : JCasUtil.select(viewCas, annotationClass)) {
+				out.writeUTF(annotation.getType().getName());
+				out.writeInt(annotation.getBegin());
+				out.writeInt(annotation.getEnd());
+				out.writeInt(getCategoryFlags(annotation));
+				out.writeBoolean(fingerprinted != null && fingerprinted.contains(annotation));
+			}
+			// Type names are never empty
+			out.writeUTF("");
+		}
+	}
+
+	private static void writeText(DataOutputStream out, @Nullable String text) throws IOException {
+		if (text == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return A stream, which only updates the given digest.
+	 */
+	private static DataOutputStream createDigestStream(MessageDigest digest) {
+		return new DataOutputStream(new BufferedOutputStream(new DigestOutputStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}, digest)));
+	}
+
+	/**
+	 * @return A new annotator index, or the index of all replicas if {@link #RES_SHARED_STATE} is bound.
+	 * All access to a shared index must be synchronized on the index.
+	 */
+	protected IndexingMap<String> createAnnotatorIndex() {
+		return sharedState != null ? sharedState.getAnnotatorIndex() : new IndexingMap<>();
+	}
+
+	/**
+	 * @param factory Creates the empty partial result of a stripe.
+	 * @return A new accumulator with a single stripe, or the accumulator of all replicas if {@link #RES_SHARED_STATE}
+	 * is bound.
+	 */
+	protected <T> StripedAccumulator<T> createAccumulator(Supplier<T> factory) {
+		return sharedState != null ? sharedState.getAccumulator(factory) : new StripedAccumulator<>(1, factory);
+	}
+
+	/**
+	 * Mark this replica as completed. Must be called exactly once in {@link #collectionProcessComplete()}.
+	 * If this engine has to compute the combined study, the {@link #PARAM_STATE_SOURCES} are merged into it and it is
+	 * written to {@link #PARAM_STATE_TARGET}.
+	 *
+	 * @param annotatorIndex The annotator index of the combined study.
+	 * @return True, if this engine has to compute the combined study, i.e. it is not replicated or the last replica.
+	 */
+	protected boolean completeReplica(IndexingMap<String> annotatorIndex) throws AnalysisEngineProcessException {
+		if (sharedState != null && !sharedState.complete())
+			return false;
+		if (!pMultiCasHandling.equals(SEPARATE)) {
+			if (pStateSources != null) {
+				for (String stateSource : pStateSources) {
+					loadState(Paths.get(stateSource), annotatorIndex);
+				}
+			}
+			if (pStateTarget != null)
+				saveState(Paths.get(pStateTarget), annotatorIndex);
+		}
+		return true;
+	}
+
+	/**
+	 * @return The configuration parameters, which the state of this engine depends on. Merged states must be equal in
+	 * all of these.
+	 */
+	protected Map<String, String> getStateParameters() {
+		return new LinkedHashMap<>();
+	}
+
+	private void saveState(Path path, IndexingMap<String> annotatorIndex) throws AnalysisEngineProcessException {
+		ArrayList<String> annotators = new ArrayList<>();
+		synchronized (annotatorIndex) {
+			for (int i = 0; i < annotatorIndex.size(); i++) {
+				annotators.add(annotatorIndex.getKey(i));
+			}
+		}
+		ArrayList<String> categories = new ArrayList<>();
+		for (int category = 0; category < categoryDictionary.size(); category++) {
+			categories.add(categoryDictionary.getName(category));
+		}
+
+		try {
+			if (path.getParent() != null)
+				Files.createDirectories(path.getParent());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+				AgreementStateFile.writeHeader(out, new AgreementStateFile.Header(getClass().getName(), getStateParameters(), annotators, categories));
+				((AgreementStateFile.Stateful) this).writeState(out);
+			}
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+		logger.info(String.format("Wrote agreement state of %d annotators to %s", annotators.size(), path));
+	}
+
+	private void loadState(Path path, IndexingMap<String> annotatorIndex) throws AnalysisEngineProcessException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			AgreementStateFile.Header header = AgreementStateFile.readHeader(in);
+			if (!header.getEngineClass().equals(getClass().getName()))
+				throw new IOException(String.format("State %s was written by %s, not by %s!", path, header.getEngineClass(), getClass().getName()));
+			if (!header.getParameters().equals(getStateParameters()))
+				throw new IOException(String.format("State %s was written with parameters %s, expected %s!", path, header.getParameters(), getStateParameters()));
+
+			List<String> annotators = header.getAnnotators();
+			int[] annotatorMap = new int[annotators.size()];
+			synchronized (annotatorIndex) {
+				for (int i = 0; i < annotatorMap.length; i++) {
+					annotatorIndex.add(annotators.get(i));
+					annotatorMap[i] = annotatorIndex.get(annotators.get(i));
 				}
+			}
+			List<String> categories = header.getCategories();
+			int[] categoryMap = new int[categories.size()];
+			for (int i = 0; i < categoryMap.length; i++) {
+				categoryMap[i] = categoryDictionary.getId(categories.get(i));
+			}
+
+			((AgreementStateFile.Stateful) this).readState(in, annotatorMap, categoryMap);
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+		logger.info(String.format("Merged agreement state from %s", path));
+	}
+
+	/**
+	 * @param codec The codec for spilled elements.
+	 * @return A new store of one stripe of the {@link #createAccumulator(Supplier) accumulator}, limited by its share of
+	 * the {@link #PARAM_HEAP_BUDGET}.
+	 */
+	protected <T> SpillStore<T> createSpillStore(SpillStore.Codec<T> codec) {
+		int stripeCount = sharedState != null ? sharedState.getStripeCount() : 1;
+		return new SpillStore<>(codec, pHeapBudget < 0 ? -1L : pHeapBudget * 1024L * 1024L / stripeCount);
+	}
+
+	/**
+	 * Log the memory retained by the given store and release it.
+	 */
+	protected void closeSpillStore(SpillStore<?> spillStore) {
+		if (!spillStore.isEmpty())
+			logger.info(String.format("Retained %d bytes on the heap and spilled %d bytes to disk for %d CAS",
+					spillStore.getRetainedBytes(), spillStore.getSpilledBytes(), spillStore.size()));
+		try {
+			spillStore.close();
+		} catch (IOException e) {
+			logger.warn("Could not delete the spill file: " + e);
 		}
-		return new CSVPrinter(targetAppendable, csvFormat);
+	}
+
+	/**
+	 * Release the per-CAS data of the combined study, e.g. by {@link #closeSpillStore(SpillStore) closing} its stores.
+	 * Called by the replica computing the combined study, after computing it, and by the last replica destroyed.
+	 */
+	protected void closeStudies() {
 	}
 
 	/**
@@ -298,51 +981,88 @@ public abstract class AbstractIAAEngine extends JCasConsumer_ImplBase {
 	 */
 	@Nonnull
 	protected HashSet<Annotation> getOverlappedAnnotations(JCas viewCas, Class<? extends Annotation> aClass, Collection<? extends Annotation> annotations) {
-		HashSet<Annotation> overlappedAnnotations = new HashSet<>();
-		for (Annotation annotation : annotations) {
-			JCasUtil.subiterate(viewCas, aClass, annotation, false, false).forEach(item -> {
-				if (annotation.getType().equals(item.getType()))
-					overlappedAnnotations.add(item);
-			});
-		}
-		return overlappedAnnotations;
+		return new AnnotationIntervalIndex<Annotation>(JCasUtil.select(viewCas, aClass))
+				.getNested(annotations instanceof Set ? (Set<? extends Annotation>) annotations : new HashSet<>(annotations));
 	}
 
-	protected void printStudyResultsAndStatistics(ICategorySpecificAgreement agreement, CountMap<String> categoryCount, HashMap<String, CountMap<String>> annotatorCategoryCount, TreeSet<String> categories, Collection<String> annotators, CSVPrinter csvPrinter) throws IOException {
-		for (String category : categories) {
-			double value = agreement.calculateCategoryAgreement(category);
-			csvPrinter.printRecord(category, categoryCount.get(category), Double.isNaN(value) ? 0.0 : value);
-		}
-		csvPrinter.println();
-
-		// Print annotation statistics for each annotator and all categories
-		csvPrinter.printComment("Annotation statistics:");
-		csvPrinter.printRecord(Lists.asList("Annotator", annotators.toArray(new String[0])));
-
-		String[] countArray = annotators
-				.stream()
-				.map(annotator -> annotatorCategoryCount.get(annotator)
-						.values()
-						.stream()
-						.reduce(Long::sum).orElse(0L)
-						.toString())
-				.toArray(String[]::new);
-		csvPrinter.printRecord(Lists.asList("Total", countArray));
+	/**
+	 * Estimate the bootstrap intervals of a study, if {@link #PARAM_BOOTSTRAP_SAMPLES} is set.
+	 *
+	 * @param clusterCount The number of clusters to resample.
+	 * @param statistic    The agreement of a resampled study.
+	 * @return The intervals, or null if the bootstrap is disabled.
+	 */
+	@Nullable
+	protected BootstrapIntervals estimateIntervals(int clusterCount, BootstrapIntervals.Statistic statistic) {
+		if (pBootstrapSamples <= 0)
+			return null;
+		return BootstrapIntervals.estimate(clusterCount, categoryDictionary.size(), pBootstrapSamples, pBootstrapConfidence, pBootstrapSeed, statistic);
+	}
 
-		for (String category : categories) {
-			countArray = annotators
-					.stream()
-					.map(annotator -> annotatorCategoryCount.get(annotator).get(category).toString())
-					.toArray(String[]::new);
-			csvPrinter.printRecord(Lists.asList(category, countArray));
+	/**
+	 * Create the result of a study with its overall and per category agreement and the annotation statistics.
+	 *
+	 * @param documentId             The id of the document, or null for a combined study.
+	 * @param measure                The name of the agreement measure.
+	 * @param strategy               The set selection strategy, or null.
+	 * @param unitCount              The number of units of the study.
+	 * @param value                  The overall agreement.
+	 * @param agreement              The agreement measure, which expects category ids.
+	 * @param intervals              The bootstrap intervals, or null.
+	 * @param categoryCount          The total count of each category.
+	 * @param annotatorCategoryCount The category counts of each annotator, in the same order as the annotators.
+	 * @param categories             The ids of all categories of the result.
+	 * @param annotators             The annotator names.
+	 * @param categoryOverlap        The inter-annotator overlap of each category, or null.
+	 */
+	protected AgreementResult createResult(@Nullable String documentId, String measure, @Nullable String strategy, long unitCount, double value, ICategorySpecificAgreement agreement, @Nullable BootstrapIntervals intervals, CategoryCounts categoryCount, List<CategoryCounts> annotatorCategoryCount, BitSet categories, Collection<String> annotators, @Nullable CategoryCounts categoryOverlap) {
+		AgreementResult result = intervals == null
+				? new AgreementResult(documentId, measure, strategy, new ArrayList<>(annotators), unitCount, value, Double.NaN, Double.NaN)
+				: new AgreementResult(documentId, measure, strategy, new ArrayList<>(annotators), unitCount, value, intervals.getLower(), intervals.getUpper());
+		result.setAnnotatorTotals(annotatorCategoryCount.stream().mapToLong(CategoryCounts::total).toArray());
+		if (categoryOverlap != null)
+			result.setOverlapTotal(categoryOverlap.total());
+		for (int category : categoryDictionary.sortByName(categories)) {
+			result.addCategory(new AgreementResult.Category(
+					categoryDictionary.getName(category),
+					categoryCount.get(category),
+					agreement.calculateCategoryAgreement(category),
+					intervals == null ? Double.NaN : intervals.getLower(category),
+					intervals == null ? Double.NaN : intervals.getUpper(category),
+					annotatorCategoryCount.stream().mapToLong(counts -> counts.get(category)).toArray(),
+					categoryOverlap == null ? -1 : categoryOverlap.get(category)
+			));
 		}
-		csvPrinter.println();
+		return result;
 	}
 
+	/**
+	 * Only called once per distinct combination of annotation type and {@link #getCategoryFlags category flags}.
+	 * Use {@link #getCategoryId(Annotation)} to get the category of an annotation.
+	 */
 	protected String getCatgoryName(Annotation annotation) {
 		return annotation.getType().getName();
 	}
 
+	/**
+	 * Bit flags of an annotation, which change its category name in addition to its type.
+	 * Subclasses overriding {@link #getCatgoryName(Annotation)} with annotation features must encode them here.
+	 *
+	 * @param annotation The annotation.
+	 * @return The flags of the given annotation, zero by default.
+	 */
+	protected int getCategoryFlags(Annotation annotation) {
+		return 0;
+	}
+
+	/**
+	 * @param annotation The annotation.
+	 * @return The {@link CategoryDictionary category id} of the given annotation.
+	 */
+	protected int getCategoryId(Annotation annotation) {
+		return categoryDictionary.getId(annotation);
+	}
+
 	protected boolean isCasValid(JCas jCas) throws CASException {
 		// Ensure document has SOFA string
 		if (jCas.getDocumentText() == null || jCas.getDocumentText().isEmpty())
@@ -352,33 +1072,30 @@ public abstract class AbstractIAAEngine extends JCasConsumer_ImplBase {
 		// Check for empty view name and correct listing
 		validViewNames = Streams.stream(jCas.getViewIterator())
 				.map(JCas::getViewName)
-				.filter(fullName -> {
-					// If whitelisting (true), the name must be in the set; if blacklisting (false), it must not be in the set
-					String viewName = StringUtils.substringAfterLast(fullName.trim(), "/");
-					return StringUtils.isNotEmpty(viewName) && pRelation == listedAnnotators.contains(viewName);
-				})
+				.filter(this::isListedView)
 				.collect(Collectors.toCollection(LinkedHashSet::new));
 
+		// Create the extraction context of each valid view, which is shared with the extraction
+		for (String fullViewName : validViewNames) {
+			getViewContext(jCas.getView(fullViewName));
+		}
+
 		// Check for annotation count
 		if (pMinAnnotations > 0) {
 			for (String fullViewName : ImmutableSet.copyOf(validViewNames)) {
-				JCas viewCas = jCas.getView(fullViewName);
-
-				// Get all fingerprinted annotations
-				HashSet<TOP> fingerprinted = JCasUtil.select(viewCas, Fingerprint.class).stream()
-						.map(Fingerprint::getReference)
-						.collect(Collectors.toCollection(HashSet::new));
+				ViewExtractionContext viewContext = viewContexts.get(fullViewName);
 
 				long totalAnnotations = 0L;
 				for (Class<? extends Annotation> annotationClass : annotationClasses) {
 					// Count total annotations
-					totalAnnotations += getAnnotations(viewCas, fingerprinted, annotationClass).size();
+					totalAnnotations += getAnnotations(viewContext.getViewCas(), annotationClass).size();
 				}
 
 				// Remove views with insufficient annotation count
 				if (totalAnnotations < pMinAnnotations) {
 					logger.debug(String.format("Removing view %s because it has insufficient annoations: %d < %d", fullViewName, totalAnnotations, pMinAnnotations));
 					validViewNames.remove(fullViewName);
+					viewContexts.remove(fullViewName);
 				}
 			}
 		}
@@ -392,35 +1109,81 @@ public abstract class AbstractIAAEngine extends JCasConsumer_ImplBase {
 		return true;
 	}
 
+	/**
+	 * @param fullViewName The full name of a view.
+	 * @return True, if the view is an annotator view, which is included by {@link #PARAM_ANNOTATOR_LIST} and
+	 * {@link #PARAM_ANNOTATOR_RELATION}.
+	 */
+	private boolean isListedView(String fullViewName) {
+		// If whitelisting (true), the name must be in the set; if blacklisting (false), it must not be in the set
+		String viewName = StringUtils.substringAfterLast(fullViewName.trim(), "/");
+		return StringUtils.isNotEmpty(viewName) && pRelation == listedAnnotators.contains(viewName);
+	}
+
+	/**
+	 * Get all annotations of the given class, which are not nested in another annotation of the same type, filtering
+	 * fingerprinted annotations if {@link #PARAM_FILTER_FINGERPRINTED} is set. The result is cached in the
+	 * {@link #getViewContext(JCas) view context}, so the annotation count of {@link #isCasValid(JCas)} and the
+	 * extraction share a single sweep.
+	 *
+	 * @param viewCas         The cas containing the annotations.
+	 * @param annotationClass The class of the annotations.
+	 * @return The annotations in index order. Must not be modified.
+	 */
+	@Nonnull
+	protected ArrayList<? extends Annotation> getAnnotations(JCas viewCas, Class<? extends Annotation> annotationClass) {
+		return getViewContext(viewCas).getOutermostAnnotations(annotationClass, pFilterFingerprinted);
+	}
+
+	/**
+	 * @param viewCas A view of the current CAS.
+	 * @return The extraction context of the given view, which is created on first use, e.g. by the
+	 * {@link #PARAM_EXTRACTION_CACHE cache key} or {@link #isCasValid(JCas)}, and kept until the CAS has been processed.
+	 * Taken from {@link #RES_VIEW_INDEX}, if it is bound.
+	 */
 	@Nonnull
-	protected ArrayList<? extends Annotation> getAnnotations(JCas viewCas, HashSet<TOP> fingerprinted, Class<? extends Annotation> annotationClass) {
-		ArrayList<? extends Annotation> annotations;
-		if (pFilterFingerprinted)
-			annotations = JCasUtil.select(viewCas, annotationClass).stream()
-					.filter((Predicate<TOP>) fingerprinted::contains)
-					.collect(Collectors.toCollection(ArrayList::new));
-		else
-			annotations = new ArrayList<>(JCasUtil.select(viewCas, annotationClass));
-
-		// Create a set of annotations, that are overlapped by another annotation
-		HashSet<Annotation> overlappedAnnotations = getOverlappedAnnotations(viewCas, annotationClass, annotations);
-		// Remove annotations, that are overlapped by an annotation of the same Type
-		annotations.removeAll(overlappedAnnotations);
-		return annotations;
+	protected ViewExtractionContext getViewContext(JCas viewCas) {
+		return viewContexts.computeIfAbsent(viewCas.getViewName(), key -> viewIndex != null ? viewIndex.getViewContext(viewCas) : new ViewExtractionContext(viewCas));
 	}
 
+	/**
+	 * Release the extraction contexts of the current CAS. Called once, in the finally block of each
+	 * {@link #process(JCas)}, so that the cache key, validation and extraction share the contexts.
+	 */
+	protected void releaseViewContexts() {
+		viewContexts.clear();
+	}
+
+	/**
+	 * Waits until all results have been written.
+	 */
 	@Override
 	public void collectionProcessComplete() throws AnalysisEngineProcessException {
 		super.collectionProcessComplete();
+		if (extractionCache != null)
+			logger.info(String.format("Extraction cache: %d hits, %d misses, %d entries with %d bytes",
+					extractionCache.getHitCount(), extractionCache.getMissCount(), extractionCache.size(), extractionCache.getTotalBytes()));
+		try {
+			resultSink.flush();
+			statisticsWriter.flush();
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
 	}
 
 	@Override
 	public void destroy() {
 		super.destroy();
-		if (globalCsvPrinter != null) {
+		if (viewPool != null) {
+			viewPool.shutdown();
+		}
+		// Only the last replica closes the shared studies, writer and sink
+		if (statisticsWriter != null && (sharedState == null || sharedState.release())) {
+			closeStudies();
 			try {
-				globalCsvPrinter.flush();
-				globalCsvPrinter.close();
+				if (resultSink != null)
+					resultSink.close();
+				statisticsWriter.close();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -428,28 +1191,49 @@ public abstract class AbstractIAAEngine extends JCasConsumer_ImplBase {
 	}
 
 	@Nonnull
-	protected JCas createDocumentAgreementAnnotations(JCas viewIAA, IAgreementMeasure agreement, String pAgreementMeasure, Set<String> categories, CountMap<String> globalCategoryCount) {
+	protected JCas createDocumentAgreementAnnotations(JCas viewIAA, IAgreementMeasure agreement, String pAgreementMeasure, BitSet categories, CategoryCounts globalCategoryCount) {
+		return createDocumentAgreementAnnotations(viewIAA, agreement, null, pAgreementMeasure, categories, globalCategoryCount);
+	}
+
+	/**
+	 * Create the {@link AgreementContainer} of the agreement and, if given, those of the lower and upper bounds of its
+	 * bootstrap intervals.
+	 *
+	 * @param intervals The bootstrap intervals, or null.
+	 */
+	@Nonnull
+	protected JCas createDocumentAgreementAnnotations(JCas viewIAA, IAgreementMeasure agreement, @Nullable BootstrapIntervals intervals, String pAgreementMeasure, BitSet categories, CategoryCounts globalCategoryCount) {
+		int[] sortedCategories = categoryDictionary.sortByName(categories);
+		addAgreementContainer(viewIAA, pAgreementMeasure, agreement.calculateAgreement(),
+				((ICategorySpecificAgreement) agreement)::calculateCategoryAgreement, sortedCategories, globalCategoryCount);
+		if (intervals != null) {
+			addAgreementContainer(viewIAA, pAgreementMeasure + LOWER_BOUND_SUFFIX, intervals.getLower(),
+					intervals::getLower, sortedCategories, globalCategoryCount);
+			addAgreementContainer(viewIAA, pAgreementMeasure + UPPER_BOUND_SUFFIX, intervals.getUpper(),
+					intervals::getUpper, sortedCategories, globalCategoryCount);
+		}
+		return viewIAA;
+	}
+
+	private void addAgreementContainer(JCas viewIAA, String agreementMeasure, double overallValue, IntToDoubleFunction categoryValues, int[] sortedCategories, CategoryCounts globalCategoryCount) {
 		AgreementContainer agreementContainer = new AgreementContainer(viewIAA);
-		agreementContainer.setAgreementMeasure(pAgreementMeasure);
-		agreementContainer.setOverallAgreementValue(agreement.calculateAgreement());
-
-		String[] categoryStrings = categories.toArray(new String[0]);
-		StringArray categoryNamesStringArray = new StringArray(viewIAA, categories.size());
-		LongArray categoryCountsLongArray = new LongArray(viewIAA, categories.size());
-		DoubleArray categoryValuesDoubleArray = new DoubleArray(viewIAA, categories.size());
-		for (int i = 0; i < categoryStrings.length; i++) {
-			String category = categoryStrings[i];
-			double value = ((ICategorySpecificAgreement) agreement).calculateCategoryAgreement(category);
-			categoryNamesStringArray.set(i, category);
+		agreementContainer.setAgreementMeasure(agreementMeasure);
+		agreementContainer.setOverallAgreementValue(overallValue);
+
+		StringArray categoryNamesStringArray = new StringArray(viewIAA, sortedCategories.length);
+		LongArray categoryCountsLongArray = new LongArray(viewIAA, sortedCategories.length);
+		DoubleArray categoryValuesDoubleArray = new DoubleArray(viewIAA, sortedCategories.length);
+		for (int i = 0; i < sortedCategories.length; i++) {
+			int category = sortedCategories[i];
+			double value = categoryValues.applyAsDouble(category);
+			categoryNamesStringArray.set(i, categoryDictionary.getName(category));
 			categoryValuesDoubleArray.set(i, Double.isNaN(value) ? 0.0 : value);
-			categoryCountsLongArray.set(i, globalCategoryCount.getOrDefault(category, 0L));
+			categoryCountsLongArray.set(i, globalCategoryCount.get(category));
 		}
 		agreementContainer.setCategoryNames(categoryNamesStringArray);
 		agreementContainer.setCategoryAgreementValues(categoryValuesDoubleArray);
 		agreementContainer.setCategoryCounts(categoryCountsLongArray);
 		viewIAA.addFsToIndexes(agreementContainer);
-
-		return viewIAA;
 	}
 
 	@Nonnull
@@ -0,0 +1,165 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary file of the accumulated state of an {@link AbstractIAAEngine}, which is written at the end of a
+ * collection with {@link AbstractIAAEngine#PARAM_STATE_TARGET} and merged with {@link AbstractIAAEngine#PARAM_STATE_SOURCES}.
+ * <p/>
+ * The header holds the engine class, the parameters the state depends on, the annotator names by index and the
+ * category names by id. It is followed by the engine specific payload, usually a sequence of per-document records,
+ * each prefixed by its length and terminated by a negative length.
+ */
+public class AgreementStateFile {
+	private static final int MAGIC = 0x49414153;
+	private static final int VERSION = 1;
+	private static final int END_OF_RECORDS = -1;
+
+	/**
+	 * An {@link AbstractIAAEngine}, which supports state files. Engines without it reject
+	 * {@link AbstractIAAEngine#PARAM_STATE_TARGET} and {@link AbstractIAAEngine#PARAM_STATE_SOURCES}.
+	 */
+	public interface Stateful {
+		/**
+		 * Write the engine specific state of the combined study.
+		 */
+		void writeState(DataOutputStream out) throws IOException;
+
+		/**
+		 * Read the engine specific state of another study and add it to the combined study.
+		 *
+		 * @param in           The input, positioned after the header.
+		 * @param annotatorMap Maps the annotator indices of the state to the annotator index of the combined study.
+		 * @param categoryMap  Maps the category ids of the state to the category dictionary of the engine.
+		 */
+		void readState(DataInputStream in, int[] annotatorMap, int[] categoryMap) throws IOException;
+	}
+
+	/**
+	 * The header of a state file.
+	 */
+	public static class Header {
+		private final String engineClass;
+		private final Map<String, String> parameters;
+		private final List<String> annotators;
+		private final List<String> categories;
+
+		public Header(String engineClass, Map<String, String> parameters, List<String> annotators, List<String> categories) {
+			this.engineClass = engineClass;
+			this.parameters = parameters;
+			this.annotators = annotators;
+			this.categories = categories;
+		}
+
+		/**
+		 * @return The fully qualified name of the engine class, which wrote the state.
+		 */
+		public String getEngineClass() {
+			return engineClass;
+		}
+
+		/**
+		 * @return The configuration parameters of the engine, which must be equal for all merged states.
+		 */
+		public Map<String, String> getParameters() {
+			return parameters;
+		}
+
+		/**
+		 * @return The annotator names by their index in the state.
+		 */
+		public List<String> getAnnotators() {
+			return annotators;
+		}
+
+		/**
+		 * @return The category names by their id in the state.
+		 */
+		public List<String> getCategories() {
+			return categories;
+		}
+	}
+
+	public static void writeHeader(DataOutput out, Header header) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(header.engineClass);
+		out.writeInt(header.parameters.size());
+		for (Map.Entry<String, String> parameter : header.parameters.entrySet()) {
+			out.writeUTF(parameter.getKey());
+			out.writeUTF(parameter.getValue());
+		}
+		writeStrings(out, header.annotators);
+		writeStrings(out, header.categories);
+	}
+
+	public static Header readHeader(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not an agreement state file!");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException(String.format("Unsupported agreement state file version %d, expected %d!", version, VERSION));
+
+		String engineClass = in.readUTF();
+		LinkedHashMap<String, String> parameters = new LinkedHashMap<>();
+		int parameterCount = in.readInt();
+		for (int i = 0; i < parameterCount; i++) {
+			parameters.put(in.readUTF(), in.readUTF());
+		}
+		return new Header(engineClass, parameters, readStrings(in), readStrings(in));
+	}
+
+	private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String string : strings) {
+			out.writeUTF(string);
+		}
+	}
+
+	private static List<String> readStrings(DataInput in) throws IOException {
+		int size = in.readInt();
+		ArrayList<String> strings = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			strings.add(in.readUTF());
+		}
+		return strings;
+	}
+
+	/**
+	 * Write a single record, encoded by the given codec.
+	 */
+	public static <T> void writeRecord(DataOutput out, SpillStore.Codec<T> codec, T element) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(codec.getEncodedSize(element));
+		codec.write(element, buffer);
+		out.writeInt(buffer.capacity());
+		out.write(buffer.array());
+	}
+
+	/**
+	 * Terminate a sequence of records.
+	 */
+	public static void writeEndOfRecords(DataOutput out) throws IOException {
+		out.writeInt(END_OF_RECORDS);
+	}
+
+	/**
+	 * @return The next record of the sequence, null at its end.
+	 */
+	public static <T> T readRecord(DataInput in, SpillStore.Codec<T> codec) throws IOException {
+		int size = in.readInt();
+		if (size < 0)
+			return null;
+		byte[] bytes = new byte[size];
+		in.readFully(bytes);
+		return codec.read(ByteBuffer.wrap(bytes));
+	}
+}
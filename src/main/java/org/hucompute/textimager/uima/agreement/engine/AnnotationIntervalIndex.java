@@ -0,0 +1,76 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sorted interval index of annotations, which finds all annotations nested in another annotation of the same type
+ * in a single sweep.
+ * <p/>
+ * The annotations are sorted like the UIMA annotation index, by ascending begin and descending end. An annotation is
+ * nested, if it begins within an annotation of the same type, which precedes it in this order, like the annotations
+ * returned by {@link org.apache.uima.fit.util.JCasUtil#subiterate JCasUtil.subiterate} for a non-strict boundary.
+ * Sorting takes <i>O(n log n)</i>, each sweep <i>O(n)</i>.
+ *
+ * @param <T> The annotation class.
+ */
+public class AnnotationIntervalIndex<T extends Annotation> {
+	private static final Comparator<Annotation> ANNOTATION_ORDER = Comparator.comparingInt(Annotation::getBegin)
+			.thenComparing(Comparator.comparingInt(Annotation::getEnd).reversed());
+
+	private final ArrayList<T> annotations;
+
+	/**
+	 * @param annotations The annotations, in any order.
+	 */
+	public AnnotationIntervalIndex(Collection<? extends T> annotations) {
+		this.annotations = new ArrayList<>(annotations);
+		this.annotations.sort(ANNOTATION_ORDER);
+	}
+
+	public int size() {
+		return annotations.size();
+	}
+
+	/**
+	 * @return All annotations of the index, which are not nested in another annotation of the index, in index order.
+	 */
+	public ArrayList<T> getOutermost() {
+		ArrayList<T> outermost = new ArrayList<>();
+		HashMap<Type, Integer> maxEnds = new HashMap<>();
+		for (T annotation : annotations) {
+			Integer maxEnd = maxEnds.get(annotation.getType());
+			if (maxEnd == null || annotation.getBegin() >= maxEnd) {
+				outermost.add(annotation);
+				maxEnds.put(annotation.getType(), annotation.getEnd());
+			} else if (annotation.getEnd() > maxEnd) {
+				maxEnds.put(annotation.getType(), annotation.getEnd());
+			}
+		}
+		return outermost;
+	}
+
+	/**
+	 * @param boundaries The annotations, within which nested annotations are searched.
+	 * @return All annotations of the index, which are nested in one of the given boundaries.
+	 */
+	public HashSet<T> getNested(Set<? extends Annotation> boundaries) {
+		HashSet<T> nested = new HashSet<>();
+		HashMap<Type, Integer> maxEnds = new HashMap<>();
+		for (T annotation : annotations) {
+			Integer maxEnd = maxEnds.get(annotation.getType());
+			if (maxEnd != null && annotation.getBegin() < maxEnd)
+				nested.add(annotation);
+			if (boundaries.contains(annotation) && (maxEnd == null || annotation.getEnd() > maxEnd))
+				maxEnds.put(annotation.getType(), annotation.getEnd());
+		}
+		return nested;
+	}
+}
@@ -0,0 +1,157 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Percentile bootstrap confidence intervals of the overall and per category agreement.
+ * <p/>
+ * Each replicate draws as many clusters (e.g. tokens or documents) as the study has, with replacement, and passes the
+ * number of draws of each cluster to a {@link Statistic}. The replicates are evaluated on the common
+ * {@link ForkJoinPool}; each one uses its own random generator, which is seeded from a single seed in replicate order,
+ * so the intervals do not depend on the scheduling.
+ */
+public class BootstrapIntervals {
+	/**
+	 * Replicates evaluated by a single task, which share their buffers.
+	 */
+	private static final int REPLICATES_PER_TASK = 8;
+
+	/**
+	 * Lower and upper bounds, the overall agreement first, followed by the categories in id order.
+	 */
+	private final double[] lower;
+	private final double[] upper;
+
+	private BootstrapIntervals(double[] lower, double[] upper) {
+		this.lower = lower;
+		this.upper = upper;
+	}
+
+	/**
+	 * The agreement of a resampled study. Called concurrently, so it must not modify shared state.
+	 */
+	@FunctionalInterface
+	public interface Statistic {
+		/**
+		 * @param weights The number of draws of each cluster.
+		 * @param values  The target for the overall agreement at index 0, followed by the agreement of each category
+		 *                at its id + 1. Initialized with NaN, which is ignored.
+		 */
+		void evaluate(int[] weights, double[] values);
+	}
+
+	/**
+	 * @param clusterCount  The number of clusters to resample.
+	 * @param categoryCount The number of category ids.
+	 * @param samples       The number of replicates.
+	 * @param confidence    The confidence level, e.g. 0.95.
+	 * @param seed          The seed of all replicates.
+	 * @param statistic     The agreement of a resampled study.
+	 */
+	public static BootstrapIntervals estimate(int clusterCount, int categoryCount, int samples, double confidence, long seed, Statistic statistic) {
+		int valueCount = categoryCount + 1;
+		double[] replicates = new double[samples * valueCount];
+		long[] seeds = new SplittableRandom(seed).longs(samples).toArray();
+		if (clusterCount > 0) {
+			ForkJoinPool.commonPool().invoke(new ReplicateTask(clusterCount, valueCount, seeds, replicates, statistic, 0, samples));
+		} else {
+			Arrays.fill(replicates, Double.NaN);
+		}
+
+		double[] lower = new double[valueCount];
+		double[] upper = new double[valueCount];
+		double[] column = new double[samples];
+		for (int value = 0; value < valueCount; value++) {
+			int count = 0;
+			for (int sample = 0; sample < samples; sample++) {
+				double replicate = replicates[sample * valueCount + value];
+				if (!Double.isNaN(replicate))
+					column[count++] = replicate;
+			}
+			Arrays.sort(column, 0, count);
+			lower[value] = percentile(column, count, (1.0 - confidence) / 2.0);
+			upper[value] = percentile(column, count, (1.0 + confidence) / 2.0);
+		}
+		return new BootstrapIntervals(lower, upper);
+	}
+
+	/**
+	 * Linear interpolation between the closest ranks.
+	 */
+	private static double percentile(double[] sorted, int count, double quantile) {
+		if (count == 0)
+			return Double.NaN;
+		double position = quantile * (count - 1);
+		int index = (int) Math.floor(position);
+		if (index + 1 >= count)
+			return sorted[count - 1];
+		return sorted[index] + (position - index) * (sorted[index + 1] - sorted[index]);
+	}
+
+	public double getLower() {
+		return lower[0];
+	}
+
+	public double getUpper() {
+		return upper[0];
+	}
+
+	/**
+	 * @param category The category id.
+	 */
+	public double getLower(int category) {
+		return category + 1 < lower.length ? lower[category + 1] : Double.NaN;
+	}
+
+	/**
+	 * @param category The category id.
+	 */
+	public double getUpper(int category) {
+		return category + 1 < upper.length ? upper[category + 1] : Double.NaN;
+	}
+
+	private static class ReplicateTask extends RecursiveAction {
+		private final int clusterCount;
+		private final int valueCount;
+		private final long[] seeds;
+		private final double[] replicates;
+		private final Statistic statistic;
+		private final int from;
+		private final int to;
+
+		private ReplicateTask(int clusterCount, int valueCount, long[] seeds, double[] replicates, Statistic statistic, int from, int to) {
+			this.clusterCount = clusterCount;
+			this.valueCount = valueCount;
+			this.seeds = seeds;
+			this.replicates = replicates;
+			this.statistic = statistic;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > REPLICATES_PER_TASK) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ReplicateTask(clusterCount, valueCount, seeds, replicates, statistic, from, mid),
+						new ReplicateTask(clusterCount, valueCount, seeds, replicates, statistic, mid, to));
+				return;
+			}
+			int[] weights = new int[clusterCount];
+			double[] values = new double[valueCount];
+			for (int sample = from; sample < to; sample++) {
+				SplittableRandom random = new SplittableRandom(seeds[sample]);
+				Arrays.fill(weights, 0);
+				for (int draw = 0; draw < clusterCount; draw++) {
+					weights[random.nextInt(clusterCount)]++;
+				}
+				Arrays.fill(values, Double.NaN);
+				statistic.evaluate(weights, values);
+				System.arraycopy(values, 0, replicates, sample * valueCount, valueCount);
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts occurrences by {@link CategoryDictionary category id}.
+ */
+public class CategoryCounts {
+	private long[] counts = new long[16];
+
+	public void inc(int category) {
+		add(category, 1L);
+	}
+
+	public void incAll(int[] categories) {
+		for (int category : categories) {
+			add(category, 1L);
+		}
+	}
+
+	public void add(int category, long count) {
+		if (category >= counts.length)
+			counts = Arrays.copyOf(counts, Math.max(category + 1, 2 * counts.length));
+		counts[category] += count;
+	}
+
+	/**
+	 * Add the counts of all categories of another instance.
+	 */
+	public void addAll(CategoryCounts other) {
+		for (int category = other.counts.length - 1; category >= 0; category--) {
+			if (other.counts[category] != 0L)
+				add(category, other.counts[category]);
+		}
+	}
+
+	/**
+	 * Write all non-zero counts.
+	 */
+	public void write(DataOutput out) throws IOException {
+		int nonZero = 0;
+		for (long count : counts) {
+			if (count != 0L) nonZero++;
+		}
+		out.writeInt(nonZero);
+		for (int category = 0; category < counts.length; category++) {
+			if (counts[category] != 0L) {
+				out.writeInt(category);
+				out.writeLong(counts[category]);
+			}
+		}
+	}
+
+	/**
+	 * Add counts, which were {@link #write written} by another instance.
+	 *
+	 * @param categoryMap Maps the written category ids to the ids of this instance.
+	 */
+	public void addAll(DataInput in, int[] categoryMap) throws IOException {
+		int nonZero = in.readInt();
+		for (int i = 0; i < nonZero; i++) {
+			int category = in.readInt();
+			add(categoryMap[category], in.readLong());
+		}
+	}
+
+	/**
+	 * @param category The category id.
+	 * @return The count of the given category, zero if it was never counted.
+	 */
+	public long get(int category) {
+		return category < counts.length ? counts[category] : 0L;
+	}
+
+	/**
+	 * @return An upper bound of all counted category ids.
+	 */
+	public int size() {
+		return counts.length;
+	}
+
+	/**
+	 * @return The sum over all categories.
+	 */
+	public long total() {
+		long total = 0L;
+		for (long count : counts) {
+			total += count;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,114 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.cas.impl.TypeImpl;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.texttechnologylab.utilities.collections.IndexingMap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Maps annotations to dense integer category ids.
+ * <p/>
+ * The id of an annotation is determined by the code of its UIMA type and its category flags, see
+ * {@link AbstractIAAEngine#getCategoryFlags(Annotation)}. The category name is only computed once for each new
+ * combination of type code and flags. Combinations with equal names share the same id, so that pruned type names
+ * are still merged into the same category.
+ * <p/>
+ * Type codes are only valid within a single type system, which is shared by all CASes of a pipeline.
+ * <p/>
+ * The dictionary is thread-safe, so that it can be shared by engine replicas, see {@link SharedAgreementResource}.
+ * Known combinations are looked up without locking.
+ */
+public class CategoryDictionary {
+	private final Function<Annotation, String> nameFunction;
+	private final ToIntFunction<Annotation> flagFunction;
+	private final IndexingMap<String> names = new IndexingMap<>();
+	private String[] namesById = new String[16];
+
+	/**
+	 * Category ids + 1 by type code and flags, zero if not yet known. Copied on write.
+	 */
+	private volatile int[][] idsByTypeCode = new int[0][];
+
+	public CategoryDictionary(Function<Annotation, String> nameFunction, ToIntFunction<Annotation> flagFunction) {
+		this.nameFunction = nameFunction;
+		this.flagFunction = flagFunction;
+	}
+
+	/**
+	 * @param annotation The annotation.
+	 * @return The category id of the given annotation.
+	 */
+	public int getId(Annotation annotation) {
+		int typeCode = ((TypeImpl) annotation.getType()).getCode();
+		int flags = flagFunction.applyAsInt(annotation);
+
+		int[][] ids = idsByTypeCode;
+		if (typeCode < ids.length) {
+			int[] idsByFlags = ids[typeCode];
+			if (idsByFlags != null && flags < idsByFlags.length && idsByFlags[flags] != 0)
+				return idsByFlags[flags] - 1;
+		}
+		return addId(annotation, typeCode, flags);
+	}
+
+	private synchronized int addId(Annotation annotation, int typeCode, int flags) {
+		int[][] ids = Arrays.copyOf(idsByTypeCode, Math.max(typeCode + 1, idsByTypeCode.length));
+		int[] idsByFlags = ids[typeCode];
+		idsByFlags = idsByFlags == null ? new int[flags + 1] : Arrays.copyOf(idsByFlags, Math.max(flags + 1, idsByFlags.length));
+
+		// Another thread may have added the combination in the meantime
+		if (idsByFlags[flags] == 0) {
+			idsByFlags[flags] = getId(nameFunction.apply(annotation)) + 1;
+			ids[typeCode] = idsByFlags;
+			idsByTypeCode = ids;
+		}
+		return idsByFlags[flags] - 1;
+	}
+
+	/**
+	 * @param name The category name.
+	 * @return The category id of the given name, a new id if the name has not been seen before.
+	 */
+	public synchronized int getId(String name) {
+		Integer id = names.get(name);
+		if (id == null) {
+			id = names.add(name);
+			if (id >= namesById.length)
+				namesById = Arrays.copyOf(namesById, 2 * namesById.length);
+			namesById[id] = name;
+		}
+		return id;
+	}
+
+	/**
+	 * @param id The category id.
+	 * @return The category name of the given id.
+	 */
+	public synchronized String getName(int id) {
+		return namesById[id];
+	}
+
+	/**
+	 * @return The number of distinct categories.
+	 */
+	public synchronized int size() {
+		return names.size();
+	}
+
+	/**
+	 * @param categories A set of category ids.
+	 * @return The given category ids, ordered by their names.
+	 */
+	public int[] sortByName(BitSet categories) {
+		return categories.stream()
+				.boxed()
+				.sorted(Comparator.comparing(this::getName))
+				.mapToInt(Integer::intValue)
+				.toArray();
+	}
+}
@@ -0,0 +1,241 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The annotations extracted from the views of a single CAS, which only depend on the CAS and the configuration of the
+ * engine, so that they can be stored in the {@link ExtractionCache}.
+ * <p/>
+ * Each view holds the positions of its annotations, e.g. the token index or the token span of each annotation, and their
+ * categories. Categories are numbered locally in the order of their first occurrence and stored by name, so that the
+ * extracted data does not depend on the annotator index or the {@link CategoryDictionary} of an engine.
+ */
+public class ExtractedCas {
+	private final int tokenCount;
+	private final View[] views;
+	private final String[] categoryNames;
+
+	private ExtractedCas(int tokenCount, View[] views, String[] categoryNames) {
+		this.tokenCount = tokenCount;
+		this.views = views;
+		this.categoryNames = categoryNames;
+	}
+
+	/**
+	 * @return The number of tokens of the default view.
+	 */
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	public int getViewCount() {
+		return views.length;
+	}
+
+	/**
+	 * @return The given view, in the order of extraction.
+	 */
+	public View getView(int index) {
+		return views[index];
+	}
+
+	/**
+	 * Resolve the local categories in the given dictionary. New names are added in the order of their first occurrence,
+	 * so that they get the same ids as when the annotations were extracted.
+	 *
+	 * @return The category id of each local category.
+	 */
+	public int[] mapCategories(CategoryDictionary categoryDictionary) {
+		int[] categoryMap = new int[categoryNames.length];
+		for (int i = 0; i < categoryMap.length; i++) {
+			categoryMap[i] = categoryDictionary.getId(categoryNames[i]);
+		}
+		return categoryMap;
+	}
+
+	/**
+	 * The annotations of a single view.
+	 */
+	public static class View {
+		private final String name;
+		private final int tokenCount;
+		private final int[] positions;
+		private final int[] categories;
+
+		private View(String name, int tokenCount, int[] positions, int[] categories) {
+			this.name = name;
+			this.tokenCount = tokenCount;
+			this.positions = positions;
+			this.categories = categories;
+		}
+
+		/**
+		 * @return The user id of the view, without its prefix.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The number of tokens of the view.
+		 */
+		public int getTokenCount() {
+			return tokenCount;
+		}
+
+		/**
+		 * @return The number of annotations.
+		 */
+		public int size() {
+			return categories.length;
+		}
+
+		/**
+		 * @return The positions of all annotations, packed with the same number of ints per annotation. Must not be
+		 * modified.
+		 */
+		public int[] getPositions() {
+			return positions;
+		}
+
+		/**
+		 * @return The local category of each annotation. Must not be modified.
+		 */
+		public int[] getCategories() {
+			return categories;
+		}
+	}
+
+	/**
+	 * Codec for storing extracted annotations in the {@link ExtractionCache}.
+	 */
+	public static final SpillStore.Codec<ExtractedCas> CODEC = new SpillStore.Codec<ExtractedCas>() {
+		@Override
+		public int getEncodedSize(ExtractedCas extractedCas) {
+			int size = 3 * Integer.BYTES;
+			for (String categoryName : extractedCas.categoryNames) {
+				size += getStringSize(categoryName);
+			}
+			for (View view : extractedCas.views) {
+				size += getStringSize(view.name) + Integer.BYTES
+						+ SpillStore.INT_ARRAY.getEncodedSize(view.positions)
+						+ SpillStore.INT_ARRAY.getEncodedSize(view.categories);
+			}
+			return size;
+		}
+
+		@Override
+		public long getHeapSize(ExtractedCas extractedCas) {
+			long size = 48L + 16L + 8L * (extractedCas.categoryNames.length + extractedCas.views.length);
+			for (String categoryName : extractedCas.categoryNames) {
+				size += 40L + 2L * categoryName.length();
+			}
+			for (View view : extractedCas.views) {
+				size += 32L + 40L + 2L * view.name.length()
+						+ SpillStore.INT_ARRAY.getHeapSize(view.positions)
+						+ SpillStore.INT_ARRAY.getHeapSize(view.categories);
+			}
+			return size;
+		}
+
+		@Override
+		public void write(ExtractedCas extractedCas, ByteBuffer buffer) {
+			buffer.putInt(extractedCas.tokenCount);
+			buffer.putInt(extractedCas.categoryNames.length);
+			for (String categoryName : extractedCas.categoryNames) {
+				writeString(categoryName, buffer);
+			}
+			buffer.putInt(extractedCas.views.length);
+			for (View view : extractedCas.views) {
+				writeString(view.name, buffer);
+				buffer.putInt(view.tokenCount);
+				SpillStore.INT_ARRAY.write(view.positions, buffer);
+				SpillStore.INT_ARRAY.write(view.categories, buffer);
+			}
+		}
+
+		@Override
+		public ExtractedCas read(ByteBuffer buffer) {
+			int tokenCount = buffer.getInt();
+			String[] categoryNames = new String[buffer.getInt()];
+			for (int i = 0; i < categoryNames.length; i++) {
+				categoryNames[i] = readString(buffer);
+			}
+			View[] views = new View[buffer.getInt()];
+			for (int i = 0; i < views.length; i++) {
+				views[i] = new View(readString(buffer), buffer.getInt(), SpillStore.INT_ARRAY.read(buffer), SpillStore.INT_ARRAY.read(buffer));
+			}
+			return new ExtractedCas(tokenCount, views, categoryNames);
+		}
+
+		private int getStringSize(String string) {
+			return Integer.BYTES + string.getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		private void writeString(String string, ByteBuffer buffer) {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+
+		private String readString(ByteBuffer buffer) {
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+
+	/**
+	 * Collects the annotations of one CAS view by view.
+	 */
+	public static class Builder {
+		private final int tokenCount;
+		private final CategoryDictionary categoryDictionary;
+		private final ArrayList<View> views = new ArrayList<>();
+		/**
+		 * Local category + 1 by category id, zero if the category has not occurred yet.
+		 */
+		private int[] localCategories = new int[16];
+		private final ArrayList<String> categoryNames = new ArrayList<>();
+
+		/**
+		 * @param tokenCount         The number of tokens of the default view.
+		 * @param categoryDictionary The dictionary of the category ids passed to {@link #addView}.
+		 */
+		public Builder(int tokenCount, CategoryDictionary categoryDictionary) {
+			this.tokenCount = tokenCount;
+			this.categoryDictionary = categoryDictionary;
+		}
+
+		/**
+		 * Add the next view.
+		 *
+		 * @param name        The user id of the view, without its prefix.
+		 * @param tokenCount  The number of tokens of the view.
+		 * @param positions   The positions of the annotations, packed with the same number of ints per annotation.
+		 * @param categoryIds The category id of each annotation in the {@link CategoryDictionary}.
+		 */
+		public Builder addView(String name, int tokenCount, int[] positions, int[] categoryIds) {
+			int[] categories = new int[categoryIds.length];
+			for (int i = 0; i < categoryIds.length; i++) {
+				int categoryId = categoryIds[i];
+				if (categoryId >= localCategories.length)
+					localCategories = Arrays.copyOf(localCategories, Math.max(categoryId + 1, 2 * localCategories.length));
+				if (localCategories[categoryId] == 0) {
+					categoryNames.add(categoryDictionary.getName(categoryId));
+					localCategories[categoryId] = categoryNames.size();
+				}
+				categories[i] = localCategories[categoryId] - 1;
+			}
+			views.add(new View(name, tokenCount, positions, categories));
+			return this;
+		}
+
+		public ExtractedCas build() {
+			return new ExtractedCas(tokenCount, views.toArray(new View[0]), categoryNames.toArray(new String[0]));
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the data extracted from each CAS, see {@link AbstractIAAEngine#PARAM_EXTRACTION_CACHE}.
+ * <p/>
+ * Each entry is a file named by its key, in a sub-directory named by the first two characters of the key. Entries are
+ * written to a temporary file and moved into place, so that a partial entry is never read. Beyond the maximal size,
+ * the least recently used entries are deleted. The last use of an entry is stored as the modification time of its
+ * file, so that the order is kept across runs.
+ * <p/>
+ * The cache is thread-safe. Only the sizes and order of the entries are held under its lock, entries are read, written
+ * and deleted outside of it, so concurrent lookups do not wait for each other's disk I/O. All engines using the same
+ * directory should share a single cache, see {@link SharedAgreementResource}, as each cache only bounds the entries it
+ * knows of.
+ */
+public class ExtractionCache {
+	private static final String EXTENSION = ".bin";
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+	private static final Logger LOGGER = UIMAFramework.getLogger(ExtractionCache.class);
+
+	private final Path directory;
+	private final long maxBytes;
+	/**
+	 * The size of each entry by its key, least recently used first. Guarded by this cache, as is {@link #totalBytes}.
+	 */
+	private final LinkedHashMap<String, Long> entrySizes = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalBytes;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * @param directory The directory of the cache, which is created if it does not exist. Existing entries are kept.
+	 * @param maxBytes  The maximal size of all entries.
+	 */
+	public ExtractionCache(Path directory, long maxBytes) throws IOException {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+
+		// Load the existing entries in the order of their last use
+		HashMap<Path, FileTime> lastUses = new HashMap<>();
+		ArrayList<Path> entries;
+		try (Stream<Path> files = Files.walk(directory, 2)) {
+			entries = files.filter(Files::isRegularFile).collect(Collectors.toCollection(ArrayList::new));
+		}
+		for (Path entry : entries) {
+			if (entry.getFileName().toString().endsWith(TEMPORARY_EXTENSION))
+				Files.deleteIfExists(entry);
+			else if (entry.getFileName().toString().endsWith(EXTENSION))
+				lastUses.put(entry, Files.getLastModifiedTime(entry));
+		}
+		entries.retainAll(lastUses.keySet());
+		entries.sort(Comparator.comparing(lastUses::get));
+		for (Path entry : entries) {
+			String fileName = entry.getFileName().toString();
+			long size = Files.size(entry);
+			entrySizes.put(fileName.substring(0, fileName.length() - EXTENSION.length()), size);
+			totalBytes += size;
+		}
+		delete(evict());
+	}
+
+	/**
+	 * @param key The key of the entry.
+	 * @return The value of the entry, or null if there is none or it can not be read.
+	 */
+	@Nullable
+	public byte[] get(String key) {
+		synchronized (this) {
+			// Marks the entry as most recently used
+			if (entrySizes.get(key) == null) {
+				missCount.incrementAndGet();
+				return null;
+			}
+		}
+		Path path = getPath(key);
+		try {
+			byte[] value = Files.readAllBytes(path);
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			hitCount.incrementAndGet();
+			return value;
+		} catch (IOException e) {
+			// Deleted by another process or evicted meanwhile
+			remove(key);
+			missCount.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Add or replace an entry and evict the least recently used entries beyond the maximal size. Values larger than the
+	 * maximal size are not stored.
+	 *
+	 * @param key   The key of the entry, which must be a valid file name.
+	 * @param value The value of the entry.
+	 */
+	public void put(String key, byte[] value) throws IOException {
+		if (value.length > maxBytes)
+			return;
+		Path path = getPath(key);
+		Files.createDirectories(path.getParent());
+		// Concurrent puts of the same key each write a temporary file of their own
+		Path temporaryPath = Files.createTempFile(path.getParent(), key, TEMPORARY_EXTENSION);
+		try {
+			Files.write(temporaryPath, value);
+			try {
+				Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporaryPath);
+		}
+		List<String> evicted;
+		synchronized (this) {
+			Long previousSize = entrySizes.put(key, (long) value.length);
+			totalBytes += value.length - (previousSize != null ? previousSize : 0L);
+			evicted = evict();
+		}
+		delete(evicted);
+	}
+
+	/**
+	 * Delete an entry, e.g. if it can not be decoded.
+	 */
+	public void remove(String key) {
+		Long size;
+		synchronized (this) {
+			size = entrySizes.remove(key);
+			if (size != null)
+				totalBytes -= size;
+		}
+		if (size != null)
+			delete(key);
+	}
+
+	/**
+	 * Remove the least recently used entries beyond the maximal size. Their files are deleted by the caller, outside of
+	 * the lock.
+	 *
+	 * @return The keys of the removed entries.
+	 */
+	private List<String> evict() {
+		ArrayList<String> evicted = new ArrayList<>();
+		Iterator<Map.Entry<String, Long>> iterator = entrySizes.entrySet().iterator();
+		while (totalBytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> entry = iterator.next();
+			totalBytes -= entry.getValue();
+			iterator.remove();
+			evicted.add(entry.getKey());
+		}
+		return evicted;
+	}
+
+	private void delete(List<String> keys) {
+		for (String key : keys) {
+			delete(key);
+		}
+	}
+
+	private void delete(String key) {
+		try {
+			Files.deleteIfExists(getPath(key));
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Could not delete the extraction cache entry " + key, e);
+		}
+	}
+
+	private Path getPath(String key) {
+		return directory.resolve(key.substring(0, Math.min(2, key.length()))).resolve(key + EXTENSION);
+	}
+
+	/**
+	 * @return The number of entries.
+	 */
+	public synchronized int size() {
+		return entrySizes.size();
+	}
+
+	/**
+	 * @return The size of all entries in bytes.
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return The number of successful lookups.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return The number of lookups, which did not find an entry.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @param digest A hash.
+	 * @return The hash as hexadecimal key.
+	 */
+	public static String toKey(byte[] digest) {
+		StringBuilder key = new StringBuilder(2 * digest.length);
+		for (byte b : digest) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,60 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.texttechnologylab.annotation.type.Fingerprint;
+
+import java.util.BitSet;
+import java.util.function.Predicate;
+
+/**
+ * The annotations of a view, which are referenced by a {@link Fingerprint}, as a bit set of their feature structure
+ * addresses.
+ * <p/>
+ * Built in a single pass over the fingerprint index. A lookup is a single bit test, instead of hashing the feature
+ * structure, and the set takes one bit per heap cell up to the highest referenced address.
+ */
+public class FingerprintFilter implements Predicate<TOP> {
+	private final BitSet addresses = new BitSet();
+	private int fingerprintCount = 0;
+
+	/**
+	 * @param viewCas The view, whose fingerprints are read.
+	 */
+	public FingerprintFilter(JCas viewCas) {
+		for (Fingerprint fingerprint : JCasUtil.select(viewCas, Fingerprint.class)) {
+			TOP reference = fingerprint.getReference();
+			if (reference != null)
+				addresses.set(reference.getAddress());
+			fingerprintCount++;
+		}
+	}
+
+	/**
+	 * @param featureStructure A feature structure of the same CAS.
+	 * @return True, if the given feature structure is referenced by a fingerprint.
+	 */
+	public boolean contains(TOP featureStructure) {
+		return featureStructure != null && addresses.get(featureStructure.getAddress());
+	}
+
+	@Override
+	public boolean test(TOP featureStructure) {
+		return contains(featureStructure);
+	}
+
+	/**
+	 * @return The number of fingerprints of the view, when this filter was built.
+	 */
+	public int getFingerprintCount() {
+		return fingerprintCount;
+	}
+
+	/**
+	 * @return The number of distinct fingerprinted feature structures.
+	 */
+	public int size() {
+		return addresses.cardinality();
+	}
+}
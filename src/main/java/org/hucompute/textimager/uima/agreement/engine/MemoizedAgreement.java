@@ -0,0 +1,45 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.dkpro.statistics.agreement.IAgreementMeasure;
+import org.dkpro.statistics.agreement.ICategorySpecificAgreement;
+
+import java.util.HashMap;
+
+/**
+ * Memoizes the overall and per category values of an agreement measure, so that the statistics and the
+ * {@link org.texttechnologylab.iaa.AgreementContainer AgreementContainer} of a study share a single computation.
+ */
+public class MemoizedAgreement implements IAgreementMeasure, ICategorySpecificAgreement {
+	private final IAgreementMeasure agreement;
+	private final ICategorySpecificAgreement categoryAgreement;
+	private final HashMap<Object, Double> categoryValues = new HashMap<>();
+	private Double value;
+
+	/**
+	 * @param agreement An agreement measure, which also implements {@link ICategorySpecificAgreement}.
+	 */
+	public MemoizedAgreement(IAgreementMeasure agreement) {
+		this(agreement, (ICategorySpecificAgreement) agreement);
+	}
+
+	/**
+	 * @param agreement         The agreement measure.
+	 * @param categoryAgreement An equivalent measure, which computes the per category values faster.
+	 */
+	public MemoizedAgreement(IAgreementMeasure agreement, ICategorySpecificAgreement categoryAgreement) {
+		this.agreement = agreement;
+		this.categoryAgreement = categoryAgreement;
+	}
+
+	@Override
+	public double calculateAgreement() {
+		if (value == null)
+			value = agreement.calculateAgreement();
+		return value;
+	}
+
+	@Override
+	public double calculateCategoryAgreement(Object category) {
+		return categoryValues.computeIfAbsent(category, categoryAgreement::calculateCategoryAgreement);
+	}
+}
@@ -0,0 +1,165 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.fit.component.Resource_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.hucompute.textimager.uima.agreement.engine.sink.ResultSink;
+import org.texttechnologylab.utilities.collections.IndexingMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Combined study of multiple replicas of the same {@link AbstractIAAEngine}, e.g. with UIMA's multiple deployment.
+ * <p/>
+ * Bind this resource to {@link AbstractIAAEngine#RES_SHARED_STATE}. All replicas then share their annotator index,
+ * category dictionary, {@link ExtractionCache} and per-document partial results, which are held in a {@link StripedAccumulator}. The replica
+ * whose {@link AbstractIAAEngine#collectionProcessComplete() collectionProcessComplete} is called last computes the
+ * combined agreement.
+ * <p/>
+ * The replicas also share their {@link StatisticsWriter} and {@link ResultSink}, so that each result file is opened
+ * once. The replica, which is destroyed last, closes them.
+ * <p/>
+ * A resource must only be shared by replicas of one engine configuration.
+ */
+public class SharedAgreementResource extends Resource_ImplBase {
+	/**
+	 * The number of stripes of the shared partial results. Should be about the number of replicas.
+	 * <p/>
+	 * Default: 16.
+	 */
+	public static final String PARAM_STRIPE_COUNT = "pStripeCount";
+	@ConfigurationParameter(
+			name = PARAM_STRIPE_COUNT,
+			mandatory = false,
+			defaultValue = "16"
+	)
+	private Integer pStripeCount;
+
+	private final IndexingMap<String> annotatorIndex = new IndexingMap<>();
+	private final AtomicInteger documentOffset = new AtomicInteger(0);
+	private final AtomicInteger replicaCount = new AtomicInteger(0);
+	private final AtomicInteger completedCount = new AtomicInteger(0);
+	private final AtomicInteger releasedCount = new AtomicInteger(0);
+	private CategoryDictionary categoryDictionary;
+	private ExtractionCache extractionCache;
+	private StripedAccumulator<?> accumulator;
+	private StatisticsWriter statisticsWriter;
+	private ResultSink resultSink;
+
+	/**
+	 * Creates a shared object on the first call of its getter.
+	 */
+	@FunctionalInterface
+	interface Factory<T> {
+		T create() throws ResourceInitializationException;
+	}
+
+	/**
+	 * Register a replica, called during its initialization.
+	 */
+	void register() {
+		replicaCount.incrementAndGet();
+	}
+
+	/**
+	 * Mark a replica as completed. Once all replicas have completed, the count is reset for the next collection.
+	 *
+	 * @return True for the last registered replica, which has to compute the combined study.
+	 */
+	synchronized boolean complete() {
+		if (completedCount.incrementAndGet() < replicaCount.get())
+			return false;
+		completedCount.set(0);
+		return true;
+	}
+
+	/**
+	 * Release a replica, called when it is destroyed. Once all replicas have been released, the resource may be bound
+	 * to new replicas, which open a new writer and sink.
+	 *
+	 * @return True for the last registered replica, which has to close the shared writer and sink.
+	 */
+	synchronized boolean release() {
+		if (releasedCount.incrementAndGet() < replicaCount.get())
+			return false;
+		replicaCount.set(0);
+		releasedCount.set(0);
+		statisticsWriter = null;
+		resultSink = null;
+		return true;
+	}
+
+	/**
+	 * @param factory Creates the dictionary on the first call.
+	 * @return The category dictionary of all replicas.
+	 */
+	synchronized CategoryDictionary getCategoryDictionary(Supplier<CategoryDictionary> factory) {
+		if (categoryDictionary == null)
+			categoryDictionary = factory.get();
+		return categoryDictionary;
+	}
+
+	/**
+	 * @param factory Creates the cache on the first call.
+	 * @return The extraction cache of all replicas.
+	 */
+	synchronized ExtractionCache getExtractionCache(Supplier<ExtractionCache> factory) {
+		if (extractionCache == null)
+			extractionCache = factory.get();
+		return extractionCache;
+	}
+
+	/**
+	 * @param factory Creates the writer on the first call.
+	 * @return The statistics writer of all replicas.
+	 */
+	synchronized StatisticsWriter getStatisticsWriter(Factory<StatisticsWriter> factory) throws ResourceInitializationException {
+		if (statisticsWriter == null)
+			statisticsWriter = factory.create();
+		return statisticsWriter;
+	}
+
+	/**
+	 * @param factory Creates the sink on the first call.
+	 * @return The result sink of all replicas.
+	 */
+	synchronized ResultSink getResultSink(Factory<ResultSink> factory) throws ResourceInitializationException {
+		if (resultSink == null)
+			resultSink = factory.create();
+		return resultSink;
+	}
+
+	/**
+	 * @param factory Creates the empty partial result of each stripe on the first call.
+	 * @return The partial results of all replicas. The replica computing the combined study
+	 * {@link StripedAccumulator#reset() resets} them for the next collection.
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized <T> StripedAccumulator<T> getAccumulator(Supplier<T> factory) {
+		if (accumulator == null)
+			accumulator = new StripedAccumulator<>(pStripeCount, factory);
+		return (StripedAccumulator<T>) accumulator;
+	}
+
+	/**
+	 * @return The number of stripes of the shared partial results.
+	 */
+	int getStripeCount() {
+		return Math.max(1, pStripeCount);
+	}
+
+	/**
+	 * @return The annotator index of all replicas. All access must be synchronized on the returned map.
+	 */
+	public IndexingMap<String> getAnnotatorIndex() {
+		return annotatorIndex;
+	}
+
+	/**
+	 * @return The offset of the next document in the concatenated documents of all replicas.
+	 */
+	public AtomicInteger getDocumentOffset() {
+		return documentOffset;
+	}
+}
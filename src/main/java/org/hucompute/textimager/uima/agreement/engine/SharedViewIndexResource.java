@@ -0,0 +1,32 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.fit.component.Resource_ImplBase;
+import org.apache.uima.jcas.JCas;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * View indexes of the current document, shared by all engines of an aggregate, e.g. a
+ * {@link org.hucompute.textimager.uima.agreement.engine.serialization.CsvPrinterEngine CsvPrinterEngine} followed by
+ * several coding and unitizing engines.
+ * <p/>
+ * Bind this resource to {@link AbstractIAAEngine#RES_VIEW_INDEX} of every engine. The first engine processing a view
+ * creates its {@link ViewExtractionContext}, all following engines reuse it. A context is replaced, once it is no
+ * longer {@link ViewExtractionContext#isValid() valid}, i.e. when the CAS has been reset for the next document, when
+ * annotations or fingerprints of the view have been added or removed in between, or when another CAS is processed.
+ * <p/>
+ * A single context is held per view name, so engines processing different CASes concurrently replace each other's
+ * contexts. This stays correct, but each pipeline should bind its own resource to benefit from it.
+ */
+public class SharedViewIndexResource extends Resource_ImplBase {
+	private final ConcurrentHashMap<String, ViewExtractionContext> contexts = new ConcurrentHashMap<>();
+
+	/**
+	 * @param viewCas A view of the current document.
+	 * @return The valid context of the given view.
+	 */
+	public ViewExtractionContext getViewContext(JCas viewCas) {
+		return contexts.compute(viewCas.getViewName(), (viewName, context) ->
+				context != null && context.getViewCas() == viewCas && context.isValid() ? context : new ViewExtractionContext(viewCas));
+	}
+}
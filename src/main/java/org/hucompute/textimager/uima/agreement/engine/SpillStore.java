@@ -0,0 +1,216 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only store for per-CAS data, which is kept on the heap up to a given budget.
+ * <p/>
+ * Once the budget is exceeded, all further elements are encoded into a memory-mapped temporary file, each prefixed by
+ * its length. Iteration returns all elements in insertion order, reading the spilled elements back sequentially.
+ * The file is deleted by {@link #close()}, so every store must be closed.
+ *
+ * @param <T> The element type.
+ */
+public class SpillStore<T> implements Iterable<T>, Closeable {
+	/**
+	 * Size of the file regions mapped at once.
+	 */
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Encodes elements of a {@link SpillStore}.
+	 *
+	 * @param <T> The element type.
+	 */
+	public interface Codec<T> {
+		/**
+		 * @return The number of bytes written by {@link #write(Object, ByteBuffer)}.
+		 */
+		int getEncodedSize(T element);
+
+		/**
+		 * @return An estimate of the heap retained by the element.
+		 */
+		long getHeapSize(T element);
+
+		void write(T element, ByteBuffer buffer);
+
+		T read(ByteBuffer buffer);
+	}
+
+	/**
+	 * Codec for int arrays.
+	 */
+	public static final Codec<int[]> INT_ARRAY = new Codec<int[]>() {
+		@Override
+		public int getEncodedSize(int[] element) {
+			return Integer.BYTES * (element.length + 1);
+		}
+
+		@Override
+		public long getHeapSize(int[] element) {
+			return 16L + Integer.BYTES * element.length;
+		}
+
+		@Override
+		public void write(int[] element, ByteBuffer buffer) {
+			buffer.putInt(element.length);
+			buffer.asIntBuffer().put(element);
+			buffer.position(buffer.position() + Integer.BYTES * element.length);
+		}
+
+		@Override
+		public int[] read(ByteBuffer buffer) {
+			int[] element = new int[buffer.getInt()];
+			buffer.asIntBuffer().get(element);
+			buffer.position(buffer.position() + Integer.BYTES * element.length);
+			return element;
+		}
+	};
+
+	private final Codec<T> codec;
+	private final long heapBudget;
+	private final ArrayList<T> heapElements = new ArrayList<>();
+	private long retainedBytes = 0L;
+
+	private Path spillFile;
+	private FileChannel spillChannel;
+	private MappedByteBuffer writeBuffer;
+	private long writePosition = 0L;
+	private int spilledCount = 0;
+
+	/**
+	 * @param codec      The codec for spilled elements.
+	 * @param heapBudget The number of bytes to keep on the heap, negative for no limit.
+	 */
+	public SpillStore(Codec<T> codec, long heapBudget) {
+		this.codec = codec;
+		this.heapBudget = heapBudget;
+	}
+
+	/**
+	 * Append an element. Spills it to disk, if it exceeds the heap budget or previous elements were spilled.
+	 */
+	public void add(T element) throws IOException {
+		long heapSize = codec.getHeapSize(element);
+		if (spillChannel == null && (heapBudget < 0 || retainedBytes + heapSize <= heapBudget)) {
+			heapElements.add(element);
+			retainedBytes += heapSize;
+			return;
+		}
+
+		if (spillChannel == null) {
+			spillFile = Files.createTempFile("iaa-spill", ".bin");
+			spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		int recordSize = Integer.BYTES + codec.getEncodedSize(element);
+		if (writeBuffer == null || writeBuffer.remaining() < recordSize) {
+			writeBuffer = spillChannel.map(FileChannel.MapMode.READ_WRITE, writePosition, Math.max(WINDOW_SIZE, recordSize));
+		}
+		writeBuffer.putInt(recordSize - Integer.BYTES);
+		codec.write(element, writeBuffer);
+		writePosition += recordSize;
+		spilledCount++;
+	}
+
+	/**
+	 * @return The number of stored elements.
+	 */
+	public int size() {
+		return heapElements.size() + spilledCount;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return The estimated number of bytes retained on the heap.
+	 */
+	public long getRetainedBytes() {
+		return retainedBytes;
+	}
+
+	/**
+	 * @return The number of bytes spilled to disk.
+	 */
+	public long getSpilledBytes() {
+		return writePosition;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		Iterator<T> heapIterator = heapElements.iterator();
+		return new Iterator<T>() {
+			private MappedByteBuffer readBuffer;
+			private long readPosition = 0L;
+			private int readCount = 0;
+
+			@Override
+			public boolean hasNext() {
+				return heapIterator.hasNext() || readCount < spilledCount;
+			}
+
+			@Override
+			public T next() {
+				if (heapIterator.hasNext())
+					return heapIterator.next();
+				if (readCount >= spilledCount)
+					throw new NoSuchElementException();
+
+				try {
+					if (readBuffer == null || readBuffer.remaining() < Integer.BYTES)
+						map(Integer.BYTES);
+					int encodedSize = readBuffer.getInt(readBuffer.position());
+					if (readBuffer.remaining() < Integer.BYTES + encodedSize)
+						map(Integer.BYTES + encodedSize);
+					readBuffer.getInt();
+
+					ByteBuffer record = readBuffer.slice();
+					record.limit(encodedSize);
+					T element = codec.read(record);
+					readBuffer.position(readBuffer.position() + encodedSize);
+					readPosition += Integer.BYTES + encodedSize;
+					readCount++;
+					return element;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			private void map(int minimumSize) throws IOException {
+				long size = Math.min(Math.max(WINDOW_SIZE, minimumSize), writePosition - readPosition);
+				readBuffer = spillChannel.map(FileChannel.MapMode.READ_ONLY, readPosition, size);
+			}
+		};
+	}
+
+	/**
+	 * Discard all elements and delete the spill file.
+	 */
+	@Override
+	public void close() throws IOException {
+		heapElements.clear();
+		retainedBytes = 0L;
+		writeBuffer = null;
+		writePosition = 0L;
+		spilledCount = 0;
+		if (spillChannel != null) {
+			spillChannel.close();
+			spillChannel = null;
+			Files.deleteIfExists(spillFile);
+		}
+	}
+}
@@ -0,0 +1,351 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Writes the statistics of an engine on a background thread, so that printing them does not block on the storage.
+ * <p/>
+ * Each {@link Record} buffers its text in memory and submits it to a bounded queue, whenever it is flushed. Submitting
+ * blocks while the queue is full. The writer thread drains the queue in batches, in submission order, and writes
+ * consecutive records of the same file with a single stream, which is closed at the end of the batch. Only the global
+ * target and the standard streams stay open until the writer is {@link #close() closed}.
+ * <p/>
+ * With a queue size of zero, records are written synchronously by the thread flushing them.
+ */
+public class StatisticsWriter implements Closeable {
+	private static final int BATCH_SIZE = 64;
+	private static final Entry END = new Entry(null, null, false, false, null, null);
+
+	@Nullable
+	private final ArrayBlockingQueue<Entry> queue;
+	@Nullable
+	private final Thread thread;
+	@Nullable
+	private final Writer globalWriter;
+	/**
+	 * The number of records of each file, whose first text has not been written yet.
+	 */
+	private final ConcurrentHashMap<Path, Integer> pendingPaths = new ConcurrentHashMap<>();
+
+	/**
+	 * The first error of the writer thread, thrown by the next {@link #flush()}.
+	 */
+	private IOException error;
+
+	/**
+	 * @param queueSize    The maximal number of pending records, or zero to write synchronously.
+	 * @param globalWriter The target of all records of the global file, or null. Closed with this writer.
+	 */
+	public StatisticsWriter(int queueSize, @Nullable Writer globalWriter) {
+		this.globalWriter = globalWriter;
+		if (queueSize > 0) {
+			queue = new ArrayBlockingQueue<>(queueSize);
+			thread = new Thread(this::run, "iaa-statistics-writer");
+			thread.setDaemon(true);
+			thread.start();
+		} else {
+			queue = null;
+			thread = null;
+		}
+	}
+
+	/**
+	 * Open a record of a file. The file is {@link #isPending(Path) pending} until the first text of the record has been
+	 * written, so the record must be flushed or closed.
+	 *
+	 * @param path     The target file.
+	 * @param truncate If true, the file is truncated by the first flush of the record, otherwise it is appended to.
+	 * @return A new record of the given file.
+	 */
+	public Record open(Path path, boolean truncate) {
+		pendingPaths.merge(path, 1, Integer::sum);
+		return new Record(path, truncate, null);
+	}
+
+	/**
+	 * @param path A file.
+	 * @return True, if a record of the given file has been opened, whose first text has not been written yet, so that
+	 * the file may not exist yet.
+	 */
+	public boolean isPending(Path path) {
+		return pendingPaths.containsKey(path);
+	}
+
+	private void release(Path path) {
+		pendingPaths.computeIfPresent(path, (key, count) -> count > 1 ? count - 1 : null);
+	}
+
+	/**
+	 * @param stream The target stream, e.g. {@link System#out}, which is not closed.
+	 * @return A new record of the given stream.
+	 */
+	public Record open(Appendable stream) {
+		return new Record(null, false, stream);
+	}
+
+	/**
+	 * @return A new record of the global target.
+	 * @throws IllegalStateException If there is no global target.
+	 */
+	public Record openGlobal() {
+		if (globalWriter == null)
+			throw new IllegalStateException("No global target");
+		return new Record(null, false, globalWriter);
+	}
+
+	public boolean hasGlobalTarget() {
+		return globalWriter != null;
+	}
+
+	/**
+	 * Wait until all submitted records have been written.
+	 *
+	 * @throws IOException The first error of the writer thread since the last flush.
+	 */
+	public void flush() throws IOException {
+		if (queue != null) {
+			CountDownLatch written = new CountDownLatch(1);
+			put(new Entry(null, null, false, false, null, written));
+			try {
+				written.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+		IOException error;
+		synchronized (this) {
+			error = this.error;
+			this.error = null;
+		}
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Write all pending records, stop the writer thread and close the global target.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if (thread != null) {
+				put(END);
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (globalWriter != null)
+				globalWriter.close();
+		}
+	}
+
+	private void put(Entry entry) throws IOException {
+		try {
+			queue.put(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void submit(Entry entry) throws IOException {
+		if (queue != null) {
+			put(entry);
+		} else {
+			ArrayList<Entry> batch = new ArrayList<>(1);
+			batch.add(entry);
+			write(batch);
+			flush();
+		}
+	}
+
+	private void run() {
+		ArrayList<Entry> batch = new ArrayList<>(BATCH_SIZE);
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			queue.drainTo(batch, BATCH_SIZE - 1);
+			write(batch);
+			boolean end = batch.contains(END);
+			batch.clear();
+			if (end)
+				return;
+		}
+	}
+
+	/**
+	 * Write a batch of entries, in order, and release the flush markers after all preceding entries are written.
+	 */
+	private void write(ArrayList<Entry> batch) {
+		Path openPath = null;
+		BufferedWriter openWriter = null;
+		ArrayList<Appendable> streams = new ArrayList<>();
+		for (Entry entry : batch) {
+			try {
+				if (entry.path != null) {
+					if (openWriter != null && (!entry.path.equals(openPath) || entry.truncate)) {
+						openWriter.close();
+						openWriter = null;
+					}
+					if (openWriter == null) {
+						openPath = entry.path;
+						openWriter = entry.truncate
+								? Files.newBufferedWriter(entry.path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+								: Files.newBufferedWriter(entry.path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+					}
+					openWriter.append(entry.text);
+				} else if (entry.stream != null) {
+					entry.stream.append(entry.text);
+					if (!streams.contains(entry.stream))
+						streams.add(entry.stream);
+				} else if (entry.written != null) {
+					if (openWriter != null) {
+						openWriter.close();
+						openWriter = null;
+					}
+					flushStreams(streams);
+					entry.written.countDown();
+				}
+			} catch (IOException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				fail(new IOException(e));
+			} finally {
+				// The file has been created, unless writing it failed
+				if (entry.release)
+					release(entry.path);
+			}
+		}
+		try {
+			if (openWriter != null)
+				openWriter.close();
+		} catch (IOException e) {
+			fail(e);
+		}
+		flushStreams(streams);
+	}
+
+	private void flushStreams(ArrayList<Appendable> streams) {
+		for (Appendable stream : streams) {
+			try {
+				if (stream instanceof Flushable)
+					((Flushable) stream).flush();
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		streams.clear();
+	}
+
+	private synchronized void fail(IOException e) {
+		if (error == null)
+			error = e;
+		else
+			error.addSuppressed(e);
+	}
+
+	/**
+	 * The text of a single file or stream, which is submitted to the writer on each {@link #flush()}, e.g. by
+	 * {@link org.apache.commons.csv.CSVPrinter#flush()}.
+	 */
+	public class Record implements Appendable, Flushable, Closeable {
+		private final StringBuilder buffer = new StringBuilder();
+		private final Path path;
+		private final Appendable stream;
+		private boolean truncate;
+		/**
+		 * True, until the first text of a file record has been submitted.
+		 */
+		private boolean pending;
+
+		private Record(Path path, boolean truncate, Appendable stream) {
+			this.path = path;
+			this.truncate = truncate;
+			this.stream = stream;
+			this.pending = path != null;
+		}
+
+		@Override
+		public Record append(CharSequence csq) {
+			buffer.append(csq);
+			return this;
+		}
+
+		@Override
+		public Record append(CharSequence csq, int start, int end) {
+			buffer.append(csq, start, end);
+			return this;
+		}
+
+		@Override
+		public Record append(char c) {
+			buffer.append(c);
+			return this;
+		}
+
+		/**
+		 * Submit the text appended since the last flush. Blocks while the queue of the writer is full.
+		 */
+		@Override
+		public void flush() throws IOException {
+			if (buffer.length() == 0 && !truncate) {
+				// Nothing to create the file with
+				if (pending)
+					release(path);
+				pending = false;
+				return;
+			}
+			submit(new Entry(buffer.toString(), path, truncate, pending, stream, null));
+			buffer.setLength(0);
+			truncate = false;
+			pending = false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+
+	private static final class Entry {
+		private final String text;
+		private final Path path;
+		private final boolean truncate;
+		/**
+		 * True for the first entry of a file record, which releases its path once written.
+		 */
+		private final boolean release;
+		private final Appendable stream;
+		private final CountDownLatch written;
+
+		private Entry(String text, Path path, boolean truncate, boolean release, Appendable stream, CountDownLatch written) {
+			this.text = text;
+			this.path = path;
+			this.truncate = truncate;
+			this.release = release;
+			this.stream = stream;
+			this.written = written;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lock-striped partial results of a combined study.
+ * <p/>
+ * Each thread updates one of the stripes, so that concurrent engine replicas rarely contend for the same lock.
+ * The partial results are combined by iterating over all stripes, once all replicas have finished their updates.
+ *
+ * @param <T> The type of the partial results.
+ */
+public class StripedAccumulator<T> implements Iterable<T> {
+	private final ArrayList<T> stripes = new ArrayList<>();
+	private final ReentrantLock[] locks;
+	private final Supplier<T> factory;
+
+	/**
+	 * An update of a single stripe.
+	 *
+	 * @param <T> The type of the partial results.
+	 * @param <E> The type of the exception thrown by the update.
+	 */
+	@FunctionalInterface
+	public interface Update<T, E extends Exception> {
+		void apply(T stripe) throws E;
+	}
+
+	/**
+	 * @param stripeCount The number of stripes.
+	 * @param factory     Creates the empty partial result of each stripe.
+	 */
+	public StripedAccumulator(int stripeCount, Supplier<T> factory) {
+		this.factory = factory;
+		locks = new ReentrantLock[Math.max(1, stripeCount)];
+		for (int i = 0; i < locks.length; i++) {
+			stripes.add(factory.get());
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Apply the update to the stripe of the calling thread, while holding its lock.
+	 */
+	public <E extends Exception> void update(Update<T, E> update) throws E {
+		int stripe = (int) (Thread.currentThread().getId() % locks.length);
+		locks[stripe].lock();
+		try {
+			update.apply(stripes.get(stripe));
+		} finally {
+			locks[stripe].unlock();
+		}
+	}
+
+	/**
+	 * Replace the partial results of all stripes with empty ones, e.g. for the next collection. Must not be called
+	 * concurrently with {@link #update(Update)}.
+	 */
+	public void reset() {
+		for (int i = 0; i < stripes.size(); i++) {
+			stripes.set(i, factory.get());
+		}
+	}
+
+	/**
+	 * @return The number of stripes.
+	 */
+	public int size() {
+		return stripes.size();
+	}
+
+	/**
+	 * Iterates over the partial results of all stripes. Must not be called concurrently with {@link #update(Update)}.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return stripes.iterator();
+	}
+}
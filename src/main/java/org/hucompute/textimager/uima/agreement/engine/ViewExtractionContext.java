@@ -0,0 +1,150 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.texttechnologylab.annotation.type.Fingerprint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Everything extracted from a single view, that is needed by both {@link AbstractIAAEngine#isCasValid(JCas)} and the
+ * extraction of the studies. It is created for each valid view of the current CAS and released after processing it,
+ * or shared by all engines of an aggregate through a {@link SharedViewIndexResource}.
+ * <p/>
+ * The fingerprinted annotations are selected on creation, everything else on first use. A context may be used by the
+ * thread extracting its view and the thread processing the CAS, so all methods are synchronized.
+ */
+public class ViewExtractionContext {
+	private final JCas viewCas;
+	private final FingerprintFilter fingerprinted;
+	private ArrayList<Token> tokens;
+	private ArrayList<Token> topLevelTokens;
+	private final HashMap<Class<? extends Annotation>, ArrayList<Annotation>> annotations = new HashMap<>();
+	private final HashMap<Class<? extends Annotation>, ArrayList<Annotation>> fingerprintedAnnotations = new HashMap<>();
+	private final HashMap<List<Class<? extends Annotation>>, Map<?, ?>> coveringIndexes = new HashMap<>();
+
+	/**
+	 * The state of the view, when this context was created, see {@link #isValid()}.
+	 */
+	private final Annotation firstAnnotation;
+	private final int annotationCount;
+	private final int fingerprintCount;
+
+	public ViewExtractionContext(JCas viewCas) {
+		this.viewCas = viewCas;
+		this.fingerprinted = new FingerprintFilter(viewCas);
+		this.firstAnnotation = getFirstAnnotation(viewCas);
+		this.annotationCount = viewCas.getAnnotationIndex().size();
+		this.fingerprintCount = fingerprinted.getFingerprintCount();
+	}
+
+	/**
+	 * A context is valid as long as its view holds the same document and neither annotations nor fingerprints have
+	 * been added or removed. The annotations of a reset CAS are new objects, even for the same document, so the first
+	 * annotation of the view identifies its document.
+	 *
+	 * @return True, if the view has not changed since this context was created.
+	 */
+	public boolean isValid() {
+		return getFirstAnnotation(viewCas) == firstAnnotation
+				&& viewCas.getAnnotationIndex().size() == annotationCount
+				&& JCasUtil.select(viewCas, Fingerprint.class).size() == fingerprintCount;
+	}
+
+	private static Annotation getFirstAnnotation(JCas viewCas) {
+		FSIterator<Annotation> iterator = viewCas.getAnnotationIndex().iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	public JCas getViewCas() {
+		return viewCas;
+	}
+
+	/**
+	 * @return The references of all fingerprints of the view.
+	 */
+	public FingerprintFilter getFingerprinted() {
+		return fingerprinted;
+	}
+
+	/**
+	 * @return The tokens covering each token of the view, see {@link JCasUtil#indexCovering}.
+	 */
+	public Map<Token, Collection<Token>> getCoveringTokens() {
+		return getCoveringIndex(Token.class, Token.class);
+	}
+
+	/**
+	 * @param type         The class of the covered annotations.
+	 * @param coveringType The class of the covering annotations.
+	 * @return The annotations of the covering class, which cover each annotation of the given class, see
+	 * {@link JCasUtil#indexCovering}. Must not be modified.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T extends Annotation, S extends Annotation> Map<T, Collection<S>> getCoveringIndex(Class<? extends T> type, Class<? extends S> coveringType) {
+		List<Class<? extends Annotation>> key = Arrays.asList(type, coveringType);
+		Map<T, Collection<S>> coveringIndex = (Map<T, Collection<S>>) coveringIndexes.get(key);
+		if (coveringIndex == null) {
+			coveringIndex = JCasUtil.indexCovering(viewCas, type, coveringType);
+			coveringIndexes.put(key, coveringIndex);
+		}
+		return coveringIndex;
+	}
+
+	/**
+	 * @return All tokens of the view in index order.
+	 */
+	public synchronized ArrayList<Token> getTokens() {
+		if (tokens == null)
+			tokens = new ArrayList<>(JCasUtil.select(viewCas, Token.class));
+		return tokens;
+	}
+
+	/**
+	 * @return All tokens of the view, that are not covered by another token, in index order.
+	 */
+	public synchronized ArrayList<Token> getTopLevelTokens() {
+		if (topLevelTokens == null) {
+			Map<Token, Collection<Token>> coveringTokens = getCoveringTokens();
+			topLevelTokens = getTokens().stream()
+					.filter(token -> coveringTokens.getOrDefault(token, Collections.emptyList()).isEmpty())
+					.collect(Collectors.toCollection(ArrayList::new));
+		}
+		return topLevelTokens;
+	}
+
+	/**
+	 * @param annotationClass   The annotation class.
+	 * @param fingerprintedOnly If true, only consider fingerprinted annotations.
+	 * @return All annotations of the given class, which are not nested in another annotation of the same type, in
+	 * index order. Must not be modified.
+	 */
+	public synchronized ArrayList<Annotation> getOutermostAnnotations(Class<? extends Annotation> annotationClass, boolean fingerprintedOnly) {
+		HashMap<Class<? extends Annotation>, ArrayList<Annotation>> cache = fingerprintedOnly ? fingerprintedAnnotations : annotations;
+		ArrayList<Annotation> classAnnotations = cache.get(annotationClass);
+		if (classAnnotations == null) {
+			Collection<? extends Annotation> selected;
+			if (fingerprintedOnly)
+				selected = JCasUtil.select(viewCas, annotationClass).stream()
+						.filter(fingerprinted)
+						.collect(Collectors.toList());
+			else
+				selected = JCasUtil.select(viewCas, annotationClass);
+
+			// Remove annotations, that are overlapped by an annotation of the same Type
+			classAnnotations = new AnnotationIntervalIndex<Annotation>(selected).getOutermost();
+			cache.put(annotationClass, classAnnotations);
+		}
+		return classAnnotations;
+	}
+}
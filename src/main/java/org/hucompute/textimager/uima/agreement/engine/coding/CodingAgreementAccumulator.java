@@ -0,0 +1,359 @@
+package org.hucompute.textimager.uima.agreement.engine.coding;
+
+import org.dkpro.statistics.agreement.IAgreementMeasure;
+import org.dkpro.statistics.agreement.ICategorySpecificAgreement;
+import org.hucompute.textimager.uima.agreement.engine.CategoryCounts;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Running sufficient statistics of a {@link SetCodingAnnotationStudy SetCodingAnnotationStudy}, which allow to compute
+ * nominal agreement measures without keeping the items.
+ * <p/>
+ * Each item holds exactly one category per rater, real or {@link SetCodingAnnotationStudy#getPlaceholder(int) placeholder}.
+ * Placeholders are unique per rater and never agree, so for <i>n<sub>uc</sub></i> raters assigning category <i>c</i>
+ * to item <i>u</i> it suffices to collect:
+ * <ul>
+ * <li>the item count <i>N</i>,</li>
+ * <li>the observed agreement <i>&Sigma;<sub>u</sub> &Sigma;<sub>c</sub> n<sub>uc</sub>(n<sub>uc</sub> - 1)</i>,</li>
+ * <li>the marginals <i>n<sub>c</sub></i> and squared sums <i>&Sigma;<sub>u</sub> n<sub>uc</sub><sup>2</sup></i> per category,</li>
+ * <li>the number of real categories per rater, from which the placeholder marginals follow.</li>
+ * </ul>
+ * None of these depend on the total number of raters, which is only required when the agreement is computed.
+ *
+ * @see CodingAgreementAccumulator#isStreamable(String, SetSelectionStrategy)
+ */
+public class CodingAgreementAccumulator {
+	private final String agreementMeasure;
+	private final SetSelectionStrategy setSelectionStrategy;
+
+	private long itemCount = 0L;
+	private long observedAgreement = 0L;
+	private final CategoryCounts categoryMarginals = new CategoryCounts();
+	private final CategoryCounts categorySquares = new CategoryCounts();
+	private long[] raterLabels = new long[0];
+
+	/**
+	 * Number of {@link SetSelectionStrategy#MATCH MATCH} tokens on which all raters present in the CAS annotated,
+	 * by the number of these raters. They require an additional item of placeholders for each absent rater.
+	 */
+	private long[] completeMatchTokens = new long[0];
+
+	public CodingAgreementAccumulator(String agreementMeasure, SetSelectionStrategy setSelectionStrategy) {
+		this.agreementMeasure = agreementMeasure;
+		this.setSelectionStrategy = setSelectionStrategy;
+	}
+
+	/**
+	 * @return True, if the given measure can be computed from the sufficient statistics with the given strategy.
+	 */
+	public static boolean isStreamable(String agreementMeasure, SetSelectionStrategy setSelectionStrategy) {
+		switch (agreementMeasure) {
+			case CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement:
+			case CodingIAACollectionProcessingEngine.PercentageAgreement:
+			case CodingIAACollectionProcessingEngine.FleissKappaAgreement:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Fold the items of a single token into the statistics, as they would be added by
+	 * {@link SetCodingAnnotationStudy#addItemSetsAsArray(int[][])}.
+	 *
+	 * @param annotations         The distinct category ids of each rater, empty for raters without annotation.
+	 * @param presentRaterCount The number of raters present in the CAS of the token.
+	 */
+	public void add(int[][] annotations, int presentRaterCount) {
+		if (annotations.length > raterLabels.length)
+			raterLabels = Arrays.copyOf(raterLabels, annotations.length);
+
+		int[] choice = new int[annotations.length];
+		switch (setSelectionStrategy) {
+			case ALL:
+				do {
+					addItem(annotations, choice);
+				} while (nextChoice(annotations, choice));
+				break;
+			case MATCH:
+				addMatchingItems(annotations, presentRaterCount);
+				break;
+			case MAX:
+			default:
+				// The selected tuple only depends on the token itself
+				addItem(annotations, SetCodingAnnotationStudy.selectMaxChoice(annotations));
+				break;
+		}
+	}
+
+	/**
+	 * Add the statistics of another accumulator for the same measure and strategy, e.g. of another engine replica.
+	 */
+	public void addAll(CodingAgreementAccumulator other) {
+		itemCount += other.itemCount;
+		observedAgreement += other.observedAgreement;
+		categoryMarginals.addAll(other.categoryMarginals);
+		categorySquares.addAll(other.categorySquares);
+		raterLabels = addAll(raterLabels, other.raterLabels);
+		completeMatchTokens = addAll(completeMatchTokens, other.completeMatchTokens);
+	}
+
+	/**
+	 * Write the statistics, so that they can be {@link #addAll(DataInput, int[], int[]) added} to another accumulator.
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(itemCount);
+		out.writeLong(observedAgreement);
+		categoryMarginals.write(out);
+		categorySquares.write(out);
+		writeLongs(out, raterLabels);
+		writeLongs(out, completeMatchTokens);
+	}
+
+	/**
+	 * Add the {@link #write written} statistics of another accumulator for the same measure and strategy.
+	 *
+	 * @param raterMap    Maps the written rater indices to those of this accumulator.
+	 * @param categoryMap Maps the written category ids to those of this accumulator.
+	 */
+	public void addAll(DataInput in, int[] raterMap, int[] categoryMap) throws IOException {
+		itemCount += in.readLong();
+		observedAgreement += in.readLong();
+		categoryMarginals.addAll(in, categoryMap);
+		categorySquares.addAll(in, categoryMap);
+
+		long[] otherRaterLabels = readLongs(in);
+		long[] mappedRaterLabels = new long[0];
+		for (int i = 0; i < otherRaterLabels.length; i++) {
+			if (raterMap[i] >= mappedRaterLabels.length)
+				mappedRaterLabels = Arrays.copyOf(mappedRaterLabels, raterMap[i] + 1);
+			mappedRaterLabels[raterMap[i]] = otherRaterLabels[i];
+		}
+		raterLabels = addAll(raterLabels, mappedRaterLabels);
+		completeMatchTokens = addAll(completeMatchTokens, readLongs(in));
+	}
+
+	private static void writeLongs(DataOutput out, long[] values) throws IOException {
+		out.writeInt(values.length);
+		for (long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	private static long[] readLongs(DataInput in) throws IOException {
+		long[] values = new long[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readLong();
+		}
+		return values;
+	}
+
+	private static long[] addAll(long[] counts, long[] otherCounts) {
+		long[] sum = Arrays.copyOf(counts, Math.max(counts.length, otherCounts.length));
+		for (int i = 0; i < otherCounts.length; i++) {
+			sum[i] += otherCounts[i];
+		}
+		return sum;
+	}
+
+	private void addItem(int[][] annotations, int[] choice) {
+		itemCount++;
+		for (int i = 0; i < annotations.length; i++) {
+			if (annotations[i].length == 0) continue;
+			raterLabels[i]++;
+
+			// Count each category once, at its first rater
+			int category = annotations[i][choice[i]];
+			boolean counted = false;
+			for (int j = 0; j < i && !counted; j++) {
+				counted = annotations[j].length > 0 && annotations[j][choice[j]] == category;
+			}
+			if (counted) continue;
+
+			int count = 1;
+			for (int j = i + 1; j < annotations.length; j++) {
+				if (annotations[j].length > 0 && annotations[j][choice[j]] == category) count++;
+			}
+			addCategory(category, count);
+		}
+	}
+
+	private void addMatchingItems(int[][] annotations, int presentRaterCount) {
+		int annotatedRaterCount = 0;
+		for (int i = 0; i < annotations.length; i++) {
+			if (annotations[i].length == 0) continue;
+			annotatedRaterCount++;
+			for (int category : annotations[i]) {
+				boolean counted = false;
+				for (int j = 0; j < i && !counted; j++) {
+					counted = contains(annotations[j], category);
+				}
+				if (counted) continue;
+
+				itemCount++;
+				int count = 0;
+				for (int j = i; j < annotations.length; j++) {
+					if (contains(annotations[j], category)) {
+						raterLabels[j]++;
+						count++;
+					}
+				}
+				addCategory(category, count);
+			}
+		}
+
+		// The item of placeholders is only known to be required, if a present rater did not annotate
+		if (annotatedRaterCount < presentRaterCount) {
+			itemCount++;
+		} else {
+			if (presentRaterCount >= completeMatchTokens.length)
+				completeMatchTokens = Arrays.copyOf(completeMatchTokens, presentRaterCount + 1);
+			completeMatchTokens[presentRaterCount]++;
+		}
+	}
+
+	private void addCategory(int category, int count) {
+		observedAgreement += (long) count * (count - 1);
+		categoryMarginals.add(category, count);
+		categorySquares.add(category, (long) count * count);
+	}
+
+	private static boolean contains(int[] categories, int category) {
+		for (int other : categories) {
+			if (other == category) return true;
+		}
+		return false;
+	}
+
+	private static boolean nextChoice(int[][] annotations, int[] choice) {
+		for (int i = choice.length - 1; i >= 0; i--) {
+			if (choice[i] + 1 < annotations[i].length) {
+				choice[i]++;
+				return true;
+			}
+			choice[i] = 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Compute the agreement of all added items.
+	 *
+	 * @param raterCount The total number of raters.
+	 * @return The agreement measure, which accepts category ids.
+	 */
+	public StreamedCodingAgreement getAgreement(int raterCount) {
+		long items = itemCount;
+		for (int presentRaterCount = 0; presentRaterCount < Math.min(raterCount, completeMatchTokens.length); presentRaterCount++) {
+			items += completeMatchTokens[presentRaterCount];
+		}
+
+		// Every rater without a real category on an item holds its placeholder
+		long placeholderSquares = 0L;
+		for (int i = 0; i < raterCount; i++) {
+			long placeholders = items - (i < raterLabels.length ? raterLabels[i] : 0L);
+			placeholderSquares += placeholders * placeholders;
+		}
+		return new StreamedCodingAgreement(agreementMeasure, raterCount, items, observedAgreement, placeholderSquares, categoryMarginals, categorySquares);
+	}
+
+	/**
+	 * Nominal agreement measure computed from the sufficient statistics of a {@link CodingAgreementAccumulator}.
+	 * Equivalent to the DKPro Statistics implementation of the respective measure on the same items.
+	 */
+	public static class StreamedCodingAgreement implements IAgreementMeasure, ICategorySpecificAgreement {
+		private final String agreementMeasure;
+		private final int raterCount;
+		private final long itemCount;
+		private final long observedAgreement;
+		private final long placeholderSquares;
+		private final CategoryCounts categoryMarginals;
+		private final CategoryCounts categorySquares;
+
+		StreamedCodingAgreement(String agreementMeasure, int raterCount, long itemCount, long observedAgreement, long placeholderSquares, CategoryCounts categoryMarginals, CategoryCounts categorySquares) {
+			this.agreementMeasure = agreementMeasure;
+			this.raterCount = raterCount;
+			this.itemCount = itemCount;
+			this.observedAgreement = observedAgreement;
+			this.placeholderSquares = placeholderSquares;
+			this.categoryMarginals = categoryMarginals;
+			this.categorySquares = categorySquares;
+		}
+
+		public long getItemCount() {
+			return itemCount;
+		}
+
+		/**
+		 * @return The number of annotation units, one per rater and item.
+		 */
+		public long getUnitCount() {
+			return itemCount * raterCount;
+		}
+
+		@Override
+		public double calculateAgreement() {
+			double pairs = (double) itemCount * raterCount * (raterCount - 1);
+			double n = (double) itemCount * raterCount;
+			switch (agreementMeasure) {
+				case CodingIAACollectionProcessingEngine.PercentageAgreement:
+					return observedAgreement / pairs;
+				case CodingIAACollectionProcessingEngine.FleissKappaAgreement: {
+					double expectedAgreement = getSquaredMarginals() / (n * n);
+					return (observedAgreement / pairs - expectedAgreement) / (1.0 - expectedAgreement);
+				}
+				case CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement:
+				default: {
+					double observedDisagreement = (pairs - observedAgreement) / pairs;
+					double expectedDisagreement = (n * n - getSquaredMarginals()) / (n * (n - 1.0));
+					return 1.0 - observedDisagreement / expectedDisagreement;
+				}
+			}
+		}
+
+		/**
+		 * @return The sum of the squared marginals over all categories, including the placeholders.
+		 */
+		private double getSquaredMarginals() {
+			double squaredMarginals = placeholderSquares;
+			for (int category = 0; category < categoryMarginals.size(); category++) {
+				double marginal = categoryMarginals.get(category);
+				squaredMarginals += marginal * marginal;
+			}
+			return squaredMarginals;
+		}
+
+		/**
+		 * Percentage agreement reports the specific agreement of the category, i.e. the share of agreeing pairs among
+		 * all pairs involving the category.
+		 *
+		 * @param category The category id.
+		 */
+		@Override
+		public double calculateCategoryAgreement(Object category) {
+			int id = (Integer) category;
+			double n = (double) itemCount * raterCount;
+			double marginal = categoryMarginals.get(id);
+			double squares = categorySquares.get(id);
+			switch (agreementMeasure) {
+				case CodingIAACollectionProcessingEngine.PercentageAgreement:
+					return (squares - marginal) / (marginal * (raterCount - 1));
+				case CodingIAACollectionProcessingEngine.FleissKappaAgreement: {
+					double p = marginal / n;
+					double pairAgreement = (squares - n * p) / (n * (raterCount - 1) * p);
+					return (pairAgreement - p) / (1.0 - p);
+				}
+				case CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement:
+				default: {
+					// All other categories collapsed into one
+					double disagreeingPairs = raterCount * marginal - squares;
+					return 1.0 - (n - 1.0) * disagreeingPairs / ((raterCount - 1) * marginal * (n - marginal));
+				}
+			}
+		}
+	}
+}
@@ -1,18 +1,16 @@
 package org.hucompute.textimager.uima.agreement.engine.coding;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.dkpro.statistics.agreement.IAgreementMeasure;
@@ -20,17 +18,27 @@ import org.dkpro.statistics.agreement.ICategorySpecificAgreement;
 import org.dkpro.statistics.agreement.coding.*;
 import org.dkpro.statistics.agreement.distance.NominalDistanceFunction;
 import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
-import org.texttechnologylab.annotation.type.Fingerprint;
+import org.hucompute.textimager.uima.agreement.engine.AgreementStateFile;
+import org.hucompute.textimager.uima.agreement.engine.BootstrapIntervals;
+import org.hucompute.textimager.uima.agreement.engine.CategoryCounts;
+import org.hucompute.textimager.uima.agreement.engine.ExtractedCas;
+import org.hucompute.textimager.uima.agreement.engine.FingerprintFilter;
+import org.hucompute.textimager.uima.agreement.engine.MemoizedAgreement;
+import org.hucompute.textimager.uima.agreement.engine.SpillStore;
+import org.hucompute.textimager.uima.agreement.engine.StripedAccumulator;
+import org.hucompute.textimager.uima.agreement.engine.ViewExtractionContext;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.ClusteredCodingStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.CodingAgreementKernel;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.IntCodingStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.WeightedCodingStudy;
 import org.texttechnologylab.iaa.Agreement;
 import org.texttechnologylab.utilities.collections.CountMap;
 import org.texttechnologylab.utilities.collections.IndexingMap;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
-
-import static org.apache.uima.fit.util.JCasUtil.indexCovering;
 
 /**
  * Inter-annotator agreement engine using a {@link CodingAnnotationStudy CodingAnnotationStudy} and
@@ -44,12 +52,16 @@ import static org.apache.uima.fit.util.JCasUtil.indexCovering;
  * @see KrippendorffAlphaAgreement
  * @see PercentageAgreement
  */
-public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine {
-	private TreeSet<String> categories = new TreeSet<>();
-	private Integer maxCasIndex = 0;
-	private HashMap<Integer, HashMap<String, HashMap<Integer, Set<String>>>> perCasStudies = new HashMap<>();
-	private HashMap<Integer, Integer> perCasTokenCount = new HashMap<>();
-	private LinkedHashSet<String> annotatorList = new LinkedHashSet<>();
+public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine implements AgreementStateFile.Stateful {
+	private BitSet categories = new BitSet();
+	private IndexingMap<String> annotatorIndex;
+	
+	// Partial results of the combined study, shared by all replicas if RES_SHARED_STATE is bound
+	private StripedAccumulator<CombinedStudy> combinedStudies;
+	// True, if the agreement measure can be computed from the running statistics of the combined study
+	private boolean streamCombined;
+	// True, if token, sentence or window annotations require the item agreement
+	private boolean annotateItems;
 	
 	/**
 	 * Parameter for the {@link SetSelectionStrategy SetSelectionStrategy} to use.<br>
@@ -88,6 +100,96 @@ public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine {
 	)
 	Boolean pAnnotateToken;
 	
+	/**
+	 * Create an {@link Agreement} annotation over each {@link Sentence} in the "IAA" view, whose value is the mean item
+	 * agreement of the covered tokens.
+	 * <p/>
+	 * Requires the same agreement measures as {@link CodingIAACollectionProcessingEngine#PARAM_ANNOTATE_TOKEN}.
+	 * <p/>
+	 * Default: false.
+	 */
+	public static final String PARAM_ANNOTATE_SENTENCE = "pAnnotateSentence";
+	@ConfigurationParameter(
+			name = PARAM_ANNOTATE_SENTENCE,
+			mandatory = false,
+			defaultValue = "false"
+	)
+	Boolean pAnnotateSentence;
+	
+	/**
+	 * The number of tokens of the sliding windows, over which an {@link Agreement} annotation with the mean item
+	 * agreement of the covered tokens is created in the "IAA" view. Set to 0 to disable the window annotations.
+	 * <p/>
+	 * Requires the same agreement measures as {@link CodingIAACollectionProcessingEngine#PARAM_ANNOTATE_TOKEN}.
+	 * <p/>
+	 * Default: 0.
+	 */
+	public static final String PARAM_WINDOW_SIZE = "pWindowSize";
+	@ConfigurationParameter(
+			name = PARAM_WINDOW_SIZE,
+			mandatory = false,
+			defaultValue = "0"
+	)
+	Integer pWindowSize;
+	
+	/**
+	 * The number of tokens between the begin of two consecutive windows, see
+	 * {@link CodingIAACollectionProcessingEngine#PARAM_WINDOW_SIZE}.
+	 * <p/>
+	 * Default: 1.
+	 */
+	public static final String PARAM_WINDOW_STEP = "pWindowStep";
+	@ConfigurationParameter(
+			name = PARAM_WINDOW_STEP,
+			mandatory = false,
+			defaultValue = "1"
+	)
+	Integer pWindowStep;
+	
+	/**
+	 * The maximal number of distinct label tuples, whose item agreement is cached for the token-level annotations of
+	 * each CAS. Set to 0 to disable the cache.
+	 * <p/>
+	 * Default: 4096.
+	 */
+	public static final String PARAM_ITEM_AGREEMENT_CACHE_SIZE = "pItemAgreementCacheSize";
+	@ConfigurationParameter(
+			name = PARAM_ITEM_AGREEMENT_CACHE_SIZE,
+			mandatory = false,
+			defaultValue = "4096"
+	)
+	Integer pItemAgreementCacheSize;
+	
+	/**
+	 * The implementation of the agreement measures:
+	 * <ul>
+	 * <li>{@link CodingIAACollectionProcessingEngine#DKPRO}: the DKPro Statistics measures on a study of item objects.</li>
+	 * <li>{@link CodingIAACollectionProcessingEngine#KERNEL}: the {@link CodingAgreementKernel} on int-encoded items.
+	 * Token-level annotations always use DKPro Statistics, as they require the item agreement.</li>
+	 * </ul>
+	 * Combined studies, which are not streamed, always use the {@link CodingAgreementKernel} on their distinct label
+	 * tuples and counts, so their size does not depend on the number of tokens.
+	 * <p/>
+	 * Default: {@link CodingIAACollectionProcessingEngine#DKPRO}.
+	 */
+	public static final String PARAM_AGREEMENT_IMPLEMENTATION = "pAgreementImplementation";
+	@ConfigurationParameter(
+			name = PARAM_AGREEMENT_IMPLEMENTATION,
+			mandatory = false,
+			defaultValue = DKPRO
+	)
+	String pAgreementImplementation;
+	
+	/**
+	 * {@link CodingIAACollectionProcessingEngine#PARAM_AGREEMENT_IMPLEMENTATION} choice.
+	 */
+	public static final String DKPRO = "DKPRO";
+	
+	/**
+	 * {@link CodingIAACollectionProcessingEngine#PARAM_AGREEMENT_IMPLEMENTATION} choice.
+	 */
+	public static final String KERNEL = "KERNEL";
+	
 	// Agreement measure choices
 	/**
 	 * Paramter string for {@link CodingIAACollectionProcessingEngine#CohenKappaAgreement}.
@@ -145,109 +247,199 @@ public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine {
 	@Override
 	public void initialize(UimaContext context) throws ResourceInitializationException {
 		super.initialize(context);
-		if (pAnnotateToken && !(ImmutableSet.of(KrippendorffAlphaAgreement, PercentageAgreement).contains(pAgreementMeasure))) {
+		annotatorIndex = createAnnotatorIndex();
+		annotateItems = pAnnotateToken || pAnnotateSentence || pWindowSize > 0;
+		if (annotateItems && !(ImmutableSet.of(KrippendorffAlphaAgreement, PercentageAgreement).contains(pAgreementMeasure))) {
 			throw new ResourceInitializationException(new UnsupportedOperationException(
 					"PARAM_ANNOTATE is set 'true', but the chosen PARAM_AGREEMENT_MEASURE does not implement ICodingItemSpecificAgreement!"
 			));
 		}
+		if (pWindowSize > 0 && pWindowStep < 1) {
+			throw new ResourceInitializationException(new IllegalArgumentException("PARAM_WINDOW_STEP must be positive!"));
+		}
+		
+		// Nominal measures do not need the items of all CASes at the end, unless the documents are resampled
+		streamCombined = !SEPARATE.equals(pMultiCasHandling) && pBootstrapSamples <= 0
+				&& CodingAgreementAccumulator.isStreamable(pAgreementMeasure, SetSelectionStrategy.valueOf(pSetSelectionStrategy));
+		combinedStudies = createAccumulator(() -> {
+			CombinedStudy combinedStudy = new CombinedStudy();
+			if (streamCombined) {
+				combinedStudy.accumulator = new CodingAgreementAccumulator(pAgreementMeasure, SetSelectionStrategy.valueOf(pSetSelectionStrategy));
+			} else {
+				combinedStudy.perCasStudies = createSpillStore(TokenLabelMatrix.CODEC);
+			}
+			return combinedStudy;
+		});
 	}
 	
 	@Override
 	public void process(JCas jCas) throws AnalysisEngineProcessException {
 		try {
-			if (!isCasValid(jCas)) return;
-			
-			// Count all not sub-tokens
-			int tokenCount = (int) JCasUtil.select(jCas, Token.class).stream()
-					.filter(((Predicate<Token>)
-							indexCovering(jCas, Token.class, Token.class).entrySet().stream()
-									.filter(entry -> !entry.getValue().isEmpty())
-									.map(Map.Entry::getKey)
-									.collect(Collectors.toCollection(HashSet::new))::contains)
-							.negate())
-					.count();
-			perCasTokenCount.put(maxCasIndex, tokenCount);
+			// Extract the annotations over each token of all views, unless they are cached
+			ExtractedCas extractedCas = extractCas(jCas, ExtractedCas.CODEC, this::extractLabels);
+			if (extractedCas == null) return;
+			int tokenCount = extractedCas.getTokenCount();
 			
 			// Count all annotations for PARAM_MIN_ANNOTATIONS
 			CountMap<String> perViewAnnotationCount = new CountMap<>();
 			
-			// Iterate over all views
-			HashMap<String, HashMap<Integer, Set<String>>> perViewAnnotationMap = new HashMap<>();
-			for (String fullViewName : validViewNames) {
-				JCas viewCas = jCas.getView(fullViewName);
-				// Split user id from view name and get annotator index for this id. Discards "_InitialView"
-				String viewName = StringUtils.substringAfterLast(fullViewName.trim(), "/");
-				annotatorList.add(viewName);
-				
-				// Get all fingerprinted annotations
-				HashSet<TOP> fingerprinted = JCasUtil.select(viewCas, Fingerprint.class).stream()
-						.map(Fingerprint::getReference).collect(Collectors.toCollection(HashSet::new));
-				
-				// Create an index for the token, that are not part of sub-token
-				HashSet<Token> coveredTokens = indexCovering(viewCas, Token.class, Token.class).entrySet().stream()
-						.filter(entry -> !entry.getValue().isEmpty())
-						.map(Map.Entry::getKey)
-						.collect(Collectors.toCollection(HashSet::new));
-				
-				// Create an index for the tokens
-				IndexingMap<Token> tokenIndexingMap = new IndexingMap<>();
-				JCasUtil.select(viewCas, Token.class).stream()
-						.sequential()
-						.filter(((Predicate<Token>) coveredTokens::contains).negate())
-						.forEachOrdered(tokenIndexingMap::add);
-				
-				if (tokenIndexingMap.size() != tokenCount) {
-					logger.error("The number of tokens in this view does not match with the number of tokens in the default view!");
-					return;
+			// Get the annotator index of each view, in their original order
+			int[] raters = new int[extractedCas.getViewCount()];
+			synchronized (annotatorIndex) {
+				for (int i = 0; i < raters.length; i++) {
+					String viewName = extractedCas.getView(i).getName();
+					annotatorIndex.add(viewName);
+					
+					if (extractedCas.getView(i).getTokenCount() != tokenCount) {
+						logger.error("The number of tokens in this view does not match with the number of tokens in the default view!");
+						return;
+					}
+					raters[i] = annotatorIndex.get(viewName);
 				}
+			}
+			
+			// Merge the views in their original order
+			int[] categoryMap = extractedCas.mapCategories(categoryDictionary);
+			TokenLabelMatrix.Builder labelMatrixBuilder = new TokenLabelMatrix.Builder(tokenCount);
+			for (int i = 0; i < raters.length; i++) {
+				ExtractedCas.View view = extractedCas.getView(i);
+				int[] tokenIndices = view.getPositions();
+				int[] viewCategories = view.getCategories();
 				
-				// Create a map which holds all annotation sets over all covered tokens (by index)
-				HashMap<Integer, Set<String>> currentViewAnnotationMap = new HashMap<>();
-				perViewAnnotationMap.put(viewName, currentViewAnnotationMap);
-				
-				// Add all annotations of each given class over each token to
-				for (Class<? extends Annotation> annotationClass : annotationClasses) {
-					Map<Token, Collection<Annotation>> annotationCoveringTokenIndex = indexCovering(viewCas, Token.class, annotationClass);
-					for (Token token : tokenIndexingMap.keySet()) {
-						if (!coveredTokens.contains(token)) {
-							Integer index = tokenIndexingMap.get(token);
-							for (Annotation annotation : annotationCoveringTokenIndex.get(token)) {
-								// Check pFilterFingerprinted -> fingerprinted::contains
-								if (!pFilterFingerprinted || fingerprinted.contains(annotation)) {
-									String category = getCatgoryName(annotation);
-									
-									Set<String> categorySet = currentViewAnnotationMap.getOrDefault(index, new HashSet<>());
-									categorySet.add(category);
-									currentViewAnnotationMap.put(index, categorySet);
-									
-									perViewAnnotationCount.inc(viewName);
-								}
-							}
-						}
-					}
+				// Create a column which holds all annotation sets over all covered tokens (by index)
+				int column = labelMatrixBuilder.addRater(raters[i]);
+				for (int j = 0; j < view.size(); j++) {
+					labelMatrixBuilder.add(column, tokenIndices[j], categoryMap[viewCategories[j]]);
+					
+					perViewAnnotationCount.inc(view.getName());
 				}
 			}
 			
 			// Check PARAM_MIN_ANNOTATIONS constraint
-			long min = annotatorList.stream()
-					.map(perViewAnnotationCount::get)
-					.min(Long::compareTo).orElse(0L);
+			long min;
+			int raterCount;
+			synchronized (annotatorIndex) {
+				min = annotatorIndex.keySet().stream()
+						.map(perViewAnnotationCount::get)
+						.min(Long::compareTo).orElse(0L);
+				raterCount = annotatorIndex.size();
+			}
 			if (min < pMinAnnotations)
 				return; // TODO: Add logging with debug parameter!
 			
-			// After all views have been processed, add the perViewAnnotationMap to perCasStudies
-			perCasStudies.put(maxCasIndex, perViewAnnotationMap); // FIXME: Refactor this with the token count into an object?
+			// After all views have been processed, keep the labels only if they are needed for the combined study
+			TokenLabelMatrix labelMatrix = labelMatrixBuilder.build();
+			switch (pMultiCasHandling) {
+				case SEPARATE:
+					break;
+				case BOTH:
+				case COMBINED:
+				default:
+					combinedStudies.update(combinedStudy -> {
+						if (streamCombined) {
+							accumulateCombined(combinedStudy, labelMatrix, raterCount);
+						} else {
+							combinedStudy.perCasStudies.add(labelMatrix);
+						}
+					});
+					break;
+			}
 			
 			// If pAggregationMethod is SEPARATE or BOTH, compute agreement for this CAS only
 			switch (pMultiCasHandling) {
 				case SEPARATE:
 				case BOTH:
-					handleSeparate(jCas, perCasTokenCount.get(maxCasIndex), perViewAnnotationMap);
+					handleSeparate(jCas, labelMatrix);
 					break;
 			}
-			maxCasIndex += 1;
 		} catch (CASException e) {
 			e.printStackTrace();
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		} finally {
+			releaseViewContexts();
+		}
+	}
+	
+	/**
+	 * Extract the annotations of all views, possibly in parallel, and resolve their categories in the order of the views.
+	 *
+	 * @return The token index and category of each annotation, or null if the CAS is not valid.
+	 */
+	private ExtractedCas extractLabels(JCas jCas) throws CASException, AnalysisEngineProcessException {
+		if (!isCasValid(jCas)) return null;
+		
+		// Count all not sub-tokens
+		int tokenCount = getViewContext(jCas).getTopLevelTokens().size();
+		
+		List<ViewAnnotations> perViewAnnotations = extractViews(jCas, this::extractViewAnnotations);
+		
+		// The CAS is skipped, if the tokens of any view do not match, so no categories are resolved
+		boolean tokensMatch = perViewAnnotations.stream().allMatch(viewAnnotations -> viewAnnotations.tokenCount == tokenCount);
+		ExtractedCas.Builder builder = new ExtractedCas.Builder(tokenCount, categoryDictionary);
+		for (ViewAnnotations viewAnnotations : perViewAnnotations) {
+			int size = tokensMatch ? viewAnnotations.annotations.size() : 0;
+			int[] categoryIds = new int[size];
+			for (int j = 0; j < size; j++) {
+				categoryIds[j] = getCategoryId(viewAnnotations.annotations.get(j));
+			}
+			builder.addView(viewAnnotations.viewName, viewAnnotations.tokenCount, Arrays.copyOf(viewAnnotations.tokenIndices, size), categoryIds);
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Collect all annotations of a single view over each token, that is not part of a sub-token.
+	 * Called concurrently for different views, see {@link #PARAM_VIEW_PARALLELISM}.
+	 */
+	private ViewAnnotations extractViewAnnotations(JCas viewCas, String viewName) {
+		ViewExtractionContext viewContext = getViewContext(viewCas);
+		
+		// Get all fingerprinted annotations
+		FingerprintFilter fingerprinted = viewContext.getFingerprinted();
+		
+		// Create an index for the token, that are not part of sub-token
+		IndexingMap<Token> tokenIndexingMap = new IndexingMap<>();
+		viewContext.getTopLevelTokens().forEach(tokenIndexingMap::add);
+		
+		ViewAnnotations viewAnnotations = new ViewAnnotations(viewName, tokenIndexingMap.size());
+		
+		// Add all annotations of each given class over each token
+		for (Class<? extends Annotation> annotationClass : annotationClasses) {
+			Map<Token, Collection<Annotation>> annotationCoveringTokenIndex = viewContext.getCoveringIndex(Token.class, annotationClass);
+			for (Token token : tokenIndexingMap.keySet()) {
+				Integer index = tokenIndexingMap.get(token);
+				for (Annotation annotation : annotationCoveringTokenIndex.get(token)) {
+					// Check pFilterFingerprinted -> fingerprinted::contains
+					if (!pFilterFingerprinted || fingerprinted.contains(annotation)) {
+						viewAnnotations.add(index, annotation);
+					}
+				}
+			}
+		}
+		return viewAnnotations;
+	}
+	
+	/**
+	 * The annotations of a single view and the indices of the tokens they cover. Their categories are only resolved
+	 * after all views have been extracted, so that new category ids are assigned in the order of the views.
+	 */
+	private static class ViewAnnotations {
+		private final String viewName;
+		private final int tokenCount;
+		private final ArrayList<Annotation> annotations = new ArrayList<>();
+		private int[] tokenIndices = new int[16];
+		
+		private ViewAnnotations(String viewName, int tokenCount) {
+			this.viewName = viewName;
+			this.tokenCount = tokenCount;
+		}
+		
+		private void add(int tokenIndex, Annotation annotation) {
+			if (annotations.size() == tokenIndices.length)
+				tokenIndices = Arrays.copyOf(tokenIndices, 2 * tokenIndices.length);
+			tokenIndices[annotations.size()] = tokenIndex;
+			annotations.add(annotation);
 		}
 	}
 	
@@ -257,71 +449,144 @@ public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine {
 	 */
 	@Override
 	public void collectionProcessComplete() throws AnalysisEngineProcessException {
-		if (annotatorList.size() > 1) {
-			switch (pMultiCasHandling) {
-				case SEPARATE:
-					return;
-				case BOTH:
-				case COMBINED:
-				default:
-					handleCombined();
-					break;
+		// Only the last replica computes the combined study
+		if (completeReplica(annotatorIndex)) {
+			if (annotatorIndex.size() > 1) {
+				switch (pMultiCasHandling) {
+					case SEPARATE:
+						break;
+					case BOTH:
+					case COMBINED:
+					default:
+						handleCombined();
+						break;
+				}
 			}
+			// The next collection starts with an empty combined study
+			closeStudies();
+			combinedStudies.reset();
 		}
 		super.collectionProcessComplete();
 	}
 	
-	private void handleSeparate(JCas jCas, int tokenCount, HashMap<String, HashMap<Integer, Set<String>>> perCasStudy) {
-		CountMap<String> globalCategoryCount = new CountMap<>();
-		HashMap<String, CountMap<String>> annotatorCategoryCount = new HashMap<>();
-		// Initialize a CountMap for each annotator
-		for (String annotator : annotatorList) {
-			annotatorCategoryCount.put(annotator, new CountMap<>());
+	@Override
+	protected void closeStudies() {
+		if (combinedStudies == null)
+			return;
+		for (CombinedStudy combinedStudy : combinedStudies) {
+			if (combinedStudy.perCasStudies != null)
+				closeSpillStore(combinedStudy.perCasStudies);
+		}
+	}
+	
+	@Override
+	protected Map<String, String> getStateParameters() {
+		Map<String, String> parameters = super.getStateParameters();
+		parameters.put(PARAM_AGREEMENT_MEASURE, pAgreementMeasure);
+		parameters.put(PARAM_SET_SELECTION_STRATEGY, pSetSelectionStrategy);
+		parameters.put(PARAM_BOOTSTRAP_SAMPLES, String.valueOf(pBootstrapSamples));
+		parameters.put(PARAM_BOOTSTRAP_CONFIDENCE, String.valueOf(pBootstrapConfidence));
+		parameters.put(PARAM_BOOTSTRAP_SEED, String.valueOf(pBootstrapSeed));
+		return parameters;
+	}
+	
+	/**
+	 * Writes the partial results of each stripe: either the running statistics or the label matrices of all CASes.
+	 */
+	@Override
+	public void writeState(DataOutputStream out) throws IOException {
+		out.writeInt(combinedStudies.size());
+		for (CombinedStudy combinedStudy : combinedStudies) {
+			if (streamCombined) {
+				combinedStudy.accumulator.write(out);
+				combinedStudy.categoryCount.write(out);
+				out.writeInt(combinedStudy.annotatorCategoryCount.size());
+				for (CategoryCounts counts : combinedStudy.annotatorCategoryCount) {
+					counts.write(out);
+				}
+				combinedStudy.categoryOverlap.write(out);
+			} else {
+				for (TokenLabelMatrix labelMatrix : combinedStudy.perCasStudies) {
+					AgreementStateFile.writeRecord(out, TokenLabelMatrix.CODEC, labelMatrix);
+				}
+				AgreementStateFile.writeEndOfRecords(out);
+			}
+		}
+	}
+	
+	@Override
+	public void readState(DataInputStream in, int[] annotatorMap, int[] categoryMap) throws IOException {
+		int stripeCount = in.readInt();
+		for (int stripe = 0; stripe < stripeCount; stripe++) {
+			combinedStudies.update(combinedStudy -> {
+				if (streamCombined) {
+					combinedStudy.accumulator.addAll(in, annotatorMap, categoryMap);
+					combinedStudy.categoryCount.addAll(in, categoryMap);
+					int annotatorCount = in.readInt();
+					for (int i = 0; i < annotatorCount; i++) {
+						while (combinedStudy.annotatorCategoryCount.size() <= annotatorMap[i]) {
+							combinedStudy.annotatorCategoryCount.add(new CategoryCounts());
+						}
+						combinedStudy.annotatorCategoryCount.get(annotatorMap[i]).addAll(in, categoryMap);
+					}
+					combinedStudy.categoryOverlap.addAll(in, categoryMap);
+				} else {
+					TokenLabelMatrix labelMatrix;
+					while ((labelMatrix = AgreementStateFile.readRecord(in, TokenLabelMatrix.CODEC)) != null) {
+						combinedStudy.perCasStudies.add(labelMatrix.remap(annotatorMap, categoryMap));
+					}
+				}
+			});
+		}
+	}
+	
+	private void handleSeparate(JCas jCas, TokenLabelMatrix labelMatrix) {
+		// Snapshot of the annotators, which may be extended concurrently by other replicas
+		ArrayList<String> annotators;
+		synchronized (annotatorIndex) {
+			annotators = new ArrayList<>(annotatorIndex.keySet());
+		}
+		
+		CategoryCounts globalCategoryCount = new CategoryCounts();
+		ArrayList<CategoryCounts> annotatorCategoryCount = new ArrayList<>();
+		// Initialize a CategoryCounts for each annotator
+		for (int i = 0; i < annotators.size(); i++) {
+			annotatorCategoryCount.add(new CategoryCounts());
 		}
 		
 		// Per token lookup for the created annotation items
 		LinkedHashMap<Integer, ICodingAnnotationItem[]> tokenItemLookup = new LinkedHashMap<>();
 		
-		SetCodingAnnotationStudy codingAnnotationStudy = new SetCodingAnnotationStudy(annotatorList.size(), SetSelectionStrategy.valueOf(pSetSelectionStrategy));
-		CountMap<String> globalCategoryOverlap = new CountMap<>();
-		for (int tokenIndex = 0; tokenIndex < tokenCount; tokenIndex++) {
-			// Holds the sets of annotations for this token per annotator
-			ArrayList<Set<String>> perTokenAnnotations = new ArrayList<>();
-			CountMap<String> categoryOverlap = new CountMap<>();
-			
-			// Bool to check if any annotator has an annotation over the current token
-			boolean any = false;
-			
-			// Get all annotations over the current token by index
-			for (String annotatorName : annotatorList) {
-				Set<String> category = perCasStudy
-						.getOrDefault(annotatorName, new HashMap<>())
-						.getOrDefault(tokenIndex, ImmutableSet.of(""));
-				perTokenAnnotations.add(category);
-				
-				if (!category.contains("")) {
-					any = true;
-					categories.addAll(category);
-					
-					// Statistics
-					globalCategoryCount.incAll(category);
-					annotatorCategoryCount.get(annotatorName).incAll(category);
-					categoryOverlap.incAll(category);
-				}
+		// Token, sentence and window annotations require the DKPro items
+		boolean useKernel = KERNEL.equals(pAgreementImplementation) && !annotateItems;
+		SetCodingAnnotationStudy codingAnnotationStudy = useKernel ? null : new SetCodingAnnotationStudy(annotators.size(), SetSelectionStrategy.valueOf(pSetSelectionStrategy));
+		IntCodingStudy intCodingStudy = useKernel ? new IntCodingStudy(annotators.size(), SetSelectionStrategy.valueOf(pSetSelectionStrategy)) : null;
+		ClusteredCodingStudy clusteredStudy = pBootstrapSamples > 0 ? new ClusteredCodingStudy(annotators.size(), SetSelectionStrategy.valueOf(pSetSelectionStrategy)) : null;
+		CategoryCounts globalCategoryOverlap = new CategoryCounts();
+		int[][] perTokenAnnotations = new int[annotators.size()][];
+		for (int row = 0; row < labelMatrix.getRowCount(); row++) {
+			addTokenAnnotations(labelMatrix, row, perTokenAnnotations, globalCategoryCount, annotatorCategoryCount, globalCategoryOverlap);
+			if (useKernel) {
+				intCodingStudy.addItemSets(perTokenAnnotations);
+			} else {
+				ICodingAnnotationItem[] items = codingAnnotationStudy.addItemSetsAsArray(perTokenAnnotations);
+				tokenItemLookup.put(labelMatrix.getToken(row), items);
 			}
-			if (any) {
-				// Add the annotations to the study
-				tokenItemLookup.put(tokenIndex, codingAnnotationStudy.addItemSetsAsArray(perTokenAnnotations.toArray(new Set[0])));
-				
-				// Increase the overlap count for each category with more than one vote
-				categoryOverlap.forEach((o, integer) -> {
-					if (integer > 1) globalCategoryOverlap.inc(o);
-				});
+			
+			// The items of each token are resampled together
+			if (clusteredStudy != null) {
+				clusteredStudy.addItemSets(perTokenAnnotations);
+				clusteredStudy.endCluster();
 			}
 		}
 		
 		// Compute agreement
-		IAgreementMeasure agreement = calcualteAgreement(codingAnnotationStudy, globalCategoryCount, annotatorCategoryCount, globalCategoryOverlap);
+		IAgreementMeasure agreement = useKernel
+				? calculateKernelAgreement(intCodingStudy)
+				: calcualteAgreement(codingAnnotationStudy, globalCategoryCount, annotatorCategoryCount, globalCategoryOverlap);
+		long unitCount = useKernel ? intCodingStudy.getUnitCount() : codingAnnotationStudy.getUnitCount();
+		MemoizedAgreement memoizedAgreement = memoizeAgreement(agreement, codingAnnotationStudy);
+		BootstrapIntervals intervals = estimateIntervals(clusteredStudy);
 		
 		if (pPrintStatistics) {
 			try {
@@ -329,32 +594,21 @@ public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine {
 				documentId = documentId != null ? documentId : DocumentMetaData.get(jCas).getDocumentTitle();
 				documentId = documentId != null ? documentId : DocumentMetaData.get(jCas).getDocumentUri();
 				
-				String fileName = StringUtils.appendIfMissing(StringUtils.removeEnd(documentId, ".xmi"), ".csv");
-				CSVPrinter csvPrinter = getCsvPrinter(fileName);
-				csvPrinter.printComment(String.format("%s, %s, %s\n" +
-								"Inter-annotator agreement for %d annotators: %s\n",
-						pAgreementMeasure, pSetSelectionStrategy, documentId,
-						annotatorList.size(), annotatorList.toString()
-				));
-				// Print the agreement for all categories
-				csvPrinter.printRecord("Category", "Count", "Agreement");
-				csvPrinter.printRecord("Overall", codingAnnotationStudy.getUnitCount(), agreement.calculateAgreement());
-				printStudyResultsAndStatistics((ICategorySpecificAgreement) agreement, globalCategoryCount, annotatorCategoryCount, categories, annotatorList, csvPrinter);
-				printCategoryOverlap(globalCategoryOverlap, csvPrinter);
-				csvPrinter.flush();
+				writeResult(createResult(documentId, pAgreementMeasure, pSetSelectionStrategy, unitCount, memoizedAgreement.calculateAgreement(),
+						memoizedAgreement, intervals, globalCategoryCount, annotatorCategoryCount, categories, annotators, globalCategoryOverlap));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 		
 		// If set, create per token annotations in the given JCas
-		if (pAnnotateDocument || pAnnotateToken) {
+		if (pAnnotateDocument || annotateItems) {
 			JCas viewIAA = initializeIaaView(jCas);
 			
 			if (pAnnotateDocument) {
-				createDocumentAgreementAnnotations(viewIAA, agreement, pAgreementMeasure, categories, globalCategoryCount);
+				createDocumentAgreementAnnotations(viewIAA, memoizedAgreement, intervals, pAgreementMeasure, categories, globalCategoryCount);
 			}
-			if (pAnnotateToken) {
+			if (annotateItems) {
 				if (!(agreement instanceof ICodingItemSpecificAgreement)) {
 					logger.error(String.format("The chosen agreement measure '%s' does not implement ICodingItemSpecificAgreement!", pAgreementMeasure));
 				} else {
@@ -364,104 +618,232 @@ public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine {
 		}
 	}
 	
-	private void createAgreementAnnotations(JCas jCas, JCas viewIAA, LinkedHashMap<Integer, ICodingAnnotationItem[]> tokenItemLookup, IAgreementMeasure agreement, CountMap<String> globalCategoryCount) {
+	/**
+	 * Create the token, sentence and window annotations. The mean item agreement of any token range is computed in
+	 * constant time from the prefix sums of the item agreement and the item count over all tokens. As the item
+	 * agreement is an affine function of the observed disagreement of the item, the mean equals the agreement of the
+	 * items of the range relative to the expected disagreement of the whole study.
+	 */
+	private void createAgreementAnnotations(JCas jCas, JCas viewIAA, LinkedHashMap<Integer, ICodingAnnotationItem[]> tokenItemLookup, IAgreementMeasure agreement, CategoryCounts globalCategoryCount) {
 		try {
-			// Iterate over all tokens that have an entry in
-			LinkedList<Token> tokens = Lists.newLinkedList(JCasUtil.select(jCas, Token.class));
-			for (Integer tokenIndex : tokenItemLookup.keySet()) {
-				Token token = tokens.get(tokenIndex);
-				ICodingAnnotationItem[] iCodingAnnotationItems = tokenItemLookup.get(tokenIndex);
-				double itemAgreementValue = Arrays.stream(iCodingAnnotationItems)
-						.map(((ICodingItemSpecificAgreement) agreement)::calculateItemAgreement)
-						.reduce(Double::sum)
-						.orElse(0.0);
-				itemAgreementValue /= iCodingAnnotationItems.length;
+			// Repeated label tuples share their item agreement
+			ItemAgreementCache itemAgreementCache = new ItemAgreementCache((ICodingItemSpecificAgreement) agreement, pItemAgreementCacheSize);
+			
+			// Prefix sums over all tokens, that are not part of a sub-token, as indexed by the extraction
+			// Tokens without items do not contribute
+			ArrayList<Token> tokens = getViewContext(jCas).getTopLevelTokens();
+			double[] agreementSums = new double[tokens.size() + 1];
+			long[] itemCounts = new long[tokens.size() + 1];
+			for (Map.Entry<Integer, ICodingAnnotationItem[]> entry : tokenItemLookup.entrySet()) {
+				int tokenIndex = entry.getKey();
+				ICodingAnnotationItem[] iCodingAnnotationItems = entry.getValue();
+				for (ICodingAnnotationItem item : iCodingAnnotationItems) {
+					agreementSums[tokenIndex + 1] += itemAgreementCache.calculateItemAgreement(item);
+				}
+				itemCounts[tokenIndex + 1] = iCodingAnnotationItems.length;
 				
 				// Create agreement annotation and add to viewIAA indexes
-				int begin = token.getBegin();
-				int end = token.getEnd();
-				Agreement itemAgreement = new Agreement(viewIAA, begin, end);
-				itemAgreement.setAgreementValue(itemAgreementValue);
-				itemAgreement.setAgreementMeasure(pAgreementMeasure);
-				viewIAA.addFsToIndexes(itemAgreement);
+				if (pAnnotateToken) {
+					Token token = tokens.get(tokenIndex);
+					addAgreementAnnotation(viewIAA, token.getBegin(), token.getEnd(), agreementSums[tokenIndex + 1] / iCodingAnnotationItems.length);
+				}
+			}
+			for (int i = 1; i <= tokens.size(); i++) {
+				agreementSums[i] += agreementSums[i - 1];
+				itemCounts[i] += itemCounts[i - 1];
+			}
+			
+			if (pAnnotateSentence) {
+				int[] tokenBegins = tokens.stream().mapToInt(Token::getBegin).toArray();
+				for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+					int from = firstTokenAtOrAfter(tokenBegins, sentence.getBegin());
+					int to = firstTokenAtOrAfter(tokenBegins, sentence.getEnd());
+					if (itemCounts[to] > itemCounts[from]) {
+						addAgreementAnnotation(viewIAA, sentence.getBegin(), sentence.getEnd(),
+								(agreementSums[to] - agreementSums[from]) / (itemCounts[to] - itemCounts[from]));
+					}
+				}
 			}
+			
+			if (pWindowSize > 0) {
+				for (int from = 0; from < tokens.size(); from += pWindowStep) {
+					int to = Math.min(from + pWindowSize, tokens.size());
+					if (itemCounts[to] > itemCounts[from]) {
+						addAgreementAnnotation(viewIAA, tokens.get(from).getBegin(), tokens.get(to - 1).getEnd(),
+								(agreementSums[to] - agreementSums[from]) / (itemCounts[to] - itemCounts[from]));
+					}
+					if (to == tokens.size())
+						break;
+				}
+			}
+			logger.debug(String.format("Item agreement cache: %d hits, %d misses",
+					itemAgreementCache.getHitCount(), itemAgreementCache.getMissCount()));
 		} catch (Exception e) {
-			e.printStackTrace();
+			logger.error("Could not create the agreement annotations of " + pAgreementMeasure, e);
+		}
+	}
+	
+	private void addAgreementAnnotation(JCas viewIAA, int begin, int end, double value) {
+		Agreement agreement = new Agreement(viewIAA, begin, end);
+		agreement.setAgreementValue(value);
+		agreement.setAgreementMeasure(pAgreementMeasure);
+		viewIAA.addFsToIndexes(agreement);
+	}
+	
+	/**
+	 * @return The index of the first token, which begins at or after the given offset.
+	 */
+	private static int firstTokenAtOrAfter(int[] tokenBegins, int offset) {
+		int index = Arrays.binarySearch(tokenBegins, offset);
+		if (index < 0)
+			return -index - 1;
+		
+		// Tokens may share their begin
+		while (index > 0 && tokenBegins[index - 1] == offset) index--;
+		return index;
+	}
+	
+	/**
+	 * Fold the labels of a single CAS into the running statistics of the combined study.
+	 *
+	 * @param raterCount The number of annotators, at least the largest annotator index of the CAS + 1.
+	 */
+	private void accumulateCombined(CombinedStudy combinedStudy, TokenLabelMatrix labelMatrix, int raterCount) {
+		// Initialize a CategoryCounts for each new annotator
+		while (combinedStudy.annotatorCategoryCount.size() < raterCount) {
+			combinedStudy.annotatorCategoryCount.add(new CategoryCounts());
+		}
+		
+		int[][] perTokenAnnotations = new int[raterCount][];
+		for (int row = 0; row < labelMatrix.getRowCount(); row++) {
+			addTokenAnnotations(labelMatrix, row, perTokenAnnotations, combinedStudy.categoryCount, combinedStudy.annotatorCategoryCount, combinedStudy.categoryOverlap);
+			combinedStudy.accumulator.add(perTokenAnnotations, labelMatrix.getColumnCount());
 		}
 	}
 	
 	private void handleCombined() {
-		CountMap<String> globalCategoryCount = new CountMap<>();
-		HashMap<String, CountMap<String>> annotatorCategoryCount = new HashMap<>();
-		// Initialize a CountMap for each annotator
-		for (String annotator : annotatorList) {
-			annotatorCategoryCount.put(annotator, new CountMap<>());
+		CategoryCounts globalCategoryCount = new CategoryCounts();
+		ArrayList<CategoryCounts> annotatorCategoryCount = new ArrayList<>();
+		// Initialize a CategoryCounts for each annotator, including those of skipped CASes
+		for (int i = 0; i < annotatorIndex.size(); i++) {
+			annotatorCategoryCount.add(new CategoryCounts());
 		}
 		
-		SetCodingAnnotationStudy codingAnnotationStudy = new SetCodingAnnotationStudy(annotatorList.size(), SetSelectionStrategy.valueOf(pSetSelectionStrategy));
-		CountMap<String> globalCategoryOverlap = new CountMap<>();
-		for (int casIndex = 0; casIndex < maxCasIndex; casIndex++) {
-			if (perCasStudies.containsKey(casIndex) && perCasTokenCount.containsKey(casIndex)) { // FIXME: remove this check, as it is unnecessary
-				HashMap<String, HashMap<Integer, Set<String>>> perCasStudy = perCasStudies.get(casIndex);
-				for (int tokenIndex = 0; tokenIndex < perCasTokenCount.get(casIndex); tokenIndex++) {
-					// Holds the sets of annotations for this token per annotator
-					ArrayList<Set<String>> perTokenAnnotations = new ArrayList<>();
-					CountMap<String> categoryOverlap = new CountMap<>();
-					
-					// Bool to check if any annotator has an annotation over the current token
-					boolean any = false;
-					
-					// Get all annotations over the current token by index
-					for (String annotatorName : annotatorList) {
-						Set<String> category = perCasStudy
-								.getOrDefault(annotatorName, new HashMap<>())
-								.getOrDefault(tokenIndex, ImmutableSet.of(""));
-						perTokenAnnotations.add(category);
-						
-						if (!category.contains("")) {
-							any = true;
-							categories.addAll(category);
-							
-							// Statistics
-							globalCategoryCount.incAll(category);
-							annotatorCategoryCount.get(annotatorName).incAll(category);
-							categoryOverlap.incAll(category);
-						}
-					}
-					if (any) {
-						// Add the annotations to the study
-						codingAnnotationStudy.addItemSetsAsArray(perTokenAnnotations.toArray(new Set[0]));
-						
-						// Increase the overlap count for each category with more than one vote
-						categoryOverlap.forEach((o, integer) -> {
-							if (integer > 1) globalCategoryOverlap.inc(o);
-						});
-					}
+		if (streamCombined) {
+			// Merge the running statistics of all stripes
+			CodingAgreementAccumulator accumulator = new CodingAgreementAccumulator(pAgreementMeasure, SetSelectionStrategy.valueOf(pSetSelectionStrategy));
+			CategoryCounts globalCategoryOverlap = new CategoryCounts();
+			for (CombinedStudy combinedStudy : combinedStudies) {
+				accumulator.addAll(combinedStudy.accumulator);
+				globalCategoryCount.addAll(combinedStudy.categoryCount);
+				for (int i = 0; i < combinedStudy.annotatorCategoryCount.size(); i++) {
+					annotatorCategoryCount.get(i).addAll(combinedStudy.annotatorCategoryCount.get(i));
+				}
+				globalCategoryOverlap.addAll(combinedStudy.categoryOverlap);
+			}
+			
+			// The categories of other replicas are only known from their counts
+			for (int category = 0; category < globalCategoryCount.size(); category++) {
+				if (globalCategoryCount.get(category) > 0)
+					categories.set(category);
+			}
+			
+			CodingAgreementAccumulator.StreamedCodingAgreement agreement = accumulator.getAgreement(annotatorIndex.size());
+			printCombined(agreement, null, agreement.getUnitCount(), globalCategoryCount, annotatorCategoryCount, globalCategoryOverlap);
+			return;
+		}
+		
+		// Only the distinct label tuples and their counts are kept, which are evaluated by the weighted kernel
+		ClusteredCodingStudy clusteredStudy = pBootstrapSamples > 0 ? new ClusteredCodingStudy(annotatorIndex.size(), SetSelectionStrategy.valueOf(pSetSelectionStrategy)) : null;
+		WeightedCodingStudy weightedStudy = clusteredStudy != null ? clusteredStudy.getStudy() : new WeightedCodingStudy(annotatorIndex.size(), SetSelectionStrategy.valueOf(pSetSelectionStrategy));
+		CategoryCounts globalCategoryOverlap = new CategoryCounts();
+		int[][] perTokenAnnotations = new int[annotatorIndex.size()][];
+		for (CombinedStudy combinedStudy : combinedStudies) {
+			for (TokenLabelMatrix labelMatrix : combinedStudy.perCasStudies) {
+				for (int row = 0; row < labelMatrix.getRowCount(); row++) {
+					addTokenAnnotations(labelMatrix, row, perTokenAnnotations, globalCategoryCount, annotatorCategoryCount, globalCategoryOverlap);
+					if (clusteredStudy != null)
+						clusteredStudy.addItemSets(perTokenAnnotations);
+					else
+						weightedStudy.addItemSets(perTokenAnnotations);
 				}
+				
+				// Whole documents are resampled
+				if (clusteredStudy != null)
+					clusteredStudy.endCluster();
 			}
 		}
 		
 		// Compute agreement
-		IAgreementMeasure agreement = calcualteAgreement(codingAnnotationStudy, globalCategoryCount, annotatorCategoryCount, globalCategoryOverlap);
+		printCombined(calculateKernelAgreement(weightedStudy), estimateIntervals(clusteredStudy), weightedStudy.getUnitCount(), globalCategoryCount, annotatorCategoryCount, globalCategoryOverlap);
+	}
+	
+	private void printCombined(IAgreementMeasure agreement, BootstrapIntervals intervals, long unitCount, CategoryCounts globalCategoryCount, List<CategoryCounts> annotatorCategoryCount, CategoryCounts globalCategoryOverlap) {
 		if (pPrintStatistics) {
 			try {
-				CSVPrinter csvPrinter = getCsvPrinter(pAgreementMeasure + ".csv");
-				csvPrinter.printComment(String.format("%s, %s, COMBINED", pAgreementMeasure, pSetSelectionStrategy));
-				csvPrinter.printComment(String.format("Inter-annotator agreement for %d annotators: %s",
-						annotatorList.size(), annotatorList.toString()
-				));
-				// Print the agreement for all categories
-				csvPrinter.printRecord("Category", "Count", "Agreement");
-				csvPrinter.printRecord("Overall", codingAnnotationStudy.getUnitCount(), agreement.calculateAgreement());
-				printStudyResultsAndStatistics((ICategorySpecificAgreement) agreement, globalCategoryCount, annotatorCategoryCount, categories, annotatorList, csvPrinter);
-				printCategoryOverlap(globalCategoryOverlap, csvPrinter);
-				csvPrinter.flush();
+				writeResult(createResult(null, pAgreementMeasure, pSetSelectionStrategy, unitCount, agreement.calculateAgreement(),
+						(ICategorySpecificAgreement) agreement, intervals, globalCategoryCount, annotatorCategoryCount, categories, annotatorIndex.keySet(), globalCategoryOverlap));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 	
+	/**
+	 * Partial results of the combined study: the label matrices of all CASes or, if the combined study is streamed,
+	 * their running statistics.
+	 */
+	private static class CombinedStudy {
+		private SpillStore<TokenLabelMatrix> perCasStudies;
+		private CodingAgreementAccumulator accumulator;
+		private final CategoryCounts categoryCount = new CategoryCounts();
+		private final ArrayList<CategoryCounts> annotatorCategoryCount = new ArrayList<>();
+		private final CategoryCounts categoryOverlap = new CategoryCounts();
+	}
+	
+	/**
+	 * Collect the label sets of a single labelled token and update the statistics.
+	 *
+	 * @param perTokenAnnotations Buffer for the label sets of all annotators, reused between calls.
+	 */
+	private void addTokenAnnotations(TokenLabelMatrix labelMatrix, int row, int[][] perTokenAnnotations, CategoryCounts globalCategoryCount, List<CategoryCounts> annotatorCategoryCount, CategoryCounts globalCategoryOverlap) {
+		// Annotators without a view in this CAS did not annotate the token
+		Arrays.fill(perTokenAnnotations, TokenLabelMatrix.EMPTY);
+		for (int column = 0; column < labelMatrix.getColumnCount(); column++) {
+			int annotator = labelMatrix.getRater(column);
+			int[] category = labelMatrix.getLabels(row, column);
+			perTokenAnnotations[annotator] = category;
+			
+			for (int c : category) categories.set(c);
+			
+			// Statistics
+			globalCategoryCount.incAll(category);
+			annotatorCategoryCount.get(annotator).incAll(category);
+		}
+		
+		// Increase the overlap count for each category with more than one vote
+		for (int i = 0; i < perTokenAnnotations.length; i++) {
+			for (int category : perTokenAnnotations[i]) {
+				if (isFirstVote(perTokenAnnotations, i, category) && hasLaterVote(perTokenAnnotations, i, category))
+					globalCategoryOverlap.inc(category);
+			}
+		}
+	}
+	
+	private static boolean isFirstVote(int[][] perTokenAnnotations, int annotator, int category) {
+		for (int i = 0; i < annotator; i++) {
+			if (ArrayUtils.contains(perTokenAnnotations[i], category)) return false;
+		}
+		return true;
+	}
+	
+	private static boolean hasLaterVote(int[][] perTokenAnnotations, int annotator, int category) {
+		for (int i = annotator + 1; i < perTokenAnnotations.length; i++) {
+			if (ArrayUtils.contains(perTokenAnnotations[i], category)) return true;
+		}
+		return false;
+	}
+	
 	/**
 	 * Calculate the agreement for the given study and print the resulting statistics.
 	 *
@@ -470,7 +852,7 @@ public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine {
 	 * @param annotatorCategoryCount
 	 * @param globalCategoryOverlap
 	 */
-	IAgreementMeasure calcualteAgreement(SetCodingAnnotationStudy codingAnnotationStudy, CountMap<String> globalCategoryCount, HashMap<String, CountMap<String>> annotatorCategoryCount, CountMap<String> globalCategoryOverlap) {
+	IAgreementMeasure calcualteAgreement(SetCodingAnnotationStudy codingAnnotationStudy, CategoryCounts globalCategoryCount, List<CategoryCounts> annotatorCategoryCount, CategoryCounts globalCategoryOverlap) {
 		// Choose the agreement measure method
 		IAgreementMeasure agreement;
 		switch (pAgreementMeasure) {
@@ -495,15 +877,58 @@ public class CodingIAACollectionProcessingEngine extends AbstractIAAEngine {
 		return agreement;
 	}
 	
-	private void printCategoryOverlap(CountMap<String> globalCategoryOverlap, CSVPrinter csvPrinter) throws IOException {
-		csvPrinter.printComment("Inter-annotator category overlap");
-		csvPrinter.printRecord("Category", "Count");
-		Long totalOverlap = globalCategoryOverlap.values().stream().reduce(Long::sum).orElse(0L);
-		csvPrinter.printRecord("Total", totalOverlap.toString());
-		for (String category : categories) {
-			csvPrinter.printRecord(category, globalCategoryOverlap.getOrDefault(category, 0L).toString());
+	/**
+	 * Memoize the values of the given agreement measure. The per category values of a DKPro Statistics measure
+	 * rescan the study for each category, so they are computed by a {@link CodingAgreementKernel} on a copy of the
+	 * study instead, which evaluates all categories from a single pass over the items.
+	 *
+	 * @param agreement             The agreement measure.
+	 * @param codingAnnotationStudy The study of the agreement measure, or null if the measure is not computed by DKPro
+	 *                              Statistics.
+	 */
+	MemoizedAgreement memoizeAgreement(IAgreementMeasure agreement, SetCodingAnnotationStudy codingAnnotationStudy) {
+		if (codingAnnotationStudy == null)
+			return new MemoizedAgreement(agreement);
+		return new MemoizedAgreement(agreement, calculateKernelAgreement(IntCodingStudy.of(codingAnnotationStudy)));
+	}
+	
+	/**
+	 * Estimate the bootstrap intervals of the given study with the {@link CodingAgreementKernel}.
+	 *
+	 * @param clusteredStudy The study, or null if the bootstrap is disabled.
+	 */
+	private BootstrapIntervals estimateIntervals(ClusteredCodingStudy clusteredStudy) {
+		if (clusteredStudy == null)
+			return null;
+		return estimateIntervals(clusteredStudy.getClusterCount(), (weights, values) -> {
+			CodingAgreementKernel kernel = clusteredStudy.resample(pAgreementMeasure, weights);
+			values[0] = kernel.calculateAgreement();
+			for (int category = 0; category + 1 < values.length; category++) {
+				values[category + 1] = kernel.calculateCategoryAgreement(category);
+			}
+		});
+	}
+	
+	/**
+	 * Calculate the agreement for the given study with the {@link CodingAgreementKernel}.
+	 */
+	CodingAgreementKernel calculateKernelAgreement(IntCodingStudy intCodingStudy) {
+		checkRaterCount(intCodingStudy.getRaterCount());
+		return new CodingAgreementKernel(pAgreementMeasure, intCodingStudy);
+	}
+	
+	/**
+	 * Calculate the agreement for the given study with the weighted {@link CodingAgreementKernel}.
+	 */
+	CodingAgreementKernel calculateKernelAgreement(WeightedCodingStudy weightedStudy) {
+		checkRaterCount(weightedStudy.getRaterCount());
+		return weightedStudy.createKernel(pAgreementMeasure);
+	}
+	
+	private void checkRaterCount(int raterCount) {
+		if (CohenKappaAgreement.equals(pAgreementMeasure) && raterCount != 2) {
+			throw new UnsupportedOperationException(String.format("CohenKappaAgreement only supports exactly 2 annotators, not %d!", raterCount));
 		}
-		csvPrinter.println();
 	}
 	
 }
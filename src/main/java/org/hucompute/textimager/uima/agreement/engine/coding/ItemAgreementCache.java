@@ -0,0 +1,92 @@
+package org.hucompute.textimager.uima.agreement.engine.coding;
+
+import org.dkpro.statistics.agreement.coding.ICodingAnnotationItem;
+import org.dkpro.statistics.agreement.coding.ICodingAnnotationUnit;
+import org.dkpro.statistics.agreement.coding.ICodingItemSpecificAgreement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache of the item agreement of a single study.
+ * <p/>
+ * The agreement of an item only depends on the category of each rater, including the rater specific
+ * {@link SetCodingAnnotationStudy#getPlaceholder(int) placeholders}, and on the study as a whole. As most tokens of a
+ * study share a few label tuples, each distinct tuple is computed only once while it stays in the cache.
+ */
+public class ItemAgreementCache {
+	private final ICodingItemSpecificAgreement agreement;
+	private final LinkedHashMap<LabelTuple, Double> values;
+	private long hitCount = 0L;
+	private long missCount = 0L;
+
+	/**
+	 * @param agreement The agreement measure of the study.
+	 * @param capacity  The maximal number of cached tuples. Set to 0 to compute all items.
+	 */
+	public ItemAgreementCache(ICodingItemSpecificAgreement agreement, int capacity) {
+		this.agreement = agreement;
+		this.values = new LinkedHashMap<LabelTuple, Double>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<LabelTuple, Double> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @param item An item of the study.
+	 * @return The item agreement, as computed by {@link ICodingItemSpecificAgreement#calculateItemAgreement}.
+	 */
+	public double calculateItemAgreement(ICodingAnnotationItem item) {
+		LabelTuple key = new LabelTuple(item);
+		Double value = values.get(key);
+		if (value != null) {
+			hitCount++;
+			return value;
+		}
+		missCount++;
+		value = agreement.calculateItemAgreement(item);
+		values.put(key, value);
+		return value;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * The categories of an item by rater.
+	 */
+	private static final class LabelTuple {
+		private final Object[] categories;
+		private final int hashCode;
+
+		private LabelTuple(ICodingAnnotationItem item) {
+			ArrayList<Object> categories = new ArrayList<>();
+			for (ICodingAnnotationUnit unit : item.getUnits()) {
+				categories.add(unit.getCategory());
+			}
+			this.categories = categories.toArray();
+			hashCode = Arrays.hashCode(this.categories);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof LabelTuple
+					&& hashCode == ((LabelTuple) other).hashCode
+					&& Arrays.equals(categories, ((LabelTuple) other).categories);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
@@ -5,47 +5,31 @@ import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
 import org.dkpro.statistics.agreement.coding.CodingAnnotationStudy;
 import org.dkpro.statistics.agreement.coding.ICodingAnnotationItem;
-import org.dkpro.statistics.agreement.coding.KrippendorffAlphaAgreement;
-import org.dkpro.statistics.agreement.distance.NominalDistanceFunction;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class SetCodingAnnotationStudy extends CodingAnnotationStudy {
 	
 	private SetSelectionStrategy setSelectionStrategy = SetSelectionStrategy.MAX;
-	private final KrippendorffAlphaAgreement krippendorffAlphaAgreement;
-	private final CodingAnnotationStudy dummyStudy;
-	private final Comparator<List<String>> sortByAgreement;
 	
 	public SetCodingAnnotationStudy() {
 		super();
-		dummyStudy = new CodingAnnotationStudy(2);
-		krippendorffAlphaAgreement = new KrippendorffAlphaAgreement(dummyStudy, new NominalDistanceFunction());
-		sortByAgreement = Comparator.comparingDouble(this::getItemAgreement);
 	}
 	
 	public SetCodingAnnotationStudy(int raterCount) {
 		super(raterCount);
-		dummyStudy = new CodingAnnotationStudy(raterCount);
-		krippendorffAlphaAgreement = new KrippendorffAlphaAgreement(dummyStudy, new NominalDistanceFunction());
-		sortByAgreement = Comparator.comparingDouble(this::getItemAgreement);
 	}
 	
 	public SetCodingAnnotationStudy(SetSelectionStrategy strategy) {
 		super();
 		setSelectionStrategy = strategy;
-		dummyStudy = new CodingAnnotationStudy(2);
-		krippendorffAlphaAgreement = new KrippendorffAlphaAgreement(dummyStudy, new NominalDistanceFunction());
-		sortByAgreement = Comparator.comparingDouble(this::getItemAgreement);
 	}
 	
 	public SetCodingAnnotationStudy(int raterCount, SetSelectionStrategy strategy) {
 		super(raterCount);
-		dummyStudy = new CodingAnnotationStudy(raterCount);
 		setSelectionStrategy = strategy;
-		krippendorffAlphaAgreement = new KrippendorffAlphaAgreement(dummyStudy, new NominalDistanceFunction());
-		sortByAgreement = Comparator.comparingDouble(this::getItemAgreement);
 	}
 	
 	public ICodingAnnotationItem[] addItemSets(Set<String>... annotations) {
@@ -53,11 +37,10 @@ public class SetCodingAnnotationStudy extends CodingAnnotationStudy {
 	}
 	
 	public ICodingAnnotationItem[] addItemSetsAsArray(Set<String>[] annotations) {
-		Set<List<String>> cartesianProduct = Sets.cartesianProduct(Lists.newArrayList(annotations));
 		ArrayList<ICodingAnnotationItem> items = new ArrayList<>();
 		switch (setSelectionStrategy) {
 			case ALL:
-				cartesianProduct.forEach(item -> items.add(this.addItemAsArray(getAnnotations(item))));
+				Sets.cartesianProduct(Lists.newArrayList(annotations)).forEach(item -> items.add(this.addItemAsArray(getAnnotations(item))));
 				return items.toArray(new ICodingAnnotationItem[0]);
 			case MATCH:
 				ArrayList<HashSet<String>> annotationSets = new ArrayList<>();
@@ -80,11 +63,280 @@ public class SetCodingAnnotationStudy extends CodingAnnotationStudy {
 				return items.toArray(new ICodingAnnotationItem[0]);
 			case MAX:
 			default:
-				TreeSet<List<String>> treeSet = new TreeSet<>(sortByAgreement);
-				treeSet.addAll(cartesianProduct);
-				List<String> last = treeSet.last();
-				ICodingAnnotationItem maxAgreementItem = this.addItemAsArray(getAnnotations(last));
-				return new ICodingAnnotationItem[]{maxAgreementItem};
+				// Map the categories to ids, empty categories to the placeholder of their rater
+				HashMap<String, Integer> categoryIds = new HashMap<>();
+				ArrayList<List<String>> annotationLists = new ArrayList<>();
+				int[][] categories = new int[annotations.length][];
+				for (int i = 0; i < annotations.length; i++) {
+					List<String> annotationList = new ArrayList<>(annotations[i]);
+					annotationLists.add(annotationList);
+					categories[i] = new int[annotationList.size()];
+					for (int j = 0; j < categories[i].length; j++) {
+						String category = annotationList.get(j);
+						if (StringUtils.isEmpty(category)) {
+							categories[i][j] = getPlaceholder(i);
+						} else {
+							categories[i][j] = categoryIds.computeIfAbsent(category, key -> categoryIds.size());
+						}
+					}
+				}
+				int[] maxChoice = selectMaxChoice(categories);
+				ArrayList<String> item = new ArrayList<>();
+				for (int i = 0; i < annotations.length; i++) {
+					item.add(categories[i].length == 0 ? null : annotationLists.get(i).get(maxChoice[i]));
+				}
+				return new ICodingAnnotationItem[]{this.addItemAsArray(getAnnotations(item))};
+		}
+	}
+	
+	/**
+	 * Add items for the given sets of {@link org.hucompute.textimager.uima.agreement.engine.CategoryDictionary category ids}
+	 * according to the {@link SetSelectionStrategy}.
+	 * An empty set denotes a rater without annotation, who is assigned a rater specific placeholder category instead.
+	 *
+	 * @param annotations The distinct category ids of each rater.
+	 * @return The items added to this study.
+	 */
+	public ICodingAnnotationItem[] addItemSetsAsArray(int[][] annotations) {
+		ArrayList<ICodingAnnotationItem> items = new ArrayList<>();
+		selectItems(annotations, setSelectionStrategy, item -> {
+			Object[] categories = new Object[item.length];
+			for (int i = 0; i < item.length; i++) {
+				categories[i] = item[i];
+			}
+			items.add(this.addItemAsArray(categories));
+		});
+		return items.toArray(new ICodingAnnotationItem[0]);
+	}
+	
+	/**
+	 * Select the items for the given sets of category ids according to the {@link SetSelectionStrategy}, as they are
+	 * added by {@link #addItemSetsAsArray(int[][])}.
+	 *
+	 * @param annotations The distinct category ids of each rater, empty for raters without annotation.
+	 * @param strategy    The strategy.
+	 * @param consumer    Receives the category of each rater of each selected item, in order.
+	 */
+	public static void selectItems(int[][] annotations, SetSelectionStrategy strategy, Consumer<int[]> consumer) {
+		switch (strategy) {
+			case ALL:
+				int[] choice = new int[annotations.length];
+				do {
+					consumer.accept(getItem(annotations, choice));
+				} while (nextChoice(annotations, choice));
+				break;
+			case MATCH:
+				selectMatchingItems(annotations, consumer);
+				break;
+			case MAX:
+			default:
+				consumer.accept(getItem(annotations, selectMaxChoice(annotations)));
+				break;
+		}
+	}
+	
+	/**
+	 * Select one item per category annotated by any rater, in which all raters who did not annotate the category are
+	 * assigned their placeholder. If any rater has no annotation at all, an item of placeholders is selected as well.
+	 */
+	private static void selectMatchingItems(int[][] annotations, Consumer<int[]> consumer) {
+		boolean anyEmpty = false;
+		for (int rater = 0; rater < annotations.length; rater++) {
+			anyEmpty |= annotations[rater].length == 0;
+			for (int category : annotations[rater]) {
+				// Skip categories which were already added for a previous rater
+				boolean added = false;
+				for (int previous = 0; previous < rater && !added; previous++) {
+					added = contains(annotations[previous], category);
+				}
+				if (added) continue;
+				
+				int[] item = new int[annotations.length];
+				for (int i = 0; i < annotations.length; i++) {
+					item[i] = contains(annotations[i], category) ? category : getPlaceholder(i);
+				}
+				consumer.accept(item);
+			}
+		}
+		if (anyEmpty) {
+			int[] item = new int[annotations.length];
+			for (int i = 0; i < annotations.length; i++) {
+				item[i] = getPlaceholder(i);
+			}
+			consumer.accept(item);
+		}
+	}
+	
+	private static boolean contains(int[] categories, int category) {
+		for (int other : categories) {
+			if (other == category) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Advance the given choice to the next tuple of the cartesian product of the given sets, with the last rater
+	 * changing fastest. Empty sets are treated as if they contained a single placeholder.
+	 *
+	 * @return False, if the given choice was the last tuple.
+	 */
+	private static boolean nextChoice(int[][] annotations, int[] choice) {
+		for (int i = choice.length - 1; i >= 0; i--) {
+			if (choice[i] + 1 < annotations[i].length) {
+				choice[i]++;
+				return true;
+			}
+			choice[i] = 0;
+		}
+		return false;
+	}
+	
+	@Nonnull
+	private static int[] getItem(int[][] annotations, int[] choice) {
+		int[] item = new int[annotations.length];
+		for (int i = 0; i < annotations.length; i++) {
+			item[i] = annotations[i].length == 0 ? getPlaceholder(i) : annotations[i][choice[i]];
+		}
+		return item;
+	}
+	
+	/**
+	 * The category id replacing an empty annotation of the given rater. Negative, so it never collides with an id of the
+	 * {@link org.hucompute.textimager.uima.agreement.engine.CategoryDictionary CategoryDictionary}.
+	 *
+	 * @param rater The rater index.
+	 * @return The placeholder category of the rater.
+	 */
+	public static Integer getPlaceholder(int rater) {
+		return -(rater + 1);
+	}
+	
+	/**
+	 * Select the tuple of the cartesian product of the given sets with the highest nominal item agreement, i.e. the
+	 * most agreeing rater pairs <i>&Sigma;<sub>c</sub> n<sub>c</sub>(n<sub>c</sub> - 1)</i>, for <i>n<sub>c</sub></i>
+	 * raters choosing category <i>c</i>. Ties are broken by the lexicographic order of the product.
+	 * <p/>
+	 * Instead of enumerating the product, the raters are searched depth first, starting from the pairs of a greedy
+	 * plurality choice. Branches are pruned, if the remaining raters can not add enough pairs to exceed the best tuple.
+	 *
+	 * @param annotations The distinct category ids of each rater. Empty sets are placeholders, which never agree.
+	 * @return The index of the chosen category of each rater, zero for empty sets.
+	 */
+	static int[] selectMaxChoice(int[][] annotations) {
+		MaxChoiceSearch search = new MaxChoiceSearch(annotations);
+		search.search(0, 0L);
+		return search.maxChoice;
+	}
+	
+	private static class MaxChoiceSearch {
+		// Dense local indices of the categories of each rater
+		private final int[][] categories;
+		// Number of raters from the given rater onwards, who annotated each local category
+		private final int[][] suffixCounts;
+		private final int[] counts;
+		private final int[] choice;
+		private int[] maxChoice;
+		private long maxPairs;
+		
+		private MaxChoiceSearch(int[][] annotations) {
+			HashMap<Integer, Integer> localIndex = new HashMap<>();
+			categories = new int[annotations.length][];
+			for (int i = 0; i < annotations.length; i++) {
+				categories[i] = new int[annotations[i].length];
+				for (int j = 0; j < annotations[i].length; j++) {
+					Integer index = localIndex.get(annotations[i][j]);
+					if (index == null) {
+						index = localIndex.size();
+						localIndex.put(annotations[i][j], index);
+					}
+					categories[i][j] = index;
+				}
+			}
+			
+			suffixCounts = new int[annotations.length + 1][localIndex.size()];
+			for (int i = annotations.length - 1; i >= 0; i--) {
+				System.arraycopy(suffixCounts[i + 1], 0, suffixCounts[i], 0, localIndex.size());
+				for (int category : categories[i]) {
+					suffixCounts[i][category]++;
+				}
+			}
+			counts = new int[localIndex.size()];
+			choice = new int[annotations.length];
+			maxChoice = new int[annotations.length];
+			
+			// Any tuple with at least the pairs of the greedy choice replaces this bound
+			maxPairs = getGreedyPairs() - 1L;
+		}
+		
+		/**
+		 * @return The pairs of repeatedly choosing the category of most remaining raters.
+		 */
+		private long getGreedyPairs() {
+			boolean[] assigned = new boolean[categories.length];
+			long pairs = 0L;
+			while (true) {
+				int[] votes = new int[counts.length];
+				int max = 0;
+				int maxCategory = -1;
+				for (int i = 0; i < categories.length; i++) {
+					if (assigned[i]) continue;
+					for (int category : categories[i]) {
+						if (++votes[category] > max) {
+							max = votes[category];
+							maxCategory = category;
+						}
+					}
+				}
+				if (max < 2) return pairs;
+				pairs += (long) max * (max - 1);
+				for (int i = 0; i < categories.length; i++) {
+					if (!assigned[i] && contains(categories[i], maxCategory)) assigned[i] = true;
+				}
+			}
+		}
+		
+		private void search(int rater, long pairs) {
+			if (rater == categories.length) {
+				if (pairs > maxPairs) {
+					maxPairs = pairs;
+					maxChoice = choice.clone();
+				}
+				return;
+			}
+			if (pairs + getPairBound(rater) <= maxPairs)
+				return;
+			
+			if (categories[rater].length == 0) {
+				search(rater + 1, pairs);
+				return;
+			}
+			for (int j = 0; j < categories[rater].length; j++) {
+				int category = categories[rater][j];
+				choice[rater] = j;
+				// Joining a group of k raters adds 2k ordered pairs
+				pairs += 2L * counts[category];
+				counts[category]++;
+				search(rater + 1, pairs);
+				counts[category]--;
+				pairs -= 2L * counts[category];
+			}
+			choice[rater] = 0;
+		}
+		
+		/**
+		 * @return An upper bound of the pairs added by the given and all following raters. Each of them can at most join
+		 * the current group of a category and all raters between them, who also annotated the category.
+		 */
+		private long getPairBound(int rater) {
+			long bound = 0L;
+			for (int i = rater; i < categories.length; i++) {
+				int max = 0;
+				for (int category : categories[i]) {
+					max = Math.max(max, counts[category] + suffixCounts[rater][category] - suffixCounts[i][category]);
+				}
+				bound += 2L * max;
+			}
+			return bound;
 		}
 	}
 	
@@ -104,14 +356,4 @@ public class SetCodingAnnotationStudy extends CodingAnnotationStudy {
 		}
 		return annotations;
 	}
-	
-	/**
-	 * Calculate the agreement for a given unit.
-	 *
-	 * @param strings The category strings of the given unit.
-	 * @return The agreement value.
-	 */
-	private double getItemAgreement(final List<String> strings) {
-		return krippendorffAlphaAgreement.calculateItemAgreement(dummyStudy.addItemAsArray(getAnnotations(strings)));
-	}
 }
@@ -0,0 +1,294 @@
+package org.hucompute.textimager.uima.agreement.engine.coding;
+
+import org.hucompute.textimager.uima.agreement.engine.SpillStore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Packed token &times; rater matrix of {@link org.hucompute.textimager.uima.agreement.engine.CategoryDictionary category ids}
+ * for a single CAS.
+ * <p/>
+ * Only tokens with at least one label are stored as rows. Each cell holds up to two labels inline in two parallel int
+ * arrays; cells with more labels point to an overflow array. Columns are the raters of the CAS, which are mapped to
+ * global rater indices.
+ */
+public class TokenLabelMatrix {
+	static final int[] EMPTY = new int[0];
+	private static volatile int[][] singletons = new int[0][];
+
+	private final int tokenCount;
+	private final int[] raters;
+	private final int[] tokens;
+
+	/**
+	 * First label + 1 of each cell, zero if the cell is empty.
+	 */
+	private final int[] first;
+
+	/**
+	 * Second label + 1 of each cell, zero if the cell has at most one label. If negative, all labels of the cell are
+	 * stored at the position -(second + 1) in {@link #overflow}, prefixed by their count.
+	 */
+	private final int[] second;
+	private final int[] overflow;
+
+	private TokenLabelMatrix(int tokenCount, int[] raters, int[] tokens, int[] first, int[] second, int[] overflow) {
+		this.tokenCount = tokenCount;
+		this.raters = raters;
+		this.tokens = tokens;
+		this.first = first;
+		this.second = second;
+		this.overflow = overflow;
+	}
+
+	/**
+	 * @return The number of tokens of the CAS, including those without labels.
+	 */
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * @return The number of tokens with at least one label.
+	 */
+	public int getRowCount() {
+		return tokens.length;
+	}
+
+	/**
+	 * @return The token index of the given row.
+	 */
+	public int getToken(int row) {
+		return tokens[row];
+	}
+
+	public int getColumnCount() {
+		return raters.length;
+	}
+
+	/**
+	 * @return The global rater index of the given column.
+	 */
+	public int getRater(int column) {
+		return raters[column];
+	}
+
+	/**
+	 * @return The number of distinct labels in the given cell.
+	 */
+	public int getLabelCount(int row, int column) {
+		int cell = row * raters.length + column;
+		if (first[cell] == 0) return 0;
+		if (second[cell] == 0) return 1;
+		if (second[cell] > 0) return 2;
+		return overflow[-second[cell] - 1];
+	}
+
+	/**
+	 * @return The distinct labels of the given cell. The returned array must not be modified, as it may be shared.
+	 */
+	public int[] getLabels(int row, int column) {
+		int cell = row * raters.length + column;
+		if (first[cell] == 0)
+			return EMPTY;
+		if (second[cell] == 0)
+			return singleton(first[cell] - 1);
+		if (second[cell] > 0)
+			return new int[]{first[cell] - 1, second[cell] - 1};
+		int offset = -second[cell] - 1;
+		return Arrays.copyOfRange(overflow, offset + 1, offset + 1 + overflow[offset]);
+	}
+
+	/**
+	 * @return A shared single element array.
+	 */
+	static int[] singleton(int label) {
+		int[][] cache = singletons;
+		if (label >= cache.length) {
+			synchronized (TokenLabelMatrix.class) {
+				cache = singletons;
+				if (label >= cache.length) {
+					int[][] grown = Arrays.copyOf(cache, Math.max(label + 1, 2 * cache.length));
+					for (int i = cache.length; i < grown.length; i++) {
+						grown[i] = new int[]{i};
+					}
+					singletons = cache = grown;
+				}
+			}
+		}
+		return cache[label];
+	}
+
+	/**
+	 * @param raterMap Maps the rater indices of this matrix to new ones.
+	 * @param labelMap Maps the labels of this matrix to new ones. Must be injective.
+	 * @return A copy of this matrix with remapped raters and labels.
+	 */
+	public TokenLabelMatrix remap(int[] raterMap, int[] labelMap) {
+		int[] mappedRaters = new int[raters.length];
+		for (int column = 0; column < raters.length; column++) {
+			mappedRaters[column] = raterMap[raters[column]];
+		}
+		int[] mappedFirst = new int[first.length];
+		int[] mappedSecond = new int[second.length];
+		for (int cell = 0; cell < first.length; cell++) {
+			mappedFirst[cell] = first[cell] > 0 ? labelMap[first[cell] - 1] + 1 : 0;
+			mappedSecond[cell] = second[cell] > 0 ? labelMap[second[cell] - 1] + 1 : second[cell];
+		}
+		int[] mappedOverflow = overflow.clone();
+		for (int offset = 0; offset < overflow.length; offset += overflow[offset] + 1) {
+			for (int i = offset + 1; i <= offset + overflow[offset]; i++) {
+				mappedOverflow[i] = labelMap[overflow[i]];
+			}
+		}
+		return new TokenLabelMatrix(tokenCount, mappedRaters, tokens, mappedFirst, mappedSecond, mappedOverflow);
+	}
+
+	/**
+	 * Codec for spilling matrices to disk.
+	 */
+	public static final SpillStore.Codec<TokenLabelMatrix> CODEC = new SpillStore.Codec<TokenLabelMatrix>() {
+		@Override
+		public int getEncodedSize(TokenLabelMatrix matrix) {
+			return Integer.BYTES + matrix.getArrays().mapToInt(SpillStore.INT_ARRAY::getEncodedSize).sum();
+		}
+
+		@Override
+		public long getHeapSize(TokenLabelMatrix matrix) {
+			return 32L + matrix.getArrays().mapToLong(SpillStore.INT_ARRAY::getHeapSize).sum();
+		}
+
+		@Override
+		public void write(TokenLabelMatrix matrix, ByteBuffer buffer) {
+			buffer.putInt(matrix.tokenCount);
+			matrix.getArrays().forEachOrdered(array -> SpillStore.INT_ARRAY.write(array, buffer));
+		}
+
+		@Override
+		public TokenLabelMatrix read(ByteBuffer buffer) {
+			int tokenCount = buffer.getInt();
+			return new TokenLabelMatrix(tokenCount,
+					SpillStore.INT_ARRAY.read(buffer),
+					SpillStore.INT_ARRAY.read(buffer),
+					SpillStore.INT_ARRAY.read(buffer),
+					SpillStore.INT_ARRAY.read(buffer),
+					SpillStore.INT_ARRAY.read(buffer));
+		}
+	};
+
+	private Stream<int[]> getArrays() {
+		return Stream.of(raters, tokens, first, second, overflow);
+	}
+
+	/**
+	 * Collects the labels of one CAS column by column.
+	 */
+	public static class Builder {
+		private final int tokenCount;
+		private int[] raters = EMPTY;
+		private int[][] first = new int[0][];
+		private int[][] second = new int[0][];
+		private int[][][] overflow = new int[0][][];
+
+		public Builder(int tokenCount) {
+			this.tokenCount = tokenCount;
+		}
+
+		/**
+		 * Add a column for the given rater.
+		 *
+		 * @param rater The global rater index.
+		 * @return The column index.
+		 */
+		public int addRater(int rater) {
+			int column = raters.length;
+			raters = Arrays.copyOf(raters, column + 1);
+			raters[column] = rater;
+			first = Arrays.copyOf(first, column + 1);
+			first[column] = new int[tokenCount];
+			second = Arrays.copyOf(second, column + 1);
+			second[column] = new int[tokenCount];
+			overflow = Arrays.copyOf(overflow, column + 1);
+			return column;
+		}
+
+		/**
+		 * Add a label to a cell, if it is not already present.
+		 */
+		public void add(int column, int token, int label) {
+			int[] firstColumn = first[column];
+			int[] secondColumn = second[column];
+			if (firstColumn[token] == 0) {
+				firstColumn[token] = label + 1;
+			} else if (firstColumn[token] != label + 1) {
+				if (secondColumn[token] == 0) {
+					secondColumn[token] = label + 1;
+				} else if (secondColumn[token] != label + 1) {
+					// Rare case of three or more labels, keep them in a sparse array per column
+					if (overflow[column] == null)
+						overflow[column] = new int[tokenCount][];
+					int[] labels = overflow[column][token];
+					if (labels == null) {
+						overflow[column][token] = new int[]{label};
+					} else {
+						for (int other : labels) {
+							if (other == label) return;
+						}
+						overflow[column][token] = Arrays.copyOf(labels, labels.length + 1);
+						overflow[column][token][labels.length] = label;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return The matrix of all rows with at least one label.
+		 */
+		public TokenLabelMatrix build() {
+			int columns = raters.length;
+			int rowCount = 0;
+			for (int token = 0; token < tokenCount; token++) {
+				if (isLabelled(token)) rowCount++;
+			}
+
+			int[] tokens = new int[rowCount];
+			int[] packedFirst = new int[rowCount * columns];
+			int[] packedSecond = new int[rowCount * columns];
+			int[] packedOverflow = EMPTY;
+			int overflowSize = 0;
+			int row = 0;
+			for (int token = 0; token < tokenCount; token++) {
+				if (!isLabelled(token)) continue;
+				tokens[row] = token;
+				for (int column = 0; column < columns; column++) {
+					int cell = row * columns + column;
+					packedFirst[cell] = first[column][token];
+					packedSecond[cell] = second[column][token];
+					int[] extra = overflow[column] != null ? overflow[column][token] : null;
+					if (extra != null) {
+						int count = 2 + extra.length;
+						if (overflowSize + count + 1 > packedOverflow.length)
+							packedOverflow = Arrays.copyOf(packedOverflow, Math.max(overflowSize + count + 1, 2 * packedOverflow.length));
+						packedOverflow[overflowSize] = count;
+						packedOverflow[overflowSize + 1] = first[column][token] - 1;
+						packedOverflow[overflowSize + 2] = second[column][token] - 1;
+						System.arraycopy(extra, 0, packedOverflow, overflowSize + 3, extra.length);
+						packedSecond[cell] = -(overflowSize + 1);
+						overflowSize += count + 1;
+					}
+				}
+				row++;
+			}
+			return new TokenLabelMatrix(tokenCount, raters, tokens, packedFirst, packedSecond, Arrays.copyOf(packedOverflow, overflowSize));
+		}
+
+		private boolean isLabelled(int token) {
+			for (int[] column : first) {
+				if (column[token] != 0) return true;
+			}
+			return false;
+		}
+	}
+}
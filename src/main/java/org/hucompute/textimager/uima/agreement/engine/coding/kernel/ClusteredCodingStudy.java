@@ -0,0 +1,101 @@
+package org.hucompute.textimager.uima.agreement.engine.coding.kernel;
+
+import org.hucompute.textimager.uima.agreement.engine.coding.SetCodingAnnotationStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Coding study for the {@link org.hucompute.textimager.uima.agreement.engine.BootstrapIntervals bootstrap}, whose
+ * items are grouped into clusters, which are resampled as a whole, e.g. the items of a token or of a document.
+ * <p/>
+ * Each distinct item is stored once in a {@link WeightedCodingStudy}, and each cluster as the number of its occurrences
+ * of each distinct item. A resampled study is then evaluated from the weighted distinct items, independent of the
+ * number of tokens.
+ */
+public class ClusteredCodingStudy {
+	private final WeightedCodingStudy study;
+	private final SetSelectionStrategy setSelectionStrategy;
+
+	/**
+	 * The distinct item ids and their counts of each cluster.
+	 */
+	private int[][] clusterItems = new int[16][];
+	private int[][] clusterCounts = new int[16][];
+	private int clusterCount = 0;
+
+	/**
+	 * The counts of the current cluster by distinct item id.
+	 */
+	private final HashMap<Integer, Integer> currentCluster = new HashMap<>();
+
+	public ClusteredCodingStudy(int raterCount, SetSelectionStrategy setSelectionStrategy) {
+		this.study = new WeightedCodingStudy(raterCount, null);
+		this.setSelectionStrategy = setSelectionStrategy;
+	}
+
+	/**
+	 * Add the items for the given sets of category ids to the current cluster, as
+	 * {@link SetCodingAnnotationStudy#addItemSetsAsArray(int[][])}.
+	 *
+	 * @param annotations The distinct category ids of each rater, empty for raters without annotation.
+	 */
+	public void addItemSets(int[][] annotations) {
+		SetCodingAnnotationStudy.selectItems(annotations, setSelectionStrategy, item -> currentCluster.merge(study.addItem(item), 1, Integer::sum));
+	}
+
+	/**
+	 * Complete the current cluster. Empty clusters are dropped.
+	 */
+	public void endCluster() {
+		if (currentCluster.isEmpty())
+			return;
+		if (clusterCount == clusterItems.length) {
+			clusterItems = Arrays.copyOf(clusterItems, 2 * clusterCount);
+			clusterCounts = Arrays.copyOf(clusterCounts, 2 * clusterCount);
+		}
+		int[] items = new int[currentCluster.size()];
+		int[] counts = new int[currentCluster.size()];
+		int i = 0;
+		for (HashMap.Entry<Integer, Integer> entry : currentCluster.entrySet()) {
+			items[i] = entry.getKey();
+			counts[i++] = entry.getValue();
+		}
+		clusterItems[clusterCount] = items;
+		clusterCounts[clusterCount++] = counts;
+		currentCluster.clear();
+	}
+
+	public int getClusterCount() {
+		return clusterCount;
+	}
+
+	/**
+	 * @return The study of all items, each cluster drawn once.
+	 */
+	public WeightedCodingStudy getStudy() {
+		return study;
+	}
+
+	/**
+	 * @param agreementMeasure One of the measures of the
+	 *                         {@link org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine}.
+	 * @param clusterWeights   The number of times each cluster is drawn.
+	 * @return The kernel of the resampled study.
+	 */
+	public CodingAgreementKernel resample(String agreementMeasure, int[] clusterWeights) {
+		long[] itemWeights = new long[study.getDistinctItemCount()];
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			int weight = clusterWeights[cluster];
+			if (weight == 0)
+				continue;
+			int[] items = clusterItems[cluster];
+			int[] counts = clusterCounts[cluster];
+			for (int i = 0; i < items.length; i++) {
+				itemWeights[items[i]] += (long) weight * counts[i];
+			}
+		}
+		return study.createKernel(agreementMeasure, itemWeights);
+	}
+}
@@ -0,0 +1,192 @@
+package org.hucompute.textimager.uima.agreement.engine.coding.kernel;
+
+import org.dkpro.statistics.agreement.IAgreementMeasure;
+import org.dkpro.statistics.agreement.ICategorySpecificAgreement;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+
+import java.util.Arrays;
+
+/**
+ * Computes the coding agreement measures of an {@link IntCodingStudy} from primitive arrays, equivalent to the DKPro
+ * Statistics implementations with the nominal distance function.
+ * <p/>
+ * All statistics are collected in a single pass over the items into a dense category &times; category coincidence
+ * matrix <i>o<sub>ck</sub> = &Sigma;<sub>u</sub> n<sub>uc</sub>(n<sub>uk</sub> - [c = k])</i>, for <i>n<sub>uc</sub></i>
+ * raters assigning category <i>c</i> to item <i>u</i>, together with the category marginals of each rater.
+ * Placeholders are dense categories of their own, which only their rater assigns.
+ */
+public class CodingAgreementKernel implements IAgreementMeasure, ICategorySpecificAgreement {
+	private final String agreementMeasure;
+	private final int raterCount;
+	private final long itemCount;
+	private final int denseCount;
+
+	/**
+	 * Coincidences by dense category pair, not yet divided by <i>n - 1</i>.
+	 */
+	private final long[] coincidences;
+	private final long[] marginals;
+	private final long[] squares;
+	private final long[] raterMarginals;
+
+	/**
+	 * @param agreementMeasure One of the measures of the {@link CodingIAACollectionProcessingEngine}.
+	 * @param study            The study.
+	 */
+	public CodingAgreementKernel(String agreementMeasure, IntCodingStudy study) {
+		this(agreementMeasure, study, null);
+	}
+
+	/**
+	 * @param agreementMeasure One of the measures of the {@link CodingIAACollectionProcessingEngine}.
+	 * @param study            The study.
+	 * @param itemWeights      The number of times each item of the study is counted, or null to count each once.
+	 */
+	public CodingAgreementKernel(String agreementMeasure, IntCodingStudy study, long[] itemWeights) {
+		this.agreementMeasure = agreementMeasure;
+		this.raterCount = study.getRaterCount();
+		this.itemCount = itemWeights != null ? Arrays.stream(itemWeights).sum() : study.getItemCount();
+
+		int maxCategory = -1;
+		for (int item = 0; item < study.getItemCount(); item++) {
+			for (int rater = 0; rater < raterCount; rater++) {
+				maxCategory = Math.max(maxCategory, study.getCategory(item, rater));
+			}
+		}
+		denseCount = raterCount + maxCategory + 1;
+		coincidences = new long[denseCount * denseCount];
+		marginals = new long[denseCount];
+		squares = new long[denseCount];
+		raterMarginals = new long[raterCount * denseCount];
+
+		int[] counts = new int[denseCount];
+		int[] present = new int[raterCount];
+		for (int item = 0; item < study.getItemCount(); item++) {
+			long weight = itemWeights != null ? itemWeights[item] : 1L;
+			if (weight == 0L)
+				continue;
+			int presentCount = 0;
+			for (int rater = 0; rater < raterCount; rater++) {
+				int category = getDenseIndex(study.getCategory(item, rater));
+				if (counts[category]++ == 0)
+					present[presentCount++] = category;
+				raterMarginals[rater * denseCount + category] += weight;
+			}
+			for (int i = 0; i < presentCount; i++) {
+				int c = present[i];
+				long count = counts[c];
+				marginals[c] += weight * count;
+				squares[c] += weight * count * count;
+				coincidences[c * denseCount + c] += weight * count * (count - 1);
+				for (int j = 0; j < presentCount; j++) {
+					if (i != j)
+						coincidences[c * denseCount + present[j]] += weight * count * counts[present[j]];
+				}
+			}
+			for (int i = 0; i < presentCount; i++) {
+				counts[present[i]] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Placeholders of the raters come first, followed by the category ids.
+	 */
+	private int getDenseIndex(int category) {
+		return category < 0 ? -category - 1 : raterCount + category;
+	}
+
+	public long getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * @return The number of annotation units, one per rater and item.
+	 */
+	public long getUnitCount() {
+		return itemCount * raterCount;
+	}
+
+	@Override
+	public double calculateAgreement() {
+		double pairs = (double) itemCount * raterCount * (raterCount - 1);
+		double n = (double) itemCount * raterCount;
+		double observedAgreement = 0.0;
+		double squaredMarginals = 0.0;
+		for (int c = 0; c < denseCount; c++) {
+			observedAgreement += coincidences[c * denseCount + c];
+			squaredMarginals += (double) marginals[c] * marginals[c];
+		}
+
+		switch (agreementMeasure) {
+			case CodingIAACollectionProcessingEngine.PercentageAgreement:
+				return observedAgreement / pairs;
+			case CodingIAACollectionProcessingEngine.CohenKappaAgreement: {
+				// Placeholders are only assigned by their own rater, so they never contribute to the product
+				double expectedAgreement = 0.0;
+				for (int c = 0; c < denseCount; c++) {
+					double product = 1.0;
+					for (int rater = 0; rater < raterCount; rater++) {
+						product *= raterMarginals[rater * denseCount + c];
+					}
+					expectedAgreement += product;
+				}
+				expectedAgreement /= (double) itemCount * itemCount;
+				return (observedAgreement / pairs - expectedAgreement) / (1.0 - expectedAgreement);
+			}
+			case CodingIAACollectionProcessingEngine.FleissKappaAgreement: {
+				double expectedAgreement = squaredMarginals / (n * n);
+				return (observedAgreement / pairs - expectedAgreement) / (1.0 - expectedAgreement);
+			}
+			case CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement:
+			default: {
+				double disagreeingPairs = 0.0;
+				for (int c = 0; c < denseCount; c++) {
+					for (int k = 0; k < denseCount; k++) {
+						if (c != k) disagreeingPairs += coincidences[c * denseCount + k];
+					}
+				}
+				double observedDisagreement = disagreeingPairs / pairs;
+				double expectedDisagreement = (n * n - squaredMarginals) / (n * (n - 1.0));
+				return 1.0 - observedDisagreement / expectedDisagreement;
+			}
+		}
+	}
+
+	/**
+	 * Percentage agreement reports the specific agreement of the category, i.e. the share of agreeing pairs among
+	 * all pairs involving the category. Cohen's kappa reports the category kappa of DKPro Statistics, which equals
+	 * Fleiss' category kappa.
+	 *
+	 * @param category The category id.
+	 */
+	@Override
+	public double calculateCategoryAgreement(Object category) {
+		int id = (Integer) category;
+		int c = getDenseIndex(id);
+		double n = (double) itemCount * raterCount;
+		double marginal = c < denseCount ? marginals[c] : 0.0;
+		double squares = c < denseCount ? this.squares[c] : 0.0;
+		switch (agreementMeasure) {
+			case CodingIAACollectionProcessingEngine.PercentageAgreement:
+				return (squares - marginal) / (marginal * (raterCount - 1));
+			case CodingIAACollectionProcessingEngine.CohenKappaAgreement:
+			case CodingIAACollectionProcessingEngine.FleissKappaAgreement: {
+				double p = marginal / n;
+				double pairAgreement = (squares - n * p) / (n * (raterCount - 1) * p);
+				return (pairAgreement - p) / (1.0 - p);
+			}
+			case CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement:
+			default: {
+				// All other categories collapsed into one
+				double disagreeingPairs = 0.0;
+				if (c < denseCount) {
+					for (int k = 0; k < denseCount; k++) {
+						if (k != c) disagreeingPairs += coincidences[c * denseCount + k];
+					}
+				}
+				return 1.0 - (n - 1.0) * disagreeingPairs / ((raterCount - 1) * marginal * (n - marginal));
+			}
+		}
+	}
+}
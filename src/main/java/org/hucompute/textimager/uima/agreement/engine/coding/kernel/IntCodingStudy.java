@@ -0,0 +1,98 @@
+package org.hucompute.textimager.uima.agreement.engine.coding.kernel;
+
+import org.dkpro.statistics.agreement.coding.ICodingAnnotationItem;
+import org.dkpro.statistics.agreement.coding.ICodingAnnotationStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetCodingAnnotationStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy;
+
+import java.util.Arrays;
+
+/**
+ * Coding study of int-encoded items, stored row-major in item &times; rater chunks.
+ * <p/>
+ * Categories are {@link org.hucompute.textimager.uima.agreement.engine.CategoryDictionary category ids} or the negative
+ * {@link SetCodingAnnotationStudy#getPlaceholder(int) placeholders} of raters without annotation, so every rater
+ * codes every item. Each chunk holds whole items and at most {@link #CHUNK_SIZE} categories, so studies with more than
+ * {@link Integer#MAX_VALUE} units are not limited by the maximal array length.
+ */
+public class IntCodingStudy {
+	static final int CHUNK_SIZE = 1 << 20;
+
+	private final int raterCount;
+	private final SetSelectionStrategy setSelectionStrategy;
+	private final int itemsPerChunk;
+	private int[][] chunks = new int[1][];
+	private int itemCount = 0;
+
+	public IntCodingStudy(int raterCount, SetSelectionStrategy setSelectionStrategy) {
+		this.raterCount = raterCount;
+		this.setSelectionStrategy = setSelectionStrategy;
+		this.itemsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(1, raterCount));
+		chunks[0] = new int[Math.min(64, itemsPerChunk) * raterCount];
+	}
+
+	/**
+	 * Copy the items of a study of {@link SetCodingAnnotationStudy#addItemSetsAsArray(int[][]) category ids}.
+	 *
+	 * @param study The study.
+	 * @return A new study with the same items.
+	 */
+	public static IntCodingStudy of(ICodingAnnotationStudy study) {
+		IntCodingStudy intCodingStudy = new IntCodingStudy(study.getRaterCount(), null);
+		int[] item = new int[study.getRaterCount()];
+		for (ICodingAnnotationItem codingAnnotationItem : study.getItems()) {
+			for (int rater = 0; rater < item.length; rater++) {
+				item[rater] = (Integer) codingAnnotationItem.getUnit(rater).getCategory();
+			}
+			intCodingStudy.addItem(item);
+		}
+		return intCodingStudy;
+	}
+
+	/**
+	 * Add the items for the given sets of category ids, as {@link SetCodingAnnotationStudy#addItemSetsAsArray(int[][])}.
+	 *
+	 * @param annotations The distinct category ids of each rater, empty for raters without annotation.
+	 */
+	public void addItemSets(int[][] annotations) {
+		SetCodingAnnotationStudy.selectItems(annotations, setSelectionStrategy, this::addItem);
+	}
+
+	/**
+	 * @param item The category of each rater.
+	 */
+	public void addItem(int[] item) {
+		if (itemCount == Integer.MAX_VALUE)
+			throw new IllegalStateException("Too many items");
+		int chunk = itemCount / itemsPerChunk;
+		int offset = (itemCount % itemsPerChunk) * raterCount;
+		if (chunk == chunks.length)
+			chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+		if (chunks[chunk] == null) {
+			chunks[chunk] = new int[itemsPerChunk * raterCount];
+		} else if (offset + raterCount > chunks[chunk].length) {
+			chunks[chunk] = Arrays.copyOf(chunks[chunk], Math.min(itemsPerChunk * raterCount, 2 * chunks[chunk].length));
+		}
+		System.arraycopy(item, 0, chunks[chunk], offset, raterCount);
+		itemCount++;
+	}
+
+	public int getRaterCount() {
+		return raterCount;
+	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * @return The number of annotation units, one per rater and item.
+	 */
+	public long getUnitCount() {
+		return (long) itemCount * raterCount;
+	}
+
+	public int getCategory(int item, int rater) {
+		return chunks[item / itemsPerChunk][(item % itemsPerChunk) * raterCount + rater];
+	}
+}
@@ -0,0 +1,113 @@
+package org.hucompute.textimager.uima.agreement.engine.coding.kernel;
+
+import org.hucompute.textimager.uima.agreement.engine.coding.SetCodingAnnotationStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Coding study of int-encoded items, which stores each distinct item once together with the number of its occurrences.
+ * <p/>
+ * The study is evaluated by the weighted {@link CodingAgreementKernel}, so its size depends on the number of distinct
+ * label tuples, not on the number of tokens.
+ */
+public class WeightedCodingStudy {
+	private final IntCodingStudy distinctItems;
+	private final SetSelectionStrategy setSelectionStrategy;
+	private final HashMap<ItemKey, Integer> itemIds = new HashMap<>();
+	private long[] itemCounts = new long[16];
+	private long itemCount = 0L;
+
+	public WeightedCodingStudy(int raterCount, SetSelectionStrategy setSelectionStrategy) {
+		this.distinctItems = new IntCodingStudy(raterCount, null);
+		this.setSelectionStrategy = setSelectionStrategy;
+	}
+
+	/**
+	 * Add the items for the given sets of category ids, as
+	 * {@link SetCodingAnnotationStudy#addItemSetsAsArray(int[][])}.
+	 *
+	 * @param annotations The distinct category ids of each rater, empty for raters without annotation.
+	 */
+	public void addItemSets(int[][] annotations) {
+		SetCodingAnnotationStudy.selectItems(annotations, setSelectionStrategy, this::addItem);
+	}
+
+	/**
+	 * @param item The category of each rater.
+	 * @return The id of the distinct item.
+	 */
+	public int addItem(int[] item) {
+		Integer id = itemIds.computeIfAbsent(new ItemKey(item), key -> {
+			distinctItems.addItem(item);
+			return distinctItems.getItemCount() - 1;
+		});
+		if (id == itemCounts.length)
+			itemCounts = Arrays.copyOf(itemCounts, 2 * itemCounts.length);
+		itemCounts[id]++;
+		itemCount++;
+		return id;
+	}
+
+	public int getRaterCount() {
+		return distinctItems.getRaterCount();
+	}
+
+	/**
+	 * @return The number of distinct items.
+	 */
+	public int getDistinctItemCount() {
+		return distinctItems.getItemCount();
+	}
+
+	public long getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * @return The number of annotation units, one per rater and item.
+	 */
+	public long getUnitCount() {
+		return itemCount * distinctItems.getRaterCount();
+	}
+
+	/**
+	 * @param agreementMeasure One of the measures of the
+	 *                         {@link org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine}.
+	 * @return The kernel of the study, counting each item as often as it occurred.
+	 */
+	public CodingAgreementKernel createKernel(String agreementMeasure) {
+		return createKernel(agreementMeasure, Arrays.copyOf(itemCounts, distinctItems.getItemCount()));
+	}
+
+	/**
+	 * @param agreementMeasure One of the measures of the
+	 *                         {@link org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine}.
+	 * @param itemWeights      The number of times each distinct item is counted, by its id.
+	 * @return The kernel of the reweighted study.
+	 */
+	public CodingAgreementKernel createKernel(String agreementMeasure, long[] itemWeights) {
+		return new CodingAgreementKernel(agreementMeasure, distinctItems, itemWeights);
+	}
+
+	private static final class ItemKey {
+		private final int[] categories;
+		private final int hashCode;
+
+		private ItemKey(int[] categories) {
+			this.categories = categories.clone();
+			this.hashCode = Arrays.hashCode(this.categories);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof ItemKey && Arrays.equals(categories, ((ItemKey) other).categories);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+}
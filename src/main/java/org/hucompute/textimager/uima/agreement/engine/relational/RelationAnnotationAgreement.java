@@ -16,7 +16,6 @@ import org.apache.uima.cas.CASException;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.dkpro.statistics.agreement.IAnnotationUnit;
@@ -26,6 +25,8 @@ import org.dkpro.statistics.agreement.distance.NominalDistanceFunction;
 import org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreement;
 import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
 import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
+import org.hucompute.textimager.uima.agreement.engine.FingerprintFilter;
+import org.hucompute.textimager.uima.agreement.engine.sink.AgreementResult;
 import org.texttechnologylab.annotation.SemanticSource;
 import org.texttechnologylab.annotation.administration.AnnotationStatus;
 import org.texttechnologylab.annotation.semaf.isobase.Entity;
@@ -33,11 +34,11 @@ import org.texttechnologylab.annotation.semaf.isobase.Event;
 import org.texttechnologylab.annotation.semaf.isobase.Link;
 import org.texttechnologylab.annotation.semaf.isobase.Signal;
 import org.texttechnologylab.annotation.semaf.semafsr.SrLink;
-import org.texttechnologylab.annotation.type.Fingerprint;
 import org.texttechnologylab.iaa.AgreementValue;
 import org.texttechnologylab.utilities.collections.IndexingMap;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
@@ -102,15 +103,18 @@ public class RelationAnnotationAgreement extends AbstractIAAEngine {
 
             HashMap<Integer, AnnotationContainer> perViewSRLContainers = new HashMap<>();
 
-            // Iterate over all views
+            // Get the annotator index for the user id of each view. Discards "_InitialView"
             for (String fullViewName : validViewNames) {
-                JCas viewCas = jCas.getView(fullViewName);
-                // Split user id from view name and get annotator index for this id. Discards "_InitialView"
-                String viewName = StringUtils.substringAfterLast(fullViewName.trim(), "/");
-                annotatorIndex.add(viewName);
+                annotatorIndex.add(StringUtils.substringAfterLast(fullViewName.trim(), "/"));
+            }
 
-                Integer raterIdx = annotatorIndex.get(viewName);
-                perViewSRLContainers.put(raterIdx, new AnnotationContainer(viewCas, viewName, raterIdx));
+            // Create the containers of all views, possibly in parallel
+            List<AnnotationContainer> annotationContainers = extractViews(
+                    jCas,
+                    (viewCas, viewName) -> new AnnotationContainer(viewCas, viewName, annotatorIndex.get(viewName))
+            );
+            for (AnnotationContainer annotationContainer : annotationContainers) {
+                perViewSRLContainers.put(annotationContainer.raterIdx, annotationContainer);
             }
 
             // Create a set of all multi-tokens, that are covering another token
@@ -215,6 +219,8 @@ public class RelationAnnotationAgreement extends AbstractIAAEngine {
             }
         } catch (CASException e) {
             e.printStackTrace();
+        } finally {
+            releaseViewContexts();
         }
     }
 
@@ -238,7 +244,7 @@ public class RelationAnnotationAgreement extends AbstractIAAEngine {
             UnitizingAnnotationStudy argumentIdentificationStudyTTLab,
             UnitizingAnnotationStudy argumentClassificationStudyTTLab,
             UnitizingAnnotationStudy argumentClassificationMatchingSpansStudyTTLab
-    ) {
+    ) throws AnalysisEngineProcessException {
         if (pAnnotateDocument || pPrintStatistics) {
             long predicateIdentificationPositiveSamples = Streams.stream(predicateIdentificationStudy.getItems()).filter(i -> Streams.stream(i.getUnits()).map(IAnnotationUnit::getCategory).anyMatch(Predicate.isEqual("P"))).count();
             long predicateIdentificationDoublePositiveSamples = Streams.stream(predicateIdentificationStudy.getItems()).filter(i -> Streams.stream(i.getUnits()).map(IAnnotationUnit::getCategory).allMatch(Predicate.isEqual("P"))).count();
@@ -316,26 +322,40 @@ public class RelationAnnotationAgreement extends AbstractIAAEngine {
             }
 
             if (pPrintStatistics) {
-                System.out.printf("%s,%s filtering 'Processed' samples\n", StringUtils.appendIfMissing(DocumentMetaData.get(jCas).getDocumentId(), ".xmi"), pFilterProcessed ? "" : " not");
-                System.out.println("Predicate Identification                 && \\\\");
-                System.out.printf("$\\quad$ All                              & %01.6f & %d items, %d double positive \\\\\n", predicateIdentificationAgreementValue, predicateIdentificationPositiveSamples, predicateIdentificationDoublePositiveSamples);
-                System.out.println("Predicate Disambiguation                 && \\\\");
-                System.out.printf("$\\quad$ TTLab                            & %01.6f & %d items \\\\\n", predicateDisambiguationStudyTTLabAgreementValue, predicateDisambiguationStudyTTLab.getItemCount());
-                System.out.printf("$\\quad$ PropBank                         & %01.6f & %d items \\\\\n", predicateDisambiguationStudyPropBankAgreementValue, predicateDisambiguationStudyPropBank.getItemCount());
-                System.out.println("Argument Identification                  && \\\\");
-                System.out.printf("$\\quad$ TTLab                            & %01.6f & %d units \\\\\n", argumentIdentificationStudyTTLabAgreementValue, argumentIdentificationStudyTTLab.getUnitCount());
-                System.out.printf("$\\quad$ PropBank                         & %01.6f & %d units \\\\\n", argumentIdentificationStudyPropBankAgreementValue, argumentIdentificationStudyPropBank.getUnitCount());
-                System.out.println("Argument Classification (All)            && \\\\");
-                System.out.printf("$\\quad$ TTLab                            & %01.6f & %d units \\\\\n", argumentClassificationStudyTTLabAgreementValue, argumentClassificationStudyTTLab.getUnitCount());
-                System.out.printf("$\\quad$ PropBank                         & %01.6f & %d units \\\\\n", argumentClassificationStudyPropBankAgreementValue, argumentClassificationStudyPropBank.getUnitCount());
-                System.out.println("Argument Classification (Matching Spans) && \\\\");
-                System.out.printf("$\\quad$ TTLab                            & %01.6f & %d units \\\\\n", argumentClassificationMatchingSpansStudyTTLabAgreementValue, argumentClassificationMatchingSpansStudyTTLab.getUnitCount());
-                System.out.printf("$\\quad$ PropBank                         & %01.6f & %d units \\\\\n", argumentClassificationMatchingSpansStudyPropBankAgreementValue, argumentClassificationMatchingSpansStudyPropBank.getUnitCount());
-                System.out.flush();
+                try {
+                    AgreementResult result = new AgreementResult(
+                            DocumentMetaData.get(jCas).getDocumentId(),
+                            "RelationAnnotationAgreement",
+                            pFilterProcessed ? "Processed" : "All",
+                            new ArrayList<>(annotatorIndex.keySet()),
+                            predicateIdentificationStudy.getItemCount(),
+                            Double.NaN, Double.NaN, Double.NaN
+                    );
+                    result.addCategory(createTaskResult("Predicate Identification", predicateIdentificationPositiveSamples, predicateIdentificationAgreementValue))
+                            .addCategory(createTaskResult("Predicate Identification - Double Positive", predicateIdentificationDoublePositiveSamples, Double.NaN))
+                            .addCategory(createTaskResult("Predicate Disambiguation - TTLab", predicateDisambiguationStudyTTLab.getItemCount(), predicateDisambiguationStudyTTLabAgreementValue))
+                            .addCategory(createTaskResult("Predicate Disambiguation - PropBank", predicateDisambiguationStudyPropBank.getItemCount(), predicateDisambiguationStudyPropBankAgreementValue))
+                            .addCategory(createTaskResult("Argument Identification - TTLab", argumentIdentificationStudyTTLab.getUnitCount(), argumentIdentificationStudyTTLabAgreementValue))
+                            .addCategory(createTaskResult("Argument Identification - PropBank", argumentIdentificationStudyPropBank.getUnitCount(), argumentIdentificationStudyPropBankAgreementValue))
+                            .addCategory(createTaskResult("Argument Classification (All Spans) - TTLab", argumentClassificationStudyTTLab.getUnitCount(), argumentClassificationStudyTTLabAgreementValue))
+                            .addCategory(createTaskResult("Argument Classification (All Spans) - PropBank", argumentClassificationStudyPropBank.getUnitCount(), argumentClassificationStudyPropBankAgreementValue))
+                            .addCategory(createTaskResult("Argument Classification (Matching Spans) - TTLab", argumentClassificationMatchingSpansStudyTTLab.getUnitCount(), argumentClassificationMatchingSpansStudyTTLabAgreementValue))
+                            .addCategory(createTaskResult("Argument Classification (Matching Spans) - PropBank", argumentClassificationMatchingSpansStudyPropBank.getUnitCount(), argumentClassificationMatchingSpansStudyPropBankAgreementValue));
+                    writeResult(result);
+                } catch (IOException e) {
+                    throw new AnalysisEngineProcessException(e);
+                }
             }
         }
     }
 
+    /**
+     * The agreement of a single task, as a category of the {@link AgreementResult}.
+     */
+    private static AgreementResult.Category createTaskResult(String task, long count, double value) {
+        return new AgreementResult.Category(task, count, value, Double.NaN, Double.NaN, null, -1);
+    }
+
     private double calculateCodingAgreement(CodingAnnotationStudy predicateDisambiguationStudyTTLab) {
         return new KrippendorffAlphaAgreement(predicateDisambiguationStudyTTLab, new NominalDistanceFunction()).calculateAgreement();
     }
@@ -551,9 +571,7 @@ public class RelationAnnotationAgreement extends AbstractIAAEngine {
             this.sentenceIndexingMap = getIndexingMap(viewCas, Sentence.class);
 
             // Get all fingerprinted annotations
-            HashSet<TOP> fingerprinted = JCasUtil.select(viewCas, Fingerprint.class).stream()
-                    .map(Fingerprint::getReference)
-                    .collect(Collectors.toCollection(HashSet::new));
+            FingerprintFilter fingerprinted = getViewContext(viewCas).getFingerprinted();
 
             // Each relational annotation consists of a Link between a ground and a figure/trigger of (base-)class Entity
             this.links = getLinks(viewCas, fingerprinted);
@@ -627,11 +645,11 @@ public class RelationAnnotationAgreement extends AbstractIAAEngine {
         }
 
         @Nonnull
-        protected ArrayList<? extends Link> getLinks(JCas viewCas, HashSet<TOP> fingerprinted) {
+        protected ArrayList<? extends Link> getLinks(JCas viewCas, FingerprintFilter fingerprinted) {
             ArrayList<? extends Link> annotations;
             if (pFilterFingerprinted)
                 annotations = JCasUtil.select(viewCas, SrLink.class).stream()
-                        .filter((Predicate<TOP>) fingerprinted::contains)
+                        .filter(fingerprinted)
                         .collect(Collectors.toCollection(ArrayList::new));
             else
                 annotations = new ArrayList<>(JCasUtil.select(viewCas, Link.class));
@@ -13,13 +13,16 @@ import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.descriptor.ExternalResource;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.dkpro.core.api.parameter.ComponentParameters;
 import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
+import org.hucompute.textimager.uima.agreement.engine.FingerprintFilter;
+import org.hucompute.textimager.uima.agreement.engine.SharedViewIndexResource;
+import org.hucompute.textimager.uima.agreement.engine.ViewExtractionContext;
 import org.texttechnologylab.annotation.AbstractNamedEntity;
 import org.texttechnologylab.annotation.NamedEntity;
 import org.texttechnologylab.annotation.type.Fingerprint;
@@ -31,7 +34,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
 
 
 public class CsvPrinterEngine extends JCasAnnotator_ImplBase {
@@ -88,6 +90,14 @@ public class CsvPrinterEngine extends JCasAnnotator_ImplBase {
 	protected String[] pAnnotatorList;
 	private ImmutableSet<String> listedAnnotators = ImmutableSet.of();
 	
+	/**
+	 * Optional {@link SharedViewIndexResource}, which shares the view indexes of each document with the agreement
+	 * engines of the same aggregate.
+	 */
+	public static final String RES_VIEW_INDEX = AbstractIAAEngine.RES_VIEW_INDEX;
+	@ExternalResource(key = RES_VIEW_INDEX, mandatory = false)
+	private SharedViewIndexResource viewIndex;
+	
 	private CSVPrinter csvPrinter;
 	
 	@Override
@@ -128,15 +138,14 @@ public class CsvPrinterEngine extends JCasAnnotator_ImplBase {
 						return;
 					viewNames.add(viewName);
 					
+					ViewExtractionContext viewContext = viewIndex != null ? viewIndex.getViewContext(viewCas) : new ViewExtractionContext(viewCas);
+					
 					HashMap<Integer, ArrayList<String>> neMap = new HashMap<>();
 					IndexingMap<Token> tokenIndexingMap = new IndexingMap<>();
-					ArrayList<Token> vTokens = new ArrayList<>(JCasUtil.select(viewCas, Token.class));
+					ArrayList<Token> vTokens = viewContext.getTokens();
 					vTokens.forEach(tokenIndexingMap::add);
 					
-					HashSet<TOP> fingerprinted = JCasUtil.select(viewCas, Fingerprint.class).stream()
-							.distinct()
-							.map(Fingerprint::getReference)
-							.collect(Collectors.toCollection(HashSet::new));
+					FingerprintFilter fingerprinted = viewContext.getFingerprinted();
 					
 					for (Class<? extends Annotation> type : Lists.newArrayList(NamedEntity.class, AbstractNamedEntity.class)) {
 						Map<Annotation, Collection<Token>> neIndex = JCasUtil.indexCovered(viewCas, type, Token.class);
@@ -0,0 +1,139 @@
+package org.hucompute.textimager.uima.agreement.engine.serialization;
+
+import org.apache.commons.cli.*;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
+import org.hucompute.textimager.uima.agreement.engine.AgreementStateFile;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Command line tool, which merges the {@link AgreementStateFile agreement states} of several shards of a collection
+ * and prints the combined agreement, as if the whole collection had been processed by a single engine.
+ * <p/>
+ * The engine class and its parameters are taken from the first state file. All state files must be equal in both.
+ */
+public class MergeAgreementStates {
+	/**
+	 * The default heap budget in megabytes, so that merged states larger than the budget are streamed from disk.
+	 */
+	public static final int DEFAULT_HEAP_BUDGET = 256;
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		options.addOption(Option.builder("t").longOpt("target").hasArg().argName("path")
+				.desc("Target location of the combined statistics, see PARAM_TARGET_LOCATION. Default: System.out").build());
+		options.addOption(Option.builder("s").longOpt("state").hasArg().argName("path")
+				.desc("Write the merged state to the given file, so that it can be merged again.").build());
+		options.addOption(Option.builder("b").longOpt("heap-budget").hasArg().argName("megabytes")
+				.desc("Heap budget for the merged studies, see PARAM_HEAP_BUDGET, -1 for no limit. Default: " + DEFAULT_HEAP_BUDGET).build());
+		options.addOption("h", "help", false, "Print this message.");
+
+		CommandLine commandLine;
+		try {
+			commandLine = new DefaultParser().parse(options, args);
+		} catch (ParseException e) {
+			System.err.println(e.getMessage());
+			printHelp(options);
+			System.exit(1);
+			return;
+		}
+		if (commandLine.hasOption("h") || commandLine.getArgs().length == 0) {
+			printHelp(options);
+			return;
+		}
+
+		merge(commandLine.getArgs(),
+				commandLine.getOptionValue("t", "System.out"),
+				commandLine.getOptionValue("s"),
+				Integer.parseInt(commandLine.getOptionValue("b", String.valueOf(DEFAULT_HEAP_BUDGET))));
+	}
+
+	private static void printHelp(Options options) {
+		new HelpFormatter().printHelp("MergeAgreementStates [options] <state file>...", options);
+	}
+
+	/**
+	 * Merge the given state files with the engine, which wrote them.
+	 *
+	 * @param stateSources   The state files.
+	 * @param targetLocation The target location of the combined statistics.
+	 * @param stateTarget    The file for the merged state, may be null.
+	 * @param heapBudget     The heap budget in megabytes, -1 for no limit.
+	 */
+	public static void merge(String[] stateSources, String targetLocation, String stateTarget, int heapBudget) throws Exception {
+		AgreementStateFile.Header header;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(stateSources[0]))))) {
+			header = AgreementStateFile.readHeader(in);
+		} catch (IOException e) {
+			throw new IOException("Could not read agreement state " + stateSources[0], e);
+		}
+
+		Class<? extends AbstractIAAEngine> engineClass = Class.forName(header.getEngineClass()).asSubclass(AbstractIAAEngine.class);
+		ArrayList<Object> parameters = new ArrayList<>();
+		for (Map.Entry<String, String> parameter : header.getParameters().entrySet()) {
+			parameters.add(parameter.getKey());
+			parameters.add(parseParameter(engineClass, parameter.getKey(), parameter.getValue()));
+		}
+		parameters.add(AbstractIAAEngine.PARAM_STATE_SOURCES);
+		parameters.add(stateSources);
+		if (stateTarget != null) {
+			parameters.add(AbstractIAAEngine.PARAM_STATE_TARGET);
+			parameters.add(stateTarget);
+		}
+		parameters.add(AbstractIAAEngine.PARAM_MULTI_CAS_HANDLING);
+		parameters.add(AbstractIAAEngine.COMBINED);
+		parameters.add(AbstractIAAEngine.PARAM_TARGET_LOCATION);
+		parameters.add(targetLocation);
+		parameters.add(AbstractIAAEngine.PARAM_HEAP_BUDGET);
+		parameters.add(heapBudget);
+
+		// The engine processes no CAS, it only merges and computes the combined study
+		AnalysisEngine engine = AnalysisEngineFactory.createEngine(engineClass, parameters.toArray());
+		try {
+			engine.collectionProcessComplete();
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	/**
+	 * The header holds all parameters as strings, so convert them to the type of the configuration parameter field.
+	 *
+	 * @param engineClass The engine class.
+	 * @param name        The parameter name.
+	 * @param value       The parameter value of the header.
+	 * @return The value to pass to the engine.
+	 */
+	static Object parseParameter(Class<?> engineClass, String name, String value) throws NoSuchFieldException {
+		for (Class<?> declaringClass = engineClass; declaringClass != null; declaringClass = declaringClass.getSuperclass()) {
+			for (Field field : declaringClass.getDeclaredFields()) {
+				ConfigurationParameter configurationParameter = field.getAnnotation(ConfigurationParameter.class);
+				if (configurationParameter == null || !configurationParameter.name().equals(name))
+					continue;
+				Class<?> type = field.getType();
+				if (type == Integer.class || type == int.class)
+					return Integer.valueOf(value);
+				if (type == Long.class || type == long.class)
+					return Long.valueOf(value);
+				if (type == Float.class || type == float.class)
+					return Float.valueOf(value);
+				if (type == Double.class || type == double.class)
+					return Double.valueOf(value);
+				if (type == Boolean.class || type == boolean.class)
+					return Boolean.valueOf(value);
+				return value;
+			}
+		}
+		throw new NoSuchFieldException(String.format("%s has no parameter %s", engineClass.getName(), name));
+	}
+}
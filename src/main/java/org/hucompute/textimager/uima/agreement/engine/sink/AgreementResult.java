@@ -0,0 +1,194 @@
+package org.hucompute.textimager.uima.agreement.engine.sink;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The agreement of a single study, as emitted to a {@link ResultSink}: the overall and per category agreement, the
+ * category counts of each annotator and, for coding studies, the inter-annotator category overlap.
+ * <p/>
+ * Bootstrap interval bounds and the overlap counts are {@link Double#NaN} and -1, if they were not computed.
+ */
+public class AgreementResult {
+	@Nullable
+	private final String documentId;
+	private final String measure;
+	@Nullable
+	private final String strategy;
+	private final List<String> annotators;
+	private final long unitCount;
+	private final double value;
+	private final double lower;
+	private final double upper;
+	private final ArrayList<Category> categories = new ArrayList<>();
+	@Nullable
+	private long[] annotatorTotals;
+	private long overlapTotal = -1;
+
+	/**
+	 * @param documentId The id of the document, or null for a combined study.
+	 * @param measure    The name of the agreement measure.
+	 * @param strategy   The set selection strategy, or null.
+	 * @param annotators The annotator names.
+	 * @param unitCount  The number of units of the study.
+	 * @param value      The overall agreement.
+	 * @param lower      The lower bound of the overall agreement, or {@link Double#NaN}.
+	 * @param upper      The upper bound of the overall agreement, or {@link Double#NaN}.
+	 */
+	public AgreementResult(@Nullable String documentId, String measure, @Nullable String strategy, List<String> annotators, long unitCount, double value, double lower, double upper) {
+		this.documentId = documentId;
+		this.measure = measure;
+		this.strategy = strategy;
+		this.annotators = Collections.unmodifiableList(new ArrayList<>(annotators));
+		this.unitCount = unitCount;
+		this.value = value;
+		this.lower = lower;
+		this.upper = upper;
+	}
+
+	/**
+	 * Add the agreement of the next category. Categories are emitted in the order they were added.
+	 */
+	public AgreementResult addCategory(Category category) {
+		categories.add(category);
+		return this;
+	}
+
+	/**
+	 * @param annotatorTotals The number of annotations of each annotator, in the order of {@link #getAnnotators()}.
+	 */
+	public AgreementResult setAnnotatorTotals(long[] annotatorTotals) {
+		this.annotatorTotals = annotatorTotals;
+		return this;
+	}
+
+	/**
+	 * @param overlapTotal The total inter-annotator category overlap.
+	 */
+	public AgreementResult setOverlapTotal(long overlapTotal) {
+		this.overlapTotal = overlapTotal;
+		return this;
+	}
+
+	@Nullable
+	public String getDocumentId() {
+		return documentId;
+	}
+
+	public String getMeasure() {
+		return measure;
+	}
+
+	@Nullable
+	public String getStrategy() {
+		return strategy;
+	}
+
+	public List<String> getAnnotators() {
+		return annotators;
+	}
+
+	public long getUnitCount() {
+		return unitCount;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	public double getLower() {
+		return lower;
+	}
+
+	public double getUpper() {
+		return upper;
+	}
+
+	public boolean hasIntervals() {
+		return !Double.isNaN(lower) || !Double.isNaN(upper);
+	}
+
+	public List<Category> getCategories() {
+		return Collections.unmodifiableList(categories);
+	}
+
+	/**
+	 * @return The number of annotations of each annotator, or null if there are no annotation statistics.
+	 */
+	@Nullable
+	public long[] getAnnotatorTotals() {
+		return annotatorTotals;
+	}
+
+	public boolean hasOverlap() {
+		return overlapTotal >= 0;
+	}
+
+	public long getOverlapTotal() {
+		return overlapTotal;
+	}
+
+	/**
+	 * The agreement and counts of a single category.
+	 */
+	public static class Category {
+		private final String name;
+		private final long count;
+		private final double value;
+		private final double lower;
+		private final double upper;
+		@Nullable
+		private final long[] annotatorCounts;
+		private final long overlap;
+
+		/**
+		 * @param name            The category name.
+		 * @param count           The total count of the category.
+		 * @param value           The agreement of the category.
+		 * @param lower           The lower bound of the agreement, or {@link Double#NaN}.
+		 * @param upper           The upper bound of the agreement, or {@link Double#NaN}.
+		 * @param annotatorCounts The count of the category for each annotator, or null.
+		 * @param overlap         The inter-annotator overlap of the category, or -1.
+		 */
+		public Category(String name, long count, double value, double lower, double upper, @Nullable long[] annotatorCounts, long overlap) {
+			this.name = name;
+			this.count = count;
+			this.value = value;
+			this.lower = lower;
+			this.upper = upper;
+			this.annotatorCounts = annotatorCounts;
+			this.overlap = overlap;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		public double getLower() {
+			return lower;
+		}
+
+		public double getUpper() {
+			return upper;
+		}
+
+		@Nullable
+		public long[] getAnnotatorCounts() {
+			return annotatorCounts;
+		}
+
+		public long getOverlap() {
+			return overlap;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package org.hucompute.textimager.uima.agreement.engine.sink;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hucompute.textimager.uima.agreement.engine.sink.BinaryResultSink.*;
+
+/**
+ * Reads a file of the {@link BinaryResultSink} by memory-mapping it. A result is looked up by a binary search over the
+ * index of the file, which only decodes the compared document ids, so opening a file does not read its records.
+ * <p/>
+ * Files of at most 2 GB are supported. The reader is thread-safe.
+ */
+public class BinaryResultReader {
+	private final ByteBuffer buffer;
+	private final int stringCount;
+	private final int stringOffsets;
+	private final int stringBytes;
+	private final int indexCount;
+	private final int indexEntries;
+	private final String[] strings;
+
+	public BinaryResultReader(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Binary result files larger than 2 GB are not supported: " + path);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer = mapped;
+		}
+
+		int size = buffer.capacity();
+		if (size < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC)
+			throw new IOException("Not a complete binary result file: " + path);
+		if (buffer.getInt(4) != VERSION || buffer.getInt(size - 8) != VERSION)
+			throw new IOException("Unsupported binary result file version: " + path);
+
+		int stringsOffset = (int) buffer.getLong(size - TRAILER_SIZE);
+		int indexOffset = (int) buffer.getLong(size - TRAILER_SIZE + 8);
+		stringCount = buffer.getInt(stringsOffset);
+		stringOffsets = stringsOffset + 4;
+		stringBytes = stringOffsets + 4 * (stringCount + 1);
+		indexCount = buffer.getInt(indexOffset);
+		indexEntries = indexOffset + 4;
+		strings = new String[stringCount];
+	}
+
+	/**
+	 * @return The number of results in the file.
+	 */
+	public int size() {
+		return indexCount;
+	}
+
+	/**
+	 * @return The document ids of all results, sorted, with null for combined studies first.
+	 */
+	public List<String> getDocumentIds() {
+		return new AbstractList<String>() {
+			@Override
+			public String get(int index) {
+				return getString(buffer.getInt(indexEntries + 12 * index));
+			}
+
+			@Override
+			public int size() {
+				return indexCount;
+			}
+		};
+	}
+
+	/**
+	 * @param documentId The document id.
+	 * @return The result of the document, or null if the file has none.
+	 */
+	@Nullable
+	public AgreementResult get(String documentId) {
+		int low = 0;
+		int high = indexCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			String key = getString(buffer.getInt(indexEntries + 12 * middle));
+			int comparison = key == null ? -1 : key.compareTo(documentId);
+			if (comparison < 0)
+				low = middle + 1;
+			else if (comparison > 0)
+				high = middle - 1;
+			else
+				return read(buffer.getLong(indexEntries + 12 * middle + 4));
+		}
+		return null;
+	}
+
+	/**
+	 * @return The result of the combined study, or null if the file has none.
+	 */
+	@Nullable
+	public AgreementResult getCombined() {
+		if (indexCount == 0 || buffer.getInt(indexEntries) >= 0)
+			return null;
+		return read(buffer.getLong(indexEntries + 4));
+	}
+
+	/**
+	 * @return All results in the order of {@link #getDocumentIds()}.
+	 */
+	public List<AgreementResult> getAll() {
+		ArrayList<AgreementResult> results = new ArrayList<>(indexCount);
+		for (int i = 0; i < indexCount; i++) {
+			results.add(read(buffer.getLong(indexEntries + 12 * i + 4)));
+		}
+		return results;
+	}
+
+	private AgreementResult read(long offset) {
+		int position = (int) offset;
+		int annotatorCount = buffer.getInt(position + 12);
+		int categoryCount = buffer.getInt(position + 16);
+		int flags = buffer.getInt(position + 20);
+
+		ArrayList<String> annotators = new ArrayList<>(annotatorCount);
+		int annotatorOffset = position + RESULT_SIZE;
+		for (int i = 0; i < annotatorCount; i++) {
+			annotators.add(getString(buffer.getInt(annotatorOffset + 4 * i)));
+		}
+		AgreementResult result = new AgreementResult(
+				getString(buffer.getInt(position)),
+				getString(buffer.getInt(position + 4)),
+				getString(buffer.getInt(position + 8)),
+				annotators,
+				buffer.getLong(position + 24),
+				buffer.getDouble(position + 32),
+				buffer.getDouble(position + 40),
+				buffer.getDouble(position + 48)
+		);
+		int countOffset = annotatorOffset + 4 * annotatorCount;
+		if ((flags & FLAG_ANNOTATOR_COUNTS) != 0)
+			result.setAnnotatorTotals(readCounts(countOffset, annotatorCount));
+		if ((flags & FLAG_OVERLAP) != 0)
+			result.setOverlapTotal(buffer.getLong(position + 56));
+
+		int categoryOffset = countOffset + 8 * annotatorCount;
+		int categorySize = CATEGORY_SIZE + 8 * annotatorCount;
+		for (int i = 0; i < categoryCount; i++) {
+			int category = categoryOffset + categorySize * i;
+			result.addCategory(new AgreementResult.Category(
+					getString(buffer.getInt(category)),
+					buffer.getLong(category + 8),
+					buffer.getDouble(category + 16),
+					buffer.getDouble(category + 24),
+					buffer.getDouble(category + 32),
+					(buffer.getInt(category + 4) & FLAG_ANNOTATOR_COUNTS) != 0 ? readCounts(category + CATEGORY_SIZE, annotatorCount) : null,
+					buffer.getLong(category + 40)
+			));
+		}
+		return result;
+	}
+
+	private long[] readCounts(int offset, int annotatorCount) {
+		long[] counts = new long[annotatorCount];
+		for (int i = 0; i < annotatorCount; i++) {
+			counts[i] = buffer.getLong(offset + 8 * i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Decode a string of the string table once. Concurrent calls may decode the same string twice.
+	 */
+	@Nullable
+	private String getString(int index) {
+		if (index < 0)
+			return null;
+		String string = strings[index];
+		if (string == null) {
+			int begin = buffer.getInt(stringOffsets + 4 * index);
+			int end = buffer.getInt(stringOffsets + 4 * index + 4);
+			byte[] bytes = new byte[end - begin];
+			ByteBuffer view = buffer.duplicate();
+			view.position(stringBytes + begin);
+			view.get(bytes);
+			string = new String(bytes, StandardCharsets.UTF_8);
+			strings[index] = string;
+		}
+		return string;
+	}
+}
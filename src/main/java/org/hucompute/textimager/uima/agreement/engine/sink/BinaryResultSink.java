@@ -0,0 +1,223 @@
+package org.hucompute.textimager.uima.agreement.engine.sink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Writes the results of each measure to a compact binary file, e.g. {@code KrippendorffAlphaAgreement.iaa}, which is
+ * read by the {@link BinaryResultReader}. All numbers are big-endian.
+ * <pre>
+ * header   int magic, int version
+ * records  per result:
+ *            int document, int measure, int strategy, int annotatorCount, int categoryCount, int flags,
+ *            long unitCount, double value, double lower, double upper, long overlapTotal,
+ *            int[annotatorCount] annotators, long[annotatorCount] annotatorTotals,
+ *            per category: int name, int flags, long count, double value, double lower, double upper, long overlap,
+ *                          long[annotatorCount] annotatorCounts
+ * strings  int count, int[count + 1] offsets relative to the first byte, UTF-8 bytes
+ * index    int count, per result sorted by document id: int document, long offset
+ * trailer  long stringsOffset, long indexOffset, int version, int magic
+ * </pre>
+ * Strings are referenced by their index in the string table, or -1 for null, e.g. the document of a combined study.
+ * Each category entry of a result has the same width, so the entries can be read by index.
+ * <p/>
+ * The string table, the index and the trailer are rewritten after the records on each {@link #flush()}, so the file
+ * is complete after each flush and records can still be appended. Existing files are always truncated.
+ */
+public class BinaryResultSink implements ResultSink {
+	public static final String EXTENSION = ".iaa";
+	static final int MAGIC = 0x49414152;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int TRAILER_SIZE = 24;
+	static final int RESULT_SIZE = 64;
+	static final int CATEGORY_SIZE = 48;
+	static final int FLAG_ANNOTATOR_COUNTS = 1;
+	static final int FLAG_OVERLAP = 2;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ResultTarget target;
+	private final HashMap<String, ResultFile> files = new HashMap<>();
+
+	public BinaryResultSink(ResultTarget target) {
+		if (!target.isDirectory())
+			throw new IllegalArgumentException("Binary results need a target directory");
+		this.target = target;
+	}
+
+	@Override
+	public synchronized void write(AgreementResult result) throws IOException {
+		ResultFile file = files.get(result.getMeasure());
+		if (file == null) {
+			file = new ResultFile(target.resolve(result.getMeasure() + EXTENSION));
+			files.put(result.getMeasure(), file);
+		}
+		file.write(result);
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		for (ResultFile file : files.values()) {
+			file.flush();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		IOException error = null;
+		for (ResultFile file : files.values()) {
+			try {
+				file.flush();
+				file.channel.close();
+			} catch (IOException e) {
+				if (error == null)
+					error = e;
+				else
+					error.addSuppressed(e);
+			}
+		}
+		files.clear();
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * A single binary file, whose records are buffered and written at the end of the previous records.
+	 */
+	private static final class ResultFile {
+		private final FileChannel channel;
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+		private final DataOutputStream data = new DataOutputStream(buffer);
+		private final LinkedHashMap<String, Integer> strings = new LinkedHashMap<>();
+		/**
+		 * The document string and offset of each record.
+		 */
+		private final ArrayList<long[]> index = new ArrayList<>();
+		private long recordsEnd;
+
+		private ResultFile(Path path) throws IOException {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			drain();
+		}
+
+		private void write(AgreementResult result) throws IOException {
+			int annotatorCount = result.getAnnotators().size();
+			int document = getString(result.getDocumentId());
+			index.add(new long[]{document, recordsEnd + buffer.size()});
+
+			long[] annotatorTotals = result.getAnnotatorTotals();
+			data.writeInt(document);
+			data.writeInt(getString(result.getMeasure()));
+			data.writeInt(getString(result.getStrategy()));
+			data.writeInt(annotatorCount);
+			data.writeInt(result.getCategories().size());
+			data.writeInt((annotatorTotals != null ? FLAG_ANNOTATOR_COUNTS : 0) | (result.hasOverlap() ? FLAG_OVERLAP : 0));
+			data.writeLong(result.getUnitCount());
+			data.writeDouble(result.getValue());
+			data.writeDouble(result.getLower());
+			data.writeDouble(result.getUpper());
+			data.writeLong(result.getOverlapTotal());
+			for (String annotator : result.getAnnotators()) {
+				data.writeInt(getString(annotator));
+			}
+			writeCounts(annotatorTotals, annotatorCount);
+
+			for (AgreementResult.Category category : result.getCategories()) {
+				data.writeInt(getString(category.getName()));
+				data.writeInt(category.getAnnotatorCounts() != null ? FLAG_ANNOTATOR_COUNTS : 0);
+				data.writeLong(category.getCount());
+				data.writeDouble(category.getValue());
+				data.writeDouble(category.getLower());
+				data.writeDouble(category.getUpper());
+				data.writeLong(category.getOverlap());
+				writeCounts(category.getAnnotatorCounts(), annotatorCount);
+			}
+
+			if (buffer.size() >= BUFFER_SIZE)
+				drain();
+		}
+
+		private void writeCounts(long[] counts, int annotatorCount) throws IOException {
+			for (int i = 0; i < annotatorCount; i++) {
+				data.writeLong(counts != null && i < counts.length ? counts[i] : -1);
+			}
+		}
+
+		private int getString(String string) {
+			if (string == null)
+				return -1;
+			return strings.computeIfAbsent(string, key -> strings.size());
+		}
+
+		/**
+		 * Write the buffered records at the end of the previous records.
+		 */
+		private void drain() throws IOException {
+			recordsEnd += write(recordsEnd);
+		}
+
+		private int write(long position) throws IOException {
+			ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+			buffer.reset();
+			int size = bytes.remaining();
+			while (bytes.hasRemaining()) {
+				position += channel.write(bytes, position);
+			}
+			return size;
+		}
+
+		/**
+		 * Write the buffered records, followed by the string table, the index and the trailer. The tail is overwritten
+		 * by the next records.
+		 */
+		private void flush() throws IOException {
+			drain();
+
+			long stringsOffset = recordsEnd;
+			data.writeInt(strings.size());
+			ArrayList<byte[]> encoded = new ArrayList<>(strings.size());
+			int offset = 0;
+			data.writeInt(offset);
+			for (String string : strings.keySet()) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				encoded.add(bytes);
+				offset += bytes.length;
+				data.writeInt(offset);
+			}
+			for (byte[] bytes : encoded) {
+				data.write(bytes);
+			}
+
+			long indexOffset = stringsOffset + buffer.size();
+			String[] names = strings.keySet().toArray(new String[0]);
+			ArrayList<long[]> sorted = new ArrayList<>(index);
+			sorted.sort(Comparator.comparing((long[] entry) -> entry[0] < 0 ? null : names[(int) entry[0]], Comparator.nullsFirst(Comparator.<String>naturalOrder())));
+			data.writeInt(sorted.size());
+			for (long[] entry : sorted) {
+				data.writeInt((int) entry[0]);
+				data.writeLong(entry[1]);
+			}
+
+			data.writeLong(stringsOffset);
+			data.writeLong(indexOffset);
+			data.writeInt(VERSION);
+			data.writeInt(MAGIC);
+
+			int size = write(recordsEnd);
+			channel.truncate(recordsEnd + size);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.hucompute.textimager.uima.agreement.engine.sink;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Prints each result to a CSV file of its own: one file per document, named after the document id, and one file per
+ * measure for combined studies.
+ */
+public class CsvResultSink implements ResultSink {
+	public static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.withCommentMarker('#').withDelimiter(';');
+
+	protected final ResultTarget target;
+
+	public CsvResultSink(ResultTarget target) {
+		this.target = target;
+	}
+
+	@Override
+	public void write(AgreementResult result) throws IOException {
+		CSVPrinter csvPrinter = new CSVPrinter(target.open(getFileName(result)), CSV_FORMAT);
+		print(result, csvPrinter);
+		csvPrinter.flush();
+	}
+
+	/**
+	 * @return The name of the file of the given result, relative to the target directory.
+	 */
+	protected String getFileName(AgreementResult result) {
+		String documentId = result.getDocumentId();
+		if (documentId == null)
+			return result.getMeasure() + ".csv";
+		return StringUtils.appendIfMissing(StringUtils.removeEnd(documentId, ".xmi"), ".csv");
+	}
+
+	/**
+	 * Print the header, the overall and per category agreement, the annotation statistics and the category overlap.
+	 */
+	protected void print(AgreementResult result, CSVPrinter csvPrinter) throws IOException {
+		String study = result.getDocumentId() != null ? result.getDocumentId() : "COMBINED";
+		csvPrinter.printComment(result.getStrategy() != null
+				? String.format("%s, %s, %s", result.getMeasure(), result.getStrategy(), study)
+				: String.format("%s, %s", result.getMeasure(), study));
+		csvPrinter.printComment(String.format("Inter-annotator agreement for %d annotators: %s",
+				result.getAnnotators().size(), result.getAnnotators().toString()
+		));
+
+		// Print the agreement for all categories
+		boolean intervals = result.hasIntervals();
+		if (intervals) {
+			csvPrinter.printRecord("Category", "Count", "Agreement", "Lower", "Upper");
+			csvPrinter.printRecord("Overall", result.getUnitCount(), result.getValue(), result.getLower(), result.getUpper());
+		} else {
+			csvPrinter.printRecord("Category", "Count", "Agreement");
+			csvPrinter.printRecord("Overall", result.getUnitCount(), result.getValue());
+		}
+		for (AgreementResult.Category category : result.getCategories()) {
+			double value = Double.isNaN(category.getValue()) ? 0.0 : category.getValue();
+			if (intervals) {
+				csvPrinter.printRecord(category.getName(), category.getCount(), value, category.getLower(), category.getUpper());
+			} else {
+				csvPrinter.printRecord(category.getName(), category.getCount(), value);
+			}
+		}
+		csvPrinter.println();
+
+		// Print annotation statistics for each annotator and all categories
+		if (result.getAnnotatorTotals() != null) {
+			csvPrinter.printComment("Annotation statistics:");
+			csvPrinter.printRecord(Lists.asList("Annotator", result.getAnnotators().toArray(new String[0])));
+			csvPrinter.printRecord(Lists.asList("Total", toStrings(result.getAnnotatorTotals())));
+			for (AgreementResult.Category category : result.getCategories()) {
+				if (category.getAnnotatorCounts() != null)
+					csvPrinter.printRecord(Lists.asList(category.getName(), toStrings(category.getAnnotatorCounts())));
+			}
+			csvPrinter.println();
+		}
+
+		if (result.hasOverlap()) {
+			csvPrinter.printComment("Inter-annotator category overlap");
+			csvPrinter.printRecord("Category", "Count");
+			csvPrinter.printRecord("Total", String.valueOf(result.getOverlapTotal()));
+			for (AgreementResult.Category category : result.getCategories()) {
+				csvPrinter.printRecord(category.getName(), String.valueOf(category.getOverlap()));
+			}
+			csvPrinter.println();
+		}
+	}
+
+	private static String[] toStrings(long[] counts) {
+		return Arrays.stream(counts).mapToObj(String::valueOf).toArray(String[]::new);
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+}
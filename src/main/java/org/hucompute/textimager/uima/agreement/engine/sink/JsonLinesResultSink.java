@@ -0,0 +1,101 @@
+package org.hucompute.textimager.uima.agreement.engine.sink;
+
+import org.hucompute.textimager.uima.agreement.engine.StatisticsWriter;
+import org.json.JSONException;
+import org.json.JSONWriter;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Appends each result as a single JSON object to one file per measure, e.g. {@code KrippendorffAlphaAgreement.jsonl},
+ * instead of creating a file per document. Combined results have a null {@code document}.
+ * <p/>
+ * Values, which are not finite, and missing bounds are written as null.
+ */
+public class JsonLinesResultSink implements ResultSink {
+	private final ResultTarget target;
+	private final HashMap<String, StatisticsWriter.Record> records = new HashMap<>();
+
+	public JsonLinesResultSink(ResultTarget target) {
+		this.target = target;
+	}
+
+	@Override
+	public synchronized void write(AgreementResult result) throws IOException {
+		// Each file is truncated at most once, by the first flush of its record
+		StatisticsWriter.Record record = records.get(result.getMeasure());
+		if (record == null) {
+			record = target.open(result.getMeasure() + ".jsonl");
+			records.put(result.getMeasure(), record);
+		}
+		try {
+			print(result, new JSONWriter(record));
+		} catch (JSONException e) {
+			throw new IOException(e);
+		}
+		record.append('\n');
+		record.flush();
+	}
+
+	private static void print(AgreementResult result, JSONWriter writer) {
+		writer.object()
+				.key("document").value(result.getDocumentId())
+				.key("measure").value(result.getMeasure())
+				.key("strategy").value(result.getStrategy())
+				.key("annotators").array();
+		for (String annotator : result.getAnnotators()) {
+			writer.value(annotator);
+		}
+		writer.endArray()
+				.key("units").value(result.getUnitCount())
+				.key("agreement").value(toJson(result.getValue()))
+				.key("lower").value(toJson(result.getLower()))
+				.key("upper").value(toJson(result.getUpper()));
+		if (result.getAnnotatorTotals() != null)
+			value(writer.key("annotatorTotals"), result.getAnnotatorTotals());
+		if (result.hasOverlap())
+			writer.key("overlap").value(result.getOverlapTotal());
+
+		writer.key("categories").array();
+		for (AgreementResult.Category category : result.getCategories()) {
+			writer.object()
+					.key("category").value(category.getName())
+					.key("count").value(category.getCount())
+					.key("agreement").value(toJson(category.getValue()))
+					.key("lower").value(toJson(category.getLower()))
+					.key("upper").value(toJson(category.getUpper()));
+			if (category.getAnnotatorCounts() != null)
+				value(writer.key("annotatorCounts"), category.getAnnotatorCounts());
+			if (result.hasOverlap())
+				writer.key("overlap").value(category.getOverlap());
+			writer.endObject();
+		}
+		writer.endArray().endObject();
+	}
+
+	private static void value(JSONWriter writer, long[] counts) {
+		writer.array();
+		for (long count : counts) {
+			writer.value(count);
+		}
+		writer.endArray();
+	}
+
+	private static Object toJson(double value) {
+		return Double.isFinite(value) ? value : null;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		for (StatisticsWriter.Record record : records.values()) {
+			record.flush();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		flush();
+		records.clear();
+	}
+}
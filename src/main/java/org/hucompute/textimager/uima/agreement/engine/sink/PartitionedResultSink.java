@@ -0,0 +1,44 @@
+package org.hucompute.textimager.uima.agreement.engine.sink;
+
+/**
+ * Prints the results like the {@link CsvResultSink}, but spreads the files of the documents over a fixed number of
+ * sub-directories of the target directory, which are chosen by the hash of the file name, e.g.
+ * {@code 3f/document.csv}. Combined results stay in the target directory.
+ */
+public class PartitionedResultSink extends CsvResultSink {
+	public static final int DEFAULT_PARTITIONS = 256;
+
+	private final int partitions;
+	private final String format;
+
+	public PartitionedResultSink(ResultTarget target) {
+		this(target, DEFAULT_PARTITIONS);
+	}
+
+	/**
+	 * @param partitions The number of sub-directories.
+	 */
+	public PartitionedResultSink(ResultTarget target, int partitions) {
+		super(target);
+		if (partitions < 1)
+			throw new IllegalArgumentException("The number of partitions must be positive: " + partitions);
+		this.partitions = partitions;
+		// All partition names have the same length
+		this.format = "%0" + Integer.toHexString(partitions - 1).length() + "x/%s";
+	}
+
+	@Override
+	protected String getFileName(AgreementResult result) {
+		String fileName = super.getFileName(result);
+		if (result.getDocumentId() == null)
+			return fileName;
+		return String.format(format, getPartition(fileName), fileName);
+	}
+
+	/**
+	 * @return The partition of the given file name. Stable across runs, as {@link String#hashCode()} is specified.
+	 */
+	public int getPartition(String fileName) {
+		return Math.floorMod(fileName.hashCode(), partitions);
+	}
+}
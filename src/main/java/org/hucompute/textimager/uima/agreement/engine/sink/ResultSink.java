@@ -0,0 +1,31 @@
+package org.hucompute.textimager.uima.agreement.engine.sink;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Receives the {@link AgreementResult results} of an engine and writes them to its {@link ResultTarget}.
+ * <p/>
+ * Implementations are selected with {@link org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine#PARAM_RESULT_SINK}
+ * by their fully qualified class name and need a public constructor taking a single {@link ResultTarget}.
+ * {@link #write(AgreementResult)} may be called concurrently by the threads of a single engine.
+ */
+public interface ResultSink extends Flushable, Closeable {
+	/**
+	 * Write a result. The text may be handed to the background writer of the target, before it is written.
+	 */
+	void write(AgreementResult result) throws IOException;
+
+	/**
+	 * Submit all buffered results to the target.
+	 */
+	@Override
+	void flush() throws IOException;
+
+	/**
+	 * Submit all buffered results and release the resources of this sink. Does not close the target.
+	 */
+	@Override
+	void close() throws IOException;
+}
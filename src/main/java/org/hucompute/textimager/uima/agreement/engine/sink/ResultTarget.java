@@ -0,0 +1,88 @@
+package org.hucompute.textimager.uima.agreement.engine.sink;
+
+import org.hucompute.textimager.uima.agreement.engine.StatisticsWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The target location of the results of an engine: a standard stream, a single global file or a directory, whose files
+ * are written by a {@link StatisticsWriter}.
+ */
+public class ResultTarget {
+	private final String targetLocation;
+	private final boolean overwriteExisting;
+	private final StatisticsWriter statisticsWriter;
+	private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param targetLocation    "System.out", "System.err", a file or a directory.
+	 * @param overwriteExisting If true, existing files are truncated, otherwise they are appended to.
+	 * @param statisticsWriter  The writer, whose global target is the target location, if it denotes a file.
+	 */
+	public ResultTarget(String targetLocation, boolean overwriteExisting, StatisticsWriter statisticsWriter) {
+		this.targetLocation = targetLocation;
+		this.overwriteExisting = overwriteExisting;
+		this.statisticsWriter = statisticsWriter;
+	}
+
+	/**
+	 * @return True, if the target location is a directory, so that each file name denotes a separate file.
+	 */
+	public boolean isDirectory() {
+		switch (targetLocation) {
+			case "System.out":
+			case "System.err":
+				return false;
+			default:
+				return !statisticsWriter.hasGlobalTarget();
+		}
+	}
+
+	/**
+	 * @param fileName The file name relative to the target directory. Missing parent directories are created.
+	 * @return The path of the file, for sinks which write it themselves.
+	 * @throws IOException If the target location is not a directory.
+	 */
+	public Path resolve(String fileName) throws IOException {
+		if (!isDirectory())
+			throw new IOException("The target location is not a directory: " + targetLocation);
+		Path path = Paths.get(targetLocation, fileName);
+		Path parent = path.getParent();
+		if (parent != null && createdDirectories.add(parent))
+			Files.createDirectories(parent);
+		return path;
+	}
+
+	/**
+	 * Open a record of a file in the target location. The text of the record is handed to the
+	 * {@link StatisticsWriter} on each {@link StatisticsWriter.Record#flush() flush}.
+	 *
+	 * @param fileName The file name relative to the target directory, ignored if the target location is a single file
+	 *                 or a standard stream. Missing parent directories are created.
+	 * @return A new record.
+	 */
+	public synchronized StatisticsWriter.Record open(String fileName) throws IOException {
+		switch (targetLocation) {
+			case "System.out":
+				return statisticsWriter.open(System.out);
+			case "System.err":
+				return statisticsWriter.open(System.err);
+			default:
+				// If initialize opened a global target, print to it
+				if (statisticsWriter.hasGlobalTarget())
+					return statisticsWriter.openGlobal();
+
+				Path path = resolve(fileName);
+
+				// Truncate if the file does not exist or overwriteExisting is true, otherwise append.
+				// A file opened before may not exist yet, as its records are still queued.
+				boolean exists = statisticsWriter.isPending(path) || path.toFile().exists();
+				return statisticsWriter.open(path, !exists || overwriteExisting);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package org.hucompute.textimager.uima.agreement.engine.ttlab;
+
+import org.apache.uima.jcas.tcas.Annotation;
+import org.texttechnologylab.annotation.AbstractNamedEntity;
+import org.texttechnologylab.annotation.NamedEntity;
+
+/**
+ * The category flags of the TTLab named entity types, shared by the TTLab engines.
+ */
+final class NamedEntityFlags {
+	private NamedEntityFlags() {
+	}
+
+	/**
+	 * Encode the included metaphor, metonym and specific flags of a named entity as the bits 1, 2 and 4.
+	 *
+	 * @see org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine#getCategoryFlags(Annotation)
+	 */
+	static int getCategoryFlags(Annotation annotation, boolean includeMetaphor, boolean includeMetonym, boolean includeSpecific) {
+		int flags = 0;
+		if (annotation instanceof NamedEntity) {
+			NamedEntity namedEntity = (NamedEntity) annotation;
+			if (includeMetaphor && namedEntity.getMetaphor())
+				flags |= 1;
+			if (includeMetonym && namedEntity.getMetonym())
+				flags |= 2;
+		} else if (annotation instanceof AbstractNamedEntity) {
+			AbstractNamedEntity namedEntity = (AbstractNamedEntity) annotation;
+			if (includeMetaphor && namedEntity.getMetaphor())
+				flags |= 1;
+			if (includeMetonym && namedEntity.getMetonym())
+				flags |= 2;
+			if (includeSpecific && namedEntity.getSpecific())
+				flags |= 4;
+		}
+		return flags;
+	}
+}
@@ -1,5 +1,6 @@
 package org.hucompute.textimager.uima.agreement.engine.ttlab;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.uima.UimaContext;
@@ -12,6 +13,8 @@ import org.hucompute.textimager.uima.agreement.engine.unitizing.UnitizingIAAColl
 import org.texttechnologylab.annotation.AbstractNamedEntity;
 import org.texttechnologylab.annotation.NamedEntity;
 
+import java.util.Set;
+
 
 /**
  * Inter-annotator agreement engine using {@link UnitizingAnnotationStudy UnitizingAnnotationStudies} and
@@ -61,6 +64,22 @@ public class TTLabUnitizingIAACollectionProcessingEngine extends UnitizingIAACol
 			includeFlags = ImmutableSortedSet.copyOf(pIncludeFlags);
 	}
 	
+	/**
+	 * The included flags and the pruned prefix change the extracted category names.
+	 */
+	@Override
+	protected Set<String> getExtractionParameters() {
+		return ImmutableSet.<String>builder()
+				.addAll(super.getExtractionParameters())
+				.add(PARAM_INCLUDE_FLAGS, PARAM_PRUNE_PREFIX)
+				.build();
+	}
+	
+	@Override
+	protected int getCategoryFlags(Annotation annotation) {
+		return NamedEntityFlags.getCategoryFlags(annotation, includeFlags.contains(METAPHOR), includeFlags.contains(METONYM), includeFlags.contains(SPECIFIC));
+	}
+	
 	@Override
 	protected String getCatgoryName(Annotation annotation) {
 		String category = super.getCatgoryName(annotation);
@@ -1,34 +1,42 @@
 package org.hucompute.textimager.uima.agreement.engine.unitizing;
 
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Streams;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CASException;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.dkpro.statistics.agreement.IAgreementMeasure;
 import org.dkpro.statistics.agreement.unitizing.IUnitizingAnnotationUnit;
 import org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreement;
 import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
 import org.hucompute.textimager.uima.agreement.engine.AbstractIAAEngine;
-import org.texttechnologylab.annotation.type.Fingerprint;
+import org.hucompute.textimager.uima.agreement.engine.AgreementStateFile;
+import org.hucompute.textimager.uima.agreement.engine.BootstrapIntervals;
+import org.hucompute.textimager.uima.agreement.engine.CategoryCounts;
+import org.hucompute.textimager.uima.agreement.engine.ExtractedCas;
+import org.hucompute.textimager.uima.agreement.engine.MemoizedAgreement;
+import org.hucompute.textimager.uima.agreement.engine.SpillStore;
+import org.hucompute.textimager.uima.agreement.engine.StripedAccumulator;
+import org.hucompute.textimager.uima.agreement.engine.ViewExtractionContext;
+import org.hucompute.textimager.uima.agreement.engine.unitizing.kernel.UnitizingAgreementKernel;
 import org.texttechnologylab.utilities.collections.CountMap;
 import org.texttechnologylab.utilities.collections.IndexingMap;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import static org.apache.uima.fit.util.JCasUtil.indexCovering;
-
 
 /**
  * Inter-annotator agreement engine using {@link UnitizingAnnotationStudy UnitizingAnnotationStudies} and
@@ -40,157 +48,350 @@ import static org.apache.uima.fit.util.JCasUtil.indexCovering;
  *
  * @see KrippendorffAlphaUnitizingAgreement
  */
-public class UnitizingIAACollectionProcessingEngine extends AbstractIAAEngine {
+public class UnitizingIAACollectionProcessingEngine extends AbstractIAAEngine implements AgreementStateFile.Stateful {
+	
+	/**
+	 * The implementation of Krippendorff's alpha-u:
+	 * <ul>
+	 * <li>{@link UnitizingIAACollectionProcessingEngine#DKPRO}: the DKPro Statistics measure, which compares the
+	 * sections of all rater pairs.</li>
+	 * <li>{@link UnitizingIAACollectionProcessingEngine#KERNEL}: the {@link UnitizingAgreementKernel}, which sweeps the
+	 * sorted units of each category.</li>
+	 * </ul>
+	 * Default: {@link UnitizingIAACollectionProcessingEngine#DKPRO}.
+	 */
+	public static final String PARAM_AGREEMENT_IMPLEMENTATION = "pAgreementImplementation";
+	@ConfigurationParameter(
+			name = PARAM_AGREEMENT_IMPLEMENTATION,
+			mandatory = false,
+			defaultValue = DKPRO
+	)
+	String pAgreementImplementation;
+	
+	/**
+	 * {@link UnitizingIAACollectionProcessingEngine#PARAM_AGREEMENT_IMPLEMENTATION} choice.
+	 */
+	public static final String DKPRO = "DKPRO";
+	
+	/**
+	 * {@link UnitizingIAACollectionProcessingEngine#PARAM_AGREEMENT_IMPLEMENTATION} choice.
+	 */
+	public static final String KERNEL = "KERNEL";
+	
+	private BitSet categories = new BitSet();
+	private AtomicInteger documentOffset;
+	private IndexingMap<String> annotatorIndex;
+	
+	/**
+	 * The units of each CAS, packed as the document offset followed by offset, length, rater and category of each unit.
+	 * Shared by all replicas if {@link #RES_SHARED_STATE} is bound.
+	 */
+	private StripedAccumulator<SpillStore<int[]>> annotationStudies;
 	
-	private TreeSet<String> categories = new TreeSet<>();
-	private AtomicInteger documentOffset = new AtomicInteger(0);
-	private ArrayList<ImmutablePair<Integer, Iterable<IUnitizingAnnotationUnit>>> annotationStudies = new ArrayList<>();
-	private IndexingMap<String> annotatorIndex = new IndexingMap<>();
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		annotatorIndex = createAnnotatorIndex();
+		documentOffset = sharedState != null ? sharedState.getDocumentOffset() : new AtomicInteger(0);
+		annotationStudies = createAccumulator(() -> createSpillStore(SpillStore.INT_ARRAY));
+		if (pBootstrapSamples > 0 && SEPARATE.equals(pMultiCasHandling))
+			logger.warn("Bootstrap intervals of the unitizing engine are only estimated for the combined study, not with " + PARAM_MULTI_CAS_HANDLING + "=" + SEPARATE);
+	}
 	
 	@Override
 	public void process(JCas jCas) throws AnalysisEngineProcessException {
 		try {
-			if (!isCasValid(jCas)) return;
+			// Extract the annotation units of all views, unless they are cached
+			ExtractedCas extractedCas = extractCas(jCas, ExtractedCas.CODEC, this::extractUnits);
+			if (extractedCas == null) return;
 			
-			// Initialize study
-			int documentLength = JCasUtil.select(jCas, Token.class).size();
-			UnitizingAnnotationStudy perCasStudy = new UnitizingAnnotationStudy((int) viewCount, documentLength);
+			// Initialize study, whose raters are the views of this CAS
+			int documentLength = extractedCas.getTokenCount();
+			UnitizingAnnotationStudy perCasStudy = new UnitizingAnnotationStudy(extractedCas.getViewCount(), documentLength);
 			
 			// Count all annotations for PARAM_MIN_ANNOTATIONS
 			CountMap<String> perViewAnnotationCount = new CountMap<>();
 			
-			// Iterate over all views
-			for (String fullViewName : validViewNames) {
-				JCas viewCas = jCas.getView(fullViewName);
-				// Split user id from view name and get annotator index for this id. Discards "_InitialView"
-				String viewName = StringUtils.substringAfterLast(fullViewName.trim(), "/");
-				annotatorIndex.add(viewName);
-				
-				// Get all fingerprinted annotations
-				HashSet<TOP> fingerprinted = JCasUtil.select(viewCas, Fingerprint.class).stream()
-						.map(Fingerprint::getReference)
-						.collect(Collectors.toCollection(HashSet::new));
-				
-				// Create a set of all multi-tokens, that are covering another token
-				HashSet<Token> coveredTokens = JCasUtil.indexCovering(viewCas, Token.class, Token.class).entrySet().stream()
-						.filter(tokensCoveredByThisOne -> tokensCoveredByThisOne.getValue().size() > 1)
-						.map(Map.Entry::getKey)
-						.collect(Collectors.toCollection(HashSet::new));
-				
-				// Create an index for the token, that are not part of sub-token
-				IndexingMap<Token> tokenIndexingMap = new IndexingMap<>();
-				JCasUtil.select(viewCas, Token.class).stream()
-						.filter(((Predicate<Token>) coveredTokens::contains).negate())
-						.forEachOrdered(tokenIndexingMap::add);
+			// Get the annotator index of each view, in their original order, which the combined study uses
+			int[] raters = new int[extractedCas.getViewCount()];
+			synchronized (annotatorIndex) {
+				for (int i = 0; i < raters.length; i++) {
+					annotatorIndex.add(extractedCas.getView(i).getName());
+					raters[i] = annotatorIndex.get(extractedCas.getView(i).getName());
+				}
+			}
+			
+			// Merge the views in their original order
+			int[] categoryMap = extractedCas.mapCategories(categoryDictionary);
+			for (int j = 0; j < raters.length; j++) {
+				ExtractedCas.View view = extractedCas.getView(j);
+				String viewName = view.getName();
+				int[] spans = view.getPositions();
+				int[] viewCategories = view.getCategories();
 				
-				// Select all annotations of all given types and add an annotation unit for each item
-				for (Class<? extends Annotation> annotationClass : annotationClasses) {
-					// Get all not overlapped annotations, filtering fingerprinted if parameter was set
-					ArrayList<? extends Annotation> annotations = getAnnotations(viewCas, fingerprinted, annotationClass);
-					
-					HashMap<? extends Annotation, Collection<Token>> annotationTokenLookup = Maps.newHashMap(indexCovering(viewCas, annotationClass, Token.class));
+				for (int i = 0; i < view.size(); i++) {
+					int category = categoryMap[viewCategories[i]];
+					perCasStudy.addUnit(
+							spans[2 * i],
+							spans[2 * i + 1],
+							j,
+							category
+					);
+					categories.set(category);
 					
-					for (Annotation annotation : annotations) {
-						LinkedHashSet<Token> containedTokens = Sets.newLinkedHashSet(JCasUtil.subiterate(viewCas, Token.class, annotation, true, true));
-						containedTokens.addAll(annotationTokenLookup.getOrDefault(annotation, Sets.newLinkedHashSet()));
-						
-						// initialize indexes
-						int begin = Integer.MAX_VALUE;
-						int end = Integer.MIN_VALUE;
-						
-						// Check if the token is indexed
-						// If not, it is part of a sub-token and will be skipped
-						containedTokens.retainAll(tokenIndexingMap.keySet());
-						if (containedTokens.isEmpty())
-							continue;
-						
-						for (Token token : containedTokens) {
-							if (!tokenIndexingMap.containsKey(token))
-								continue;
-							
-							int index = tokenIndexingMap.get(token);
-							if (index < begin) {
-								begin = index;
-							}
-							if (index > end) {
-								end = index;
-							}
-						}
-						
-						if (end == Integer.MIN_VALUE || begin == Integer.MAX_VALUE) {
-							logger.error("Error during annotation boundary detection!");
-							continue;
-						}
-						
-						String category = getCatgoryName(annotation);
-						int length = end - begin + 1;
-						perCasStudy.addUnit(
-								begin,
-								length,
-								annotatorIndex.get(viewName),
-								category
-						);
-						categories.add(category);
-						
-						perViewAnnotationCount.inc(viewName);
-					}
+					perViewAnnotationCount.inc(viewName);
 				}
 			}
 			
 			// Store the collected annotations units and update the document offset for final evaluation
-			annotationStudies.add(ImmutablePair.of(documentOffset.get(), perCasStudy.getUnits()));
-			documentOffset.getAndAdd(documentLength);
+			int studyOffset = documentOffset.getAndAdd(documentLength);
+			if (!SEPARATE.equals(pMultiCasHandling)) {
+				int[] packedUnits = new int[1 + 4 * perCasStudy.getUnitCount()];
+				packedUnits[0] = studyOffset;
+				int i = 1;
+				for (IUnitizingAnnotationUnit annotationUnit : perCasStudy.getUnits()) {
+					packedUnits[i++] = (int) annotationUnit.getOffset();
+					packedUnits[i++] = (int) annotationUnit.getLength();
+					packedUnits[i++] = raters[annotationUnit.getRaterIdx()];
+					packedUnits[i++] = (Integer) annotationUnit.getCategory();
+				}
+				annotationStudies.update(annotationStudy -> annotationStudy.add(packedUnits));
+			}
 			
 			switch (pMultiCasHandling) {
 				case SEPARATE:
 				case BOTH:
-					handleSeparate(jCas, perCasStudy);
+					handleSeparate(jCas, perCasStudy, raters);
 					break;
 			}
 		} catch (CASException e) {
 			e.printStackTrace();
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		} finally {
+			releaseViewContexts();
+		}
+	}
+	
+	/**
+	 * Extract the annotation units of all views, possibly in parallel, and resolve their categories in the order of the
+	 * views.
+	 *
+	 * @return The token span and category of each unit, or null if the CAS is not valid.
+	 */
+	private ExtractedCas extractUnits(JCas jCas) throws CASException, AnalysisEngineProcessException {
+		if (!isCasValid(jCas)) return null;
+		
+		int documentLength = JCasUtil.select(jCas, Token.class).size();
+		List<ViewUnits> perViewUnits = extractViews(jCas, this::extractViewUnits);
+		
+		ExtractedCas.Builder builder = new ExtractedCas.Builder(documentLength, categoryDictionary);
+		for (ViewUnits viewUnits : perViewUnits) {
+			int[] categoryIds = new int[viewUnits.annotations.size()];
+			for (int i = 0; i < categoryIds.length; i++) {
+				categoryIds[i] = getCategoryId(viewUnits.annotations.get(i));
+			}
+			builder.addView(viewUnits.viewName, documentLength, Arrays.copyOf(viewUnits.spans, 2 * categoryIds.length), categoryIds);
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Collect the token spans of all not overlapped annotations of a single view.
+	 * Called concurrently for different views, see {@link #PARAM_VIEW_PARALLELISM}.
+	 */
+	private ViewUnits extractViewUnits(JCas viewCas, String viewName) {
+		ViewUnits viewUnits = new ViewUnits(viewName);
+		
+		ViewExtractionContext viewContext = getViewContext(viewCas);
+		
+		// Create a set of all multi-tokens, that are covering another token
+		HashSet<Token> coveredTokens = viewContext.getCoveringTokens().entrySet().stream()
+				.filter(tokensCoveredByThisOne -> tokensCoveredByThisOne.getValue().size() > 1)
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toCollection(HashSet::new));
+		
+		// Create an index for the token, that are not part of sub-token
+		IndexingMap<Token> tokenIndexingMap = new IndexingMap<>();
+		JCasUtil.select(viewCas, Token.class).stream()
+				.filter(((Predicate<Token>) coveredTokens::contains).negate())
+				.forEachOrdered(tokenIndexingMap::add);
+		
+		// Select all annotations of all given types and add an annotation unit for each item
+		for (Class<? extends Annotation> annotationClass : annotationClasses) {
+			// Get all not overlapped annotations, filtering fingerprinted if parameter was set
+			ArrayList<? extends Annotation> annotations = getAnnotations(viewCas, annotationClass);
+			
+			Map<Annotation, Collection<Token>> annotationTokenLookup = viewContext.getCoveringIndex(annotationClass, Token.class);
+			
+			for (Annotation annotation : annotations) {
+				LinkedHashSet<Token> containedTokens = Sets.newLinkedHashSet(JCasUtil.subiterate(viewCas, Token.class, annotation, true, true));
+				containedTokens.addAll(annotationTokenLookup.getOrDefault(annotation, Sets.newLinkedHashSet()));
+				
+				// initialize indexes
+				int begin = Integer.MAX_VALUE;
+				int end = Integer.MIN_VALUE;
+				
+				// Check if the token is indexed
+				// If not, it is part of a sub-token and will be skipped
+				containedTokens.retainAll(tokenIndexingMap.keySet());
+				if (containedTokens.isEmpty())
+					continue;
+				
+				for (Token token : containedTokens) {
+					if (!tokenIndexingMap.containsKey(token))
+						continue;
+					
+					int index = tokenIndexingMap.get(token);
+					if (index < begin) {
+						begin = index;
+					}
+					if (index > end) {
+						end = index;
+					}
+				}
+				
+				if (end == Integer.MIN_VALUE || begin == Integer.MAX_VALUE) {
+					logger.error("Error during annotation boundary detection!");
+					continue;
+				}
+				
+				viewUnits.add(begin, end - begin + 1, annotation);
+			}
+		}
+		return viewUnits;
+	}
+	
+	/**
+	 * The annotations of a single view and their token spans, packed as begin and length. Their categories are only
+	 * resolved after all views have been extracted, so that new category ids are assigned in the order of the views.
+	 */
+	private static class ViewUnits {
+		private final String viewName;
+		private final ArrayList<Annotation> annotations = new ArrayList<>();
+		private int[] spans = new int[32];
+		
+		private ViewUnits(String viewName) {
+			this.viewName = viewName;
+		}
+		
+		private void add(int begin, int length, Annotation annotation) {
+			int i = 2 * annotations.size();
+			if (i == spans.length)
+				spans = Arrays.copyOf(spans, 2 * spans.length);
+			spans[i] = begin;
+			spans[i + 1] = length;
+			annotations.add(annotation);
 		}
 	}
 	
 	@Override
 	public void collectionProcessComplete() throws AnalysisEngineProcessException {
-		if (annotatorIndex.size() > 1) {
-			switch (pMultiCasHandling) {
-				case SEPARATE:
-					return;
-				case BOTH:
-				case COMBINED:
-				default:
-					handleCombined();
-					break;
+		// Only the last replica computes the combined study
+		if (completeReplica(annotatorIndex)) {
+			if (annotatorIndex.size() > 1) {
+				switch (pMultiCasHandling) {
+					case SEPARATE:
+						break;
+					case BOTH:
+					case COMBINED:
+					default:
+						handleCombined();
+						break;
+				}
 			}
+			// The next collection starts with an empty combined study
+			closeStudies();
+			annotationStudies.reset();
+			documentOffset.set(0);
 		}
 		super.collectionProcessComplete();
 	}
 	
-	private void handleSeparate(JCas jCas, UnitizingAnnotationStudy completeStudy) {
+	@Override
+	protected void closeStudies() {
+		if (annotationStudies == null)
+			return;
+		for (SpillStore<int[]> annotationStudy : annotationStudies) {
+			closeSpillStore(annotationStudy);
+		}
+	}
+	
+	@Override
+	protected Map<String, String> getStateParameters() {
+		Map<String, String> parameters = super.getStateParameters();
+		parameters.put(PARAM_AGREEMENT_IMPLEMENTATION, pAgreementImplementation);
+		parameters.put(PARAM_BOOTSTRAP_SAMPLES, String.valueOf(pBootstrapSamples));
+		parameters.put(PARAM_BOOTSTRAP_CONFIDENCE, String.valueOf(pBootstrapConfidence));
+		parameters.put(PARAM_BOOTSTRAP_SEED, String.valueOf(pBootstrapSeed));
+		return parameters;
+	}
+	
+	/**
+	 * Writes the total document length and the packed units of all CASes.
+	 */
+	@Override
+	public void writeState(DataOutputStream out) throws IOException {
+		out.writeInt(documentOffset.get());
+		for (SpillStore<int[]> annotationStudy : annotationStudies) {
+			for (int[] study : annotationStudy) {
+				AgreementStateFile.writeRecord(out, SpillStore.INT_ARRAY, study);
+			}
+		}
+		AgreementStateFile.writeEndOfRecords(out);
+	}
+	
+	/**
+	 * Appends the documents of the state to those of this study.
+	 */
+	@Override
+	public void readState(DataInputStream in, int[] annotatorMap, int[] categoryMap) throws IOException {
+		int baseOffset = documentOffset.getAndAdd(in.readInt());
+		int[] study;
+		while ((study = AgreementStateFile.readRecord(in, SpillStore.INT_ARRAY)) != null) {
+			study[0] += baseOffset;
+			for (int i = 1; i < study.length; i += 4) {
+				study[i + 2] = annotatorMap[study[i + 2]];
+				study[i + 3] = categoryMap[study[i + 3]];
+			}
+			int[] mappedStudy = study;
+			annotationStudies.update(annotationStudy -> annotationStudy.add(mappedStudy));
+		}
+	}
+	
+	/**
+	 * @param raters The annotator index of each rater of the study.
+	 */
+	private void handleSeparate(JCas jCas, UnitizingAnnotationStudy completeStudy, int[] raters) {
 		if (!pPrintStatistics && ! pAnnotateDocument)
 			return;
 		
+		// Snapshot of the annotators, which may be extended concurrently by other replicas
+		ArrayList<String> annotators;
+		synchronized (annotatorIndex) {
+			annotators = new ArrayList<>(annotatorIndex.keySet());
+		}
+		
 		// Iterate over all previously collected studies
-		CountMap<String> categoryCount = new CountMap<>();
-		HashMap<String, CountMap<String>> annotatorCategoryCount = new HashMap<>();
+		CategoryCounts categoryCount = new CategoryCounts();
+		ArrayList<CategoryCounts> annotatorCategoryCount = new ArrayList<>();
 		
-		// Initialize a CountMap for each annotator
-		for (String annotator : annotatorIndex.keySet()) {
-			annotatorCategoryCount.put(annotator, new CountMap<>());
+		// Initialize a CategoryCounts for each annotator
+		for (int i = 0; i < annotators.size(); i++) {
+			annotatorCategoryCount.add(new CategoryCounts());
 		}
 		
 		for (IUnitizingAnnotationUnit annotationUnit : completeStudy.getUnits()) {
-			int id = annotationUnit.getRaterIdx();
-			String category = (String) annotationUnit.getCategory();
+			int id = raters[annotationUnit.getRaterIdx()];
+			int category = (Integer) annotationUnit.getCategory();
 			
 			// Update category counts
 			categoryCount.inc(category);
-			annotatorCategoryCount.get(annotatorIndex.getKey(id)).inc(category);
+			annotatorCategoryCount.get(id).inc(category);
 		}
 		
-		KrippendorffAlphaUnitizingAgreement agreement = new KrippendorffAlphaUnitizingAgreement(completeStudy);
+		// Shared by the statistics and the document annotation
+		MemoizedAgreement agreement = new MemoizedAgreement(calculateAgreement(completeStudy));
 		
 		if (pPrintStatistics) {
 			try {
@@ -198,20 +399,8 @@ public class UnitizingIAACollectionProcessingEngine extends AbstractIAAEngine {
 				documentId = documentId != null ? documentId : DocumentMetaData.get(jCas).getDocumentTitle();
 				documentId = documentId != null ? documentId : DocumentMetaData.get(jCas).getDocumentUri();
 				
-				String fileName = StringUtils.appendIfMissing(StringUtils.removeEnd(documentId, ".xmi"), ".csv");
-				CSVPrinter csvPrinter = getCsvPrinter(fileName);
-				csvPrinter.printComment(String.format("KrippendorffAlphaUnitizingAgreement - %s",
-						documentId
-				));
-				csvPrinter.printComment(String.format("Inter-annotator agreement for %d annotators: %s",
-						annotatorIndex.size(), annotatorIndex.keySet().toString()
-				));
-				
-				// Print the agreement for all categories
-				csvPrinter.printRecord("Category", "Count", "Agreement");
-				csvPrinter.printRecord("Overall", completeStudy.getUnitCount(), agreement.calculateAgreement());
-				printStudyResultsAndStatistics(agreement, categoryCount, annotatorCategoryCount, categories, annotatorIndex.keySet(), csvPrinter);
-				csvPrinter.flush();
+				writeResult(createResult(documentId, "KrippendorffAlphaUnitizingAgreement", null, completeStudy.getUnitCount(), agreement.calculateAgreement(),
+						agreement, null, categoryCount, annotatorCategoryCount, categories, annotators, null));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -223,57 +412,113 @@ public class UnitizingIAACollectionProcessingEngine extends AbstractIAAEngine {
 		}
 	}
 	
+	/**
+	 * Create the agreement measure of the chosen {@link #PARAM_AGREEMENT_IMPLEMENTATION} for the given study.
+	 */
+	private IAgreementMeasure calculateAgreement(UnitizingAnnotationStudy study) {
+		if (KERNEL.equals(pAgreementImplementation))
+			return UnitizingAgreementKernel.of(study);
+		return new KrippendorffAlphaUnitizingAgreement(study);
+	}
+	
 	private void handleCombined() {
-		if (annotationStudies.size() < 1 || annotatorIndex.size() < 1)
+		if (Streams.stream(annotationStudies).allMatch(SpillStore::isEmpty) || annotatorIndex.size() < 1)
 			return;
 		
-		UnitizingAnnotationStudy completeStudy = new UnitizingAnnotationStudy(annotatorIndex.size(), documentOffset.get());
-		CountMap<String> categoryCount = new CountMap<>();
-		HashMap<String, CountMap<String>> annotatorCategoryCount = new HashMap<>();
+		// The kernel collects the units itself, without a DKPro study
+		boolean useKernel = KERNEL.equals(pAgreementImplementation);
+		UnitizingAnnotationStudy completeStudy = useKernel ? null : new UnitizingAnnotationStudy(annotatorIndex.size(), documentOffset.get());
+		UnitizingAgreementKernel kernel = useKernel ? new UnitizingAgreementKernel(annotatorIndex.size(), 0L, documentOffset.get()) : null;
+		CategoryCounts categoryCount = new CategoryCounts();
+		ArrayList<CategoryCounts> annotatorCategoryCount = new ArrayList<>();
 		
-		// Initialize a CountMap for each annotator
-		for (String annotator : annotatorIndex.keySet()) {
-			annotatorCategoryCount.put(annotator, new CountMap<>());
+		// Initialize a CategoryCounts for each annotator
+		for (int i = 0; i < annotatorIndex.size(); i++) {
+			annotatorCategoryCount.add(new CategoryCounts());
 		}
 		
-		// Iterate over all previously collected studies
-		for (ImmutablePair<Integer, Iterable<IUnitizingAnnotationUnit>> study : annotationStudies) {
-			int studyOffset = study.getLeft();
-			
-			// Add all annotation units from the study with correct offset
-			for (IUnitizingAnnotationUnit annotationUnit : study.getRight()) {
-				int id = annotationUnit.getRaterIdx();
-				long offset = annotationUnit.getOffset();
-				long length = annotationUnit.getLength();
-				String category = (String) annotationUnit.getCategory();
-				
-				completeStudy.addUnit(studyOffset + offset, length, id, category);
+		// Iterate over all previously collected studies, keeping them for the bootstrap
+		ArrayList<int[]> documents = pBootstrapSamples > 0 ? new ArrayList<>() : null;
+		for (SpillStore<int[]> annotationStudy : annotationStudies) {
+			for (int[] study : annotationStudy) {
+				int studyOffset = study[0];
+				if (documents != null)
+					documents.add(study);
 				
-				// Update category counts
-				categoryCount.inc(category);
-				annotatorCategoryCount.get(annotatorIndex.getKey(id)).inc(category);
+				// Add all annotation units from the study with correct offset
+				for (int i = 1; i < study.length; i += 4) {
+					long offset = study[i];
+					long length = study[i + 1];
+					int id = study[i + 2];
+					int category = study[i + 3];
+					
+					if (useKernel) {
+						kernel.addUnit(studyOffset + offset, length, id, category);
+					} else {
+						completeStudy.addUnit(studyOffset + offset, length, id, category);
+					}
+					
+					// Update category counts, including categories of other replicas
+					categoryCount.inc(category);
+					annotatorCategoryCount.get(id).inc(category);
+					categories.set(category);
+				}
 			}
 		}
 		
 		if (pPrintStatistics) {
 			try {
-				CSVPrinter csvPrinter = getCsvPrinter("KrippendorffAlphaUnitizingAgreement.csv");
-				csvPrinter.printComment("KrippendorffAlphaUnitizingAgreement, COMBINED");
-				csvPrinter.printComment(String.format("Inter-annotator agreement for %d annotators: %s",
-						annotatorIndex.size(), annotatorIndex.keySet().toString()
-				));
-				
-				// Compute and print the agreement for all categories
-				KrippendorffAlphaUnitizingAgreement agreement = new KrippendorffAlphaUnitizingAgreement(completeStudy);
+				// Compute the agreement for all categories
+				MemoizedAgreement agreement = new MemoizedAgreement(useKernel ? kernel : new KrippendorffAlphaUnitizingAgreement(completeStudy));
+				long unitCount = useKernel ? kernel.getUnitCount() : completeStudy.getUnitCount();
+				BootstrapIntervals intervals = documents != null ? estimateIntervals(documents) : null;
 				
-				csvPrinter.printRecord("Category", "Count", "Agreement");
-				csvPrinter.printRecord("Overall", completeStudy.getUnitCount(), agreement.calculateAgreement());
-				printStudyResultsAndStatistics(agreement, categoryCount, annotatorCategoryCount, categories, annotatorIndex.keySet(), csvPrinter);
-				csvPrinter.flush();
+				writeResult(createResult(null, "KrippendorffAlphaUnitizingAgreement", null, unitCount, agreement.calculateAgreement(),
+						agreement, intervals, categoryCount, annotatorCategoryCount, categories, annotatorIndex.keySet(), null));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 	
+	/**
+	 * Estimate the bootstrap intervals of the combined study by resampling whole documents. Each replicate
+	 * concatenates the drawn documents and computes the {@link UnitizingAgreementKernel} of their units.
+	 *
+	 * @param documents The packed units of all documents.
+	 */
+	private BootstrapIntervals estimateIntervals(ArrayList<int[]> documents) {
+		// Each document ends at the offset of the next one
+		documents.sort(Comparator.comparingInt(document -> document[0]));
+		int[] lengths = new int[documents.size()];
+		for (int i = 0; i < lengths.length; i++) {
+			int end = i + 1 < lengths.length ? documents.get(i + 1)[0] : documentOffset.get();
+			lengths[i] = end - documents.get(i)[0];
+		}
+		
+		int raterCount = annotatorIndex.size();
+		int[] sortedCategories = categories.stream().toArray();
+		return estimateIntervals(documents.size(), (weights, values) -> {
+			long continuumLength = 0L;
+			for (int i = 0; i < weights.length; i++) {
+				continuumLength += (long) weights[i] * lengths[i];
+			}
+			UnitizingAgreementKernel kernel = new UnitizingAgreementKernel(raterCount, 0L, continuumLength);
+			long documentBegin = 0L;
+			for (int i = 0; i < weights.length; i++) {
+				int[] document = documents.get(i);
+				for (int draw = 0; draw < weights[i]; draw++) {
+					for (int j = 1; j < document.length; j += 4) {
+						kernel.addUnit(documentBegin + document[j], document[j + 1], document[j + 2], document[j + 3]);
+					}
+					documentBegin += lengths[i];
+				}
+			}
+			values[0] = kernel.calculateAgreement();
+			for (int category : sortedCategories) {
+				values[category + 1] = kernel.calculateCategoryAgreement(category);
+			}
+		});
+	}
+	
 }
@@ -0,0 +1,245 @@
+package org.hucompute.textimager.uima.agreement.engine.unitizing.kernel;
+
+import org.dkpro.statistics.agreement.IAgreementMeasure;
+import org.dkpro.statistics.agreement.ICategorySpecificAgreement;
+import org.dkpro.statistics.agreement.unitizing.IUnitizingAnnotationStudy;
+import org.dkpro.statistics.agreement.unitizing.IUnitizingAnnotationUnit;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Computes Krippendorff's &alpha;<sub>u</sub> (1995) from primitive arrays, equivalent to the DKPro Statistics
+ * {@link org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreement KrippendorffAlphaUnitizingAgreement}.
+ * <p/>
+ * Instead of comparing all sections of each pair of raters, the units are sorted once by category, rater and offset.
+ * For each unit and other rater, the overlapping units are found by a binary search over the sorted unit ends, so the
+ * observed disagreement takes <i>O(n m log n)</i> for <i>n</i> units and <i>m</i> raters. The expected disagreement
+ * counts the gaps of each category, which are at least as long as a unit, from the suffix sums of the sorted gap
+ * lengths. All categories are evaluated in the same sweep.
+ * <p/>
+ * Like the DKPro Statistics implementation, the units of a rater must not overlap units of the same category.
+ */
+public class UnitizingAgreementKernel implements IAgreementMeasure, ICategorySpecificAgreement {
+	private final int raterCount;
+	private final long continuumBegin;
+	private final long continuumLength;
+
+	/**
+	 * Offset, length, rater and category of each unit.
+	 */
+	private long[] units = new long[64];
+	private int unitCount = 0;
+
+	/**
+	 * Disagreements by category id, computed on first use.
+	 */
+	private double[] observedDisagreement;
+	private double[] expectedDisagreement;
+
+	/**
+	 * @param raterCount      The number of raters.
+	 * @param continuumBegin  The begin of the annotated continuum.
+	 * @param continuumLength The length of the annotated continuum.
+	 */
+	public UnitizingAgreementKernel(int raterCount, long continuumBegin, long continuumLength) {
+		this.raterCount = raterCount;
+		this.continuumBegin = continuumBegin;
+		this.continuumLength = continuumLength;
+	}
+
+	/**
+	 * Copy the units of a study of {@link org.hucompute.textimager.uima.agreement.engine.CategoryDictionary category ids}.
+	 *
+	 * @param study The study.
+	 * @return A new kernel with the same units.
+	 */
+	public static UnitizingAgreementKernel of(IUnitizingAnnotationStudy study) {
+		UnitizingAgreementKernel kernel = new UnitizingAgreementKernel(study.getRaterCount(), study.getContinuumBegin(), study.getContinuumLength());
+		for (IUnitizingAnnotationUnit unit : study.getUnits()) {
+			kernel.addUnit(unit.getOffset(), unit.getLength(), unit.getRaterIdx(), (Integer) unit.getCategory());
+		}
+		return kernel;
+	}
+
+	/**
+	 * @param offset   The begin of the unit.
+	 * @param length   The length of the unit.
+	 * @param rater    The rater index, less than the rater count.
+	 * @param category The category id.
+	 * @throws IllegalArgumentException If the rater index is out of range.
+	 */
+	public void addUnit(long offset, long length, int rater, int category) {
+		if (rater < 0 || rater >= raterCount)
+			throw new IllegalArgumentException(String.format("Rater index %d out of range for %d raters", rater, raterCount));
+		if (4 * (unitCount + 1) > units.length)
+			units = Arrays.copyOf(units, 2 * units.length);
+		units[4 * unitCount] = offset;
+		units[4 * unitCount + 1] = length;
+		units[4 * unitCount + 2] = rater;
+		units[4 * unitCount + 3] = category;
+		unitCount++;
+		observedDisagreement = null;
+		expectedDisagreement = null;
+	}
+
+	public int getUnitCount() {
+		return unitCount;
+	}
+
+	@Override
+	public double calculateAgreement() {
+		computeDisagreements();
+		double observed = 0.0;
+		double expected = 0.0;
+		for (int category = 0; category < observedDisagreement.length; category++) {
+			observed += observedDisagreement[category];
+			expected += expectedDisagreement[category];
+		}
+		return calculateAlpha(observed, expected);
+	}
+
+	/**
+	 * @param category The category id.
+	 */
+	@Override
+	public double calculateCategoryAgreement(Object category) {
+		computeDisagreements();
+		int id = (Integer) category;
+		if (id >= observedDisagreement.length)
+			return calculateAlpha(0.0, 0.0);
+		return calculateAlpha(observedDisagreement[id], expectedDisagreement[id]);
+	}
+
+	private static double calculateAlpha(double observed, double expected) {
+		if (observed == expected)
+			return 0.0;
+		return 1.0 - observed / expected;
+	}
+
+	private void computeDisagreements() {
+		if (observedDisagreement != null)
+			return;
+
+		// Sort by category, rater and offset
+		Integer[] order = IntStream.range(0, unitCount).boxed().toArray(Integer[]::new);
+		Arrays.sort(order, Comparator.<Integer>comparingLong(i -> units[4 * i + 3])
+				.thenComparingLong(i -> units[4 * i + 2])
+				.thenComparingLong(i -> units[4 * i]));
+		long[] begins = new long[unitCount];
+		long[] ends = new long[unitCount];
+		int[] raters = new int[unitCount];
+		int[] categories = new int[unitCount];
+		for (int i = 0; i < unitCount; i++) {
+			int unit = order[i];
+			begins[i] = units[4 * unit];
+			ends[i] = units[4 * unit] + units[4 * unit + 1];
+			raters[i] = (int) units[4 * unit + 2];
+			categories[i] = (int) units[4 * unit + 3];
+		}
+
+		int categoryCount = unitCount > 0 ? categories[unitCount - 1] + 1 : 0;
+		observedDisagreement = new double[categoryCount];
+		expectedDisagreement = new double[categoryCount];
+
+		// The units of rater r are [raterStarts[r], raterStarts[r + 1]) within the current category
+		int[] raterStarts = new int[raterCount + 1];
+		for (int from = 0, to; from < unitCount; from = to) {
+			int category = categories[from];
+			to = from;
+			for (int rater = 0; rater < raterCount; rater++) {
+				raterStarts[rater] = to;
+				while (to < unitCount && categories[to] == category && raters[to] == rater) to++;
+			}
+			raterStarts[raterCount] = to;
+			observedDisagreement[category] = calculateObservedDisagreement(begins, ends, raters, from, to, raterStarts);
+			expectedDisagreement[category] = calculateExpectedDisagreement(begins, ends, from, to, raterStarts);
+		}
+	}
+
+	/**
+	 * The squared distance of each unit to the overlapping units of all other raters, or its squared length if it
+	 * lies in a gap of the other rater. The latter term is counted for both rater orders.
+	 */
+	private double calculateObservedDisagreement(long[] begins, long[] ends, int[] raters, int from, int to, int[] raterStarts) {
+		double sum = 0.0;
+		for (int i = from; i < to; i++) {
+			long begin = begins[i];
+			long end = ends[i];
+			for (int rater = 0; rater < raterCount; rater++) {
+				if (rater == raters[i])
+					continue;
+				boolean overlaps = false;
+				for (int j = firstEndAfter(ends, raterStarts[rater], raterStarts[rater + 1], begin); j < raterStarts[rater + 1] && begins[j] < end; j++) {
+					double beginDistance = begin - begins[j];
+					double endDistance = end - ends[j];
+					sum += beginDistance * beginDistance + endDistance * endDistance;
+					overlaps = true;
+				}
+				if (!overlaps) {
+					double length = end - begin;
+					sum += 2.0 * length * length;
+				}
+			}
+		}
+		return sum / ((double) raterCount * (raterCount - 1) * continuumLength * continuumLength);
+	}
+
+	private double calculateExpectedDisagreement(long[] begins, long[] ends, int from, int to, int[] raterStarts) {
+		// The gaps between the units of each rater, including those without any unit of the category
+		long[] gaps = new long[to - from + raterCount];
+		int gapCount = 0;
+		for (int rater = 0; rater < raterCount; rater++) {
+			long previousEnd = continuumBegin;
+			for (int j = raterStarts[rater]; j < raterStarts[rater + 1]; j++) {
+				gaps[gapCount++] = begins[j] - previousEnd;
+				previousEnd = ends[j];
+			}
+			gaps[gapCount++] = continuumBegin + continuumLength - previousEnd;
+		}
+		Arrays.sort(gaps, 0, gapCount);
+		double[] gapSuffixSums = new double[gapCount + 1];
+		for (int j = gapCount - 1; j >= 0; j--) {
+			gapSuffixSums[j] = gapSuffixSums[j + 1] + gaps[j];
+		}
+
+		double units = to - from;
+		double numerator = 0.0;
+		double unitPairs = 0.0;
+		for (int i = from; i < to; i++) {
+			double length = ends[i] - begins[i];
+			int longerGaps = firstAtLeast(gaps, gapCount, ends[i] - begins[i]);
+			double gapPositions = gapSuffixSums[longerGaps] - (length - 1.0) * (gapCount - longerGaps);
+			numerator += (units - 1.0) / 3.0 * (2.0 * length * length * length - 3.0 * length * length + length)
+					+ length * length * gapPositions;
+			unitPairs += length * (length - 1.0);
+		}
+		double positions = (double) raterCount * continuumLength;
+		return 2.0 / positions * numerator / (positions * (positions - 1.0) - unitPairs);
+	}
+
+	/**
+	 * @return The first index in [from, to) of a unit ending after the given position, as the units of a rater are
+	 * sorted by their ends, too.
+	 */
+	private static int firstEndAfter(long[] ends, int from, int to, long position) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (ends[mid] <= position) from = mid + 1;
+			else to = mid;
+		}
+		return from;
+	}
+
+	private static int firstAtLeast(long[] values, int count, long value) {
+		int from = 0;
+		int to = count;
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (values[mid] < value) from = mid + 1;
+			else to = mid;
+		}
+		return from;
+	}
+}
@@ -0,0 +1,211 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy;
+import org.hucompute.textimager.uima.agreement.engine.unitizing.UnitizingIAACollectionProcessingEngine;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The engine configurations and generated corpus of the tests, which compare the combined agreement of a replicated,
+ * sharded or cached engine with that of a single engine.
+ */
+public class AgreementFixture {
+	public static final int DOCUMENTS = 20;
+
+	/**
+	 * The coding engine with streamed sufficient statistics.
+	 */
+	public static final Configuration CODING_STREAMED = new Configuration(CodingIAACollectionProcessingEngine.class,
+			CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement,
+			CodingIAACollectionProcessingEngine.PARAM_SET_SELECTION_STRATEGY, SetSelectionStrategy.ALL.name());
+
+	/**
+	 * The coding engine with the per-CAS studies of the MAX strategy.
+	 */
+	public static final Configuration CODING_MAX = new Configuration(CodingIAACollectionProcessingEngine.class,
+			CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement,
+			CodingIAACollectionProcessingEngine.PARAM_SET_SELECTION_STRATEGY, SetSelectionStrategy.MAX.name());
+
+	public static final Configuration UNITIZING = new Configuration(UnitizingIAACollectionProcessingEngine.class,
+			"KrippendorffAlphaUnitizingAgreement");
+
+	public static final List<Configuration> CONFIGURATIONS = Arrays.asList(CODING_STREAMED, CODING_MAX, UNITIZING);
+
+	/**
+	 * @return The generator of the test corpus, with three annotators and some nested and overlapping entities.
+	 */
+	public static SyntheticCorpusGenerator createGenerator() {
+		return new SyntheticCorpusGenerator()
+				.withAnnotatorCount(3)
+				.withNestingRate(0.1)
+				.withOverlapRate(0.1);
+	}
+
+	/**
+	 * Process the first {@link #DOCUMENTS} documents of the generator and complete the collection.
+	 */
+	public static void process(AnalysisEngine engine, SyntheticCorpusGenerator generator) throws Exception {
+		JCas jCas = JCasFactory.createJCas();
+		for (int i = 0; i < DOCUMENTS; i++) {
+			jCas.reset();
+			generator.generate(jCas, i);
+			engine.process(jCas);
+		}
+		engine.collectionProcessComplete();
+	}
+
+	/**
+	 * A variant of processing the corpus with an engine configuration, e.g. with replicas, shards or a cache.
+	 */
+	@FunctionalInterface
+	public interface Variant {
+		/**
+		 * Process the generated corpus with the given configuration and complete the collection.
+		 *
+		 * @param targetLocation The target location of the results.
+		 */
+		void run(Configuration configuration, Path targetLocation) throws Exception;
+	}
+
+	/**
+	 * Process the corpus with a single engine of each configuration and with each variant in turn, and assert that
+	 * every variant has the combined results of the single engine.
+	 *
+	 * @param directory The directory of the results, with a subdirectory per configuration.
+	 */
+	public static void assertSameAsSingle(Path directory, List<Configuration> configurations, Variant... variants) throws Exception {
+		for (int i = 0; i < configurations.size(); i++) {
+			Configuration configuration = configurations.get(i);
+			Path configurationDirectory = Files.createDirectory(directory.resolve(String.valueOf(i)));
+
+			Path single = Files.createDirectory(configurationDirectory.resolve("single"));
+			AnalysisEngine engine = configuration.createEngine(single);
+			try {
+				process(engine, createGenerator());
+			} finally {
+				engine.destroy();
+			}
+
+			for (int j = 0; j < variants.length; j++) {
+				Path variant = Files.createDirectory(configurationDirectory.resolve("variant-" + j));
+				variants[j].run(configuration, variant);
+				assertSameResults(single.resolve(configuration.getFileName()), variant.resolve(configuration.getFileName()));
+			}
+		}
+	}
+
+	/**
+	 * Assert that two CSV result files hold the same records. Numbers may differ by rounding, as the order of the
+	 * documents in a combined study depends on the scheduling of the replicas.
+	 */
+	public static void assertSameResults(Path expected, Path actual) throws Exception {
+		String[] expectedLines = read(expected).split("\r?\n");
+		String[] actualLines = read(actual).split("\r?\n");
+		assertEquals(expectedLines.length, actualLines.length, actual.toString());
+		for (int line = 0; line < expectedLines.length; line++) {
+			String[] expectedFields = expectedLines[line].split(";");
+			String[] actualFields = actualLines[line].split(";");
+			assertEquals(expectedFields.length, actualFields.length, actual + ":" + (line + 1));
+			for (int field = 0; field < expectedFields.length; field++) {
+				String message = actual + ":" + (line + 1) + ", field " + (field + 1);
+				try {
+					assertEquals(Double.parseDouble(expectedFields[field]), Double.parseDouble(actualFields[field]), 1e-12, message);
+				} catch (NumberFormatException e) {
+					assertEquals(expectedFields[field], actualFields[field], message);
+				}
+			}
+		}
+	}
+
+	public static String read(Path path) throws Exception {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * An engine class with the parameters under test.
+	 */
+	public static class Configuration {
+		private final Class<? extends AbstractIAAEngine> engineClass;
+		private final String measure;
+		private final Object[] parameters;
+
+		/**
+		 * @param engineClass The engine class.
+		 * @param measure     The name of the agreement measure, which the result files are named after.
+		 * @param parameters  The parameters of the engine, in addition to those of all configurations.
+		 */
+		public Configuration(Class<? extends AbstractIAAEngine> engineClass, String measure, Object... parameters) {
+			this.engineClass = engineClass;
+			this.measure = measure;
+			this.parameters = parameters;
+		}
+
+		public Class<? extends AbstractIAAEngine> getEngineClass() {
+			return engineClass;
+		}
+
+		/**
+		 * @return The name of the CSV file of the combined study.
+		 */
+		public String getFileName() {
+			return measure + ".csv";
+		}
+
+		/**
+		 * @param targetLocation The target location of the results.
+		 * @param parameters     More parameters, which replace those of the configuration.
+		 * @return A description of a {@link AbstractIAAEngine#COMBINED COMBINED} engine, which counts all CASes.
+		 */
+		public AnalysisEngineDescription createDescription(Path targetLocation, Object... parameters) throws Exception {
+			LinkedHashMap<Object, Object> values = new LinkedHashMap<>();
+			put(values,
+					AbstractIAAEngine.PARAM_ANNOTATION_CLASSES, SyntheticCorpusGenerator.ANNOTATION_CLASSES,
+					AbstractIAAEngine.PARAM_MIN_ANNOTATIONS, 0,
+					AbstractIAAEngine.PARAM_ANNOTATOR_RELATION, AbstractIAAEngine.BLACKLIST,
+					AbstractIAAEngine.PARAM_MULTI_CAS_HANDLING, AbstractIAAEngine.COMBINED,
+					AbstractIAAEngine.PARAM_TARGET_LOCATION, targetLocation.toString());
+			put(values, this.parameters);
+			put(values, parameters);
+
+			ArrayList<Object> configurationData = new ArrayList<>();
+			for (Map.Entry<Object, Object> value : values.entrySet()) {
+				configurationData.add(value.getKey());
+				configurationData.add(value.getValue());
+			}
+			return AnalysisEngineFactory.createEngineDescription(engineClass, configurationData.toArray());
+		}
+
+		/**
+		 * @see #createDescription(Path, Object...)
+		 */
+		public AnalysisEngine createEngine(Path targetLocation, Object... parameters) throws Exception {
+			return AnalysisEngineFactory.createEngine(createDescription(targetLocation, parameters));
+		}
+
+		private static void put(Map<Object, Object> values, Object... parameters) {
+			for (int i = 0; i < parameters.length; i += 2) {
+				values.put(parameters[i], parameters[i + 1]);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return engineClass.getSimpleName() + Arrays.toString(parameters);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingAgreementAnnotatorEngine;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.relational.RelationAnnotationAgreement;
+import org.hucompute.textimager.uima.agreement.engine.ttlab.TTLabCodingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.ttlab.TTLabUnitizingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.unitizing.UnitizingAgreementAnnotatorEngine;
+import org.hucompute.textimager.uima.agreement.engine.unitizing.UnitizingIAACollectionProcessingEngine;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pushes a large number of generated documents through every {@link AbstractIAAEngine} implementation, in SEPARATE and
+ * COMBINED mode, and asserts that the retained heap stays bounded.
+ * <p/>
+ * Excluded from the default build, run with {@code mvn test -DexcludedTestGroups= -Dgroups=soak}.
+ * The system properties {@code soak.documents} and {@code soak.maxHeapGrowthMb} override the document count and the
+ * tolerated heap growth between the end of the warm-up and the last document.
+ */
+@Tag("soak")
+public class AgreementMemorySoakTest {
+	private static final int DOCUMENTS = Integer.getInteger("soak.documents", 10000);
+	private static final long MAX_HEAP_GROWTH = Long.getLong("soak.maxHeapGrowthMb", 64L) * 1024 * 1024;
+
+	private static List<String> vocabulary;
+
+	@BeforeAll
+	public static void loadVocabulary() throws Exception {
+		try (InputStream inputStream = AgreementMemorySoakTest.class.getResourceAsStream("/test-Anne_Frank.xmi")) {
+			vocabulary = SyntheticCorpusGenerator.loadVocabulary(inputStream);
+		}
+	}
+
+	@TestFactory
+	public Stream<DynamicTest> testBoundedHeap() {
+		List<Class<? extends AbstractIAAEngine>> engineClasses = Arrays.asList(
+				CodingIAACollectionProcessingEngine.class,
+				CodingAgreementAnnotatorEngine.class,
+				TTLabCodingIAACollectionProcessingEngine.class,
+				UnitizingIAACollectionProcessingEngine.class,
+				UnitizingAgreementAnnotatorEngine.class,
+				TTLabUnitizingIAACollectionProcessingEngine.class,
+				RelationAnnotationAgreement.class
+		);
+		return engineClasses.stream()
+				.flatMap(engineClass -> Stream.of(AbstractIAAEngine.SEPARATE, AbstractIAAEngine.COMBINED)
+						.map(multiCasHandling -> DynamicTest.dynamicTest(
+								engineClass.getSimpleName() + " " + multiCasHandling,
+								() -> runSoak(engineClass, multiCasHandling))));
+	}
+
+	private void runSoak(Class<? extends AbstractIAAEngine> engineClass, String multiCasHandling) throws Exception {
+		SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator()
+				.withTokenCount(200)
+				.withAnnotatorCount(3)
+				.withEntityDensity(0.15)
+				.withRelationDensity(0.05)
+				.withNestingRate(0.1)
+				.withOverlapRate(0.05)
+				.withSubTokenRate(0.05)
+				.withFingerprintCoverage(0.9)
+				.withFlagRate(0.05)
+				.withVocabulary(vocabulary);
+
+		Path targetLocation = Files.createTempFile("soak-" + engineClass.getSimpleName(), ".csv");
+		AnalysisEngine engine = AnalysisEngineFactory.createEngine(
+				engineClass,
+				AbstractIAAEngine.PARAM_ANNOTATION_CLASSES, SyntheticCorpusGenerator.ANNOTATION_CLASSES,
+				AbstractIAAEngine.PARAM_MIN_VIEWS, 2,
+				AbstractIAAEngine.PARAM_MIN_ANNOTATIONS, 0,
+				AbstractIAAEngine.PARAM_ANNOTATOR_RELATION, AbstractIAAEngine.BLACKLIST,
+				AbstractIAAEngine.PARAM_MULTI_CAS_HANDLING, multiCasHandling,
+				AbstractIAAEngine.PARAM_PRINT_STATS, true,
+				AbstractIAAEngine.PARAM_TARGET_LOCATION, targetLocation.toString()
+		);
+		try {
+			JCas jCas = JCasFactory.createJCas();
+			int warmUp = DOCUMENTS / 10;
+			long baseline = 0L;
+			for (int i = 0; i < DOCUMENTS; i++) {
+				if (i == warmUp)
+					baseline = getUsedHeapAfterGc();
+				jCas.reset();
+				generator.generate(jCas, i);
+				engine.process(jCas);
+			}
+			long growth = getUsedHeapAfterGc() - baseline;
+			assertTrue(growth < MAX_HEAP_GROWTH, () -> String.format(
+					"%s (%s) retained %d MB after %d documents, more than the tolerated %d MB",
+					engineClass.getSimpleName(), multiCasHandling, growth >> 20, DOCUMENTS - warmUp, MAX_HEAP_GROWTH >> 20));
+
+			engine.collectionProcessComplete();
+		} finally {
+			engine.destroy();
+			Files.deleteIfExists(targetLocation);
+		}
+	}
+
+	private static long getUsedHeapAfterGc() {
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
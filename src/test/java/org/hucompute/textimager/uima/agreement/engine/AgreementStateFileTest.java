@@ -0,0 +1,95 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.hucompute.textimager.uima.agreement.engine.AgreementFixture.Configuration;
+import org.hucompute.textimager.uima.agreement.engine.relational.RelationAnnotationAgreement;
+import org.hucompute.textimager.uima.agreement.engine.serialization.MergeAgreementStates;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Splits a generated corpus into two shards, whose agreement states are merged by {@link MergeAgreementStates}, and
+ * compares the combined statistics with those of a single engine.
+ */
+public class AgreementStateFileTest {
+	private static final int SHARDS = 2;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		AgreementFixture.assertSameAsSingle(tempDir, AgreementFixture.CONFIGURATIONS, (configuration, targetLocation) -> {
+			String[] stateFiles = writeShards(configuration, Files.createDirectory(targetLocation.resolve("shards")));
+			MergeAgreementStates.merge(stateFiles, targetLocation.toString(), null, -1);
+		});
+	}
+
+	@Test
+	public void testMismatchedParameters() throws Exception {
+		Configuration configuration = AgreementFixture.CODING_STREAMED;
+		String[] stateFiles = writeShards(configuration, Files.createDirectory(tempDir.resolve("shards")));
+
+		// A state is only loaded by an engine with the same state parameters
+		AnalysisEngine engine = configuration.createEngine(Files.createDirectory(tempDir.resolve("merged")),
+				AbstractIAAEngine.PARAM_STATE_SOURCES, stateFiles,
+				AbstractIAAEngine.PARAM_BOOTSTRAP_SEED, 1);
+		try {
+			assertThrows(AnalysisEngineProcessException.class, engine::collectionProcessComplete);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testUnsupportedEngine() {
+		// The relation agreement has no combined study, so it must not silently ignore a state target
+		assertThrows(ResourceInitializationException.class, () -> AnalysisEngineFactory.createEngine(RelationAnnotationAgreement.class,
+				AbstractIAAEngine.PARAM_TARGET_LOCATION, tempDir.toString(),
+				AbstractIAAEngine.PARAM_STATE_TARGET, tempDir.resolve("relation.iaa").toString()));
+	}
+
+	/**
+	 * Process the generated corpus in {@link #SHARDS} consecutive shards, each writing its agreement state.
+	 *
+	 * @return The state files.
+	 */
+	private static String[] writeShards(Configuration configuration, Path shardDirectory) throws Exception {
+		String[] stateFiles = new String[SHARDS];
+		AnalysisEngine[] shards = new AnalysisEngine[SHARDS];
+		SyntheticCorpusGenerator generator = AgreementFixture.createGenerator();
+		try {
+			for (int i = 0; i < SHARDS; i++) {
+				stateFiles[i] = shardDirectory.resolve("shard-" + i + ".iaa").toString();
+				shards[i] = configuration.createEngine(shardDirectory,
+						AbstractIAAEngine.PARAM_STATE_TARGET, stateFiles[i],
+						AbstractIAAEngine.PARAM_PRINT_STATS, false);
+			}
+			JCas jCas = JCasFactory.createJCas();
+			for (int i = 0; i < AgreementFixture.DOCUMENTS; i++) {
+				jCas.reset();
+				generator.generate(jCas, i);
+				shards[i * SHARDS / AgreementFixture.DOCUMENTS].process(jCas);
+			}
+			for (AnalysisEngine shard : shards) {
+				shard.collectionProcessComplete();
+			}
+		} finally {
+			for (AnalysisEngine shard : shards) {
+				if (shard != null)
+					shard.destroy();
+			}
+		}
+		return stateFiles;
+	}
+}
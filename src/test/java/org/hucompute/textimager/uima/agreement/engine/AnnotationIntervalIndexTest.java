@@ -0,0 +1,55 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.annotation.NamedEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the {@link AnnotationIntervalIndex} with the nested annotations found by
+ * {@link JCasUtil#subiterate(JCas, Class, Annotation, boolean, boolean) JCasUtil.subiterate}.
+ */
+public class AnnotationIntervalIndexTest {
+	@Test
+	public void testNestedAnnotations() throws Exception {
+		Random random = new Random(42L);
+		JCas jCas = JCasFactory.createJCas();
+		for (int round = 0; round < 50; round++) {
+			jCas.reset();
+			jCas.setDocumentText(new String(new char[200]).replace('\0', 'x'));
+			// Identical spans are left out, as the subiterator may skip annotations equal to its boundary
+			HashSet<Integer> spans = new HashSet<>();
+			for (int i = 0; i < 60; i++) {
+				int begin = random.nextInt(190);
+				int end = begin + 1 + random.nextInt(10);
+				if (spans.add(begin * 1000 + end))
+					new NamedEntity(jCas, begin, end).addToIndexes();
+			}
+
+			Collection<NamedEntity> annotations = JCasUtil.select(jCas, NamedEntity.class);
+			HashSet<NamedEntity> expected = new HashSet<>();
+			for (NamedEntity annotation : annotations) {
+				JCasUtil.subiterate(jCas, NamedEntity.class, annotation, false, false).forEach(item -> {
+					if (annotation.getType().equals(item.getType()))
+						expected.add(item);
+				});
+			}
+
+			AnnotationIntervalIndex<NamedEntity> index = new AnnotationIntervalIndex<>(annotations);
+			assertEquals(expected, index.getNested(new HashSet<>(annotations)), "round " + round);
+
+			ArrayList<NamedEntity> outermost = new ArrayList<>(annotations);
+			outermost.removeAll(expected);
+			assertEquals(outermost, index.getOutermost(), "round " + round);
+		}
+	}
+}
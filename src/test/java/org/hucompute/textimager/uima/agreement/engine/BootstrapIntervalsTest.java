@@ -0,0 +1,83 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.ClusteredCodingStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.CodingAgreementKernel;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.IntCodingStudy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the reproducibility of the {@link BootstrapIntervals} and the weighted evaluation of resampled coding studies.
+ */
+public class BootstrapIntervalsTest {
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void testReproducible() {
+		double[] clusters = new Random(42L).doubles(500).toArray();
+		double mean = Arrays.stream(clusters).average().orElse(Double.NaN);
+		BootstrapIntervals.Statistic statistic = (weights, values) -> {
+			double sum = 0.0;
+			for (int i = 0; i < weights.length; i++) {
+				sum += weights[i] * clusters[i];
+			}
+			values[0] = sum / clusters.length;
+		};
+
+		BootstrapIntervals first = BootstrapIntervals.estimate(clusters.length, 0, 1000, 0.95, 7L, statistic);
+		BootstrapIntervals second = BootstrapIntervals.estimate(clusters.length, 0, 1000, 0.95, 7L, statistic);
+		assertEquals(first.getLower(), second.getLower());
+		assertEquals(first.getUpper(), second.getUpper());
+
+		// The standard error of the mean of uniform values is about 0.013
+		assertTrue(first.getLower() < mean && mean < first.getUpper());
+		assertEquals(mean - 1.96 * Math.sqrt(1.0 / 12.0 / clusters.length), first.getLower(), 0.005);
+		assertEquals(mean + 1.96 * Math.sqrt(1.0 / 12.0 / clusters.length), first.getUpper(), 0.005);
+	}
+
+	@Test
+	public void testClusteredCodingStudy() {
+		Random random = new Random(42L);
+		ClusteredCodingStudy clusteredStudy = new ClusteredCodingStudy(3, SetSelectionStrategy.MAX);
+		IntCodingStudy study = new IntCodingStudy(3, SetSelectionStrategy.MAX);
+		IntCodingStudy resampledStudy = new IntCodingStudy(3, SetSelectionStrategy.MAX);
+		int[] weights = new int[200];
+		for (int token = 0; token < weights.length; token++) {
+			int[][] annotations = new int[3][];
+			for (int rater = 0; rater < annotations.length; rater++) {
+				annotations[rater] = random.nextInt(5) == 0 ? new int[0] : new int[]{random.nextInt(3)};
+			}
+			clusteredStudy.addItemSets(annotations);
+			clusteredStudy.endCluster();
+			study.addItemSets(annotations);
+
+			// Draw each token as often as a replicate would
+			weights[token] = random.nextInt(3);
+			for (int draw = 0; draw < weights[token]; draw++) {
+				resampledStudy.addItemSets(annotations);
+			}
+		}
+		assertEquals(weights.length, clusteredStudy.getClusterCount());
+
+		String measure = CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement;
+		int[] ones = new int[weights.length];
+		Arrays.fill(ones, 1);
+		assertKernelEquals(new CodingAgreementKernel(measure, study), clusteredStudy.resample(measure, ones));
+		assertKernelEquals(new CodingAgreementKernel(measure, resampledStudy), clusteredStudy.resample(measure, weights));
+	}
+
+	private static void assertKernelEquals(CodingAgreementKernel expected, CodingAgreementKernel actual) {
+		assertEquals(expected.getItemCount(), actual.getItemCount());
+		assertEquals(expected.calculateAgreement(), actual.calculateAgreement(), DELTA);
+		for (int category = 0; category < 3; category++) {
+			assertEquals(expected.calculateCategoryAgreement(category), actual.calculateCategoryAgreement(category), DELTA);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.dkpro.statistics.agreement.IAgreementMeasure;
+import org.dkpro.statistics.agreement.ICategorySpecificAgreement;
+import org.dkpro.statistics.agreement.coding.FleissKappaAgreement;
+import org.dkpro.statistics.agreement.coding.KrippendorffAlphaAgreement;
+import org.dkpro.statistics.agreement.coding.PercentageAgreement;
+import org.dkpro.statistics.agreement.distance.NominalDistanceFunction;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingAgreementAccumulator;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetCodingAnnotationStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the streamed agreement of a {@link CodingAgreementAccumulator} with the DKPro Statistics implementation on
+ * the same {@link SetCodingAnnotationStudy}.
+ */
+public class CodingAgreementAccumulatorTest {
+	private static final int RATERS = 3;
+	private static final int CATEGORIES = 4;
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void testAll() {
+		compare(SetSelectionStrategy.ALL);
+	}
+
+	@Test
+	public void testMatch() {
+		compare(SetSelectionStrategy.MATCH);
+	}
+
+	@Test
+	public void testMax() {
+		compare(SetSelectionStrategy.MAX);
+	}
+
+	private void compare(SetSelectionStrategy strategy) {
+		for (String measure : new String[]{
+				CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement,
+				CodingIAACollectionProcessingEngine.FleissKappaAgreement,
+				CodingIAACollectionProcessingEngine.PercentageAgreement}) {
+			Random random = new Random(42L);
+			SetCodingAnnotationStudy study = new SetCodingAnnotationStudy(RATERS, strategy);
+			CodingAgreementAccumulator accumulator = new CodingAgreementAccumulator(measure, strategy);
+			for (int token = 0; token < 500; token++) {
+				// The last rater joins halfway through, as if it only annotated later documents
+				int presentRaters = token < 250 ? RATERS - 1 : RATERS;
+				int[][] annotations = new int[RATERS][];
+				for (int rater = 0; rater < RATERS; rater++) {
+					annotations[rater] = rater < presentRaters ? randomLabels(random) : new int[0];
+				}
+				study.addItemSetsAsArray(annotations);
+				accumulator.add(annotations, presentRaters);
+			}
+
+			IAgreementMeasure expected;
+			switch (measure) {
+				case CodingIAACollectionProcessingEngine.FleissKappaAgreement:
+					expected = new FleissKappaAgreement(study);
+					break;
+				case CodingIAACollectionProcessingEngine.PercentageAgreement:
+					expected = new PercentageAgreement(study);
+					break;
+				default:
+					expected = new KrippendorffAlphaAgreement(study, new NominalDistanceFunction());
+					break;
+			}
+			CodingAgreementAccumulator.StreamedCodingAgreement actual = accumulator.getAgreement(RATERS);
+			assertEquals(study.getItemCount(), actual.getItemCount(), measure);
+			assertEquals(expected.calculateAgreement(), actual.calculateAgreement(), DELTA, measure);
+			if (expected instanceof ICategorySpecificAgreement) {
+				for (int category = 0; category < CATEGORIES; category++) {
+					assertEquals(((ICategorySpecificAgreement) expected).calculateCategoryAgreement(category),
+							actual.calculateCategoryAgreement(category), DELTA, measure + " " + category);
+				}
+			}
+		}
+	}
+
+	private static int[] randomLabels(Random random) {
+		// Mostly single labels, some empty and some ambiguous cells
+		int count = random.nextDouble() < 0.2 ? 0 : random.nextDouble() < 0.8 ? 1 : 2;
+		return IntStream.generate(() -> random.nextInt(CATEGORIES)).distinct().limit(count).toArray();
+	}
+}
@@ -0,0 +1,133 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.dkpro.statistics.agreement.IAgreementMeasure;
+import org.dkpro.statistics.agreement.ICategorySpecificAgreement;
+import org.dkpro.statistics.agreement.coding.CohenKappaAgreement;
+import org.dkpro.statistics.agreement.coding.FleissKappaAgreement;
+import org.dkpro.statistics.agreement.coding.KrippendorffAlphaAgreement;
+import org.dkpro.statistics.agreement.coding.PercentageAgreement;
+import org.dkpro.statistics.agreement.distance.NominalDistanceFunction;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetCodingAnnotationStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.CodingAgreementKernel;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.IntCodingStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.kernel.WeightedCodingStudy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the {@link CodingAgreementKernel}, on all items and on the distinct items of a {@link WeightedCodingStudy},
+ * with the DKPro Statistics implementation on randomised studies.
+ */
+public class CodingAgreementKernelTest {
+	private static final int CATEGORIES = 4;
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void testKrippendorffAlpha() {
+		compare(CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement, 2, 3, 5);
+	}
+
+	@Test
+	public void testFleissKappa() {
+		compare(CodingIAACollectionProcessingEngine.FleissKappaAgreement, 2, 3, 5);
+	}
+
+	@Test
+	public void testPercentage() {
+		compare(CodingIAACollectionProcessingEngine.PercentageAgreement, 2, 3, 5);
+	}
+
+	@Test
+	public void testCohenKappa() {
+		compare(CodingIAACollectionProcessingEngine.CohenKappaAgreement, 2);
+	}
+
+	private void compare(String measure, int... raterCounts) {
+		Random random = new Random(42L);
+		for (int raters : raterCounts) {
+			for (SetSelectionStrategy strategy : SetSelectionStrategy.values()) {
+				for (int round = 0; round < 10; round++) {
+					SetCodingAnnotationStudy study = new SetCodingAnnotationStudy(raters, strategy);
+					IntCodingStudy intStudy = new IntCodingStudy(raters, strategy);
+					WeightedCodingStudy weightedStudy = new WeightedCodingStudy(raters, strategy);
+					int tokens = 1 + random.nextInt(200);
+					for (int token = 0; token < tokens; token++) {
+						int[][] annotations = new int[raters][];
+						for (int rater = 0; rater < raters; rater++) {
+							annotations[rater] = randomLabels(random);
+						}
+						study.addItemSetsAsArray(annotations);
+						intStudy.addItemSets(annotations);
+						weightedStudy.addItemSets(annotations);
+					}
+
+					String message = String.format("%s, %d raters, %s, round %d", measure, raters, strategy, round);
+					IAgreementMeasure expected = createMeasure(measure, study);
+					CodingAgreementKernel actual = new CodingAgreementKernel(measure, intStudy);
+					assertEquals(study.getItemCount(), actual.getItemCount(), message);
+					assertEquals(study.getUnitCount(), actual.getUnitCount(), message);
+					assertEquals(expected.calculateAgreement(), actual.calculateAgreement(), DELTA, message);
+
+					// The distinct items, counted by their occurrences
+					CodingAgreementKernel weighted = weightedStudy.createKernel(measure);
+					assertEquals(study.getUnitCount(), weightedStudy.getUnitCount(), message);
+					assertEquals(study.getItemCount(), weighted.getItemCount(), message);
+					assertEquals(expected.calculateAgreement(), weighted.calculateAgreement(), DELTA, message);
+
+					// The per category values of the memoized DKPro measure, evaluated on a copy of the study
+					MemoizedAgreement memoized = new MemoizedAgreement(expected, new CodingAgreementKernel(measure, IntCodingStudy.of(study)));
+					for (int category = 0; category < CATEGORIES; category++) {
+						double expectedValue = ((ICategorySpecificAgreement) expected).calculateCategoryAgreement(category);
+						assertEquals(expectedValue, actual.calculateCategoryAgreement(category), DELTA, message + ", category " + category);
+						assertEquals(expectedValue, memoized.calculateCategoryAgreement(category), DELTA, message + ", category " + category);
+						assertEquals(expectedValue, weighted.calculateCategoryAgreement(category), DELTA, message + ", category " + category);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testChunkedStudy() {
+		// Items must not straddle chunks, so 3 raters leave one unused category at the end of each chunk
+		int raterCount = 3;
+		int itemCount = 3 * (1 << 20) / raterCount + 5;
+		IntCodingStudy study = new IntCodingStudy(raterCount, null);
+		for (int item = 0; item < itemCount; item++) {
+			study.addItem(new int[]{item, -1, item % CATEGORIES});
+		}
+		assertEquals(itemCount, study.getItemCount());
+		assertEquals((long) itemCount * raterCount, study.getUnitCount());
+		for (int item = 0; item < itemCount; item += 997) {
+			assertEquals(item, study.getCategory(item, 0));
+			assertEquals(-1, study.getCategory(item, 1));
+			assertEquals(item % CATEGORIES, study.getCategory(item, 2));
+		}
+		assertEquals(itemCount - 1, study.getCategory(itemCount - 1, 0));
+	}
+
+	private static IAgreementMeasure createMeasure(String measure, SetCodingAnnotationStudy study) {
+		switch (measure) {
+			case CodingIAACollectionProcessingEngine.CohenKappaAgreement:
+				return new CohenKappaAgreement(study);
+			case CodingIAACollectionProcessingEngine.FleissKappaAgreement:
+				return new FleissKappaAgreement(study);
+			case CodingIAACollectionProcessingEngine.PercentageAgreement:
+				return new PercentageAgreement(study);
+			default:
+				return new KrippendorffAlphaAgreement(study, new NominalDistanceFunction());
+		}
+	}
+
+	private static int[] randomLabels(Random random) {
+		// Mostly single labels, some empty and some ambiguous cells
+		int count = random.nextDouble() < 0.2 ? 0 : random.nextDouble() < 0.8 ? 1 : 2;
+		return IntStream.generate(() -> random.nextInt(CATEGORIES)).distinct().limit(count).toArray();
+	}
+}
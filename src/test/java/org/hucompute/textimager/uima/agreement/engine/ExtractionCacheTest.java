@@ -0,0 +1,208 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.hucompute.textimager.uima.agreement.engine.AgreementFixture.Configuration;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the engines over a generated corpus with an {@link ExtractionCache} and checks which documents hit the cache, by
+ * the modification times of its entries, which are updated on each hit.
+ */
+public class ExtractionCacheTest {
+	private static final List<Integer> CHANGED_DOCUMENTS = Arrays.asList(3, 11);
+	private static final FileTime UNUSED = FileTime.fromMillis(1000);
+	private static final int THREADS = 8;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		// The first run misses every document, the second one hits every entry
+		AgreementFixture.assertSameAsSingle(tempDir, Arrays.asList(AgreementFixture.CODING_STREAMED, AgreementFixture.UNITIZING),
+				(configuration, targetLocation) -> process(configuration, targetLocation, getCacheDirectory(configuration), false),
+				(configuration, targetLocation) -> {
+					Path cacheDirectory = getCacheDirectory(configuration);
+					List<Path> entries = listEntries(cacheDirectory);
+					assertEquals(AgreementFixture.DOCUMENTS, entries.size());
+					markUnused(entries);
+					process(configuration, targetLocation, cacheDirectory, false);
+					assertEquals(entries, listEntries(cacheDirectory));
+					for (Path entry : entries) {
+						assertTrue(Files.getLastModifiedTime(entry).compareTo(UNUSED) > 0, entry.toString());
+					}
+				});
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		Configuration configuration = AgreementFixture.CODING_STREAMED;
+		Path cacheDirectory = tempDir.resolve("cache");
+		run(configuration, cacheDirectory, false);
+		List<Path> entries = listEntries(cacheDirectory);
+		markUnused(entries);
+
+		// Only the changed documents are extracted again, the entries of their previous content are not used
+		Path uncached = run(configuration, null, true);
+		Path cached = run(configuration, cacheDirectory, true);
+		AgreementFixture.assertSameResults(uncached.resolve(configuration.getFileName()), cached.resolve(configuration.getFileName()));
+		List<Path> unused = new ArrayList<>();
+		for (Path entry : entries) {
+			if (Files.getLastModifiedTime(entry).equals(UNUSED))
+				unused.add(entry);
+		}
+		assertEquals(CHANGED_DOCUMENTS.size(), unused.size());
+		assertEquals(AgreementFixture.DOCUMENTS + CHANGED_DOCUMENTS.size(), listEntries(cacheDirectory).size());
+
+		// A different configuration uses new entries
+		run(configuration, cacheDirectory, false, AbstractIAAEngine.PARAM_FILTER_FINGERPRINTED, false);
+		assertEquals(2 * AgreementFixture.DOCUMENTS + CHANGED_DOCUMENTS.size(), listEntries(cacheDirectory).size());
+
+		// Parameters of the output and the measure do not change the extraction
+		run(configuration, cacheDirectory, false,
+				AbstractIAAEngine.PARAM_PRINT_STATS, false,
+				AbstractIAAEngine.PARAM_BOOTSTRAP_SAMPLES, 10,
+				CodingIAACollectionProcessingEngine.PARAM_AGREEMENT_MEASURE, CodingIAACollectionProcessingEngine.PercentageAgreement);
+		assertEquals(2 * AgreementFixture.DOCUMENTS + CHANGED_DOCUMENTS.size(), listEntries(cacheDirectory).size());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		ExtractionCache cache = new ExtractionCache(tempDir, 100);
+		cache.put("aa01", new byte[40]);
+		cache.put("bb02", new byte[40]);
+		assertNotNull(cache.get("aa01"));
+		cache.put("cc03", new byte[40]);
+
+		// The least recently used entry is evicted
+		assertEquals(2, cache.size());
+		assertEquals(80, cache.getTotalBytes());
+		assertNull(cache.get("bb02"));
+		assertArrayEquals(new byte[40], cache.get("aa01"));
+		assertNotNull(cache.get("cc03"));
+
+		// Values larger than the cache are not stored
+		cache.put("dd04", new byte[101]);
+		assertNull(cache.get("dd04"));
+		assertEquals(3, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+
+		// The order of use is restored from the modification times
+		Files.setLastModifiedTime(tempDir.resolve("aa").resolve("aa01.bin"), FileTime.fromMillis(2000));
+		Files.setLastModifiedTime(tempDir.resolve("cc").resolve("cc03.bin"), FileTime.fromMillis(1000));
+		ExtractionCache reloaded = new ExtractionCache(tempDir, 50);
+		assertEquals(1, reloaded.size());
+		assertNotNull(reloaded.get("aa01"));
+		assertNull(reloaded.get("cc03"));
+		assertEquals(Collections.singletonList(tempDir.resolve("aa").resolve("aa01.bin")), listEntries(tempDir));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		ExtractionCache cache = new ExtractionCache(tempDir, 1000);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				int thread = i;
+				futures.add(executor.submit(() -> {
+					for (int j = 0; j < 200; j++) {
+						String key = String.format("%04x", (7 * j + thread) % 64);
+						cache.put(key, new byte[30]);
+						cache.get(key);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// The cache stays bounded and keeps no file it does not know of. An entry, whose file was deleted by a
+		// concurrent eviction, is a miss on its next lookup.
+		assertTrue(cache.getTotalBytes() <= 1000);
+		assertTrue(listEntries(tempDir).size() <= cache.size());
+		assertEquals(THREADS * 200, cache.getHitCount() + cache.getMissCount());
+	}
+
+	private Path getCacheDirectory(Configuration configuration) {
+		return tempDir.resolve(configuration.getEngineClass().getSimpleName());
+	}
+
+	/**
+	 * @return The target location of the results, a new temporary directory.
+	 * @see #process(Configuration, Path, Path, boolean, Object...)
+	 */
+	private Path run(Configuration configuration, Path cacheDirectory, boolean changed, Object... parameters) throws Exception {
+		Path targetLocation = Files.createTempDirectory(tempDir, "run");
+		process(configuration, targetLocation, cacheDirectory, changed, parameters);
+		return targetLocation;
+	}
+
+	/**
+	 * Process the generated corpus, with the {@link #CHANGED_DOCUMENTS} taken from another seed if requested.
+	 *
+	 * @param targetLocation The target location of the results.
+	 * @param cacheDirectory The directory of the cache, or null to run without a cache.
+	 */
+	private static void process(Configuration configuration, Path targetLocation, Path cacheDirectory, boolean changed, Object... parameters) throws Exception {
+		SyntheticCorpusGenerator generator = AgreementFixture.createGenerator();
+		SyntheticCorpusGenerator changedGenerator = AgreementFixture.createGenerator().withSeed(1);
+		List<Object> engineParameters = new ArrayList<>(Arrays.asList(parameters));
+		if (cacheDirectory != null)
+			engineParameters.addAll(Arrays.asList(AbstractIAAEngine.PARAM_EXTRACTION_CACHE, cacheDirectory.toString()));
+		AnalysisEngine engine = configuration.createEngine(targetLocation, engineParameters.toArray());
+		try {
+			JCas jCas = JCasFactory.createJCas();
+			for (int i = 0; i < AgreementFixture.DOCUMENTS; i++) {
+				jCas.reset();
+				if (changed && CHANGED_DOCUMENTS.contains(i))
+					changedGenerator.generate(jCas, i);
+				else
+					generator.generate(jCas, i);
+				engine.process(jCas);
+			}
+			engine.collectionProcessComplete();
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	private static void markUnused(List<Path> entries) throws Exception {
+		for (Path entry : entries) {
+			Files.setLastModifiedTime(entry, UNUSED);
+		}
+	}
+
+	private static List<Path> listEntries(Path directory) throws Exception {
+		try (Stream<Path> files = Files.walk(directory)) {
+			return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.annotation.type.Fingerprint;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the {@link FingerprintFilter} with the set of fingerprint references of each view of a generated document.
+ */
+public class FingerprintFilterTest {
+	@Test
+	public void testFingerprintFilter() throws Exception {
+		JCas jCas = new SyntheticCorpusGenerator()
+				.withAnnotatorCount(3)
+				.withFingerprintCoverage(0.5)
+				.generate(0);
+
+		Iterator<JCas> views = jCas.getViewIterator();
+		while (views.hasNext()) {
+			JCas viewCas = views.next();
+			HashSet<TOP> expected = JCasUtil.select(viewCas, Fingerprint.class).stream()
+					.map(Fingerprint::getReference)
+					.collect(Collectors.toCollection(HashSet::new));
+			FingerprintFilter filter = new FingerprintFilter(viewCas);
+			assertEquals(expected.size(), filter.size(), viewCas.getViewName());
+			for (Annotation annotation : JCasUtil.select(viewCas, Annotation.class)) {
+				assertEquals(expected.contains(annotation), filter.contains(annotation), viewCas.getViewName());
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.sink.AgreementResult;
+import org.hucompute.textimager.uima.agreement.engine.sink.BinaryResultReader;
+import org.hucompute.textimager.uima.agreement.engine.sink.BinaryResultSink;
+import org.hucompute.textimager.uima.agreement.engine.sink.PartitionedResultSink;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the coding engine over a generated corpus with each result sink and compares their output, reading the binary
+ * results with the {@link BinaryResultReader}.
+ */
+public class ResultSinkTest {
+	private static final int DOCUMENTS = AgreementFixture.DOCUMENTS;
+	private static final int PARTITIONS = 4;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testResultSinks() throws Exception {
+		Path csv = run(AbstractIAAEngine.CSV);
+		Path jsonl = run(AbstractIAAEngine.JSONL);
+		Path partitioned = run(AbstractIAAEngine.PARTITIONED);
+
+		// One file per document and one for the combined study
+		List<Path> csvFiles;
+		try (Stream<Path> files = Files.list(csv)) {
+			csvFiles = files.collect(Collectors.toList());
+		}
+		assertEquals(DOCUMENTS + 1, csvFiles.size());
+
+		// The partitioned files are identical to the flat ones
+		PartitionedResultSink partitions = new PartitionedResultSink(null, PARTITIONS);
+		for (Path csvFile : csvFiles) {
+			String fileName = csvFile.getFileName().toString();
+			Path partitionedFile = fileName.equals(CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement + ".csv")
+					? partitioned.resolve(fileName)
+					: partitioned.resolve(Integer.toHexString(partitions.getPartition(fileName))).resolve(fileName);
+			assertEquals(read(csvFile), read(partitionedFile), fileName);
+		}
+
+		// A single file with one line per document and one for the combined study
+		try (Stream<Path> files = Files.list(jsonl)) {
+			assertEquals(Collections.singletonList(jsonl.resolve(CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement + ".jsonl")), files.collect(Collectors.toList()));
+		}
+		List<String> lines = Files.readAllLines(jsonl.resolve(CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement + ".jsonl"), StandardCharsets.UTF_8);
+		assertEquals(DOCUMENTS + 1, lines.size());
+		HashSet<Object> documents = new HashSet<>();
+		for (String line : lines) {
+			JSONObject result = new JSONObject(line);
+			documents.add(result.opt("document"));
+			String csvFile = result.isNull("document")
+					? CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement + ".csv"
+					: result.getString("document").replace(".xmi", ".csv");
+			// The overall record of the CSV file holds the same unit count and value
+			String overall = Arrays.stream(read(csv.resolve(csvFile)).split("\r?\n")).filter(record -> record.startsWith("Overall;")).findFirst().orElse("");
+			String[] fields = overall.split(";");
+			assertEquals(result.getLong("units"), Long.parseLong(fields[1]), csvFile);
+			assertEquals(Double.parseDouble(fields[2]), result.optDouble("agreement", Double.NaN), 1e-12, csvFile);
+			assertTrue(result.getJSONArray("categories").length() > 0, csvFile);
+		}
+		assertEquals(DOCUMENTS + 1, documents.size());
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		Path jsonl = run(AbstractIAAEngine.JSONL);
+		Path binary = run(AbstractIAAEngine.BINARY);
+
+		BinaryResultReader reader = new BinaryResultReader(binary.resolve(CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement + BinaryResultSink.EXTENSION));
+		assertEquals(DOCUMENTS + 1, reader.size());
+		assertNull(reader.get("missing.xmi"));
+		for (String line : Files.readAllLines(jsonl.resolve(CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement + ".jsonl"), StandardCharsets.UTF_8)) {
+			JSONObject expected = new JSONObject(line);
+			AgreementResult result = expected.isNull("document") ? reader.getCombined() : reader.get(expected.getString("document"));
+			assertNotNull(result, line);
+			assertEquals(expected.opt("document"), result.getDocumentId() != null ? result.getDocumentId() : JSONObject.NULL);
+			assertEquals(expected.getString("strategy"), result.getStrategy());
+			assertEquals(expected.getLong("units"), result.getUnitCount());
+			assertEquals(expected.optDouble("agreement", Double.NaN), result.getValue(), 0.0);
+			assertEquals(expected.getLong("overlap"), result.getOverlapTotal());
+			assertEquals(expected.getJSONArray("annotators").toList(), result.getAnnotators());
+
+			JSONArray categories = expected.getJSONArray("categories");
+			assertEquals(categories.length(), result.getCategories().size());
+			for (int i = 0; i < categories.length(); i++) {
+				JSONObject category = categories.getJSONObject(i);
+				AgreementResult.Category actual = result.getCategories().get(i);
+				assertEquals(category.getString("category"), actual.getName());
+				assertEquals(category.getLong("count"), actual.getCount());
+				assertEquals(category.optDouble("agreement", Double.NaN), actual.getValue(), 0.0);
+				assertEquals(category.getLong("overlap"), actual.getOverlap());
+				JSONArray annotatorCounts = category.getJSONArray("annotatorCounts");
+				for (int annotator = 0; annotator < annotatorCounts.length(); annotator++) {
+					assertEquals(annotatorCounts.getLong(annotator), actual.getAnnotatorCounts()[annotator]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSharedBinary() throws Exception {
+		Path binary = Files.createDirectory(tempDir.resolve("shared"));
+		AnalysisEngine[] replicas = SharedAgreementResourceTest.createReplicas(createDescription(AbstractIAAEngine.BINARY, binary));
+		try {
+			SharedAgreementResourceTest.processConcurrently(replicas, createGenerator());
+		} finally {
+			for (AnalysisEngine replica : replicas) {
+				replica.destroy();
+			}
+		}
+
+		// The replicas write a single file, which holds the results of all of them
+		try (Stream<Path> files = Files.list(binary)) {
+			assertEquals(1, files.count());
+		}
+		String fileName = CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement + BinaryResultSink.EXTENSION;
+		BinaryResultReader expected = new BinaryResultReader(run(AbstractIAAEngine.BINARY).resolve(fileName));
+		BinaryResultReader reader = new BinaryResultReader(binary.resolve(fileName));
+		assertEquals(DOCUMENTS + 1, reader.size());
+		assertEquals(expected.getDocumentIds(), reader.getDocumentIds());
+		for (String documentId : expected.getDocumentIds()) {
+			AgreementResult expectedResult = documentId != null ? expected.get(documentId) : expected.getCombined();
+			AgreementResult result = documentId != null ? reader.get(documentId) : reader.getCombined();
+			assertEquals(expectedResult.getUnitCount(), result.getUnitCount(), documentId);
+			assertEquals(expectedResult.getValue(), result.getValue(), 1e-12, documentId);
+		}
+	}
+
+	@Test
+	public void testSharedJsonLines() throws Exception {
+		Path jsonl = Files.createDirectory(tempDir.resolve("shared"));
+		Path file = jsonl.resolve(CodingIAACollectionProcessingEngine.KrippendorffAlphaAgreement + ".jsonl");
+		Files.write(file, Collections.singletonList("{}"), StandardCharsets.UTF_8);
+		AnalysisEngine[] replicas = SharedAgreementResourceTest.createReplicas(createDescription(AbstractIAAEngine.JSONL, jsonl,
+				AbstractIAAEngine.PARAM_OVERWRITE_EXISTING, true));
+		try {
+			SharedAgreementResourceTest.processConcurrently(replicas, createGenerator());
+		} finally {
+			for (AnalysisEngine replica : replicas) {
+				replica.destroy();
+			}
+		}
+
+		// The existing file is truncated once, not by the first result of each replica
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertEquals(DOCUMENTS + 1, lines.size());
+		HashSet<Object> documents = new HashSet<>();
+		for (String line : lines) {
+			documents.add(new JSONObject(line).opt("document"));
+		}
+		assertEquals(DOCUMENTS + 1, documents.size());
+	}
+
+	private Path run(String resultSink) throws Exception {
+		Path targetLocation = Files.createDirectory(tempDir.resolve(resultSink));
+		SyntheticCorpusGenerator generator = createGenerator();
+		AnalysisEngine engine = AnalysisEngineFactory.createEngine(createDescription(resultSink, targetLocation));
+		try {
+			JCas jCas = JCasFactory.createJCas();
+			for (int i = 0; i < DOCUMENTS; i++) {
+				jCas.reset();
+				generator.generate(jCas, i);
+				engine.process(jCas);
+			}
+			engine.collectionProcessComplete();
+		} finally {
+			engine.destroy();
+		}
+		return targetLocation;
+	}
+
+	private static SyntheticCorpusGenerator createGenerator() {
+		return new SyntheticCorpusGenerator()
+				.withAnnotatorCount(3)
+				.withDisagreement(0.3);
+	}
+
+	/**
+	 * @param parameters More parameters of the engine.
+	 */
+	private static AnalysisEngineDescription createDescription(String resultSink, Path targetLocation, Object... parameters) throws Exception {
+		List<Object> configurationData = new ArrayList<>(Arrays.asList(
+				AbstractIAAEngine.PARAM_ANNOTATION_CLASSES, SyntheticCorpusGenerator.ANNOTATION_CLASSES,
+				AbstractIAAEngine.PARAM_MIN_ANNOTATIONS, 1,
+				AbstractIAAEngine.PARAM_ANNOTATOR_RELATION, AbstractIAAEngine.BLACKLIST,
+				AbstractIAAEngine.PARAM_MULTI_CAS_HANDLING, AbstractIAAEngine.BOTH,
+				AbstractIAAEngine.PARAM_TARGET_LOCATION, targetLocation.toString(),
+				AbstractIAAEngine.PARAM_RESULT_SINK, resultSink,
+				AbstractIAAEngine.PARAM_RESULT_PARTITIONS, PARTITIONS));
+		configurationData.addAll(Arrays.asList(parameters));
+		return AnalysisEngineFactory.createEngineDescription(CodingIAACollectionProcessingEngine.class, configurationData.toArray());
+	}
+
+	private static String read(Path path) throws Exception {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,91 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.dkpro.statistics.agreement.coding.ICodingAnnotationItem;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetCodingAnnotationStudy;
+import org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the item selected by {@link SetSelectionStrategy#MAX} with the first tuple of the enumerated cartesian
+ * product, which has the most agreeing rater pairs.
+ */
+public class SetCodingAnnotationStudyTest {
+	private static final int CATEGORIES = 5;
+
+	@Test
+	public void testMax() {
+		Random random = new Random(42L);
+		for (int token = 0; token < 10000; token++) {
+			int raters = 1 + random.nextInt(8);
+			int[][] annotations = new int[raters][];
+			for (int rater = 0; rater < raters; rater++) {
+				int count = random.nextInt(4);
+				annotations[rater] = IntStream.generate(() -> random.nextInt(CATEGORIES)).distinct().limit(count).toArray();
+			}
+
+			SetCodingAnnotationStudy study = new SetCodingAnnotationStudy(raters, SetSelectionStrategy.MAX);
+			ICodingAnnotationItem[] items = study.addItemSetsAsArray(annotations);
+			assertEquals(1, items.length);
+
+			Object[] actual = new Object[raters];
+			for (int rater = 0; rater < raters; rater++) {
+				actual[rater] = items[0].getUnit(rater).getCategory();
+			}
+			assertArrayEquals(enumerateMax(annotations), actual, Arrays.deepToString(annotations));
+		}
+	}
+
+	@Test
+	public void testManyNestedLabels() {
+		// 8 raters with 3 nested labels each span a product of 6561 tuples
+		int[][] annotations = new int[8][];
+		for (int rater = 0; rater < annotations.length; rater++) {
+			annotations[rater] = new int[]{rater % 3, 3 + rater % 2, 5};
+		}
+		SetCodingAnnotationStudy study = new SetCodingAnnotationStudy(annotations.length, SetSelectionStrategy.MAX);
+		ICodingAnnotationItem item = study.addItemSetsAsArray(annotations)[0];
+		for (int rater = 0; rater < annotations.length; rater++) {
+			assertEquals(5, item.getUnit(rater).getCategory());
+		}
+		assertEquals(1, study.getItemCount());
+	}
+
+	private static Object[] enumerateMax(int[][] annotations) {
+		int[] choice = new int[annotations.length];
+		Object[] max = null;
+		long maxPairs = -1L;
+		do {
+			HashMap<Object, Integer> groups = new HashMap<>();
+			Object[] item = new Object[annotations.length];
+			for (int rater = 0; rater < annotations.length; rater++) {
+				item[rater] = annotations[rater].length == 0 ? SetCodingAnnotationStudy.getPlaceholder(rater) : Integer.valueOf(annotations[rater][choice[rater]]);
+				groups.merge(item[rater], 1, Integer::sum);
+			}
+			long pairs = groups.values().stream().mapToLong(count -> (long) count * (count - 1)).sum();
+			if (pairs > maxPairs) {
+				maxPairs = pairs;
+				max = item;
+			}
+		} while (nextChoice(annotations, choice));
+		return max;
+	}
+
+	private static boolean nextChoice(int[][] annotations, int[] choice) {
+		for (int i = choice.length - 1; i >= 0; i--) {
+			if (choice[i] + 1 < annotations[i].length) {
+				choice[i]++;
+				return true;
+			}
+			choice[i] = 0;
+		}
+		return false;
+	}
+}
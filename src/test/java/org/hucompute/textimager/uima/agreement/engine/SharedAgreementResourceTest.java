@@ -0,0 +1,109 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.factory.ExternalResourceFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs engine replicas, which share a {@link SharedAgreementResource}, concurrently over a generated corpus and
+ * compares their combined statistics with those of a single engine.
+ */
+public class SharedAgreementResourceTest {
+	private static final int REPLICAS = 4;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testConcurrentReplicas() throws Exception {
+		AgreementFixture.assertSameAsSingle(tempDir, AgreementFixture.CONFIGURATIONS, (configuration, targetLocation) -> {
+			AnalysisEngine[] replicas = createReplicas(configuration.createDescription(targetLocation));
+			try {
+				processConcurrently(replicas, AgreementFixture.createGenerator());
+			} finally {
+				destroy(replicas);
+			}
+		});
+	}
+
+	@Test
+	public void testConsecutiveCollections() throws Exception {
+		// The second collection must be computed from its own documents only
+		AgreementFixture.assertSameAsSingle(tempDir, AgreementFixture.CONFIGURATIONS, (configuration, targetLocation) -> {
+			AnalysisEngine[] replicas = createReplicas(configuration.createDescription(targetLocation));
+			try {
+				processConcurrently(replicas, AgreementFixture.createGenerator());
+				processConcurrently(replicas, AgreementFixture.createGenerator());
+			} finally {
+				destroy(replicas);
+			}
+		});
+	}
+
+	/**
+	 * @return {@link #REPLICAS} engines, which share a {@link SharedAgreementResource}.
+	 */
+	static AnalysisEngine[] createReplicas(AnalysisEngineDescription description) throws Exception {
+		ExternalResourceFactory.bindResource(description, AbstractIAAEngine.RES_SHARED_STATE, SharedAgreementResource.class);
+		ResourceManager resourceManager = UIMAFramework.newDefaultResourceManager();
+		AnalysisEngine[] replicas = new AnalysisEngine[REPLICAS];
+		for (int i = 0; i < replicas.length; i++) {
+			replicas[i] = UIMAFramework.produceAnalysisEngine(description, resourceManager, null);
+		}
+		return replicas;
+	}
+
+	private static void destroy(AnalysisEngine[] replicas) {
+		for (AnalysisEngine replica : replicas) {
+			replica.destroy();
+		}
+	}
+
+	/**
+	 * Process the corpus with one thread per replica, each taking every n-th document, and complete the collection once
+	 * all documents have been processed.
+	 */
+	static void processConcurrently(AnalysisEngine[] replicas, SyntheticCorpusGenerator generator) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(replicas.length);
+		CyclicBarrier barrier = new CyclicBarrier(replicas.length);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < replicas.length; i++) {
+				int replica = i;
+				futures.add(executor.submit(() -> {
+					JCas jCas = JCasFactory.createJCas();
+					barrier.await(1, TimeUnit.MINUTES);
+					for (int document = replica; document < AgreementFixture.DOCUMENTS; document += replicas.length) {
+						jCas.reset();
+						generator.generate(jCas, document);
+						replicas[replica].process(jCas);
+					}
+					// The last replica to complete computes the combined study
+					barrier.await(1, TimeUnit.MINUTES);
+					replicas[replica].collectionProcessComplete();
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
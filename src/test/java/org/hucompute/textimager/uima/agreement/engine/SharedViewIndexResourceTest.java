@@ -0,0 +1,120 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.ExternalResourceFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ExternalResourceDescription;
+import org.apache.uima.resource.ResourceManager;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.unitizing.UnitizingIAACollectionProcessingEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.texttechnologylab.annotation.NamedEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Runs a coding and a unitizing engine, which share a {@link SharedViewIndexResource}, over a generated corpus and
+ * compares their statistics with those of engines without it.
+ */
+public class SharedViewIndexResourceTest {
+	private static final int DOCUMENTS = 10;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testSharedEngines() throws Exception {
+		SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator()
+				.withAnnotatorCount(3)
+				.withNestingRate(0.1)
+				.withSubTokenRate(0.1)
+				.withFingerprintCoverage(0.8);
+
+		Path separate = Files.createDirectory(tempDir.resolve("separate"));
+		AnalysisEngine[] separateEngines = {
+				AnalysisEngineFactory.createEngine(createDescription(CodingIAACollectionProcessingEngine.class, separate)),
+				AnalysisEngineFactory.createEngine(createDescription(UnitizingIAACollectionProcessingEngine.class, separate))
+		};
+
+		Path shared = Files.createDirectory(tempDir.resolve("shared"));
+		ExternalResourceDescription viewIndex = ExternalResourceFactory.createExternalResourceDescription(SharedViewIndexResource.class);
+		ResourceManager resourceManager = UIMAFramework.newDefaultResourceManager();
+		AnalysisEngine[] sharedEngines = new AnalysisEngine[2];
+		for (int i = 0; i < sharedEngines.length; i++) {
+			AnalysisEngineDescription description = createDescription(i == 0 ? CodingIAACollectionProcessingEngine.class : UnitizingIAACollectionProcessingEngine.class, shared);
+			ExternalResourceFactory.bindResource(description, AbstractIAAEngine.RES_VIEW_INDEX, viewIndex);
+			sharedEngines[i] = UIMAFramework.produceAnalysisEngine(description, resourceManager, null);
+		}
+
+		try {
+			JCas jCas = JCasFactory.createJCas();
+			for (int i = 0; i < DOCUMENTS; i++) {
+				jCas.reset();
+				generator.generate(jCas, i);
+				for (AnalysisEngine engine : separateEngines) {
+					engine.process(jCas);
+				}
+				for (AnalysisEngine engine : sharedEngines) {
+					engine.process(jCas);
+				}
+			}
+			for (int i = 0; i < sharedEngines.length; i++) {
+				separateEngines[i].collectionProcessComplete();
+				sharedEngines[i].collectionProcessComplete();
+			}
+
+			for (String fileName : new String[]{"KrippendorffAlphaAgreement.csv", "KrippendorffAlphaUnitizingAgreement.csv"}) {
+				assertEquals(
+						new String(Files.readAllBytes(separate.resolve(fileName)), StandardCharsets.UTF_8),
+						new String(Files.readAllBytes(shared.resolve(fileName)), StandardCharsets.UTF_8),
+						fileName
+				);
+			}
+		} finally {
+			for (int i = 0; i < sharedEngines.length; i++) {
+				separateEngines[i].destroy();
+				sharedEngines[i].destroy();
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator().withAnnotatorCount(2);
+		SharedViewIndexResource viewIndex = new SharedViewIndexResource();
+		JCas jCas = JCasFactory.createJCas();
+		generator.generate(jCas, 0);
+
+		ViewExtractionContext context = viewIndex.getViewContext(jCas);
+		assertSame(context, viewIndex.getViewContext(jCas));
+
+		new NamedEntity(jCas, 0, 1).addToIndexes();
+		ViewExtractionContext changed = viewIndex.getViewContext(jCas);
+		assertNotSame(context, changed);
+		assertSame(changed, viewIndex.getViewContext(jCas));
+
+		jCas.reset();
+		generator.generate(jCas, 0);
+		assertNotSame(changed, viewIndex.getViewContext(jCas));
+	}
+
+	private static AnalysisEngineDescription createDescription(Class<? extends AbstractIAAEngine> engineClass, Path targetLocation) throws Exception {
+		return AnalysisEngineFactory.createEngineDescription(engineClass,
+				AbstractIAAEngine.PARAM_ANNOTATION_CLASSES, SyntheticCorpusGenerator.ANNOTATION_CLASSES,
+				AbstractIAAEngine.PARAM_MIN_ANNOTATIONS, 1,
+				AbstractIAAEngine.PARAM_ANNOTATOR_RELATION, AbstractIAAEngine.BLACKLIST,
+				AbstractIAAEngine.PARAM_MULTI_CAS_HANDLING, AbstractIAAEngine.COMBINED,
+				AbstractIAAEngine.PARAM_TARGET_LOCATION, targetLocation.toString());
+	}
+}
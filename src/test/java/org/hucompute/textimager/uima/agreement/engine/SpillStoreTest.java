@@ -0,0 +1,39 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpillStoreTest {
+	@Test
+	public void testInsertionOrder() throws IOException {
+		Random random = new Random(42L);
+		ArrayList<int[]> expected = new ArrayList<>();
+		try (SpillStore<int[]> spillStore = new SpillStore<>(SpillStore.INT_ARRAY, 4096L)) {
+			for (int i = 0; i < 1000; i++) {
+				int[] element = IntStream.generate(random::nextInt).limit(random.nextInt(64)).toArray();
+				expected.add(element);
+				spillStore.add(element);
+			}
+			assertEquals(expected.size(), spillStore.size());
+			assertTrue(spillStore.getRetainedBytes() <= 4096L);
+			assertTrue(spillStore.getSpilledBytes() > 0L);
+
+			// The spilled elements can be read repeatedly
+			for (int pass = 0; pass < 2; pass++) {
+				int i = 0;
+				for (int[] element : spillStore) {
+					assertArrayEquals(expected.get(i++), element);
+				}
+				assertEquals(expected.size(), i);
+			}
+		}
+	}
+}
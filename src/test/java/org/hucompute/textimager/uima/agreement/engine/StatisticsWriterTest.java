@@ -0,0 +1,98 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes interleaved records of several files through the background and the synchronous {@link StatisticsWriter}.
+ */
+public class StatisticsWriterTest {
+	private static final int FILES = 7;
+	private static final int RECORDS = 200;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testBackground() throws Exception {
+		write(Files.createDirectory(tempDir.resolve("background")), 4);
+	}
+
+	@Test
+	public void testSynchronous() throws Exception {
+		write(Files.createDirectory(tempDir.resolve("synchronous")), 0);
+	}
+
+	@Test
+	public void testError() throws Exception {
+		try (StatisticsWriter writer = new StatisticsWriter(4, null)) {
+			writer.open(tempDir.resolve("missing").resolve("file.csv"), true).append("text").flush();
+			assertThrows(IOException.class, writer::flush);
+		}
+	}
+
+	@Test
+	public void testPending() throws Exception {
+		Path path = tempDir.resolve("file.csv");
+		Path empty = tempDir.resolve("empty.csv");
+		try (StatisticsWriter writer = new StatisticsWriter(4, null)) {
+			StatisticsWriter.Record first = writer.open(path, true);
+			StatisticsWriter.Record second = writer.open(path, false);
+			assertTrue(writer.isPending(path));
+
+			// A path is pending until the first text of each of its records has been written
+			first.append("first\n").flush();
+			writer.flush();
+			assertTrue(writer.isPending(path));
+			second.append("second\n").flush();
+			second.append("third\n").flush();
+			writer.flush();
+			assertFalse(writer.isPending(path));
+			assertEquals("first\nsecond\nthird\n", new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+
+			writer.open(empty, false).close();
+			assertFalse(writer.isPending(empty));
+			assertFalse(Files.exists(empty));
+		}
+	}
+
+	private static void write(Path directory, int queueSize) throws Exception {
+		StringWriter global = new StringWriter();
+		StringBuilder expectedGlobal = new StringBuilder();
+		StringBuilder[] expected = new StringBuilder[FILES];
+		try (StatisticsWriter writer = new StatisticsWriter(queueSize, global)) {
+			for (int i = 0; i < RECORDS; i++) {
+				int file = i % FILES;
+				// The first record of each file truncates it, all following append
+				if (i < FILES) {
+					Files.write(directory.resolve(file + ".csv"), "stale\n".getBytes(StandardCharsets.UTF_8));
+					expected[file] = new StringBuilder();
+				}
+				StatisticsWriter.Record record = writer.open(directory.resolve(file + ".csv"), i < FILES);
+				record.append("record ").append(String.valueOf(i)).append('\n').flush();
+				record.append("end\n").close();
+				expected[file].append("record ").append(i).append("\nend\n");
+
+				writer.openGlobal().append("global ").append(String.valueOf(i)).append('\n').flush();
+				expectedGlobal.append("global ").append(i).append('\n');
+			}
+			writer.flush();
+
+			for (int file = 0; file < FILES; file++) {
+				assertEquals(expected[file].toString(), new String(Files.readAllBytes(directory.resolve(file + ".csv")), StandardCharsets.UTF_8));
+			}
+			assertEquals(expectedGlobal.toString(), global.toString());
+		}
+	}
+}
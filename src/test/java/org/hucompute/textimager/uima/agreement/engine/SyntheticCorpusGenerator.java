@@ -0,0 +1,398 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.Type;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.util.CasIOUtils;
+import org.texttechnologylab.annotation.AbstractNamedEntity;
+import org.texttechnologylab.annotation.NamedEntity;
+import org.texttechnologylab.annotation.SemanticSource;
+import org.texttechnologylab.annotation.administration.AnnotationStatus;
+import org.texttechnologylab.annotation.semaf.isobase.Entity;
+import org.texttechnologylab.annotation.semaf.isobase.Event;
+import org.texttechnologylab.annotation.semaf.semafsr.SrLink;
+import org.texttechnologylab.annotation.type.Fingerprint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Generates reproducible multi-annotator documents for tests and benchmarks.
+ * <p/>
+ * Every document carries the same tokenization in the initial view and in one view per annotator, named
+ * {@code https://authority.hucompute.org/user/<annotatorId>}. Entity and relation annotations are drawn from a shared
+ * reference layer and perturbed per annotator, so the resulting agreement is neither perfect nor random.
+ * The same generator settings, seed and document index always yield the same document.
+ */
+public class SyntheticCorpusGenerator {
+	public static final String VIEW_PREFIX = "https://authority.hucompute.org/user/";
+
+	/**
+	 * The annotation classes to pass as {@link AbstractIAAEngine#PARAM_ANNOTATION_CLASSES}.
+	 */
+	public static final String[] ANNOTATION_CLASSES = {NamedEntity.class.getName(), AbstractNamedEntity.class.getName()};
+
+	/**
+	 * Named entity types used as categories, taken from the TTLab type system.
+	 */
+	public static final String[] CATEGORIES = {
+			"org.texttechnologylab.annotation.type.Person_HumanBeing",
+			"org.texttechnologylab.annotation.type.Location_Place",
+			"org.texttechnologylab.annotation.type.Time",
+			"org.texttechnologylab.annotation.type.Animal_Fauna",
+			"org.texttechnologylab.annotation.type.concept.Animal_Fauna",
+			"org.texttechnologylab.annotation.type.concept.Cognition_Ideation"
+	};
+
+	private static final String[] ROLES = {"ARG0", "ARG1", "ARG2", "ARGM-LOC", "ARGM-TMP"};
+	private static final int SENTENCE_LENGTH = 20;
+
+	private int tokenCount = 200;
+	private int annotatorCount = 2;
+	private double entityDensity = 0.1;
+	private double relationDensity = 0.0;
+	private double disagreement = 0.2;
+	private double nestingRate = 0.0;
+	private double overlapRate = 0.0;
+	private double subTokenRate = 0.0;
+	private double fingerprintCoverage = 1.0;
+	private double flagRate = 0.0;
+	private long seed = 0L;
+	private List<String> vocabulary = Collections.emptyList();
+
+	/**
+	 * @param tokenCount The number of (top-level) tokens per document.
+	 */
+	public SyntheticCorpusGenerator withTokenCount(int tokenCount) {
+		this.tokenCount = tokenCount;
+		return this;
+	}
+
+	/**
+	 * @param annotatorCount The number of annotator views per document.
+	 */
+	public SyntheticCorpusGenerator withAnnotatorCount(int annotatorCount) {
+		this.annotatorCount = annotatorCount;
+		return this;
+	}
+
+	/**
+	 * @param entityDensity The probability of a named entity starting at any given token.
+	 */
+	public SyntheticCorpusGenerator withEntityDensity(double entityDensity) {
+		this.entityDensity = entityDensity;
+		return this;
+	}
+
+	/**
+	 * @param relationDensity The probability of a semantic role predicate at any given token.
+	 */
+	public SyntheticCorpusGenerator withRelationDensity(double relationDensity) {
+		this.relationDensity = relationDensity;
+		return this;
+	}
+
+	/**
+	 * @param disagreement The probability of an annotator deviating from any given reference annotation.
+	 */
+	public SyntheticCorpusGenerator withDisagreement(double disagreement) {
+		this.disagreement = disagreement;
+		return this;
+	}
+
+	/**
+	 * @param nestingRate The probability of a multi-token entity containing a nested entity of another category.
+	 */
+	public SyntheticCorpusGenerator withNestingRate(double nestingRate) {
+		this.nestingRate = nestingRate;
+		return this;
+	}
+
+	/**
+	 * @param overlapRate The probability of an entity being partially overlapped by an entity of another category.
+	 */
+	public SyntheticCorpusGenerator withOverlapRate(double overlapRate) {
+		this.overlapRate = overlapRate;
+		return this;
+	}
+
+	/**
+	 * @param subTokenRate The probability of a token being split into two covered sub-tokens.
+	 */
+	public SyntheticCorpusGenerator withSubTokenRate(double subTokenRate) {
+		this.subTokenRate = subTokenRate;
+		return this;
+	}
+
+	/**
+	 * @param fingerprintCoverage The probability of an annotation being covered by a {@link Fingerprint}.
+	 */
+	public SyntheticCorpusGenerator withFingerprintCoverage(double fingerprintCoverage) {
+		this.fingerprintCoverage = fingerprintCoverage;
+		return this;
+	}
+
+	/**
+	 * @param flagRate The probability of each of the metaphor, metonym and specific flags being set on an entity.
+	 */
+	public SyntheticCorpusGenerator withFlagRate(double flagRate) {
+		this.flagRate = flagRate;
+		return this;
+	}
+
+	/**
+	 * @param seed The random seed, combined with the document index for each document.
+	 */
+	public SyntheticCorpusGenerator withSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param vocabulary The words to draw the document text from. If empty, random letter sequences are used.
+	 * @see SyntheticCorpusGenerator#loadVocabulary(InputStream)
+	 */
+	public SyntheticCorpusGenerator withVocabulary(List<String> vocabulary) {
+		this.vocabulary = vocabulary;
+		return this;
+	}
+
+	/**
+	 * Collect the distinct whitespace separated words of the initial view of an XMI document, e.g. the
+	 * {@code test-Anne_Frank.xmi} test resource. Unknown types are ignored.
+	 *
+	 * @param xmiInputStream The XMI input.
+	 * @return The distinct words in order of their first occurrence.
+	 */
+	public static List<String> loadVocabulary(InputStream xmiInputStream) throws UIMAException, IOException {
+		JCas jCas = JCasFactory.createJCas();
+		CasIOUtils.load(xmiInputStream, null, jCas.getCas(), true);
+		LinkedHashSet<String> words = new LinkedHashSet<>();
+		for (String word : jCas.getDocumentText().split("\\s+")) {
+			if (StringUtils.isNotBlank(word))
+				words.add(word);
+		}
+		return new ArrayList<>(words);
+	}
+
+	/**
+	 * Create a new document.
+	 *
+	 * @param documentIndex The index of the document within the generated corpus.
+	 * @return A new JCas.
+	 */
+	public JCas generate(int documentIndex) throws UIMAException {
+		JCas jCas = JCasFactory.createJCas();
+		generate(jCas, documentIndex);
+		return jCas;
+	}
+
+	/**
+	 * Fill an empty or {@link JCas#reset() reset} JCas with a document.
+	 *
+	 * @param jCas          The JCas to fill.
+	 * @param documentIndex The index of the document within the generated corpus.
+	 */
+	public void generate(JCas jCas, int documentIndex) throws CASException {
+		Random random = new Random(seed * 1_000_003L + documentIndex);
+		int[][] tokens = createText(jCas, random, documentIndex);
+
+		// Split points of tokens with sub-tokens, zero for tokens without
+		int[] subTokenSplits = new int[tokenCount];
+		for (int i = 0; i < tokenCount; i++) {
+			int length = tokens[i][1] - tokens[i][0];
+			if (length > 1 && random.nextDouble() < subTokenRate)
+				subTokenSplits[i] = 1 + random.nextInt(length - 1);
+		}
+		addTokens(jCas, tokens, subTokenSplits);
+
+		ArrayList<int[]> entities = createReferenceEntities(random);
+		ArrayList<int[]> relations = createReferenceRelations(random);
+		for (int annotator = 0; annotator < annotatorCount; annotator++) {
+			JCas viewCas = jCas.createView(VIEW_PREFIX + getAnnotatorId(annotator));
+			viewCas.setDocumentText(jCas.getDocumentText());
+			addTokens(viewCas, tokens, subTokenSplits);
+			addEntities(viewCas, annotator, tokens, entities, random);
+			addRelations(viewCas, annotator, tokens, relations, random);
+		}
+	}
+
+	/**
+	 * @return The id used in the view name of the annotator with the given index.
+	 */
+	public static String getAnnotatorId(int annotator) {
+		return String.valueOf(100000 + annotator);
+	}
+
+	/**
+	 * Set the document text and metadata.
+	 *
+	 * @return The token offsets as {begin, end} pairs.
+	 */
+	private int[][] createText(JCas jCas, Random random, int documentIndex) {
+		StringBuilder text = new StringBuilder();
+		int[][] tokens = new int[tokenCount][];
+		for (int i = 0; i < tokenCount; i++) {
+			int begin = text.length();
+			if (vocabulary.isEmpty()) {
+				int length = 2 + random.nextInt(8);
+				for (int c = 0; c < length; c++)
+					text.append((char) ('a' + random.nextInt(26)));
+			} else {
+				text.append(vocabulary.get(random.nextInt(vocabulary.size())));
+			}
+			tokens[i] = new int[]{begin, text.length()};
+			text.append(i % SENTENCE_LENGTH == SENTENCE_LENGTH - 1 ? ". " : " ");
+		}
+		jCas.setDocumentText(text.toString());
+
+		DocumentMetaData documentMetaData = DocumentMetaData.create(jCas);
+		documentMetaData.setDocumentId(String.format("synthetic-%d-%d.xmi", seed, documentIndex));
+		return tokens;
+	}
+
+	private static void addTokens(JCas jCas, int[][] tokens, int[] subTokenSplits) {
+		for (int i = 0; i < tokens.length; i++) {
+			int begin = tokens[i][0];
+			int end = tokens[i][1];
+			new Token(jCas, begin, end).addToIndexes();
+			if (subTokenSplits[i] > 0) {
+				new Token(jCas, begin, begin + subTokenSplits[i]).addToIndexes();
+				new Token(jCas, begin + subTokenSplits[i], end).addToIndexes();
+			}
+			if (i % SENTENCE_LENGTH == SENTENCE_LENGTH - 1 || i == tokens.length - 1) {
+				new Sentence(jCas, tokens[i - i % SENTENCE_LENGTH][0], end).addToIndexes();
+			}
+		}
+	}
+
+	/**
+	 * @return Reference entities as {first token, last token, category}.
+	 */
+	private ArrayList<int[]> createReferenceEntities(Random random) {
+		ArrayList<int[]> entities = new ArrayList<>();
+		for (int i = 0; i < tokenCount; i++) {
+			if (random.nextDouble() >= entityDensity) continue;
+
+			int last = Math.min(tokenCount - 1, i + random.nextInt(3));
+			int category = random.nextInt(CATEGORIES.length);
+			entities.add(new int[]{i, last, category});
+
+			// Nested annotations must be of a different category, see README
+			if (last > i && random.nextDouble() < nestingRate) {
+				int nested = i + random.nextInt(last - i + 1);
+				entities.add(new int[]{nested, nested, getOtherCategory(random, category)});
+			}
+			if (last + 1 < tokenCount && random.nextDouble() < overlapRate) {
+				int overlapLast = Math.min(tokenCount - 1, last + 1 + random.nextInt(2));
+				entities.add(new int[]{last, overlapLast, getOtherCategory(random, category)});
+			}
+			i = last;
+		}
+		return entities;
+	}
+
+	/**
+	 * @return Reference relations as {predicate token, argument token, role}.
+	 */
+	private ArrayList<int[]> createReferenceRelations(Random random) {
+		ArrayList<int[]> relations = new ArrayList<>();
+		for (int i = 1; i < tokenCount - 1; i++) {
+			if (random.nextDouble() < relationDensity) {
+				relations.add(new int[]{i, random.nextBoolean() ? i - 1 : i + 1, random.nextInt(ROLES.length)});
+				i++;
+			}
+		}
+		return relations;
+	}
+
+	private static int getOtherCategory(Random random, int category) {
+		return (category + 1 + random.nextInt(CATEGORIES.length - 1)) % CATEGORIES.length;
+	}
+
+	private void addEntities(JCas viewCas, int annotator, int[][] tokens, ArrayList<int[]> entities, Random random) {
+		CAS cas = viewCas.getCas();
+		for (int[] entity : entities) {
+			int first = entity[0];
+			int last = entity[1];
+			int category = entity[2];
+			if (random.nextDouble() < disagreement) {
+				switch (random.nextInt(3)) {
+					case 0: // Missing annotation
+						continue;
+					case 1: // Different category
+						category = getOtherCategory(random, category);
+						break;
+					default: // Different boundary
+						last = Math.min(tokenCount - 1, Math.max(first, last + (random.nextBoolean() ? 1 : -1)));
+						break;
+				}
+			}
+			Type type = cas.getTypeSystem().getType(CATEGORIES[category]);
+			Annotation annotation = (Annotation) cas.createAnnotation(type, tokens[first][0], tokens[last][1]);
+			if (annotation instanceof NamedEntity) {
+				NamedEntity namedEntity = (NamedEntity) annotation;
+				namedEntity.setMetaphor(random.nextDouble() < flagRate);
+				namedEntity.setMetonym(random.nextDouble() < flagRate);
+			} else if (annotation instanceof AbstractNamedEntity) {
+				AbstractNamedEntity namedEntity = (AbstractNamedEntity) annotation;
+				namedEntity.setMetaphor(random.nextDouble() < flagRate);
+				namedEntity.setMetonym(random.nextDouble() < flagRate);
+				namedEntity.setSpecific(random.nextDouble() < flagRate);
+			}
+			viewCas.addFsToIndexes(annotation);
+			addFingerprint(viewCas, annotation, annotator, random);
+		}
+	}
+
+	private void addRelations(JCas viewCas, int annotator, int[][] tokens, ArrayList<int[]> relations, Random random) {
+		for (int[] relation : relations) {
+			int[] predicateToken = tokens[relation[0]];
+			int[] argumentToken = tokens[relation[1]];
+			String role = ROLES[relation[2]];
+			if (random.nextDouble() < disagreement)
+				role = ROLES[random.nextInt(ROLES.length)];
+
+			Event predicate = new Event(viewCas, predicateToken[0], predicateToken[1]);
+			predicate.addToIndexes();
+			Entity argument = new Entity(viewCas, argumentToken[0], argumentToken[1]);
+			argument.addToIndexes();
+
+			for (String source : new String[]{"propbank", "ttlabsynset"}) {
+				SemanticSource semanticSource = new SemanticSource(viewCas, predicateToken[0], predicateToken[1]);
+				semanticSource.setSource(source);
+				semanticSource.setValue("sense." + relation[2]);
+				semanticSource.addToIndexes();
+			}
+
+			AnnotationStatus status = new AnnotationStatus(viewCas, predicateToken[0], predicateToken[1]);
+			status.setStatus("Processed");
+			status.addToIndexes();
+
+			SrLink link = new SrLink(viewCas);
+			link.setFigure(predicate);
+			link.setGround(argument);
+			link.setRel_type(role);
+			link.addToIndexes();
+			addFingerprint(viewCas, link, annotator, random);
+		}
+	}
+
+	private void addFingerprint(JCas viewCas, TOP reference, int annotator, Random random) {
+		if (random.nextDouble() >= fingerprintCoverage) return;
+		Fingerprint fingerprint = new Fingerprint(viewCas);
+		fingerprint.setReference(reference);
+		fingerprint.setUser(VIEW_PREFIX + getAnnotatorId(annotator));
+		fingerprint.addToIndexes();
+	}
+}
@@ -0,0 +1,124 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreement;
+import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
+import org.hucompute.textimager.uima.agreement.engine.unitizing.UnitizingIAACollectionProcessingEngine;
+import org.hucompute.textimager.uima.agreement.engine.unitizing.kernel.UnitizingAgreementKernel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Compares the {@link UnitizingAgreementKernel} with the DKPro Statistics implementation on randomised studies and on
+ * the per-document studies of the engine.
+ */
+public class UnitizingAgreementKernelTest {
+	private static final int CATEGORIES = 3;
+	private static final double DELTA = 1e-9;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testKrippendorffAlphaUnitizing() {
+		Random random = new Random(42L);
+		for (int raters = 2; raters <= 4; raters++) {
+			for (int round = 0; round < 50; round++) {
+				int length = 10 + random.nextInt(200);
+				UnitizingAnnotationStudy study = new UnitizingAnnotationStudy(raters, length);
+				for (int rater = 0; rater < raters; rater++) {
+					for (int category = 0; category < CATEGORIES; category++) {
+						// Units of the same rater and category do not overlap
+						int offset = random.nextInt(10);
+						while (random.nextDouble() < 0.8) {
+							int unitLength = 1 + random.nextInt(10);
+							if (offset + unitLength > length)
+								break;
+							study.addUnit(offset, unitLength, rater, category);
+							offset += unitLength + random.nextInt(15);
+						}
+					}
+				}
+
+				String message = String.format("%d raters, round %d", raters, round);
+				KrippendorffAlphaUnitizingAgreement expected = new KrippendorffAlphaUnitizingAgreement(study);
+				UnitizingAgreementKernel actual = UnitizingAgreementKernel.of(study);
+				assertEquals(study.getUnitCount(), actual.getUnitCount(), message);
+				assertEquals(expected.calculateAgreement(), actual.calculateAgreement(), DELTA, message);
+				for (Object category : study.getCategories()) {
+					assertEquals(expected.calculateCategoryAgreement(category), actual.calculateCategoryAgreement(category),
+							DELTA, message + ", category " + category);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRaterOutOfRange() {
+		UnitizingAgreementKernel kernel = new UnitizingAgreementKernel(2, 0L, 10L);
+		kernel.addUnit(0L, 2L, 1, 0);
+		assertThrows(IllegalArgumentException.class, () -> kernel.addUnit(2L, 2L, 2, 0));
+		assertThrows(IllegalArgumentException.class, () -> kernel.addUnit(2L, 2L, -1, 0));
+	}
+
+	@Test
+	public void testMissingAnnotator() {
+		// The second document lacks the first annotator, so its views are not the first annotators of the engine
+		assertTimeoutPreemptively(Duration.ofMinutes(1), () -> {
+			Path dkpro = runSeparate(UnitizingIAACollectionProcessingEngine.DKPRO);
+			Path kernel = runSeparate(UnitizingIAACollectionProcessingEngine.KERNEL);
+			for (int i = 0; i < 2; i++) {
+				String fileName = String.format("synthetic-0-%d.csv", i);
+				AgreementFixture.assertSameResults(dkpro.resolve(fileName), kernel.resolve(fileName));
+			}
+		});
+	}
+
+	/**
+	 * Process two documents, each with its own result file, with the annotations of the first annotator removed from the second one.
+	 *
+	 * @return The target location of the results.
+	 */
+	private Path runSeparate(String agreementImplementation) throws Exception {
+		Path targetLocation = Files.createDirectory(tempDir.resolve(agreementImplementation));
+		AnalysisEngine engine = AgreementFixture.UNITIZING.createEngine(targetLocation,
+				AbstractIAAEngine.PARAM_MULTI_CAS_HANDLING, AbstractIAAEngine.SEPARATE,
+				AbstractIAAEngine.PARAM_MIN_ANNOTATIONS, 1,
+				UnitizingIAACollectionProcessingEngine.PARAM_AGREEMENT_IMPLEMENTATION, agreementImplementation);
+		try {
+			SyntheticCorpusGenerator generator = AgreementFixture.createGenerator();
+			JCas jCas = JCasFactory.createJCas();
+			for (int i = 0; i < 2; i++) {
+				jCas.reset();
+				generator.generate(jCas, i);
+				if (i == 1) {
+					JCas viewCas = jCas.getView(SyntheticCorpusGenerator.VIEW_PREFIX + SyntheticCorpusGenerator.getAnnotatorId(0));
+					for (String annotationClass : SyntheticCorpusGenerator.ANNOTATION_CLASSES) {
+						for (Annotation annotation : new ArrayList<>(JCasUtil.select(viewCas, Class.forName(annotationClass).asSubclass(Annotation.class)))) {
+							annotation.removeFromIndexes();
+						}
+					}
+				}
+				engine.process(jCas);
+			}
+			engine.collectionProcessComplete();
+		} finally {
+			engine.destroy();
+		}
+		return targetLocation;
+	}
+}
@@ -0,0 +1,85 @@
+package org.hucompute.textimager.uima.agreement.engine;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.hucompute.textimager.uima.agreement.engine.coding.CodingIAACollectionProcessingEngine;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.iaa.Agreement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Compares the sentence and window annotations of the {@link CodingIAACollectionProcessingEngine} with the mean of the
+ * token annotations they cover. With {@link org.hucompute.textimager.uima.agreement.engine.coding.SetSelectionStrategy#MAX}
+ * each annotated token has a single item.
+ */
+public class WindowAgreementTest {
+	private static final int WINDOW_SIZE = 7;
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void testSentenceAndWindowAgreement() throws Exception {
+		JCas jCas = new SyntheticCorpusGenerator()
+				.withAnnotatorCount(3)
+				.withTokenCount(400)
+				.withEntityDensity(0.3)
+				.generate(0);
+
+		AnalysisEngine engine = AnalysisEngineFactory.createEngine(CodingIAACollectionProcessingEngine.class,
+				AbstractIAAEngine.PARAM_ANNOTATION_CLASSES, SyntheticCorpusGenerator.ANNOTATION_CLASSES,
+				AbstractIAAEngine.PARAM_MIN_ANNOTATIONS, 0,
+				AbstractIAAEngine.PARAM_ANNOTATOR_RELATION, AbstractIAAEngine.BLACKLIST,
+				AbstractIAAEngine.PARAM_MULTI_CAS_HANDLING, AbstractIAAEngine.SEPARATE,
+				AbstractIAAEngine.PARAM_PRINT_STATS, false,
+				CodingIAACollectionProcessingEngine.PARAM_ANNOTATE_TOKEN, true,
+				CodingIAACollectionProcessingEngine.PARAM_ANNOTATE_SENTENCE, true,
+				CodingIAACollectionProcessingEngine.PARAM_WINDOW_SIZE, WINDOW_SIZE,
+				CodingIAACollectionProcessingEngine.PARAM_WINDOW_STEP, WINDOW_SIZE);
+		try {
+			engine.process(jCas);
+		} finally {
+			engine.destroy();
+		}
+
+		HashMap<String, Double> agreementBySpan = new HashMap<>();
+		for (Agreement agreement : JCasUtil.select(jCas.getView("IAA"), Agreement.class)) {
+			agreementBySpan.put(agreement.getBegin() + ":" + agreement.getEnd(), agreement.getAgreementValue());
+		}
+
+		for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+			assertMean(agreementBySpan, JCasUtil.selectCovered(Token.class, sentence), sentence.getBegin(), sentence.getEnd());
+		}
+		List<Token> tokens = new ArrayList<>(JCasUtil.select(jCas, Token.class));
+		for (int from = 0; from < tokens.size(); from += WINDOW_SIZE) {
+			List<Token> window = tokens.subList(from, Math.min(from + WINDOW_SIZE, tokens.size()));
+			assertMean(agreementBySpan, window, window.get(0).getBegin(), window.get(window.size() - 1).getEnd());
+		}
+	}
+
+	private static void assertMean(Map<String, Double> agreementBySpan, List<Token> tokens, int begin, int end) {
+		double sum = 0.0;
+		int count = 0;
+		for (Token token : tokens) {
+			Double value = agreementBySpan.get(token.getBegin() + ":" + token.getEnd());
+			if (value != null) {
+				sum += value;
+				count++;
+			}
+		}
+		Double actual = agreementBySpan.get(begin + ":" + end);
+		if (count == 0)
+			return;
+		assertNotNull(actual, begin + ":" + end);
+		assertEquals(sum / count, actual, DELTA);
+	}
+}